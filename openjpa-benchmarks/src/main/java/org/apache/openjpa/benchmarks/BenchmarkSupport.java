@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Persistence;
+
+import org.apache.openjpa.benchmarks.model.Author;
+import org.apache.openjpa.benchmarks.model.Book;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+
+/**
+ * Helpers shared by the benchmarks to create factories on the embedded
+ * database and to populate it.
+ */
+public final class BenchmarkSupport {
+
+    /**
+     * Name of the persistence unit used by all benchmarks.
+     */
+    public static final String UNIT = "benchmarks";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Create a factory for the benchmark unit. OpenJPA system properties
+     * override the values of the persistence unit, and the given key-value
+     * pairs override both.
+     */
+    public static OpenJPAEntityManagerFactorySPI createFactory(
+        String... props) {
+        Map<String, Object> config = new HashMap<String, Object>();
+        for (String key : System.getProperties().stringPropertyNames())
+            if (key.startsWith("openjpa.") || key.startsWith("javax.persistence."))
+                config.put(key, System.getProperty(key));
+        for (int i = 0; i + 1 < props.length; i += 2)
+            config.put(props[i], props[i + 1]);
+        return (OpenJPAEntityManagerFactorySPI) Persistence
+            .createEntityManagerFactory(UNIT, config);
+    }
+
+    /**
+     * Delete all rows of the benchmark model.
+     */
+    public static void clear(OpenJPAEntityManagerFactorySPI emf) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createQuery("delete from Book").executeUpdate();
+            em.createQuery("delete from Author").executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+        emf.getCache().evictAll();
+    }
+
+    /**
+     * Replace the contents of the database with the given number of authors,
+     * each with the given number of books.
+     *
+     * @return the ids of the new authors
+     */
+    public static long[] populate(OpenJPAEntityManagerFactorySPI emf,
+        int authors, int booksPerAuthor) {
+        clear(emf);
+        long[] ids = new long[authors];
+        Author[] created = new Author[authors];
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            for (int i = 0; i < authors; i++) {
+                Author author = new Author();
+                author.setName("author-" + i);
+                author.setRating(i % 5);
+                for (int j = 0; j < booksPerAuthor; j++) {
+                    Book book = new Book();
+                    book.setTitle("book-" + i + "-" + j);
+                    book.setPrice(j);
+                    author.addBook(book);
+                }
+                em.persist(author);
+                created[i] = author;
+            }
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+        for (int i = 0; i < authors; i++)
+            ids[i] = created[i].getId();
+        return ids;
+    }
+}
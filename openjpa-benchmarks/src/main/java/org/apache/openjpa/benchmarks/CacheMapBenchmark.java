@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.openjpa.util.CacheMap;
+import org.apache.openjpa.util.SegmentedCacheMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Concurrent lookups with occasional puts against the maps backing the data
+ * cache. Run with <code>-t</code> to change the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class CacheMapBenchmark {
+
+    private static final int SIZE = 10000;
+
+    @Param({ "CacheMap", "SegmentedCacheMap" })
+    public String map;
+
+    private Map<Object, Object> _map;
+
+    @SuppressWarnings("unchecked")
+    @Setup
+    public void setUp() {
+        _map = "CacheMap".equals(map) ? new CacheMap(false, SIZE)
+            : new SegmentedCacheMap(SIZE, 16);
+        for (int i = 0; i < SIZE; i++)
+            _map.put(i, "value-" + i);
+    }
+
+    @Benchmark
+    public Object get() {
+        return _map.get(ThreadLocalRandom.current().nextInt(SIZE * 2));
+    }
+
+    @Benchmark
+    public Object getOrPut() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Integer key = random.nextInt(SIZE * 2);
+        if (random.nextInt(10) == 0)
+            return _map.put(key, "value-" + key);
+        return _map.get(key);
+    }
+}
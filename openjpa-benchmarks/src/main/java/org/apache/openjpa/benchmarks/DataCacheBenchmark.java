@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.openjpa.benchmarks.model.Author;
+import org.apache.openjpa.datacache.DataCache;
+import org.apache.openjpa.datacache.DataCachePCData;
+import org.apache.openjpa.datacache.DataCachePCDataImpl;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.apache.openjpa.util.LongId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Concurrent lookups with occasional puts against the concurrent and the
+ * segmented data cache, over a key range twice the size of the cache. Puts
+ * take the cache write lock as the data cache store manager does. Run with
+ * <code>-t</code> to change the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class DataCacheBenchmark {
+
+    private static final int SIZE = 10000;
+
+    @Param({ "concurrent", "segmented" })
+    public String cache;
+
+    private OpenJPAEntityManagerFactorySPI _emf;
+    private DataCache _cache;
+    private ClassMetaData _meta;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _emf = BenchmarkSupport.createFactory("openjpa.DataCache",
+            cache + "(CacheSize=" + SIZE + ")",
+            "openjpa.RemoteCommitProvider", "sjvm");
+        _cache = _emf.getConfiguration().getDataCacheManagerInstance()
+            .getSystemDataCache();
+        _meta = _emf.getConfiguration().getMetaDataRepositoryInstance()
+            .getMetaData(Author.class, null, true);
+        for (int i = 0; i < SIZE; i++)
+            _cache.put(newData(i));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _emf.close();
+    }
+
+    private DataCachePCData newData(long id) {
+        return new DataCachePCDataImpl(new LongId(Author.class, id), _meta);
+    }
+
+    @Benchmark
+    public Object get() {
+        return _cache.get(new LongId(Author.class,
+            ThreadLocalRandom.current().nextInt(SIZE * 2)));
+    }
+
+    @Benchmark
+    public Object getOrPut() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id = random.nextInt(SIZE * 2);
+        if (random.nextInt(10) != 0)
+            return _cache.get(new LongId(Author.class, id));
+        _cache.writeLock();
+        try {
+            return _cache.put(newData(id));
+        } finally {
+            _cache.writeUnlock();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.benchmarks.model.Author;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Detach an instance with its relation, and merge a modified detached
+ * instance back into a new persistence context.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetachMergeBenchmark {
+
+    private static final int BOOKS = 20;
+
+    private OpenJPAEntityManagerFactorySPI _emf;
+    private long _id;
+    private Author _detached;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _emf = BenchmarkSupport.createFactory();
+        _id = BenchmarkSupport.populate(_emf, 1, BOOKS)[0];
+        _detached = detach();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.clear(_emf);
+        _emf.close();
+    }
+
+    @Benchmark
+    public Author detach() {
+        EntityManager em = _emf.createEntityManager();
+        try {
+            Author author = em.find(Author.class, _id);
+            author.getBooks().size();
+            em.detach(author);
+            return author;
+        } finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public Author merge() {
+        EntityManager em = _emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            _detached.setRating(_detached.getRating() + 1);
+            Author merged = em.merge(_detached);
+            // leave the database untouched so that every merge is alike
+            em.getTransaction().rollback();
+            return merged;
+        } finally {
+            em.close();
+        }
+    }
+}
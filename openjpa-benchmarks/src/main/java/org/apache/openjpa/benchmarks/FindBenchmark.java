@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.benchmarks.model.Author;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Find by id from the database, from the persistence context and from the
+ * data cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindBenchmark {
+
+    private static final int AUTHORS = 1000;
+
+    private OpenJPAEntityManagerFactorySPI _uncached;
+    private OpenJPAEntityManagerFactorySPI _cached;
+    private long[] _ids;
+    private int _next;
+    private EntityManager _em;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _uncached = BenchmarkSupport.createFactory();
+        _cached = BenchmarkSupport.createFactory("openjpa.DataCache", "true",
+            "openjpa.RemoteCommitProvider", "sjvm");
+        _ids = BenchmarkSupport.populate(_uncached, AUTHORS, 0);
+
+        // warm the data cache
+        EntityManager em = _cached.createEntityManager();
+        for (long id : _ids)
+            em.find(Author.class, id);
+        em.close();
+
+        _em = _uncached.createEntityManager();
+        for (long id : _ids)
+            _em.find(Author.class, id);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _em.close();
+        BenchmarkSupport.clear(_uncached);
+        _cached.close();
+        _uncached.close();
+    }
+
+    private long nextId() {
+        if (_next == _ids.length)
+            _next = 0;
+        return _ids[_next++];
+    }
+
+    /**
+     * Every lookup goes to the database.
+     */
+    @Benchmark
+    public Author findCold() {
+        EntityManager em = _uncached.createEntityManager();
+        try {
+            return em.find(Author.class, nextId());
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Every lookup is satisfied by the persistence context.
+     */
+    @Benchmark
+    public Author findL1Hit() {
+        return _em.find(Author.class, nextId());
+    }
+
+    /**
+     * Every lookup is satisfied by the data cache.
+     */
+    @Benchmark
+    public Author findL2Hit() {
+        EntityManager em = _cached.createEntityManager();
+        try {
+            return em.find(Author.class, nextId());
+        } finally {
+            em.close();
+        }
+    }
+}
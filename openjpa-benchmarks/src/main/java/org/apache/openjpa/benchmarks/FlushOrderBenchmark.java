@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.benchmarks.model.Author;
+import org.apache.openjpa.benchmarks.model.Book;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Insert and then delete a large acyclic object graph in two flushes, with
+ * the rows ordered by the foreign key graph of the rows or by the cached
+ * table order of the constraint update manager.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlushOrderBenchmark {
+
+    @Param({ "batching-constraint", "batching-constraint(TableOrder=true)" })
+    public String updateManager;
+
+    @Param({ "1000" })
+    public int authors;
+
+    @Param({ "20" })
+    public int booksPerAuthor;
+
+    private OpenJPAEntityManagerFactorySPI _emf;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _emf = BenchmarkSupport.createFactory("openjpa.jdbc.UpdateManager",
+            updateManager);
+        BenchmarkSupport.clear(_emf);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.clear(_emf);
+        _emf.close();
+    }
+
+    @Benchmark
+    public int insertAndDelete() {
+        EntityManager em = _emf.createEntityManager();
+        try {
+            List<Author> created = new ArrayList<Author>(authors);
+            em.getTransaction().begin();
+            for (int i = 0; i < authors; i++) {
+                Author author = new Author();
+                author.setName("author-" + i);
+                for (int j = 0; j < booksPerAuthor; j++) {
+                    Book book = new Book();
+                    book.setTitle("book-" + i + "-" + j);
+                    author.addBook(book);
+                }
+                em.persist(author);
+                created.add(author);
+            }
+            em.getTransaction().commit();
+
+            em.getTransaction().begin();
+            for (Author author : created)
+                em.remove(author);
+            em.getTransaction().commit();
+            return created.size();
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.benchmarks.model.Author;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loads a large number of instances into a single persistence context and
+ * looks each of them up again, with the default managed object cache and
+ * with the tables of the <code>PrimitiveIdCache</code> broker property. Run
+ * with <code>-prof gc</code> to compare the memory allocated per context.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ManagedCacheBenchmark {
+
+    @Param({ "1000000" })
+    public int size;
+
+    @Param({ "false", "true" })
+    public boolean primitiveIdCache;
+
+    private OpenJPAEntityManagerFactorySPI _emf;
+    private long[] _ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _emf = BenchmarkSupport.createFactory("openjpa.BrokerImpl",
+            "PrimitiveIdCache=" + primitiveIdCache);
+        _ids = BenchmarkSupport.populate(_emf, size, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.clear(_emf);
+        _emf.close();
+    }
+
+    @Benchmark
+    public int loadAndFind() {
+        EntityManager em = _emf.createEntityManager();
+        try {
+            List<Author> authors = em.createQuery("select a from Author a",
+                Author.class).getResultList();
+            int found = 0;
+            for (long id : _ids)
+                if (em.find(Author.class, id) != null)
+                    found++;
+            return authors.size() + found;
+        } finally {
+            em.close();
+        }
+    }
+}
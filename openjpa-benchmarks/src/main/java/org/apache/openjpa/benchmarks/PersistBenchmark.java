@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.benchmarks.model.Author;
+import org.apache.openjpa.benchmarks.model.Book;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Persist and flush a number of new instances in one transaction. Measures
+ * cascading, state transitions, SQL generation and the batching update
+ * manager.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistBenchmark {
+
+    @Param({ "1", "100" })
+    public int authors;
+
+    @Param({ "0", "10" })
+    public int booksPerAuthor;
+
+    private OpenJPAEntityManagerFactorySPI _emf;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _emf = BenchmarkSupport.createFactory();
+        BenchmarkSupport.clear(_emf);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.clear(_emf);
+        _emf.close();
+    }
+
+    @Benchmark
+    public Author persistAndFlush() {
+        EntityManager em = _emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Author author = null;
+            for (int i = 0; i < authors; i++) {
+                author = new Author();
+                author.setName("author-" + i);
+                for (int j = 0; j < booksPerAuthor; j++) {
+                    Book book = new Book();
+                    book.setTitle("book-" + j);
+                    author.addBook(book);
+                }
+                em.persist(author);
+            }
+            em.flush();
+            em.getTransaction().commit();
+            return author;
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.openjpa.util.ProxyManager;
+import org.apache.openjpa.util.ProxyManagerImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mutate change-tracking proxies of second class collections and maps as
+ * the runtime does for the relation and collection fields of managed
+ * instances.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyCollectionBenchmark {
+
+    @Param({ "10", "1000" })
+    public int size;
+
+    private ProxyManager _proxies;
+
+    @Setup
+    public void setUp() {
+        _proxies = new ProxyManagerImpl();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Benchmark
+    public Collection<Integer> mutateList() {
+        Collection<Integer> list = (Collection<Integer>) _proxies
+            .newCollectionProxy(ArrayList.class, Integer.class, null, true);
+        return mutate(list);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Benchmark
+    public Collection<Integer> mutateSet() {
+        Collection<Integer> set = (Collection<Integer>) _proxies
+            .newCollectionProxy(HashSet.class, Integer.class, null, true);
+        return mutate(set);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Benchmark
+    public Map<Integer, Integer> mutateMap() {
+        Map<Integer, Integer> map = (Map<Integer, Integer>) _proxies
+            .newMapProxy(HashMap.class, Integer.class, Integer.class, null,
+                true);
+        for (int i = 0; i < size; i++)
+            map.put(i, i);
+        for (int i = 0; i < size; i += 2)
+            map.remove(i);
+        return map;
+    }
+
+    private Collection<Integer> mutate(Collection<Integer> coll) {
+        for (int i = 0; i < size; i++)
+            coll.add(i);
+        for (int i = 0; i < size; i += 2)
+            coll.remove(i);
+        return coll;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.benchmarks.model.Author;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Execute the same JPQL query with every compilation cache disabled, so that
+ * each execution parses the query and builds its SQL, and with the prepared
+ * query cache enabled, so that executions after the first reuse the SQL.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final String JPQL = "select a from Author a "
+        + "where a.rating = :rating and a.name like :name order by a.name";
+
+    private OpenJPAEntityManagerFactorySPI _compiling;
+    private OpenJPAEntityManagerFactorySPI _prepared;
+    private EntityManager _compilingEm;
+    private EntityManager _preparedEm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _compiling = BenchmarkSupport.createFactory(
+            "openjpa.QueryCompilationCache", "false",
+            "openjpa.jdbc.QuerySQLCache", "false");
+        _prepared = BenchmarkSupport.createFactory(
+            "openjpa.jdbc.QuerySQLCache", "true");
+        BenchmarkSupport.populate(_compiling, 50, 0);
+        _compilingEm = _compiling.createEntityManager();
+        _preparedEm = _prepared.createEntityManager();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        _compilingEm.close();
+        _preparedEm.close();
+        BenchmarkSupport.clear(_compiling);
+        _prepared.close();
+        _compiling.close();
+    }
+
+    @Benchmark
+    public List<Author> compileAndExecute() {
+        return execute(_compilingEm);
+    }
+
+    @Benchmark
+    public List<Author> preparedQueryCacheHit() {
+        return execute(_preparedEm);
+    }
+
+    private static List<Author> execute(EntityManager em) {
+        List<Author> result = em.createQuery(JPQL, Author.class)
+            .setParameter("rating", 3)
+            .setParameter("name", "author-1%")
+            .getResultList();
+        em.clear();
+        return result;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.openjpa.jdbc.instrumentation.SQLStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of recording one statement execution in the SQL statistics, as
+ * paid by every statement when the SQLStatistics instrument is enabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class SQLStatisticsBenchmark {
+
+    private static final int STATEMENTS = 200;
+
+    private SQLStatistics _stats;
+    private String[] _sql;
+
+    @Setup
+    public void setUp() {
+        _stats = new SQLStatistics();
+        _sql = new String[STATEMENTS];
+        for (int i = 0; i < STATEMENTS; i++)
+            _sql[i] = "SELECT t0.ID, t0.NAME, t0.VERSION FROM BOOK_" + i
+                + " t0 WHERE t0.AUTHOR_ID = ? AND t0.TITLE LIKE ?";
+    }
+
+    @Benchmark
+    public void record() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // copy the SQL as each execution sees a freshly built string
+        String sql = new String(_sql[random.nextInt(STATEMENTS)]);
+        _stats.record(sql, random.nextInt(100000), 1);
+    }
+}
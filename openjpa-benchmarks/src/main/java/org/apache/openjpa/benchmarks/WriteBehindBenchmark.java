@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.benchmarks.model.Author;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Commit one counter update per transaction to a few hot instances, with
+ * the updates executed by each commit and with the updates written behind
+ * and coalesced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBehindBenchmark {
+
+    private static final int AUTHORS = 10;
+
+    @Param({ "batching-constraint",
+        "batching-constraint(WriteBehindTypes=Author, WriteBehindInterval=100)" })
+    public String updateManager;
+
+    private OpenJPAEntityManagerFactorySPI _emf;
+    private long[] _ids;
+    private int _next;
+    private EntityManager _em;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        _emf = BenchmarkSupport.createFactory("openjpa.DataCache", "true",
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.jdbc.UpdateManager", updateManager);
+        _ids = BenchmarkSupport.populate(_emf, AUTHORS, 0);
+        _em = _emf.createEntityManager();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // closing the factory writes the queued updates
+        _em.close();
+        _emf.close();
+    }
+
+    @Benchmark
+    public int increment() {
+        _em.getTransaction().begin();
+        Author author = _em.find(Author.class, _ids[_next++ % AUTHORS]);
+        author.setRating(author.getRating() + 1);
+        _em.getTransaction().commit();
+        return author.getRating();
+    }
+}
@@ -24,6 +24,7 @@ import org.apache.openjpa.conf.OpenJPAConfiguration;
 import org.apache.openjpa.jdbc.identifier.DBIdentifierUtil;
 import org.apache.openjpa.jdbc.kernel.EagerFetchModes;
 import org.apache.openjpa.jdbc.kernel.LRSSizes;
+import org.apache.openjpa.jdbc.kernel.SQLResultCache;
 import org.apache.openjpa.jdbc.kernel.UpdateManager;
 import org.apache.openjpa.jdbc.meta.MappingDefaults;
 import org.apache.openjpa.jdbc.meta.MappingRepository;
@@ -335,6 +336,45 @@ public interface JDBCConfiguration
      */
     public void setSubclassFetchMode(int subclassFetchMode);
 
+    /**
+     * The maximum number of parallel eager selects of a single query that
+     * may execute concurrently, each on its own connection obtained from
+     * the configured data source. Defaults to 1, which executes the selects
+     * one after another on the query's connection.
+     *
+     * @since 3.0.1
+     */
+    public int getEagerFetchParallelism();
+
+    /**
+     * The maximum number of parallel eager selects of a single query that
+     * may execute concurrently, each on its own connection obtained from
+     * the configured data source. Values below 2 disable concurrent
+     * execution.
+     *
+     * @since 3.0.1
+     */
+    public void setEagerFetchParallelism(int parallelism);
+
+    /**
+     * The maximum number of managed instances of the same type whose lazy
+     * relation is loaded by a single select when that relation is first
+     * accessed on one of them. Defaults to 1, which loads the relation of
+     * each instance with its own select.
+     *
+     * @since 3.0.1
+     */
+    public int getLazyFetchBatchSize();
+
+    /**
+     * The maximum number of managed instances of the same type whose lazy
+     * relation is loaded by a single select when that relation is first
+     * accessed on one of them. Values below 2 disable batch fetching.
+     *
+     * @since 3.0.1
+     */
+    public void setLazyFetchBatchSize(int size);
+
     /**
      * How to obtain the size of large result sets. Defaults to
      * <code>unknown</code>.
@@ -629,4 +669,36 @@ public interface JDBCConfiguration
      */
     public void setIdentifierUtil(DBIdentifierUtil util);
 
+    /**
+     * The {@link SQLResultCache} holding the results of native SQL
+     * projection queries. Disabled by default.
+     *
+     * @since 3.0.1
+     */
+    public String getSQLResultCache();
+
+    /**
+     * The {@link SQLResultCache} holding the results of native SQL
+     * projection queries. Disabled by default.
+     *
+     * @since 3.0.1
+     */
+    public void setSQLResultCache(String cache);
+
+    /**
+     * The {@link SQLResultCache} holding the results of native SQL
+     * projection queries, or null if disabled.
+     *
+     * @since 3.0.1
+     */
+    public SQLResultCache getSQLResultCacheInstance();
+
+    /**
+     * The {@link SQLResultCache} holding the results of native SQL
+     * projection queries.
+     *
+     * @since 3.0.1
+     */
+    public void setSQLResultCache(SQLResultCache cache);
+
 }
@@ -32,6 +32,7 @@ import org.apache.openjpa.jdbc.kernel.EagerFetchModes;
 import org.apache.openjpa.jdbc.kernel.JDBCBrokerFactory;
 import org.apache.openjpa.jdbc.kernel.LRSSizes;
 import org.apache.openjpa.jdbc.kernel.PessimisticLockManager;
+import org.apache.openjpa.jdbc.kernel.SQLResultCache;
 import org.apache.openjpa.jdbc.kernel.UpdateManager;
 import org.apache.openjpa.jdbc.meta.MappingDefaults;
 import org.apache.openjpa.jdbc.meta.MappingRepository;
@@ -56,6 +57,7 @@ import org.apache.openjpa.lib.jdbc.JDBCListener;
 import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.meta.MetaDataFactory;
+import org.apache.openjpa.util.ImplHelper;
 import org.apache.openjpa.util.UserException;
 
 /**
@@ -75,6 +77,8 @@ public class JDBCConfigurationImpl
     public IntValue fetchDirection;
     public FetchModeValue eagerFetchMode;
     public FetchModeValue subclassFetchMode;
+    public IntValue eagerFetchParallelism;
+    public IntValue lazyFetchBatchSize;
     public IntValue lrsSize;
     public StringValue synchronizeMappings;
     public ObjectValue jdbcListenerPlugins;
@@ -87,6 +91,7 @@ public class JDBCConfigurationImpl
     public PluginValue driverDataSourcePlugin;
     public MappingFactoryValue mappingFactoryPlugin;
     public ObjectValue identifierUtilPlugin;
+    public ObjectValue sqlResultCachePlugin;
 
     // used internally
     private String firstUser = null;
@@ -176,6 +181,14 @@ public class JDBCConfigurationImpl
         subclassFetchMode.set(EagerFetchModes.EAGER_JOIN);
         addValue(subclassFetchMode);
 
+        eagerFetchParallelism = addInt("jdbc.EagerFetchParallelism");
+        eagerFetchParallelism.setDefault("1");
+        eagerFetchParallelism.set(1);
+
+        lazyFetchBatchSize = addInt("jdbc.LazyFetchBatchSize");
+        lazyFetchBatchSize.setDefault("1");
+        lazyFetchBatchSize.set(1);
+
         lrsSize = addInt("jdbc.LRSSize");
         aliases = new String[]{
             "query", String.valueOf(LRSSizes.SIZE_QUERY),
@@ -343,6 +356,19 @@ public class JDBCConfigurationImpl
         finderCachePlugin.setDynamic(true);
         finderCachePlugin.setInstantiatingGetter("getFinderCacheInstance");
 
+        sqlResultCachePlugin = addPlugin("jdbc.SQLResultCache", true);
+        aliases = new String[] {
+            "true", "org.apache.openjpa.jdbc.kernel.SQLResultCacheImpl",
+            "false", null
+        };
+        sqlResultCachePlugin.setAliases(aliases);
+        sqlResultCachePlugin.setAliasListComprehensive(true);
+        sqlResultCachePlugin.setDefault(aliases[2]);
+        sqlResultCachePlugin.setString(aliases[2]);
+        sqlResultCachePlugin.setDynamic(true);
+        sqlResultCachePlugin.setInstantiatingGetter(
+            "getSQLResultCacheInstance");
+
         identifierUtilPlugin = addPlugin("jdbc.IdentifierUtil", true);
         aliases = new String[] { 
             "default", "org.apache.openjpa.jdbc.identifier.DBIdentifierUtilImpl" };
@@ -488,6 +514,22 @@ public class JDBCConfigurationImpl
         return subclassFetchMode.get();
     }
 
+    public void setEagerFetchParallelism(int eagerFetchParallelism) {
+        this.eagerFetchParallelism.set(eagerFetchParallelism);
+    }
+
+    public int getEagerFetchParallelism() {
+        return eagerFetchParallelism.get();
+    }
+
+    public void setLazyFetchBatchSize(int lazyFetchBatchSize) {
+        this.lazyFetchBatchSize.set(lazyFetchBatchSize);
+    }
+
+    public int getLazyFetchBatchSize() {
+        return lazyFetchBatchSize.get();
+    }
+
     public void setLRSSize(String lrsSize) {
         this.lrsSize.setString(lrsSize);
     }
@@ -966,6 +1008,8 @@ public class JDBCConfigurationImpl
      * Free the data sources.
      */
     protected void preClose() {
+        // write behind queued updates while the data sources are open
+        ImplHelper.close(updateManagerPlugin.get());
         if (dataSource != null) {
             getDBDictionaryInstance().closeDataSource(dataSource);
             connectionFactory.set(null, true); // so super doesn't close it
@@ -1004,4 +1048,22 @@ public class JDBCConfigurationImpl
         identifierUtilPlugin.set(util);
     }
 
+    public String getSQLResultCache() {
+        return sqlResultCachePlugin.getString();
+    }
+
+    public void setSQLResultCache(String cache) {
+        sqlResultCachePlugin.setString(cache);
+    }
+
+    public SQLResultCache getSQLResultCacheInstance() {
+        if (sqlResultCachePlugin.get() == null)
+            sqlResultCachePlugin.instantiate(SQLResultCache.class, this);
+        return (SQLResultCache) sqlResultCachePlugin.get();
+    }
+
+    public void setSQLResultCache(SQLResultCache cache) {
+        sqlResultCachePlugin.set(cache);
+    }
+
 }
@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.instrumentation;
+
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.openjpa.lib.instrumentation.AbstractInstrument;
+import org.apache.openjpa.lib.instrumentation.InstrumentationLevel;
+import org.apache.openjpa.lib.jdbc.ConnectionDecorator;
+import org.apache.openjpa.lib.jdbc.DecoratingDataSource;
+import org.apache.openjpa.lib.jdbc.JDBCEventConnectionDecorator;
+
+/**
+ * Provides a basic instrument implementation wrapper for SQL execution
+ * statistics. The statistics listen to the JDBC events of the data source
+ * they are installed on.
+ *
+ * @since 3.0.1
+ */
+public abstract class AbstractSQLStatisticsInstrument extends AbstractInstrument
+    implements SQLStatisticsInstrument {
+
+    public static final long NO_STATS = -1;
+
+    private final SQLStatistics _stats = new SQLStatistics();
+    private JDBCEventConnectionDecorator _events;
+    private String _configID = null;
+    private String _configRef = null;
+
+    public void setConfigId(String cid) {
+        _configID = cid;
+    }
+
+    public void setContextRef(String cref) {
+        _configRef = cref;
+    }
+
+    public String getConfigId() {
+        return _configID;
+    }
+
+    public String getContextRef() {
+        return _configRef;
+    }
+
+    /**
+     * The statistics collected by this instrument.
+     */
+    public SQLStatistics getStatistics() {
+        return _stats;
+    }
+
+    /**
+     * Start listening to the JDBC events of the given data source. Only
+     * connections obtained from now on are measured.
+     *
+     * @return false if the data source does not fire JDBC events
+     */
+    protected synchronized boolean install(Object dataSource) {
+        if (_events != null)
+            return true;
+        if (!(dataSource instanceof DecoratingDataSource))
+            return false;
+        for (ConnectionDecorator decorator
+            : ((DecoratingDataSource) dataSource).getDecorators()) {
+            if (decorator instanceof JDBCEventConnectionDecorator) {
+                _events = (JDBCEventConnectionDecorator) decorator;
+                _events.addListener(_stats);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stop listening to JDBC events.
+     */
+    protected synchronized void uninstall() {
+        if (_events != null)
+            _events.removeListener(_stats);
+        _events = null;
+    }
+
+    private long toMicros(long nanos) {
+        return nanos / 1000;
+    }
+
+    public long getExecutionCount() {
+        return _stats.getExecutionCount();
+    }
+
+    public long getExecutionCount(String sql) {
+        SQLStatementStatistics stats = _stats.getStatistics(sql);
+        return (stats == null) ? NO_STATS : stats.getExecutionCount();
+    }
+
+    public long getTotalTime() {
+        return toMicros(_stats.getTotalTime());
+    }
+
+    public long getTotalTime(String sql) {
+        SQLStatementStatistics stats = _stats.getStatistics(sql);
+        return (stats == null) ? NO_STATS : toMicros(stats.getTotalTime());
+    }
+
+    public long getMeanTime(String sql) {
+        SQLStatementStatistics stats = _stats.getStatistics(sql);
+        return (stats == null) ? NO_STATS : toMicros(stats.getMeanTime());
+    }
+
+    public long getMaxTime(String sql) {
+        SQLStatementStatistics stats = _stats.getStatistics(sql);
+        return (stats == null) ? NO_STATS : toMicros(stats.getMaxTime());
+    }
+
+    public long get99thPercentileTime(String sql) {
+        SQLStatementStatistics stats = _stats.getStatistics(sql);
+        return (stats == null) ? NO_STATS : stats.getPercentile(0.99);
+    }
+
+    public long getRowCount(String sql) {
+        SQLStatementStatistics stats = _stats.getStatistics(sql);
+        return (stats == null) ? NO_STATS : stats.getRowCount();
+    }
+
+    public long[] getHistogram(String sql) {
+        SQLStatementStatistics stats = _stats.getStatistics(sql);
+        return (stats == null) ? null : stats.getHistogram();
+    }
+
+    public String[] getTopStatements(int n) {
+        List<SQLStatementStatistics> top = _stats.getTopStatements(n);
+        String[] sql = new String[top.size()];
+        for (int i = 0; i < sql.length; i++)
+            sql[i] = top.get(i).getSQL();
+        return sql;
+    }
+
+    public String report(int n) {
+        StringBuilder buf = new StringBuilder();
+        for (SQLStatementStatistics stats : _stats.getTopStatements(n))
+            buf.append(stats).append('\n');
+        return buf.toString();
+    }
+
+    public void reset() {
+        _stats.reset();
+    }
+
+    public Date sinceDate() {
+        return _stats.since();
+    }
+
+    public Date startDate() {
+        return _stats.start();
+    }
+
+    public Set<String> statements() {
+        Set<String> sql = new LinkedHashSet<String>();
+        for (SQLStatementStatistics stats : _stats.getStatistics())
+            sql.add(stats.getSQL());
+        return sql;
+    }
+
+    public InstrumentationLevel getLevel() {
+        return InstrumentationLevel.FACTORY;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.instrumentation;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.openjpa.jdbc.kernel.AbstractUpdateManager;
+import org.apache.openjpa.jdbc.kernel.UpdateManager;
+import org.apache.openjpa.jdbc.kernel.WriteBehindQueue;
+import org.apache.openjpa.jdbc.kernel.WriteBehindQueue.TypeStatistics;
+import org.apache.openjpa.lib.instrumentation.AbstractInstrument;
+import org.apache.openjpa.lib.instrumentation.InstrumentationLevel;
+
+/**
+ * Provides a basic instrument implementation wrapper for the write-behind
+ * queue of an update manager.
+ *
+ * @since 3.0.1
+ */
+public abstract class AbstractWriteBehindInstrument extends AbstractInstrument
+    implements WriteBehindInstrument {
+
+    public static final long NO_STATS = -1;
+
+    private WriteBehindQueue _queue = null;
+    private String _configID = null;
+    private String _configRef = null;
+
+    public void setConfigId(String cid) {
+        _configID = cid;
+    }
+
+    public void setContextRef(String cref) {
+        _configRef = cref;
+    }
+
+    public String getConfigId() {
+        return _configID;
+    }
+
+    public String getContextRef() {
+        return _configRef;
+    }
+
+    /**
+     * Instrument the write-behind queue of the given update manager.
+     *
+     * @return false if the update manager has no write-behind queue
+     */
+    protected boolean install(UpdateManager mgr) {
+        if (mgr instanceof AbstractUpdateManager)
+            _queue = ((AbstractUpdateManager) mgr).getWriteBehindQueue();
+        return _queue != null;
+    }
+
+    /**
+     * The instrumented queue.
+     */
+    public WriteBehindQueue getQueue() {
+        return _queue;
+    }
+
+    public long getPendingCount() {
+        return (_queue == null) ? NO_STATS : _queue.size();
+    }
+
+    public long getPendingCount(String type) {
+        TypeStatistics stats = getStatistics(type);
+        return (stats == null) ? NO_STATS : stats.getPendingCount();
+    }
+
+    public long getLag() {
+        return (_queue == null) ? NO_STATS : _queue.getLag(null);
+    }
+
+    public long getLag(String type) {
+        return (getStatistics(type) == null) ? NO_STATS : _queue.getLag(type);
+    }
+
+    public long getQueuedCount(String type) {
+        TypeStatistics stats = getStatistics(type);
+        return (stats == null) ? NO_STATS : stats.getQueuedCount();
+    }
+
+    public long getCoalescedCount(String type) {
+        TypeStatistics stats = getStatistics(type);
+        return (stats == null) ? NO_STATS : stats.getCoalescedCount();
+    }
+
+    public long getWrittenCount(String type) {
+        TypeStatistics stats = getStatistics(type);
+        return (stats == null) ? NO_STATS : stats.getWrittenCount();
+    }
+
+    public long getFailedCount(String type) {
+        TypeStatistics stats = getStatistics(type);
+        return (stats == null) ? NO_STATS : stats.getFailedCount();
+    }
+
+    public long getFlushCount() {
+        return (_queue == null) ? NO_STATS : _queue.getFlushCount();
+    }
+
+    private TypeStatistics getStatistics(String type) {
+        return (_queue == null) ? null : _queue.getStatistics(type);
+    }
+
+    public void flush() {
+        if (_queue != null)
+            _queue.flush();
+    }
+
+    public void reset() {
+        if (_queue != null)
+            _queue.reset();
+    }
+
+    public Date sinceDate() {
+        return (_queue == null) ? null : _queue.since();
+    }
+
+    public Date startDate() {
+        return (_queue == null) ? null : _queue.start();
+    }
+
+    public Set<String> types() {
+        Set<String> types = new TreeSet<String>();
+        if (_queue != null)
+            for (TypeStatistics stats : _queue.getStatistics())
+                types.add(stats.getType());
+        return types;
+    }
+
+    public InstrumentationLevel getLevel() {
+        return InstrumentationLevel.FACTORY;
+    }
+}
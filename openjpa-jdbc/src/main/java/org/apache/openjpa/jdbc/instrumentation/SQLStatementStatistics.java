@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution statistics of a single normalized SQL statement. Latencies are
+ * kept in a histogram of power-of-two microsecond buckets: bucket 0 counts
+ * executions under one microsecond and bucket <code>i</code> counts those
+ * under <code>2^i</code> microseconds. All counters are updated without
+ * locking, so a snapshot taken while statements execute may be slightly
+ * inconsistent across counters.
+ *
+ * @since 3.0.1
+ */
+public class SQLStatementStatistics {
+
+    /**
+     * Number of latency buckets. The last bucket collects every execution
+     * of more than about 18 minutes.
+     */
+    public static final int BUCKETS = 31;
+
+    private final String _sql;
+    private final LongAdder _count = new LongAdder();
+    private final LongAdder _nanos = new LongAdder();
+    private final LongAdder _rows = new LongAdder();
+    private final AtomicLong _max = new AtomicLong();
+    private final AtomicLongArray _histogram = new AtomicLongArray(BUCKETS);
+
+    public SQLStatementStatistics(String sql) {
+        _sql = sql;
+    }
+
+    /**
+     * Record one execution.
+     *
+     * @param nanos elapsed time in nanoseconds
+     * @param rows number of affected rows, or a negative value if unknown
+     */
+    public void record(long nanos, int rows) {
+        if (nanos < 0)
+            nanos = 0;
+        _count.increment();
+        _nanos.add(nanos);
+        if (rows > 0)
+            _rows.add(rows);
+        _histogram.incrementAndGet(bucket(nanos / 1000));
+
+        long max = _max.get();
+        while (nanos > max && !_max.compareAndSet(max, nanos))
+            max = _max.get();
+    }
+
+    /**
+     * Return the histogram bucket for the given number of microseconds.
+     */
+    static int bucket(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return (bucket < BUCKETS) ? bucket : BUCKETS - 1;
+    }
+
+    /**
+     * Return the exclusive upper bound of the given bucket in microseconds.
+     */
+    public static long getBucketBound(int bucket) {
+        return 1L << bucket;
+    }
+
+    /**
+     * The normalized SQL.
+     */
+    public String getSQL() {
+        return _sql;
+    }
+
+    /**
+     * Number of executions.
+     */
+    public long getExecutionCount() {
+        return _count.sum();
+    }
+
+    /**
+     * Total execution time in nanoseconds.
+     */
+    public long getTotalTime() {
+        return _nanos.sum();
+    }
+
+    /**
+     * Longest execution time in nanoseconds.
+     */
+    public long getMaxTime() {
+        return _max.get();
+    }
+
+    /**
+     * Mean execution time in nanoseconds.
+     */
+    public long getMeanTime() {
+        long count = getExecutionCount();
+        return (count == 0) ? 0 : getTotalTime() / count;
+    }
+
+    /**
+     * Total number of rows affected by updates, as reported by the driver.
+     */
+    public long getRowCount() {
+        return _rows.sum();
+    }
+
+    /**
+     * Number of executions in each latency bucket.
+     *
+     * @see #getBucketBound
+     */
+    public long[] getHistogram() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            histogram[i] = _histogram.get(i);
+        return histogram;
+    }
+
+    /**
+     * Return the upper bound in microseconds of the bucket that holds the
+     * given percentile of executions, e.g. <code>0.99</code>.
+     */
+    public long getPercentile(double percentile) {
+        long[] histogram = getHistogram();
+        long total = 0;
+        for (int i = 0; i < histogram.length; i++)
+            total += histogram[i];
+        if (total == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank)
+                return getBucketBound(i);
+        }
+        return getBucketBound(histogram.length - 1);
+    }
+
+    public String toString() {
+        return _sql + " [count=" + getExecutionCount() + ", total="
+            + getTotalTime() / 1000 + "us, mean=" + getMeanTime() / 1000
+            + "us, max=" + getMaxTime() / 1000 + "us, p99<"
+            + getPercentile(0.99) + "us, rows=" + getRowCount() + "]";
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.instrumentation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.openjpa.lib.jdbc.AbstractJDBCListener;
+import org.apache.openjpa.lib.jdbc.JDBCEvent;
+
+/**
+ * {@link org.apache.openjpa.lib.jdbc.JDBCListener} that aggregates the
+ * execution time and update counts of every statement by its normalized
+ * SQL. Literals are replaced by parameter markers and lists of parameters
+ * are collapsed, so that <code>IN</code> lists of different lengths share
+ * their statistics.
+ *
+ * The cost of recording an execution is one hash lookup on the SQL string
+ * and a few uncontended atomic additions; statements are only normalized
+ * the first time they are seen. At most {@link #getMaxStatements} distinct
+ * statements are tracked; executions of further statements are recorded
+ * under {@link #OTHER}.
+ *
+ * @since 3.0.1
+ */
+public class SQLStatistics extends AbstractJDBCListener {
+
+    /**
+     * Key under which statements beyond the tracked maximum are recorded.
+     */
+    public static final String OTHER = "<other>";
+
+    private static final Comparator<SQLStatementStatistics> BY_TOTAL_TIME =
+        new Comparator<SQLStatementStatistics>() {
+            public int compare(SQLStatementStatistics s1,
+                SQLStatementStatistics s2) {
+                return Long.compare(s2.getTotalTime(), s1.getTotalTime());
+            }
+        };
+
+    private final ConcurrentMap<String, SQLStatementStatistics> _stats =
+        new ConcurrentHashMap<String, SQLStatementStatistics>();
+    private final ConcurrentMap<String, SQLStatementStatistics> _raw =
+        new ConcurrentHashMap<String, SQLStatementStatistics>();
+    private volatile SQLStatementStatistics _other =
+        new SQLStatementStatistics(OTHER);
+    private int _max = 1000;
+    private final Date _start = new Date();
+    private volatile Date _since = _start;
+
+    /**
+     * The maximum number of distinct normalized statements to track.
+     * Defaults to 1000.
+     */
+    public int getMaxStatements() {
+        return _max;
+    }
+
+    /**
+     * The maximum number of distinct normalized statements to track.
+     * Defaults to 1000.
+     */
+    public void setMaxStatements(int max) {
+        _max = max;
+    }
+
+    public void afterExecuteStatement(JDBCEvent event) {
+        JDBCEvent before = event.getAssociatedEvent();
+        if (before == null || event.getSQL() == null)
+            return;
+        record(event.getSQL(), event.getNanoTime() - before.getNanoTime(),
+            event.getUpdateCount());
+    }
+
+    /**
+     * Record one execution of the given SQL.
+     *
+     * @param sql the SQL as executed
+     * @param nanos elapsed time in nanoseconds
+     * @param rows number of affected rows, or a negative value if unknown
+     */
+    public void record(String sql, long nanos, int rows) {
+        SQLStatementStatistics stats = _raw.get(sql);
+        if (stats == null) {
+            stats = getOrCreate(normalize(sql));
+            // remember the raw form too, up to a bound, so that repeated
+            // executions skip normalization
+            if (stats != _other && _raw.size() < _max * 4)
+                _raw.putIfAbsent(sql, stats);
+        }
+        stats.record(nanos, rows);
+    }
+
+    private SQLStatementStatistics getOrCreate(String key) {
+        SQLStatementStatistics stats = _stats.get(key);
+        if (stats != null)
+            return stats;
+        if (_stats.size() >= _max)
+            return _other;
+        stats = new SQLStatementStatistics(key);
+        SQLStatementStatistics existing = _stats.putIfAbsent(key, stats);
+        return (existing == null) ? stats : existing;
+    }
+
+    /**
+     * Return the statistics for the given SQL, which need not be
+     * normalized, or null if it has not been executed since the last reset.
+     */
+    public SQLStatementStatistics getStatistics(String sql) {
+        if (OTHER.equals(sql))
+            return _other;
+        SQLStatementStatistics stats = _stats.get(sql);
+        return (stats != null) ? stats : _stats.get(normalize(sql));
+    }
+
+    /**
+     * Return the statistics of all tracked statements, including
+     * {@link #OTHER} if any statement was not tracked.
+     */
+    public Collection<SQLStatementStatistics> getStatistics() {
+        List<SQLStatementStatistics> stats =
+            new ArrayList<SQLStatementStatistics>(_stats.values());
+        if (_other.getExecutionCount() > 0)
+            stats.add(_other);
+        return stats;
+    }
+
+    /**
+     * Return the statistics of at most <code>n</code> statements with the
+     * highest total execution time, in descending order.
+     */
+    public List<SQLStatementStatistics> getTopStatements(int n) {
+        List<SQLStatementStatistics> stats =
+            new ArrayList<SQLStatementStatistics>(getStatistics());
+        Collections.sort(stats, BY_TOTAL_TIME);
+        return (stats.size() > n) ? stats.subList(0, n) : stats;
+    }
+
+    /**
+     * Return the total number of executions recorded since the last reset.
+     */
+    public long getExecutionCount() {
+        long count = 0;
+        for (SQLStatementStatistics stats : getStatistics())
+            count += stats.getExecutionCount();
+        return count;
+    }
+
+    /**
+     * Return the total execution time in nanoseconds recorded since the
+     * last reset.
+     */
+    public long getTotalTime() {
+        long nanos = 0;
+        for (SQLStatementStatistics stats : getStatistics())
+            nanos += stats.getTotalTime();
+        return nanos;
+    }
+
+    /**
+     * Discard all statistics.
+     */
+    public void reset() {
+        _raw.clear();
+        _stats.clear();
+        _other = new SQLStatementStatistics(OTHER);
+        _since = new Date();
+    }
+
+    /**
+     * Date statistics collection started.
+     */
+    public Date start() {
+        return _start;
+    }
+
+    /**
+     * Date statistics were last reset.
+     */
+    public Date since() {
+        return _since;
+    }
+
+    /**
+     * Normalize the given SQL: replace string and numeric literals with
+     * <code>?</code>, collapse comma-separated lists of parameters into a
+     * single parameter and collapse whitespace. Quoted identifiers are
+     * left as they are.
+     */
+    public static String normalize(String sql) {
+        int len = sql.length();
+        StringBuilder buf = new StringBuilder(len);
+        boolean space = false;
+        for (int i = 0; i < len; i++) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = buf.length() > 0;
+                continue;
+            }
+            if (space) {
+                buf.append(' ');
+                space = false;
+            }
+
+            if (c == '\'') {
+                // skip the literal, including doubled quotes
+                for (i++; i < len; i++) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < len && sql.charAt(i + 1) == '\'')
+                            i++;
+                        else
+                            break;
+                    }
+                }
+                appendParameter(buf);
+            } else if (c == '"') {
+                int end = sql.indexOf('"', i + 1);
+                if (end == -1)
+                    end = len - 1;
+                buf.append(sql, i, end + 1);
+                i = end;
+            } else if (Character.isDigit(c) && !isIdentifierPart(buf)) {
+                while (i + 1 < len && (Character.isDigit(sql.charAt(i + 1))
+                    || sql.charAt(i + 1) == '.'))
+                    i++;
+                appendParameter(buf);
+            } else if (c == '?')
+                appendParameter(buf);
+            else
+                buf.append(c);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Whether the last character of the buffer continues an identifier.
+     */
+    private static boolean isIdentifierPart(StringBuilder buf) {
+        if (buf.length() == 0)
+            return false;
+        char c = buf.charAt(buf.length() - 1);
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * Append a parameter marker, unless it continues a list of parameters.
+     */
+    private static void appendParameter(StringBuilder buf) {
+        int i = buf.length();
+        if (i > 0 && buf.charAt(i - 1) == ' ')
+            i--;
+        if (i > 0 && buf.charAt(i - 1) == ',') {
+            i--;
+            if (i > 0 && buf.charAt(i - 1) == ' ')
+                i--;
+            if (i > 0 && buf.charAt(i - 1) == '?') {
+                buf.setLength(i);
+                return;
+            }
+        }
+        buf.append('?');
+    }
+}
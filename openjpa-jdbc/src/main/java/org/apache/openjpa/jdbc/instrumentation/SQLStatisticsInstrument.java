@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.instrumentation;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Interface for providing instrumented SQL execution statistics. Times are
+ * reported in microseconds. Statements are identified by their normalized
+ * SQL; see {@link SQLStatistics#normalize}.
+ *
+ * @since 3.0.1
+ */
+public interface SQLStatisticsInstrument {
+
+    /**
+     * Returns number of statement executions since last reset.
+     */
+    public long getExecutionCount();
+
+    /**
+     * Returns number of executions of the given statement since last reset.
+     */
+    public long getExecutionCount(String sql);
+
+    /**
+     * Returns total execution time of all statements since last reset.
+     */
+    public long getTotalTime();
+
+    /**
+     * Returns total execution time of the given statement since last reset.
+     */
+    public long getTotalTime(String sql);
+
+    /**
+     * Returns mean execution time of the given statement since last reset.
+     */
+    public long getMeanTime(String sql);
+
+    /**
+     * Returns longest execution time of the given statement since last
+     * reset.
+     */
+    public long getMaxTime(String sql);
+
+    /**
+     * Returns the upper bound of the execution time of 99 percent of the
+     * executions of the given statement since last reset.
+     */
+    public long get99thPercentileTime(String sql);
+
+    /**
+     * Returns number of rows updated by the given statement since last reset.
+     */
+    public long getRowCount(String sql);
+
+    /**
+     * Returns the latency histogram of the given statement. Element
+     * <code>i</code> counts executions that took less than
+     * <code>2^i</code> microseconds and at least <code>2^(i-1)</code>.
+     */
+    public long[] getHistogram(String sql);
+
+    /**
+     * Returns at most <code>n</code> statements with the highest total
+     * execution time, in descending order.
+     */
+    public String[] getTopStatements(int n);
+
+    /**
+     * Returns a readable summary of the <code>n</code> statements with the
+     * highest total execution time.
+     */
+    public String report(int n);
+
+    /**
+     * Resets statistics.
+     */
+    public void reset();
+
+    /**
+     * Returns date since statistics were last reset.
+     */
+    public Date sinceDate();
+
+    /**
+     * Returns date statistics collection started.
+     */
+    public Date startDate();
+
+    /**
+     * Returns all statements currently tracked.
+     */
+    public Set<String> statements();
+}
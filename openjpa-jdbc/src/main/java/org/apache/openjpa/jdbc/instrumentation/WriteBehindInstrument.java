@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.instrumentation;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Interface for providing instrumented write-behind queue statistics.
+ * Lags are reported in milliseconds. Types are identified by the names of
+ * their classes.
+ *
+ * @since 3.0.1
+ */
+public interface WriteBehindInstrument {
+
+    /**
+     * Returns number of instances with queued updates.
+     */
+    public long getPendingCount();
+
+    /**
+     * Returns number of instances of the given type with queued updates.
+     */
+    public long getPendingCount(String type);
+
+    /**
+     * Returns time since the oldest queued update was committed.
+     */
+    public long getLag();
+
+    /**
+     * Returns time since the oldest queued update of the given type was
+     * committed.
+     */
+    public long getLag(String type);
+
+    /**
+     * Returns number of committed row updates of the given type queued
+     * since last reset.
+     */
+    public long getQueuedCount(String type);
+
+    /**
+     * Returns number of queued row updates of the given type that were
+     * merged into an already queued update since last reset.
+     */
+    public long getCoalescedCount(String type);
+
+    /**
+     * Returns number of rows of the given type written since last reset.
+     */
+    public long getWrittenCount(String type);
+
+    /**
+     * Returns number of row updates of the given type lost since last reset
+     * because the row was changed or deleted before it was written.
+     */
+    public long getFailedCount(String type);
+
+    /**
+     * Returns number of transactions that wrote queued updates since last
+     * reset.
+     */
+    public long getFlushCount();
+
+    /**
+     * Writes all queued updates.
+     */
+    public void flush();
+
+    /**
+     * Resets statistics.
+     */
+    public void reset();
+
+    /**
+     * Returns date since statistics were last reset.
+     */
+    public Date sinceDate();
+
+    /**
+     * Returns date statistics collection started.
+     */
+    public Date startDate();
+
+    /**
+     * Returns all types with queued updates since statistics collection
+     * started.
+     */
+    public Set<String> types();
+}
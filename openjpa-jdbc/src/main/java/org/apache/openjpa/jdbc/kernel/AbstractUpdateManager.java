@@ -24,8 +24,10 @@ import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
 import org.apache.openjpa.jdbc.meta.ClassMapping;
@@ -33,6 +35,9 @@ import org.apache.openjpa.jdbc.meta.Discriminator;
 import org.apache.openjpa.jdbc.meta.FieldMapping;
 import org.apache.openjpa.jdbc.meta.Strategy;
 import org.apache.openjpa.jdbc.meta.Version;
+import org.apache.openjpa.jdbc.meta.VersionStrategy;
+import org.apache.openjpa.jdbc.meta.strats.ColumnVersionStrategy;
+import org.apache.openjpa.jdbc.meta.strats.SuperclassVersionStrategy;
 import org.apache.openjpa.jdbc.sql.DBDictionary;
 import org.apache.openjpa.jdbc.sql.Row;
 import org.apache.openjpa.jdbc.sql.RowImpl;
@@ -43,6 +48,8 @@ import org.apache.openjpa.kernel.PCState;
 import org.apache.openjpa.kernel.StateManagerImpl;
 import org.apache.openjpa.lib.conf.Configurable;
 import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.util.Closeable;
+import org.apache.openjpa.lib.util.StringUtil;
 import org.apache.openjpa.util.ImplHelper;
 import org.apache.openjpa.util.OpenJPAException;
 import org.apache.openjpa.util.OptimisticException;
@@ -53,11 +60,85 @@ import org.apache.openjpa.util.OptimisticException;
  * @author Abe White
  */
 public abstract class AbstractUpdateManager
-    implements UpdateManager, Configurable {
+    implements UpdateManager, Configurable, Closeable {
 
     protected JDBCConfiguration conf = null;
     protected DBDictionary dict = null;
 
+    private String _writeBehindTypes = null;
+    private long _writeBehindInterval = 1000;
+    private int _writeBehindMaxSize = 10000;
+    private WriteBehindQueue _writeBehind = null;
+
+    /**
+     * Comma-separated names or entity names of the types whose updates are
+     * written behind, after their transaction commits. Defaults to none.
+     *
+     * @since 3.0.1
+     */
+    public String getWriteBehindTypes() {
+        return _writeBehindTypes;
+    }
+
+    /**
+     * Comma-separated names or entity names of the types whose updates are
+     * written behind, after their transaction commits.
+     *
+     * @since 3.0.1
+     */
+    public void setWriteBehindTypes(String types) {
+        _writeBehindTypes = types;
+    }
+
+    /**
+     * Milliseconds between the writes of queued write-behind updates.
+     * Defaults to 1000.
+     *
+     * @since 3.0.1
+     */
+    public long getWriteBehindInterval() {
+        return _writeBehindInterval;
+    }
+
+    /**
+     * Milliseconds between the writes of queued write-behind updates.
+     *
+     * @since 3.0.1
+     */
+    public void setWriteBehindInterval(long interval) {
+        _writeBehindInterval = interval;
+    }
+
+    /**
+     * Number of queued write-behind instances at which committing
+     * transactions write the queue themselves. Defaults to 10000.
+     *
+     * @since 3.0.1
+     */
+    public int getWriteBehindMaxSize() {
+        return _writeBehindMaxSize;
+    }
+
+    /**
+     * Number of queued write-behind instances at which committing
+     * transactions write the queue themselves.
+     *
+     * @since 3.0.1
+     */
+    public void setWriteBehindMaxSize(int size) {
+        _writeBehindMaxSize = size;
+    }
+
+    /**
+     * The queue of write-behind updates, or null if no write-behind types
+     * are configured.
+     *
+     * @since 3.0.1
+     */
+    public WriteBehindQueue getWriteBehindQueue() {
+        return _writeBehind;
+    }
+
     public void setConfiguration(Configuration conf) {
         this.conf = (JDBCConfiguration) conf;
         dict = this.conf.getDBDictionaryInstance();
@@ -67,6 +148,22 @@ public abstract class AbstractUpdateManager
     }
 
     public void endConfiguration() {
+        if (!StringUtil.isEmpty(_writeBehindTypes)) {
+            List<String> types = new ArrayList<String>();
+            for (String type : StringUtil.split(_writeBehindTypes, ",", 0))
+                if (!StringUtil.isEmpty(type.trim()))
+                    types.add(type.trim());
+            _writeBehind = new WriteBehindQueue(this, conf, types,
+                _writeBehindInterval, _writeBehindMaxSize);
+        }
+    }
+
+    /**
+     * Write all queued write-behind updates.
+     */
+    public void close() {
+        if (_writeBehind != null)
+            _writeBehind.close();
     }
 
     public Collection flush(Collection states, JDBCStore store) {
@@ -84,11 +181,29 @@ public abstract class AbstractUpdateManager
         PreparedStatementManager psMgr) {
         // run through all the states and update them as necessary
         RowManager rowMgr = newRowManager();
+        RowManager writeBehindMgr = null;
+        Map<ColumnVersionStrategy, List<OpenJPAStateManager>> versionChecks =
+            null;
         Collection customs = new LinkedList();
         Collection exceps = psMgr.getExceptions();
         Collection mappedByIdStates = new ArrayList();
         for (Iterator itr = states.iterator(); itr.hasNext();) {
             OpenJPAStateManager obj = (OpenJPAStateManager)itr.next();
+            if (_writeBehind != null) {
+                if (_writeBehind.isDeferrable(obj)) {
+                    if (writeBehindMgr == null)
+                        writeBehindMgr = newRowManager();
+                    exceps = populateRowManager(obj, writeBehindMgr, store,
+                        exceps, customs);
+                    continue;
+                }
+                _writeBehind.flushPending(obj);
+            }
+            ColumnVersionStrategy check = getBatchedVersionCheck(obj);
+            if (check != null) {
+                versionChecks = addVersionCheck(check, obj, versionChecks);
+                continue;
+            }
             if (obj instanceof StateManagerImpl) {
                 StateManagerImpl sm = (StateManagerImpl) obj;
                 if (sm.getMappedByIdFields() != null)
@@ -100,8 +215,18 @@ public abstract class AbstractUpdateManager
                         customs);
         }
 
+        // check the versions of read-locked instances with one select per
+        // version mapping
+        exceps = checkVersions(versionChecks, store, exceps);
+
         // flush rows
         exceps = flush(rowMgr, psMgr, exceps);
+
+        // queue the updates of write-behind instances flushed for commit,
+        // unless the queue cannot take them
+        if (writeBehindMgr != null
+            && !_writeBehind.defer(writeBehindMgr, store))
+            exceps = flush(writeBehindMgr, psMgr, exceps);
         
         if (mappedByIdStates.size() != 0) {
             for (Iterator itr = mappedByIdStates.iterator(); itr.hasNext();) {
@@ -127,6 +252,69 @@ public abstract class AbstractUpdateManager
         return exceps;
     }
 
+    /**
+     * Return the column version strategy with which to check the version of
+     * the given instance together with other instances, or null if the
+     * instance is not a clean instance that only requires a version check.
+     */
+    private static ColumnVersionStrategy getBatchedVersionCheck(
+        OpenJPAStateManager sm) {
+        if (sm.getPCState() != PCState.PCLEAN || sm.isVersionUpdateRequired()
+            || !sm.isVersionCheckRequired())
+            return null;
+        ClassMapping mapping = (ClassMapping) sm.getMetaData();
+        if (mapping.getEmbeddingMapping() != null)
+            return null;
+        VersionStrategy strat = mapping.getVersion().getStrategy();
+        while (strat instanceof SuperclassVersionStrategy) {
+            mapping = mapping.getPCSuperclassMapping();
+            strat = mapping.getVersion().getStrategy();
+        }
+        return (strat instanceof ColumnVersionStrategy)
+            ? (ColumnVersionStrategy) strat : null;
+    }
+
+    private static Map<ColumnVersionStrategy, List<OpenJPAStateManager>>
+        addVersionCheck(ColumnVersionStrategy strat, OpenJPAStateManager sm,
+        Map<ColumnVersionStrategy, List<OpenJPAStateManager>> checks) {
+        if (checks == null)
+            checks = new LinkedHashMap<ColumnVersionStrategy,
+                List<OpenJPAStateManager>>();
+        List<OpenJPAStateManager> sms = checks.get(strat);
+        if (sms == null) {
+            sms = new ArrayList<OpenJPAStateManager>();
+            checks.put(strat, sms);
+        }
+        sms.add(sm);
+        return checks;
+    }
+
+    /**
+     * Check the versions of the given instances, adding an
+     * {@link OptimisticException} for each instance that is out of date.
+     */
+    private Collection checkVersions(Map<ColumnVersionStrategy,
+        List<OpenJPAStateManager>> checks, JDBCStore store,
+        Collection exceps) {
+        if (checks == null)
+            return exceps;
+        for (Map.Entry<ColumnVersionStrategy, List<OpenJPAStateManager>> entry
+            : checks.entrySet()) {
+            try {
+                for (OpenJPAStateManager sm : entry.getKey().checkVersions(
+                    entry.getValue(), store))
+                    exceps = addException(exceps, new OptimisticException(sm.
+                        getManagedInstance()));
+            } catch (SQLException se) {
+                exceps = addException(exceps, SQLExceptions.getStore(se,
+                    dict));
+            } catch (OpenJPAException ke) {
+                exceps = addException(exceps, ke);
+            }
+        }
+        return exceps;
+    }
+
     /**
      * Return a new {@link RowManager}.
      */
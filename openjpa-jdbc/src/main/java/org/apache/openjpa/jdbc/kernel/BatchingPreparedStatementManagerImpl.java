@@ -39,7 +39,10 @@ import org.apache.openjpa.util.OptimisticException;
 /**
  * Batch prepared statement manager implementation. This prepared statement
  * manager will utilize the JDBC addBatch() and exceuteBatch() to batch the SQL
- * statements together to improve the execution performance.
+ * statements together to improve the execution performance. If the
+ * dictionary supports and is configured to use multi-row inserts, batched
+ * inserts are instead rewritten into multi-row
+ * <code>INSERT ... VALUES (...), (...)</code> statements.
  * 
  * @author Teresa Kan
  */
@@ -146,6 +149,15 @@ public class BatchingPreparedStatementManagerImpl extends
             return;
 
         int batchSize = batchedRows.size();
+        if (batchedSql != null && isMultiRowInsert(batchedRows)) {
+            try {
+                flushMultiRowInsert(batchedSql, batchedRows);
+            } finally {
+                _batchedSql = null;
+                batchedRows.clear();
+            }
+            return;
+        }
         if (batchedSql != null &&  batchSize > 0) {
             PreparedStatement ps = null;
             try {
@@ -244,6 +256,92 @@ public class BatchingPreparedStatementManagerImpl extends
         }
     }
 
+    /*
+     * Whether the given batched rows are inserts to flush as multi-row
+     * insert statements.
+     */
+    private boolean isMultiRowInsert(List<RowImpl> batchedRows) {
+        return batchedRows.size() > 1 && _batchLimit != 1
+            && _dict.useMultiRowInsert && _dict.supportsMultiRowInsert
+            && batchedRows.get(0).getAction() == Row.ACTION_INSERT;
+    }
+
+    /*
+     * Execute the batched inserts, which share the given SQL, as multi-row
+     * insert statements. Each statement holds as many rows as both the batch
+     * limit and the dictionary's parameter limit allow.
+     */
+    private void flushMultiRowInsert(String sql, List<RowImpl> batchedRows)
+        throws SQLException {
+        int valuesIdx = sql.lastIndexOf(" VALUES (") + " VALUES".length();
+        String head = sql.substring(0, valuesIdx);
+        String tuple = sql.substring(valuesIdx + 1);
+        int params = 0;
+        for (int i = 0; i < tuple.length(); i++)
+            if (tuple.charAt(i) == '?')
+                params++;
+
+        int rowsPerStmnt = batchedRows.size();
+        if (_batchLimit > 0)
+            rowsPerStmnt = Math.min(rowsPerStmnt, _batchLimit);
+        if (_dict.maxParametersPerStatement > 0 && params > 0)
+            rowsPerStmnt = Math.min(rowsPerStmnt,
+                Math.max(1, _dict.maxParametersPerStatement / params));
+
+        String fullSql = null;
+        for (int start = 0; start < batchedRows.size();
+            start += rowsPerStmnt) {
+            int rows = Math.min(rowsPerStmnt, batchedRows.size() - start);
+            PreparedStatement ps = null;
+            try {
+                if (rows == 1) {
+                    ps = prepareStatement(sql);
+                    flushSingleRow(batchedRows.get(start), ps);
+                    continue;
+                }
+
+                String multiSql;
+                if (rows == rowsPerStmnt && fullSql != null)
+                    multiSql = fullSql;
+                else {
+                    StringBuilder buf = new StringBuilder(head.length()
+                        + (tuple.length() + 2) * rows);
+                    buf.append(head);
+                    for (int i = 0; i < rows; i++)
+                        buf.append((i == 0) ? " " : ", ").append(tuple);
+                    multiSql = buf.toString();
+                    if (rows == rowsPerStmnt)
+                        fullSql = multiSql;
+                }
+
+                ps = prepareStatement(multiSql);
+                if (ps != null)
+                    for (int i = 0; i < rows; i++)
+                        batchedRows.get(start + i).flush(ps, 1 + i * params,
+                            _dict, _store);
+                int count = executeUpdate(ps, multiSql,
+                    batchedRows.get(start));
+                if (count != rows && count != Statement.SUCCESS_NO_INFO) {
+                    logSQLWarnings(ps);
+                    throw new SQLException(_loc.get(
+                        "update-failed-no-failed-obj", String.valueOf(count),
+                        multiSql).getMessage());
+                }
+            } catch (SQLException se) {
+                // the failing row of a multi-row statement is unknown
+                throw SQLExceptions.getStore(se, (rows == 1)
+                    ? batchedRows.get(start).getFailedObject() : ps, _dict);
+            } finally {
+                if (ps != null) {
+                    try {
+                        ps.close();
+                    } catch (SQLException sqex) {
+                    }
+                }
+            }
+        }
+    }
+
     /*
      * Execute an update of a single row.
      */
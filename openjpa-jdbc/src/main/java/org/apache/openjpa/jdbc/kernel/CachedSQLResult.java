@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.kernel;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Snapshot of the rows of a native SQL projection, as held by a
+ * {@link SQLResultCache}. Rows hold only immutable values or copies of
+ * mutable ones.
+ *
+ * @since 3.0.1
+ */
+public class CachedSQLResult
+    implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Marker returned by {@link #snapshot} for values that cannot be cached.
+     */
+    static final Object UNCACHEABLE = new Object();
+
+    private final String[] _labels;
+    private final List<Object[]> _rows;
+
+    /**
+     * Constructor.
+     *
+     * @param labels the column labels
+     * @param rows the row values, one array per row
+     */
+    public CachedSQLResult(String[] labels, List<Object[]> rows) {
+        _labels = labels;
+        _rows = Collections.unmodifiableList(rows);
+    }
+
+    /**
+     * The column labels.
+     */
+    public String[] getLabels() {
+        return _labels;
+    }
+
+    /**
+     * The row values. Callers must not modify the returned arrays.
+     */
+    public List<Object[]> getRows() {
+        return _rows;
+    }
+
+    /**
+     * Return a value that can be held in a cached row, or
+     * {@link #UNCACHEABLE} if the value type is not supported.
+     */
+    static Object snapshot(Object val) {
+        if (val == null || val instanceof String || val instanceof Boolean
+            || val instanceof Character || val instanceof BigDecimal
+            || val instanceof BigInteger)
+            return val;
+        if (val instanceof Number) {
+            Class<?> cls = val.getClass();
+            if (cls == Integer.class || cls == Long.class
+                || cls == Short.class || cls == Byte.class
+                || cls == Double.class || cls == Float.class)
+                return val;
+            return UNCACHEABLE;
+        }
+        return copy(val);
+    }
+
+    /**
+     * Return a copy of the given value if it is mutable, or the value itself
+     * if not. Returns {@link #UNCACHEABLE} for unsupported mutable values.
+     */
+    static Object copy(Object val) {
+        if (val instanceof Date)
+            return ((Date) val).clone();
+        if (val instanceof byte[])
+            return ((byte[]) val).clone();
+        if (val instanceof char[])
+            return ((char[]) val).clone();
+        if (val == null || val instanceof String || val instanceof Number
+            || val instanceof Boolean || val instanceof Character)
+            return val;
+        return UNCACHEABLE;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.kernel;
+
+import java.util.List;
+
+import org.apache.openjpa.kernel.ResultPacker;
+import org.apache.openjpa.lib.rop.ResultObjectProvider;
+import org.apache.openjpa.util.StoreException;
+
+/**
+ * Provides the rows of a {@link CachedSQLResult} in the same form as
+ * {@link SQLProjectionResultObjectProvider}.
+ *
+ * @since 3.0.1
+ */
+class CachedSQLResultObjectProvider
+    implements ResultObjectProvider {
+
+    private final List<Object[]> _rows;
+    private final ResultPacker _packer;
+    private final int _cols;
+    private int _idx = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param res the cached result
+     * @param cls the result class; may be null for the default
+     */
+    public CachedSQLResultObjectProvider(CachedSQLResult res, Class cls) {
+        _rows = res.getRows();
+        _cols = res.getLabels().length;
+        _packer = (cls == null) ? null
+            : new ResultPacker(null, res.getLabels(), cls);
+    }
+
+    public boolean supportsRandomAccess() {
+        return true;
+    }
+
+    public void open() {
+    }
+
+    public Object getResultObject() {
+        Object[] row = _rows.get(_idx);
+        if (_cols == 1) {
+            Object val = CachedSQLResult.copy(row[0]);
+            return (_packer == null) ? val : _packer.pack(val);
+        }
+
+        Object[] vals = new Object[_cols];
+        for (int i = 0; i < vals.length; i++)
+            vals[i] = CachedSQLResult.copy(row[i]);
+        return (_packer == null) ? vals : _packer.pack(vals);
+    }
+
+    public boolean next() {
+        if (_idx >= _rows.size() - 1) {
+            _idx = _rows.size();
+            return false;
+        }
+        _idx++;
+        return true;
+    }
+
+    public boolean absolute(int pos) {
+        if (pos < 0 || pos >= _rows.size())
+            return false;
+        _idx = pos;
+        return true;
+    }
+
+    public int size() {
+        return _rows.size();
+    }
+
+    public void reset() {
+        _idx = -1;
+    }
+
+    public void close() {
+    }
+
+    public void handleCheckedException(Exception e) {
+        throw new StoreException(e);
+    }
+}
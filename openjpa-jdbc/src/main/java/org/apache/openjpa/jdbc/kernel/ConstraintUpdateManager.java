@@ -20,12 +20,17 @@ package org.apache.openjpa.jdbc.kernel;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.openjpa.jdbc.meta.ClassMapping;
 import org.apache.openjpa.jdbc.schema.Column;
@@ -57,10 +62,41 @@ public class ConstraintUpdateManager
     private static final Localizer _loc = Localizer.forPackage
         (ConstraintUpdateManager.class);
 
+    private boolean _tableOrder = false;
+
+    // table -> { rank in the cached table order, or -1 if the rows of the
+    // table need row level analysis; number of foreign keys when ranked };
+    // replaced as a whole when tables are added
+    private volatile Map<Table, int[]> _ranks = null;
+
     public boolean orderDirty() {
         return true;
     }
 
+    /**
+     * Whether to order the inserts and deletes of a flush by a cached
+     * order of their tables rather than by a graph of the foreign keys
+     * between their rows. The graph is still used for flushes that involve
+     * self-referencing tables, tables on a foreign key cycle, or deletes
+     * and inserts of the same primary key. Defaults to false.
+     *
+     * @since 3.0.1
+     */
+    public boolean getTableOrder() {
+        return _tableOrder;
+    }
+
+    /**
+     * Whether to order the inserts and deletes of a flush by a cached
+     * order of their tables rather than by a graph of the foreign keys
+     * between their rows.
+     *
+     * @since 3.0.1
+     */
+    public void setTableOrder(boolean tableOrder) {
+        _tableOrder = tableOrder;
+    }
+
     protected PreparedStatementManager newPreparedStatementManager
         (JDBCStore store, Connection conn) {
         return new PreparedStatementManagerImpl(store, conn);
@@ -87,7 +123,18 @@ public class ConstraintUpdateManager
         Collection<PrimaryRow> inserts = rmimpl.getInserts();
         Collection<PrimaryRow> updates = rmimpl.getUpdates();
         Collection<PrimaryRow> deletes = rmimpl.getDeletes();
-    
+
+        // when no row needs it, skip the foreign key graph and order the
+        // rows by table: referenced tables first for inserts, last for deletes
+        if (_tableOrder && isTableOrderable(inserts, deletes, rmimpl)) {
+            flush(sortByTable(inserts, false), psMgr);
+            flush(updates, psMgr);
+            flush(sortByTable(deletes, true), psMgr);
+            flush(rmimpl.getSecondaryUpdates(), psMgr);
+            psMgr.flush();
+            return exceps;
+        }
+
         Graph[] graphs = new Graph[2];    // insert graph, delete graph
         analyzeForeignKeys(inserts, updates, deletes, rmimpl, graphs);
 
@@ -198,6 +245,154 @@ public class ConstraintUpdateManager
         }
     }
 
+    /**
+     * Whether the given rows can be flushed in the cached table order.
+     */
+    private boolean isTableOrderable(Collection<PrimaryRow> inserts,
+        Collection<PrimaryRow> deletes, RowManagerImpl rowMgr) {
+        if (!hasTableRanks(inserts) || !hasTableRanks(deletes))
+            return false;
+        if (deletes.isEmpty() || inserts.isEmpty())
+            return true;
+
+        // a delete-then-insert-same-pk case needs the delete first
+        Map insertMap = new HashMap((int) (inserts.size() * 1.33 + 1));
+        OpenJPAStateManager sm;
+        for (PrimaryRow row : inserts) {
+            sm = row.getPrimaryKey();
+            if (sm != null && sm.getObjectId() != null)
+                insertMap.put(sm.getObjectId(), sm);
+        }
+        for (PrimaryRow row : deletes)
+            if (row.isValid() && getInsertRow(insertMap, rowMgr, row) != null)
+                return false;
+        return true;
+    }
+
+    /**
+     * Whether all tables of the given rows have a rank in the table order.
+     */
+    private boolean hasTableRanks(Collection<PrimaryRow> rows) {
+        Table last = null;
+        for (PrimaryRow row : rows) {
+            if (row.getTable() == last)
+                continue;
+            last = row.getTable();
+            if (getTableRank(last) == -1)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Return the given rows in the cached table order, keeping the order of
+     * the rows of each table.
+     * @param reverse Whether to put the tables referencing other tables
+     * first, as for deletes
+     */
+    private List<PrimaryRow> sortByTable(Collection<PrimaryRow> rows,
+        final boolean reverse) {
+        List<PrimaryRow> sorted = new ArrayList<PrimaryRow>(rows);
+        if (sorted.size() > 1) {
+            Collections.sort(sorted, new Comparator<PrimaryRow>() {
+                public int compare(PrimaryRow r1, PrimaryRow r2) {
+                    int cmp = Integer.compare(getTableRank(r1.getTable()),
+                        getTableRank(r2.getTable()));
+                    return (reverse) ? -cmp : cmp;
+                }
+            });
+        }
+        return sorted;
+    }
+
+    /**
+     * Return the rank of the given table in the cached table order. A table
+     * ranks higher than all the tables its foreign keys reference. Tables
+     * that reference themselves, lie on a foreign key cycle, or have
+     * relation id columns have rank -1, as their rows need row level
+     * analysis.
+     *
+     * @since 3.0.1
+     */
+    public int getTableRank(Table table) {
+        Map<Table, int[]> ranks = _ranks;
+        int[] rank = (ranks == null) ? null : ranks.get(table);
+        if (rank == null || rank[1] != table.getForeignKeys().length)
+            rank = rankTables(table).get(table);
+        return rank[0];
+    }
+
+    /**
+     * Add the given table and the tables it references to the table order,
+     * along with the tables of all mappings resolved so far on first use.
+     * Starts over if the foreign keys of the table changed since it was
+     * ranked, e.g. because a newly resolved mapping added one.
+     */
+    private synchronized Map<Table, int[]> rankTables(Table table) {
+        Map<Table, int[]> ranks = _ranks;
+        int[] rank = (ranks == null) ? null : ranks.get(table);
+        if (rank != null && rank[1] != table.getForeignKeys().length)
+            ranks = null;
+        if (ranks == null) {
+            ranks = new HashMap<Table, int[]>();
+            ClassMapping[] mappings = conf.getMappingRepositoryInstance().
+                getMappings();
+            for (int i = 0; i < mappings.length; i++)
+                if (mappings[i].getTable() != null)
+                    rank(mappings[i].getTable(), ranks);
+        } else
+            ranks = new HashMap<Table, int[]>(ranks);
+        rank(table, ranks);
+        _ranks = ranks;
+        return ranks;
+    }
+
+    /**
+     * Compute the rank of the given table into the given map.
+     */
+    private static int rank(Table table, Map<Table, int[]> ranks) {
+        int[] rank = ranks.get(table);
+        if (rank != null)
+            return rank[0];
+
+        int r = -1;
+        if (!isCyclic(table)) {
+            // cyclic referenced tables are ignored; rows of such tables
+            // always lead to row level analysis
+            r = 0;
+            ForeignKey[] fks = table.getForeignKeys();
+            for (int i = 0; i < fks.length; i++)
+                if (fks[i].getPrimaryKeyTable() != null)
+                    r = Math.max(r, rank(fks[i].getPrimaryKeyTable(), ranks)
+                        + 1);
+        }
+        ranks.put(table, new int[]{ r, table.getForeignKeys().length });
+        return r;
+    }
+
+    /**
+     * Whether the given table reaches itself through its foreign keys, or
+     * has relation id columns whose referenced table is only known per row.
+     */
+    private static boolean isCyclic(Table table) {
+        if (table.getRelationIdColumns().length > 0)
+            return true;
+        Set<Table> seen = new HashSet<Table>();
+        LinkedList<Table> stack = new LinkedList<Table>();
+        stack.add(table);
+        while (!stack.isEmpty()) {
+            ForeignKey[] fks = stack.removeLast().getForeignKeys();
+            for (int i = 0; i < fks.length; i++) {
+                Table pk = fks[i].getPrimaryKeyTable();
+                if (pk == table)
+                    return true;
+                if (pk != null && seen.add(pk))
+                    stack.add(pk);
+            }
+        }
+        return false;
+    }
+
     /**
      * Check to see if there is an insert for for the same table and primary
      * key values as the given delete row.
@@ -106,6 +106,40 @@ public class DelegatingJDBCFetchConfiguration
         }
     }
 
+    public int getEagerFetchParallelism() {
+        try {
+            return getJDBCDelegate().getEagerFetchParallelism();
+        } catch (RuntimeException re) {
+            throw translate(re);
+        }
+    }
+
+    public JDBCFetchConfiguration setEagerFetchParallelism(int parallelism) {
+        try {
+            getJDBCDelegate().setEagerFetchParallelism(parallelism);
+            return this;
+        } catch (RuntimeException re) {
+            throw translate(re);
+        }
+    }
+
+    public int getLazyFetchBatchSize() {
+        try {
+            return getJDBCDelegate().getLazyFetchBatchSize();
+        } catch (RuntimeException re) {
+            throw translate(re);
+        }
+    }
+
+    public JDBCFetchConfiguration setLazyFetchBatchSize(int size) {
+        try {
+            getJDBCDelegate().setLazyFetchBatchSize(size);
+            return this;
+        } catch (RuntimeException re) {
+            throw translate(re);
+        }
+    }
+
     public int getResultSetType() {
         try {
             return getJDBCDelegate().getResultSetType();
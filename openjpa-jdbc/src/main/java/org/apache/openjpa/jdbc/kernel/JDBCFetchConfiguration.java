@@ -66,6 +66,44 @@ public interface JDBCFetchConfiguration
      */
     public JDBCFetchConfiguration setSubclassFetchMode(int mode);
 
+    /**
+     * Return the maximum number of parallel eager selects that may execute
+     * concurrently on separate connections. Defaults to the
+     * <code>openjpa.jdbc.EagerFetchParallelism</code> setting.
+     *
+     * @since 3.0.1
+     */
+    public int getEagerFetchParallelism();
+
+    /**
+     * Set the maximum number of parallel eager selects that may execute
+     * concurrently on separate connections. Values below 2 execute the
+     * selects serially. Defaults to the
+     * <code>openjpa.jdbc.EagerFetchParallelism</code> setting.
+     *
+     * @since 3.0.1
+     */
+    public JDBCFetchConfiguration setEagerFetchParallelism(int parallelism);
+
+    /**
+     * Return the maximum number of managed instances whose lazy relation is
+     * loaded by a single select. Defaults to the
+     * <code>openjpa.jdbc.LazyFetchBatchSize</code> setting.
+     *
+     * @since 3.0.1
+     */
+    public int getLazyFetchBatchSize();
+
+    /**
+     * Set the maximum number of managed instances whose lazy relation is
+     * loaded by a single select. Values below 2 load the relation of each
+     * instance separately. Defaults to the
+     * <code>openjpa.jdbc.LazyFetchBatchSize</code> setting.
+     *
+     * @since 3.0.1
+     */
+    public JDBCFetchConfiguration setLazyFetchBatchSize(int size);
+
     /**
      * The result set type to use as a constant from {@link ResultSet}.
      * Defaults to the <code>openjpa.jdbc.ResultSetType</code> setting.
@@ -68,6 +68,8 @@ public class JDBCFetchConfigurationImpl
         String[] prefixes = {"openjpa.FetchPlan", "openjpa.jdbc"};
         Class<?> target = JDBCFetchConfiguration.class;
         populateHintSetter(target, "EagerFetchMode", int.class, prefixes);
+        populateHintSetter(target, "EagerFetchParallelism", int.class, prefixes);
+        populateHintSetter(target, "LazyFetchBatchSize", int.class, prefixes);
         populateHintSetter(target, "FetchDirection", int.class, prefixes);
         populateHintSetter(target, "Isolation", int.class, prefixes);
         populateHintSetter(target, "setIsolation", "TransactionIsolation", int.class, "openjpa.jdbc");
@@ -84,6 +86,8 @@ public class JDBCFetchConfigurationImpl
     protected static class JDBCConfigurationState implements Serializable {
         public int eagerMode = 0;
         public int subclassMode = 0;
+        public int parallelism = 1;
+        public int lazyBatchSize = 1;
         public int type = 0;
         public int direction = 0;
         public int size = 0;
@@ -119,6 +123,8 @@ public class JDBCFetchConfigurationImpl
 
         setEagerFetchMode(conf.getEagerFetchModeConstant());
         setSubclassFetchMode(conf.getSubclassFetchModeConstant());
+        setEagerFetchParallelism(conf.getEagerFetchParallelism());
+        setLazyFetchBatchSize(conf.getLazyFetchBatchSize());
         setResultSetType(conf.getResultSetTypeConstant());
         setFetchDirection(conf.getFetchDirectionConstant());
         setLRSSize(conf.getLRSSizeConstant());
@@ -130,6 +136,8 @@ public class JDBCFetchConfigurationImpl
         JDBCFetchConfiguration jf = (JDBCFetchConfiguration) fetch;
         setEagerFetchMode(jf.getEagerFetchMode());
         setSubclassFetchMode(jf.getSubclassFetchMode());
+        setEagerFetchParallelism(jf.getEagerFetchParallelism());
+        setLazyFetchBatchSize(jf.getLazyFetchBatchSize());
         setResultSetType(jf.getResultSetType());
         setFetchDirection(jf.getFetchDirection());
         setLRSSize(jf.getLRSSize());
@@ -199,6 +207,36 @@ public class JDBCFetchConfigurationImpl
         return this;
     }
 
+    public int getEagerFetchParallelism() {
+        return _state.parallelism;
+    }
+
+    public JDBCFetchConfiguration setEagerFetchParallelism(int parallelism) {
+        if (parallelism == DEFAULT) {
+            JDBCConfiguration conf = getJDBCConfiguration();
+            if (conf != null)
+                parallelism = conf.getEagerFetchParallelism();
+        }
+        if (parallelism != DEFAULT)
+            _state.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    public int getLazyFetchBatchSize() {
+        return _state.lazyBatchSize;
+    }
+
+    public JDBCFetchConfiguration setLazyFetchBatchSize(int size) {
+        if (size == DEFAULT) {
+            JDBCConfiguration conf = getJDBCConfiguration();
+            if (conf != null)
+                size = conf.getLazyFetchBatchSize();
+        }
+        if (size != DEFAULT)
+            _state.lazyBatchSize = Math.max(1, size);
+        return this;
+    }
+
     public int getResultSetType() {
         return _state.type;
     }
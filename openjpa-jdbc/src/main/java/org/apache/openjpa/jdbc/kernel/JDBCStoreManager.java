@@ -27,26 +27,34 @@ import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
 import org.apache.openjpa.datacache.QueryCache;
 import org.apache.openjpa.datacache.QueryCacheStoreQuery;
+import org.apache.openjpa.datacache.TypesChangedEvent;
 import org.apache.openjpa.enhance.PersistenceCapable;
 import org.apache.openjpa.event.OrphanedKeyAction;
 import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
 import org.apache.openjpa.jdbc.meta.ClassMapping;
 import org.apache.openjpa.jdbc.meta.Discriminator;
 import org.apache.openjpa.jdbc.meta.FieldMapping;
+import org.apache.openjpa.jdbc.meta.Joinable;
 import org.apache.openjpa.jdbc.meta.ValueMapping;
 import org.apache.openjpa.jdbc.meta.strats.SuperclassDiscriminatorStrategy;
+import org.apache.openjpa.jdbc.schema.Column;
 import org.apache.openjpa.jdbc.sql.DBDictionary;
 import org.apache.openjpa.jdbc.sql.JoinSyntaxes;
 import org.apache.openjpa.jdbc.sql.Joins;
 import org.apache.openjpa.jdbc.sql.Result;
+import org.apache.openjpa.jdbc.sql.SQLBuffer;
 import org.apache.openjpa.jdbc.sql.SQLExceptions;
 import org.apache.openjpa.jdbc.sql.SQLFactory;
 import org.apache.openjpa.jdbc.sql.Select;
@@ -55,6 +63,7 @@ import org.apache.openjpa.jdbc.sql.Union;
 import org.apache.openjpa.kernel.BrokerImpl;
 import org.apache.openjpa.kernel.FetchConfiguration;
 import org.apache.openjpa.kernel.FinderCache;
+import org.apache.openjpa.kernel.LockLevels;
 import org.apache.openjpa.kernel.LockManager;
 import org.apache.openjpa.kernel.OpenJPAStateManager;
 import org.apache.openjpa.kernel.PCState;
@@ -70,6 +79,7 @@ import org.apache.openjpa.lib.jdbc.DelegatingStatement;
 import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.rop.MergedResultObjectProvider;
 import org.apache.openjpa.lib.rop.ResultObjectProvider;
+import org.apache.openjpa.lib.util.Closeable;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.meta.FieldMetaData;
@@ -95,6 +105,11 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
     private static final Localizer _loc = Localizer.forPackage
         (JDBCStoreManager.class);
 
+    /**
+     * The most instances selected at once by {@link #loadAll}.
+     */
+    private static final int LOAD_ALL_BATCH_SIZE = 1000;
+
     private StoreContext _ctx = null;
     private JDBCConfiguration _conf = null;
     private DBDictionary _dict = null;
@@ -111,6 +126,12 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
     // pool statements so that we can try to reuse rather than recreate
     private List<CancelPreparedStatement> _cancelPreparedStatementsPool = new ArrayList<CancelPreparedStatement>();
     private List<CancelStatement> _cancelStatementPool = new ArrayList<CancelStatement>();
+
+    // oids of managed instances that may still have to load a lazy field,
+    // by metadata and field index; the oids of a field are collected from
+    // the context on its first lazy batch and added as instances are loaded
+    private Map<ClassMetaData, Map<Integer, Set<Object>>> _lazyCandidates =
+        null;
     
     public StoreContext getContext() {
         return _ctx;
@@ -204,6 +225,28 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
         } finally {
             _active = false;
         }
+        invalidateSQLResults();
+    }
+
+    /**
+     * Drop cached native query results reading from the types changed in
+     * the committed transaction.
+     */
+    private void invalidateSQLResults() {
+        SQLResultCache cache = _conf.getSQLResultCacheInstance();
+        if (cache == null)
+            return;
+        Collection<Class<?>> pers = _ctx.getPersistedTypes();
+        Collection<Class<?>> del = _ctx.getDeletedTypes();
+        Collection<Class<?>> up = _ctx.getUpdatedTypes();
+        int size = pers.size() + del.size() + up.size();
+        if (size == 0)
+            return;
+        Collection<Class<?>> types = new ArrayList<Class<?>>(size);
+        types.addAll(pers);
+        types.addAll(del);
+        types.addAll(up);
+        cache.onTypesChanged(new TypesChangedEvent(this, types));
     }
 
     public void rollback() {
@@ -411,6 +454,7 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
                 getVersion(mapping, sm, res);
                 setInverseRelation(sm, mapping, res);
             }
+            addLazyCandidate(sm);
             return true;
         } finally {
             if (res != null && (info == null || res != info.result))
@@ -650,7 +694,15 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
             //### need to be loaded are delayed proxies, building the select is 
             //### not necessary.
 
-            if (!isDelayedLoadOnly(sm, fields, mapping)) {
+            // load lazy relations of other managed instances of the same type
+            // along with the relations of this one
+            addLazyCandidate(sm);
+            boolean batched = loadLazyBatches(mapping, sm, fields, jfetch);
+            if (batched)
+                removeLoadedFields(sm, fields);
+
+            if (!(batched && fields.isEmpty())
+                && !isDelayedLoadOnly(sm, fields, mapping)) {
 	            Select sel = _sql.newSelect();
 	            if (select(sel, mapping, Select.SUBS_EXACT, sm, fields, jfetch,
 	                EagerFetchModes.EAGER_JOIN, true, false)) {
@@ -688,6 +740,180 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
         }
     }
 
+    /**
+     * Load the requested lazy relations of the given instance with a select
+     * per relation that also loads the same relation of other managed
+     * instances of the same type which have not loaded it yet, up to the
+     * lazy fetch batch size of the relation. Return true if any relation was
+     * loaded.
+     */
+    private boolean loadLazyBatches(ClassMapping mapping,
+        OpenJPAStateManager sm, BitSet fields, JDBCFetchConfiguration fetch)
+        throws SQLException {
+        if (sm.isNew() || sm.isDeleted() || !sm.isPersistent()
+            || sm.getOwner() != null || mapping.getEmbeddingMapping() != null)
+            return false;
+
+        boolean batched = false;
+        FieldMapping[] fms = mapping.getFieldMappings();
+        for (int i = fields.nextSetBit(0); i >= 0;
+            i = fields.nextSetBit(i + 1)) {
+            if (i >= fms.length || sm.getLoaded().get(i) || sm.isDelayed(i))
+                continue;
+            int size = fms[i].getLazyFetchBatchSize();
+            if (size == FetchConfiguration.DEFAULT)
+                size = fetch.getLazyFetchBatchSize();
+            if (size < 2
+                || fetch.requiresFetch(fms[i]) == FetchConfiguration.FETCH_LOAD)
+                continue;
+            ClassMapping owner = fms[i].getDefiningMapping();
+            if (!owner.isPrimaryKeyObjectId(false))
+                continue;
+
+            JDBCFetchConfiguration ffetch = fetch.traverseJDBC(fms[i]);
+            Select sel = _sql.newSelect();
+            int unions = fms[i].supportsSelect(sel, Select.EAGER_PARALLEL, sm,
+                this, ffetch);
+            if (unions == 0)
+                continue;
+            Column[] pks = owner.getPrimaryKeyColumns();
+            List<OpenJPAStateManager> batch = findLazyBatch(sm, i,
+                Math.min(size, getLoadAllBatchSize(pks)));
+            if (batch.size() < 2)
+                continue;
+
+            // create where condition limiting the owners to the batch
+            SQLBuffer buf = new SQLBuffer(_dict);
+            if (pks.length == 1)
+                buf.append(sel.getColumnAlias(pks[0])).append(" IN (");
+            else
+                buf.append("(");
+            for (int j = 0; j < batch.size(); j++) {
+                Object oid = batch.get(j).getObjectId();
+                if (pks.length == 1) {
+                    if (j > 0)
+                        buf.append(", ");
+                    buf.appendValue(toDataStoreValue(oid, owner, pks[0]),
+                        pks[0]);
+                    continue;
+                }
+                if (j > 0)
+                    buf.append(" OR ");
+                buf.append("(");
+                for (int k = 0; k < pks.length; k++) {
+                    Object val = toDataStoreValue(oid, owner, pks[k]);
+                    if (k > 0)
+                        buf.append(" AND ");
+                    buf.append(sel.getColumnAlias(pks[k]));
+                    if (val == null)
+                        buf.append(" IS ");
+                    else
+                        buf.append(" = ");
+                    buf.appendValue(val, pks[k]);
+                }
+                buf.append(")");
+            }
+            buf.append(")");
+            sel.where(buf);
+
+            SelectExecutor esel = (unions > 1) ? sel.whereClone(unions) : sel;
+            fms[i].selectEagerParallel(esel, null, this, ffetch,
+                JDBCFetchConfiguration.EAGER_PARALLEL);
+            if (_log.isTraceEnabled()) {
+                _log.trace("load field: '" + fms[i].getName() + "' for "
+                    + batch.size() + " instances of "
+                    + mapping.getDescribedType());
+            }
+            Object res = esel.execute(this, ffetch);
+            try {
+                for (OpenJPAStateManager member : batch)
+                    res = fms[i].loadEagerParallel(member, this, ffetch, res);
+            } finally {
+                if (res instanceof Closeable)
+                    try { ((Closeable) res).close(); } catch (Exception e) {}
+            }
+            batched = true;
+        }
+        return batched;
+    }
+
+    /**
+     * Return the given instance followed by other managed instances of its
+     * type that have not loaded the given field, up to the given size. The
+     * candidates are taken from the index of the field, so only the first
+     * batch of a field scans the context.
+     */
+    private List<OpenJPAStateManager> findLazyBatch(OpenJPAStateManager sm,
+        int field, int size) {
+        List<OpenJPAStateManager> batch =
+            new ArrayList<OpenJPAStateManager>(size);
+        batch.add(sm);
+        Set<Object> oids = getLazyCandidates(sm, field);
+        oids.remove(sm.getObjectId());
+        Object obj;
+        OpenJPAStateManager other;
+        for (Iterator<Object> itr = oids.iterator();
+            itr.hasNext() && batch.size() < size;) {
+            // candidates are either batched now or no longer need the field
+            obj = _ctx.findCached(itr.next(), null);
+            itr.remove();
+            other = (obj == null) ? null : _ctx.getStateManager(obj);
+            if (other == null || other == sm
+                || other.getMetaData() != sm.getMetaData()
+                || other.isNew() || other.isDeleted() || !other.isPersistent()
+                || other.getLoaded().get(field))
+                continue;
+            batch.add(other);
+        }
+        return batch;
+    }
+
+    /**
+     * Return the oids of the managed instances of the type of the given
+     * instance that may not have loaded the given field, collecting them
+     * from the context on the first call for the field.
+     */
+    private Set<Object> getLazyCandidates(OpenJPAStateManager sm, int field) {
+        if (_lazyCandidates == null)
+            _lazyCandidates =
+                new HashMap<ClassMetaData, Map<Integer, Set<Object>>>();
+        Map<Integer, Set<Object>> fields =
+            _lazyCandidates.get(sm.getMetaData());
+        if (fields == null) {
+            fields = new HashMap<Integer, Set<Object>>();
+            _lazyCandidates.put(sm.getMetaData(), fields);
+        }
+        Set<Object> oids = fields.get(field);
+        if (oids == null) {
+            oids = new LinkedHashSet<Object>();
+            OpenJPAStateManager other;
+            for (Object obj : _ctx.getManagedObjects()) {
+                other = _ctx.getStateManager(obj);
+                if (other != null && other.getMetaData() == sm.getMetaData()
+                    && !other.getLoaded().get(field))
+                    oids.add(other.getObjectId());
+            }
+            fields.put(field, oids);
+        }
+        return oids;
+    }
+
+    /**
+     * Add the given loaded instance to the candidates of the fields of its
+     * type that have been batched before and that it has not loaded.
+     */
+    private void addLazyCandidate(OpenJPAStateManager sm) {
+        if (_lazyCandidates == null)
+            return;
+        Map<Integer, Set<Object>> fields =
+            _lazyCandidates.get(sm.getMetaData());
+        if (fields == null)
+            return;
+        for (Map.Entry<Integer, Set<Object>> entry : fields.entrySet())
+            if (!sm.getLoaded().get(entry.getKey()))
+                entry.getValue().add(sm.getObjectId());
+    }
+
     private boolean isDelayedLoadOnly(OpenJPAStateManager sm, BitSet fields, ClassMapping mapping) {
         if (!sm.getContext().getConfiguration().getProxyManagerInstance().getDelayCollectionLoading() 
             || fields.isEmpty()) {
@@ -713,9 +939,264 @@ public class JDBCStoreManager implements StoreManager, JDBCStore {
                 fields.clear(i);
     }
 
+    /**
+     * Initializes new instances and loads hollow instances of the same
+     * mapping with a select per batch of primary keys rather than a select per
+     * instance. The other instances are loaded one at a time.
+     */
     public Collection loadAll(Collection sms, PCState state, int load,
         FetchConfiguration fetch, Object context) {
-        return ImplHelper.loadAll(sms, this, state, load, fetch, context);
+        if (context != null || sms.size() < 2)
+            return ImplHelper.loadAll(sms, this, state, load, fetch, context);
+
+        JDBCFetchConfiguration jfetch = (JDBCFetchConfiguration) fetch;
+        Map<ClassMapping, List<OpenJPAStateManager>> exact = null;
+        Map<ClassMapping, List<OpenJPAStateManager>> joinable = null;
+        Map<ClassMapping, List<OpenJPAStateManager>> hollow = null;
+        List<OpenJPAStateManager> rest = new ArrayList<OpenJPAStateManager>();
+        Collection failed = null;
+        OpenJPAStateManager sm;
+        ClassMapping mapping;
+        for (Iterator<?> itr = sms.iterator(); itr.hasNext();) {
+            sm = (OpenJPAStateManager) itr.next();
+            mapping = (ClassMapping) sm.getMetaData();
+            if (sm.getManagedInstance() == null) {
+                // select the same mapping as a single initialization would
+                Object oid = sm.getObjectId();
+                boolean subs = !(oid instanceof OpenJPAId)
+                    || ((OpenJPAId) oid).hasSubclasses();
+                if (subs) {
+                    ClassMapping[] mappings = mapping.
+                        getIndependentAssignableMappings();
+                    if (mappings.length != 1) {
+                        rest.add(sm);
+                        continue;
+                    }
+                    mapping = mappings[0];
+                }
+                Boolean custom;
+                try {
+                    custom = customLoad(sm, mapping, state, jfetch);
+                } catch (ClassNotFoundException cnfe) {
+                    throw new UserException(cnfe);
+                } catch (SQLException se) {
+                    throw SQLExceptions.getStore(se, _dict,
+                        jfetch.getReadLockLevel());
+                }
+                if (custom != null) {
+                    if (!custom.booleanValue())
+                        failed = addFailedId(sm, failed);
+                } else if (subs)
+                    joinable = addToBatch(joinable, mapping, sm);
+                else
+                    exact = addToBatch(exact, mapping, sm);
+                continue;
+            } else if (sm.getPCState() == PCState.HOLLOW
+                && sm.getContext().getLockManager().getLockLevel(sm)
+                == LockLevels.LOCK_NONE) {
+                hollow = addToBatch(hollow, mapping, sm);
+                continue;
+            }
+            rest.add(sm);
+        }
+
+        int level = jfetch.getReadLockLevel();
+        failed = loadBatches(exact, Select.SUBS_EXACT, level, rest, state,
+            jfetch, failed);
+        failed = loadBatches(joinable, Select.SUBS_ANY_JOINABLE, level, rest,
+            state, jfetch, failed);
+        failed = loadBatches(hollow, Select.SUBS_EXACT, LockLevels.LOCK_NONE,
+            rest, state, jfetch, failed);
+        Collection others = ImplHelper.loadAll(rest, this, state, load, fetch,
+            context);
+        if (failed == null)
+            return others;
+        failed.addAll(others);
+        return failed;
+    }
+
+    private static Map<ClassMapping, List<OpenJPAStateManager>> addToBatch
+        (Map<ClassMapping, List<OpenJPAStateManager>> batches,
+        ClassMapping mapping, OpenJPAStateManager sm) {
+        if (batches == null)
+            batches = new LinkedHashMap<ClassMapping,
+                List<OpenJPAStateManager>>();
+        List<OpenJPAStateManager> batch = batches.get(mapping);
+        if (batch == null) {
+            batch = new ArrayList<OpenJPAStateManager>();
+            batches.put(mapping, batch);
+        }
+        batch.add(sm);
+        return batches;
+    }
+
+    private static Collection addFailedId(OpenJPAStateManager sm,
+        Collection failed) {
+        if (failed == null)
+            failed = new ArrayList();
+        failed.add(sm.getId());
+        return failed;
+    }
+
+    /**
+     * Load the given batches of instances. Batches of a single instance and
+     * batches of mappings that cannot be selected by primary key are added
+     * to <code>rest</code> to be loaded individually.
+     *
+     * @return the identities of the instances that do not exist
+     */
+    private Collection loadBatches(Map<ClassMapping,
+        List<OpenJPAStateManager>> batches, int subs, int lockLevel, List<OpenJPAStateManager> rest, PCState state,
+        JDBCFetchConfiguration fetch, Collection failed) {
+        if (batches == null)
+            return failed;
+        for (Map.Entry<ClassMapping, List<OpenJPAStateManager>> entry
+            : batches.entrySet()) {
+            ClassMapping mapping = entry.getKey();
+            List<OpenJPAStateManager> batch = entry.getValue();
+            if (batch.size() == 1 || !mapping.isMapped()
+                || mapping.getEmbeddingMapping() != null
+                || !mapping.isPrimaryKeyObjectId(false)) {
+                rest.addAll(batch);
+                continue;
+            }
+
+            int size = getLoadAllBatchSize(mapping.getPrimaryKeyColumns());
+            for (int start = 0; start < batch.size(); start += size) {
+                List<OpenJPAStateManager> chunk = batch.subList(start,
+                    Math.min(start + size, batch.size()));
+                Collection<OpenJPAStateManager> missing;
+                try {
+                    missing = loadBatch(mapping, subs, lockLevel, chunk,
+                        state, fetch);
+                } catch (ClassNotFoundException cnfe) {
+                    throw new UserException(cnfe);
+                } catch (SQLException se) {
+                    throw SQLExceptions.getStore(se, _dict, lockLevel);
+                }
+                if (missing == null)
+                    rest.addAll(chunk);
+                else
+                    for (OpenJPAStateManager sm : missing)
+                        failed = addFailedId(sm, failed);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Select the given instances of the given mapping by their primary keys
+     * and load each row into the matching instance. Return the instances
+     * that do not exist, or null if there is no data in the current fetch
+     * groups to select, in which case the instances are left untouched.
+     */
+    private Collection<OpenJPAStateManager> loadBatch(ClassMapping mapping,
+        int subs, int lockLevel, List<OpenJPAStateManager> sms,
+        PCState state, JDBCFetchConfiguration fetch)
+        throws ClassNotFoundException, SQLException {
+        Select sel = _sql.newSelect();
+        if (!select(sel, mapping, subs, null, null, fetch,
+            JDBCFetchConfiguration.EAGER_JOIN, true, false))
+            return null;
+
+        Column[] pks = mapping.getPrimaryKeyColumns();
+        Map<Object, OpenJPAStateManager> oids = new HashMap<Object,
+            OpenJPAStateManager>((int) (sms.size() * 1.33 + 1));
+        SQLBuffer buf = new SQLBuffer(_dict);
+        if (pks.length == 1)
+            buf.append(sel.getColumnAlias(pks[0])).append(" IN (");
+        else
+            buf.append("(");
+        int i = 0;
+        for (OpenJPAStateManager sm : sms) {
+            oids.put(sm.getObjectId(), sm);
+            if (pks.length == 1) {
+                if (i++ > 0)
+                    buf.append(", ");
+                buf.appendValue(toDataStoreValue(sm.getObjectId(), mapping,
+                    pks[0]), pks[0]);
+                continue;
+            }
+            if (i++ > 0)
+                buf.append(" OR ");
+            buf.append("(");
+            for (int j = 0; j < pks.length; j++) {
+                Object val = toDataStoreValue(sm.getObjectId(), mapping,
+                    pks[j]);
+                if (j > 0)
+                    buf.append(" AND ");
+                buf.append(sel.getColumnAlias(pks[j]));
+                if (val == null)
+                    buf.append(" IS ");
+                else
+                    buf.append(" = ");
+                buf.appendValue(val, pks[j]);
+            }
+            buf.append(")");
+        }
+        buf.append(")");
+        sel.where(buf);
+        if (_log.isTraceEnabled()) {
+            _log.trace("loadAll: " + sms.size() + " instances of "
+                + mapping.getDescribedType());
+        }
+
+        // rows are matched to the instances by the ids they contain, the
+        // same way as the rows of a query are loaded
+        ClassMapping base = mapping;
+        while (base.getJoinablePCSuperclassMapping() != null)
+            base = base.getJoinablePCSuperclassMapping();
+        ConnectionInfo info = new ConnectionInfo();
+        Result res = sel.execute(this, fetch, lockLevel);
+        try {
+            while (res.next()) {
+                OpenJPAStateManager sm = oids.remove(base.getObjectId(this,
+                    res, null, true, null));
+                if (sm == null)
+                    continue;
+                info.result = res;
+                info.mapping = mapping;
+                info.sm = null;
+                boolean loaded;
+                if (sm.getManagedInstance() == null)
+                    loaded = initializeState(sm, state, fetch, info);
+                else
+                    loaded = load(sm, sm.getUnloaded(fetch), fetch, lockLevel,
+                        info);
+                if (!loaded)
+                    oids.put(sm.getObjectId(), sm);
+            }
+        } finally {
+            res.close();
+        }
+        return oids.values();
+    }
+
+    /**
+     * Return the value of the given primary key column of the given oid.
+     */
+    private Object toDataStoreValue(Object oid, ClassMapping mapping,
+        Column col) {
+        if (mapping.getIdentityType() != ClassMapping.ID_APPLICATION)
+            return ((Id) oid).getId();
+        Object[] pks = ApplicationIds.toPKValues(oid, mapping);
+        Joinable join = mapping.assertJoinable(col);
+        Object val = pks[mapping.getField(join.getFieldIndex()).
+            getPrimaryKeyIndex()];
+        return join.getJoinValue(val, col, this);
+    }
+
+    /**
+     * Return the number of instances of the given primary key to select at
+     * once, within the limits of the dictionary.
+     */
+    private int getLoadAllBatchSize(Column[] pks) {
+        int size = LOAD_ALL_BATCH_SIZE;
+        if (pks.length == 1 && _dict.inClauseLimit > 0)
+            size = Math.min(size, _dict.inClauseLimit);
+        if (_dict.maxParametersPerStatement > 0)
+            size = Math.min(size, _dict.maxParametersPerStatement / pks.length);
+        return Math.max(size, 1);
     }
 
     public void beforeStateChange(OpenJPAStateManager sm, PCState fromState,
@@ -29,6 +29,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.openjpa.datacache.TypesChangedEvent;
 import org.apache.openjpa.event.LifecycleEventManager;
 import org.apache.openjpa.jdbc.kernel.exps.ExpContext;
 import org.apache.openjpa.jdbc.kernel.exps.GetColumn;
@@ -591,6 +592,20 @@ public class JDBCStoreQuery
             }
         }
 
+        SQLResultCache cache = _store.getConfiguration()
+            .getSQLResultCacheInstance();
+        if (cache != null) {
+            Collection<Class<?>> types = new ArrayList<Class<?>>();
+            for (int i = 0; i < mappings.length; i++) {
+                types.add(mappings[i].getDescribedType());
+                if (subclasses)
+                    for (ClassMapping sub : mappings[i]
+                        .getJoinablePCSubclassMappings())
+                        types.add(sub.getDescribedType());
+            }
+            cache.onTypesChanged(new TypesChangedEvent(this, types));
+        }
+
         localContext.remove();
         return count;
     }
@@ -21,6 +21,8 @@ package org.apache.openjpa.jdbc.kernel;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.openjpa.jdbc.meta.JavaSQLTypes;
 import org.apache.openjpa.jdbc.sql.ResultSetResult;
@@ -43,6 +45,15 @@ class SQLProjectionResultObjectProvider
     private final ResultSetResult _res;
     private final ResultPacker _packer;
     private final int _cols;
+    private final String[] _labels;
+
+    // state for recording the rows into the result cache
+    private SQLResultCache _cache;
+    private String _sql;
+    private List _params;
+    private long _generation;
+    private List<Object[]> _rows;
+    private Object[] _row;
 
     /**
      * Constructor.
@@ -59,16 +70,32 @@ class SQLProjectionResultObjectProvider
         ResultSetMetaData meta = res.getResultSet().getMetaData();
         _res = res;
         _cols = meta.getColumnCount();
+        _labels = new String[_cols];
+        for (int i = 0; i < _cols; i++)
+            _labels[i] = meta.getColumnLabel(i + 1);
 
-        if (cls != null) {
-            String[] aliases = new String[_cols];
-            for (int i = 0; i < _cols; i++)
-                aliases[i] = meta.getColumnLabel(i + 1);
-            _packer = new ResultPacker(null, aliases, cls);
-        } else
+        if (cls != null)
+            _packer = new ResultPacker(null, _labels, cls);
+        else
             _packer = null;
     }
 
+    /**
+     * Record the rows read from the result and cache them under the given
+     * SQL and parameters once the result has been fully read, unless the
+     * cache has been invalidated since the given generation.
+     *
+     * @since 3.0.1
+     */
+    public void setResultCache(SQLResultCache cache, String sql,
+        List params, long generation) {
+        _cache = cache;
+        _sql = sql;
+        _params = params;
+        _generation = generation;
+        _rows = new ArrayList<Object[]>();
+    }
+
     public boolean supportsRandomAccess() {
         try {
             return _res.supportsRandomAccess();
@@ -82,6 +109,14 @@ class SQLProjectionResultObjectProvider
 
     public Object getResultObject()
         throws SQLException {
+        if (_row != null) {
+            if (_cols == 1)
+                return (_packer == null) ? _row[0] : _packer.pack(_row[0]);
+            Object[] vals = new Object[_cols];
+            System.arraycopy(_row, 0, vals, 0, _cols);
+            return (_packer == null) ? vals : _packer.pack(vals);
+        }
+
         if (_cols == 1) {
             Object val = _res.getObject(1,
                 JavaSQLTypes.JDBC_DEFAULT, null);
@@ -97,11 +132,45 @@ class SQLProjectionResultObjectProvider
 
     public boolean next()
         throws SQLException {
-        return _res.next();
+        _row = null;
+        if (!_res.next()) {
+            if (_rows != null) {
+                _cache.put(_sql, _params, new CachedSQLResult(_labels,
+                    _rows), _generation);
+                _rows = null;
+            }
+            return false;
+        }
+        if (_rows != null)
+            record();
+        return true;
+    }
+
+    /**
+     * Read the current row, adding a snapshot of it to the recorded rows.
+     * Stops recording if the row cannot be cached or there are too many.
+     */
+    private void record()
+        throws SQLException {
+        _row = new Object[_cols];
+        Object[] snap = new Object[_cols];
+        for (int i = 0; i < _cols; i++) {
+            _row[i] = _res.getObject(i + 1, JavaSQLTypes.JDBC_DEFAULT, null);
+            snap[i] = CachedSQLResult.snapshot(_row[i]);
+            if (snap[i] == CachedSQLResult.UNCACHEABLE) {
+                _rows = null;
+                return;
+            }
+        }
+        _rows.add(snap);
+        if (!_cache.isCacheable(_rows.size()))
+            _rows = null;
     }
 
     public boolean absolute(int pos)
         throws SQLException {
+        _rows = null;
+        _row = null;
         return _res.absolute(pos);
     }
 
@@ -118,6 +187,12 @@ class SQLProjectionResultObjectProvider
     }
 
     public void close() {
+        // read any rows left unread so that the result can still be cached
+        try {
+            while (_rows != null && next());
+        } catch (SQLException se) {
+            _rows = null;
+        }
         _res.close();
     }
 
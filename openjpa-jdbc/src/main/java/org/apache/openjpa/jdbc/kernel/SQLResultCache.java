@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.kernel;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.openjpa.datacache.TypesChangedListener;
+
+/**
+ * Cache of the rows returned by native SQL projection queries, keyed by
+ * the SQL text and its parameters. Entries are invalidated by the tables
+ * they read from, either from the types changed by a commit or from the
+ * tables written by native and bulk updates.
+ *
+ * @since 3.0.1
+ */
+public interface SQLResultCache
+    extends TypesChangedListener {
+
+    /**
+     * Return the cached result of the given SQL and parameters, or null
+     * if none.
+     */
+    public CachedSQLResult get(String sql, List params);
+
+    /**
+     * Whether a result with the given number of rows may be cached.
+     */
+    public boolean isCacheable(int rows);
+
+    /**
+     * Return the current invalidation generation. The generation changes
+     * whenever results are invalidated, whether or not any were cached.
+     * Read it before executing a query whose result is to be cached.
+     */
+    public long getGeneration();
+
+    /**
+     * Cache the result of the given SQL and parameters. Does nothing if the
+     * parameters cannot be used as part of a key, or if results have been
+     * invalidated since the given generation, because the result may have
+     * been read before the change that invalidated them.
+     *
+     * @param generation the {@link #getGeneration generation} read before
+     * the query was executed
+     */
+    public void put(String sql, List params, CachedSQLResult result,
+        long generation);
+
+    /**
+     * Drop all results that read from any of the given tables. Table names
+     * are compared without regard to case or schema.
+     */
+    public void invalidate(Collection<String> tables);
+
+    /**
+     * Drop the results that read from the tables written by the given native
+     * SQL statement. Drops all results if the tables cannot be determined.
+     */
+    public void invalidateSQL(String sql);
+
+    /**
+     * Drop all results.
+     */
+    public void clear();
+
+    /**
+     * Number of cached results.
+     */
+    public int size();
+
+    /**
+     * Number of lookups served from the cache.
+     */
+    public long getHitCount();
+
+    /**
+     * Number of lookups not served from the cache.
+     */
+    public long getMissCount();
+
+    /**
+     * Number of results dropped to keep the cache within its size.
+     */
+    public long getEvictionCount();
+
+    /**
+     * Number of results dropped because a table they read from changed.
+     */
+    public long getInvalidationCount();
+}
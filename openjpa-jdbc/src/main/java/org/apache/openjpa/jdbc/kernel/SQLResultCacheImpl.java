@@ -0,0 +1,436 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.kernel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.openjpa.datacache.TypesChangedEvent;
+import org.apache.openjpa.event.RemoteCommitEvent;
+import org.apache.openjpa.event.RemoteCommitEventManager;
+import org.apache.openjpa.event.RemoteCommitListener;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.meta.ClassMapping;
+import org.apache.openjpa.jdbc.meta.FieldMapping;
+import org.apache.openjpa.jdbc.schema.Table;
+import org.apache.openjpa.lib.conf.Configurable;
+import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.MetaDataRepository;
+import org.apache.openjpa.util.CacheMap;
+import org.apache.openjpa.util.Id;
+
+/**
+ * Default {@link SQLResultCache}. Holds a bounded number of results in
+ * least-recently-used order. A result is invalidated when any of the
+ * identifiers in its SQL names a changed table.
+ *
+ * @since 3.0.1
+ */
+public class SQLResultCacheImpl
+    implements SQLResultCache, RemoteCommitListener, Configurable {
+
+    private static final Localizer _loc = Localizer.forPackage
+        (SQLResultCacheImpl.class);
+
+    private static final Pattern UPDATED_TABLE = Pattern.compile(
+        "\\b(?:UPDATE|INTO|FROM|TABLE)\\s+((?:[\"\\w$#]+\\.)*[\"\\w$#]+)",
+        Pattern.CASE_INSENSITIVE);
+    private static final Pattern CALL = Pattern.compile(
+        "^\\s*\\{?\\s*(?:\\?\\s*=\\s*)?(?:CALL|EXEC|EXECUTE)\\b",
+        Pattern.CASE_INSENSITIVE);
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+    private final AtomicLong _evictions = new AtomicLong();
+    private final AtomicLong _invalidations = new AtomicLong();
+    private final AtomicLong _generation = new AtomicLong();
+    private final Map<Class<?>, Set<String>> _tables =
+        new ConcurrentHashMap<Class<?>, Set<String>>();
+    private final CacheMap _cache;
+    private int _maxRows = 1000;
+    private JDBCConfiguration _conf;
+    private Log _log;
+    private boolean _closed = false;
+
+    public SQLResultCacheImpl() {
+        _cache = new CacheMap(true, 1000) {
+            protected void entryRemoved(Object key, Object value,
+                boolean expired) {
+                if (expired)
+                    _evictions.incrementAndGet();
+            }
+        };
+        _cache.setSoftReferenceSize(0);
+    }
+
+    /**
+     * The maximum number of results to keep. Defaults to 1000.
+     */
+    public int getCacheSize() {
+        return _cache.getCacheSize();
+    }
+
+    /**
+     * The maximum number of results to keep. Defaults to 1000.
+     */
+    public void setCacheSize(int size) {
+        _cache.setCacheSize(size);
+    }
+
+    /**
+     * The maximum number of rows of a cacheable result. Larger results are
+     * not cached. Defaults to 1000; use -1 for no limit.
+     */
+    public int getMaxRows() {
+        return _maxRows;
+    }
+
+    /**
+     * The maximum number of rows of a cacheable result. Larger results are
+     * not cached. Defaults to 1000; use -1 for no limit.
+     */
+    public void setMaxRows(int rows) {
+        _maxRows = rows;
+    }
+
+    public CachedSQLResult get(String sql, List params) {
+        Key key = Key.newInstance(sql, params);
+        CachedSQLResult res = (key == null) ? null
+            : (CachedSQLResult) _cache.get(key);
+        if (res == null)
+            _misses.incrementAndGet();
+        else
+            _hits.incrementAndGet();
+        return res;
+    }
+
+    public boolean isCacheable(int rows) {
+        return _maxRows < 0 || rows <= _maxRows;
+    }
+
+    public long getGeneration() {
+        return _generation.get();
+    }
+
+    public void put(String sql, List params, CachedSQLResult result,
+        long generation) {
+        if (_closed || generation != _generation.get()
+            || !isCacheable(result.getRows().size()))
+            return;
+        Key key = Key.newInstance(sql, params);
+        if (key == null)
+            return;
+        _cache.put(key, result);
+
+        // an invalidation that ran while putting may have missed the result
+        if (generation != _generation.get())
+            _cache.remove(key);
+    }
+
+    public void invalidate(Collection<String> tables) {
+        _generation.incrementAndGet();
+        if (tables.isEmpty() || _cache.isEmpty())
+            return;
+        Set<String> names = new HashSet<String>(tables.size());
+        for (String table : tables)
+            names.add(normalize(table));
+
+        List<Key> keys;
+        _cache.readLock();
+        try {
+            keys = new ArrayList<Key>(_cache.keySet());
+        } finally {
+            _cache.readUnlock();
+        }
+        for (Key key : keys) {
+            if (!Collections.disjoint(key.tokens, names)
+                && _cache.remove(key) != null)
+                _invalidations.incrementAndGet();
+        }
+    }
+
+    public void invalidateSQL(String sql) {
+        _generation.incrementAndGet();
+        if (_cache.isEmpty())
+            return;
+        if (CALL.matcher(sql).find()) {
+            invalidateAll();
+            return;
+        }
+        Set<String> tables = new HashSet<String>();
+        Matcher matcher = UPDATED_TABLE.matcher(sql);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            tables.add(name.substring(name.lastIndexOf('.') + 1));
+        }
+        if (tables.isEmpty())
+            invalidateAll();
+        else
+            invalidate(tables);
+    }
+
+    public void onTypesChanged(TypesChangedEvent event) {
+        Collection types = event.getTypes();
+        if (types == null || types.isEmpty())
+            return;
+        _generation.incrementAndGet();
+        if (_cache.isEmpty())
+            return;
+
+        Set<String> tables = new HashSet<String>();
+        for (Iterator itr = types.iterator(); itr.hasNext();) {
+            Set<String> names = getTables((Class<?>) itr.next());
+            if (names == null) {
+                // no mapping, so we cannot tell which results are affected
+                invalidateAll();
+                return;
+            }
+            tables.addAll(names);
+        }
+        invalidate(tables);
+    }
+
+    /**
+     * Invalidates the results reading from the types changed by a commit
+     * in another factory.
+     */
+    public void afterCommit(RemoteCommitEvent event) {
+        if (_closed)
+            return;
+
+        Set<Class<?>> types = new HashSet<Class<?>>();
+        boolean known = addTypesByName(event.getPersistedTypeNames(), types);
+        if (event.getPayloadType() == RemoteCommitEvent.PAYLOAD_EXTENTS) {
+            known &= addTypesByName(event.getUpdatedTypeNames(), types);
+            known &= addTypesByName(event.getDeletedTypeNames(), types);
+        } else {
+            known &= addTypes(event.getUpdatedObjectIds(), types);
+            known &= addTypes(event.getDeletedObjectIds(), types);
+        }
+        if (!known)
+            invalidateAll();
+        else if (!types.isEmpty())
+            onTypesChanged(new TypesChangedEvent(this, types));
+    }
+
+    public void clear() {
+        _generation.incrementAndGet();
+        _cache.clear();
+    }
+
+    public int size() {
+        return _cache.size();
+    }
+
+    public long getHitCount() {
+        return _hits.get();
+    }
+
+    public long getMissCount() {
+        return _misses.get();
+    }
+
+    public long getEvictionCount() {
+        return _evictions.get();
+    }
+
+    public long getInvalidationCount() {
+        return _invalidations.get();
+    }
+
+    public void close() {
+        _closed = true;
+        _cache.clear();
+    }
+
+    public void setConfiguration(Configuration conf) {
+        _conf = (JDBCConfiguration) conf;
+        _log = conf.getLog(JDBCConfiguration.LOG_RUNTIME);
+    }
+
+    public void startConfiguration() {
+    }
+
+    public void endConfiguration() {
+        RemoteCommitEventManager rcem = _conf.getRemoteCommitEventManager();
+        if (rcem.areRemoteEventsEnabled())
+            rcem.addInternalListener(this);
+        if (_log.isTraceEnabled())
+            _log.trace(_loc.get("sql-cache-config", getCacheSize(),
+                _maxRows));
+    }
+
+    private void invalidateAll() {
+        _generation.incrementAndGet();
+        int size = _cache.size();
+        _cache.clear();
+        _invalidations.addAndGet(size);
+    }
+
+    /**
+     * Return the normalized names of the tables holding the state of the
+     * given type, or null if the type is not mapped.
+     */
+    private Set<String> getTables(Class<?> type) {
+        Set<String> tables = _tables.get(type);
+        if (tables != null)
+            return tables;
+
+        ClassMetaData meta = _conf.getMappingRepositoryInstance()
+            .getCachedMetaData(type);
+        if (!(meta instanceof ClassMapping))
+            return null;
+        tables = new HashSet<String>();
+        for (ClassMapping mapping = (ClassMapping) meta; mapping != null;
+            mapping = mapping.getJoinablePCSuperclassMapping())
+            addTable(mapping.getTable(), tables);
+        FieldMapping[] fms = ((ClassMapping) meta).getFieldMappings();
+        for (int i = 0; i < fms.length; i++)
+            addTable(fms[i].getTable(), tables);
+        _tables.put(type, tables);
+        return tables;
+    }
+
+    private static void addTable(Table table, Set<String> tables) {
+        if (table != null && table.getIdentifier() != null)
+            tables.add(normalize(table.getIdentifier().getName()));
+    }
+
+    private boolean addTypesByName(Collection<String> names,
+        Set<Class<?>> types) {
+        if (names == null)
+            return true;
+        MetaDataRepository repos = _conf.getMappingRepositoryInstance();
+        for (String name : names) {
+            ClassMetaData meta = repos.getCachedMetaData(name);
+            if (meta == null)
+                return false;
+            types.add(meta.getDescribedType());
+        }
+        return true;
+    }
+
+    private boolean addTypes(Collection oids, Set<Class<?>> types) {
+        if (oids == null)
+            return true;
+        MetaDataRepository repos = _conf.getMappingRepositoryInstance();
+        for (Iterator itr = oids.iterator(); itr.hasNext();) {
+            Object oid = itr.next();
+            if (oid instanceof Id) {
+                types.add(((Id) oid).getType());
+                continue;
+            }
+            ClassMetaData meta = repos.getMetaData(oid, null, false);
+            if (meta == null)
+                return false;
+            types.add(meta.getDescribedType());
+        }
+        return true;
+    }
+
+    /**
+     * Strip any delimiters from the given identifier and change it to
+     * upper case.
+     */
+    private static String normalize(String name) {
+        if (name.length() > 1 && (name.charAt(0) == '"'
+            || name.charAt(0) == '`' || name.charAt(0) == '['))
+            name = name.substring(1, name.length() - 1);
+        return name.toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Key of a cached result: the SQL and its parameters, along with the
+     * identifiers used in the SQL for matching changed tables.
+     */
+    private static class Key {
+
+        private final String _sql;
+        private final List _params;
+        private final int _hash;
+        final Set<String> tokens;
+
+        private Key(String sql, List params) {
+            _sql = sql;
+            _params = params;
+            _hash = sql.hashCode() * 31 + params.hashCode();
+            tokens = new HashSet<String>();
+            int start = -1;
+            for (int i = 0; i <= sql.length(); i++) {
+                if (i < sql.length() && isIdentifierPart(sql.charAt(i))) {
+                    if (start == -1)
+                        start = i;
+                } else if (start != -1) {
+                    tokens.add(sql.substring(start, i)
+                        .toUpperCase(Locale.ENGLISH));
+                    start = -1;
+                }
+            }
+        }
+
+        /**
+         * Return a key for the given SQL and parameters, or null if a
+         * parameter is not an immutable simple value.
+         */
+        static Key newInstance(String sql, List params) {
+            List copy = new ArrayList(params.size());
+            for (Object param : params) {
+                if (param instanceof byte[] || param instanceof char[])
+                    return null;
+                Object val = CachedSQLResult.snapshot(param);
+                if (val == CachedSQLResult.UNCACHEABLE)
+                    return null;
+                copy.add(val);
+            }
+            return new Key(sql, copy);
+        }
+
+        private static boolean isIdentifierPart(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '$'
+                || c == '#';
+        }
+
+        public int hashCode() {
+            return _hash;
+        }
+
+        public boolean equals(Object other) {
+            if (other == this)
+                return true;
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return _sql.equals(key._sql) && _params.equals(key._params);
+        }
+    }
+}
@@ -40,6 +40,7 @@ import org.apache.openjpa.jdbc.sql.ResultSetResult;
 import org.apache.openjpa.jdbc.sql.SQLBuffer;
 import org.apache.openjpa.jdbc.sql.SQLExceptions;
 import org.apache.openjpa.kernel.AbstractStoreQuery;
+import org.apache.openjpa.kernel.LockLevels;
 import org.apache.openjpa.kernel.QueryContext;
 import org.apache.openjpa.kernel.StoreQuery;
 import org.apache.openjpa.lib.rop.RangeResultObjectProvider;
@@ -165,7 +166,11 @@ public class SQLStoreQuery
                 dict.setTimeouts(stmnt, fetch, true);
                 
                 int count = executeUpdate(store, conn, stmnt, buf);  
-              
+
+                SQLResultCache cache = store.getConfiguration()
+                    .getSQLResultCacheInstance();
+                if (cache != null)
+                    cache.invalidateSQL(sql);
                 return count;
             } catch (SQLException se) {
                 throw SQLExceptions.getStore(se, dict);
@@ -193,11 +198,23 @@ public class SQLStoreQuery
             String sql = q.getContext().getQueryString();
 
             List paramList = new ArrayList(Arrays.asList(params));
-            SQLBuffer buf = new SQLBuffer(dict).append(sql);
-            Connection conn = store.getConnection();
             JDBCFetchConfiguration fetch = (JDBCFetchConfiguration)
                 q.getContext().getFetchConfiguration();
 
+            SQLResultCache cache = getResultCache(q, fetch, range);
+            long generation = 0;
+            if (cache != null) {
+                // read before executing, so that any change committed
+                // while the result is read keeps it out of the cache
+                generation = cache.getGeneration();
+                CachedSQLResult cached = cache.get(sql, paramList);
+                if (cached != null)
+                    return range(new CachedSQLResultObjectProvider(cached,
+                        q.getContext().getResultType()), range);
+            }
+
+            SQLBuffer buf = new SQLBuffer(dict).append(sql);
+            Connection conn = store.getConnection();
             ResultObjectProvider rop;
             PreparedStatement stmnt = null;
             try {
@@ -227,21 +244,49 @@ public class SQLStoreQuery
                 else if (q.getContext().getCandidateType() != null)
                     rop = new GenericResultObjectProvider((ClassMapping) _meta,
                         store, fetch, res);
-                else
-                    rop = new SQLProjectionResultObjectProvider(store, fetch,
-                        res, q.getContext().getResultType());
+                else {
+                    SQLProjectionResultObjectProvider prop =
+                        new SQLProjectionResultObjectProvider(store, fetch,
+                            res, q.getContext().getResultType());
+                    if (cache != null)
+                        prop.setResultCache(cache, sql, paramList,
+                            generation);
+                    rop = prop;
+                }
             } catch (SQLException se) {
                 if (stmnt != null)
                     try { stmnt.close(); } catch (SQLException se2) {}
                 try { conn.close(); } catch (SQLException se2) {}
                 throw SQLExceptions.getStore(se, dict);
             }
+            return range(rop, range);
+        }
 
+        private static ResultObjectProvider range(ResultObjectProvider rop,
+            Range range) {
             if (range.start != 0 || range.end != Long.MAX_VALUE)
                 rop = new RangeResultObjectProvider(rop, range.start,range.end);
             return rop;
         }
 
+        /**
+         * Return the result cache to use for the given query, or null if
+         * its results should not be cached. Only projections that are read
+         * outside of a datastore transaction and without locks are cached.
+         */
+        private SQLResultCache getResultCache(StoreQuery q,
+            JDBCFetchConfiguration fetch, Range range) {
+            if (!_select || _resultMapping != null || range.lrs
+                || q.getContext().getCandidateType() != null
+                || !fetch.getQueryCacheEnabled()
+                || fetch.getReadLockLevel() != LockLevels.LOCK_NONE)
+                return null;
+            JDBCStore store = ((SQLStoreQuery) q).getStore();
+            if (store.getContext().isStoreActive())
+                return null;
+            return store.getConfiguration().getSQLResultCacheInstance();
+        }
+
         public String[] getDataStoreActions(StoreQuery q, Object[] params,
             Range range) {
             return new String[]{ q.getContext().getQueryString() };
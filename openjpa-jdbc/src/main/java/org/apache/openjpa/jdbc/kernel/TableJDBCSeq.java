@@ -24,7 +24,17 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.transaction.NotSupportedException;
 
@@ -82,10 +92,16 @@ public class TableJDBCSeq extends AbstractJDBCSeq implements Configurable {
     private static final Localizer _loc = Localizer.forPackage
         (TableJDBCSeq.class);
 
+    // blocks lasting less than this grow the allocation, blocks lasting
+    // more than ten times as long shrink it
+    private static final long ADAPT_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
     private transient JDBCConfiguration _conf = null;
     private transient Log _log = null;
     private int _alloc = 50;
     private int _intValue = 1;
+    private int _prefetch = 0;
+    private int _maxAlloc = 0;
     private final ConcurrentHashMap<ClassMapping, Status> _stat = new ConcurrentHashMap<ClassMapping, Status>();
 
     private DBIdentifier _table = DBIdentifier.newTable(DEFAULT_TABLE);
@@ -187,6 +203,51 @@ public class TableJDBCSeq extends AbstractJDBCSeq implements Configurable {
     public void setAllocate(int alloc) {
         _alloc = alloc;
     }
+
+    /**
+     * The number of values remaining in the current block at which the next
+     * block is allocated in the background, so that threads obtaining
+     * values rarely wait for the sequence table. Values are then handed out
+     * without locking. Defaults to 0, which allocates blocks only when they
+     * are exhausted. Applies to non-transactional sequences only.
+     *
+     * @since 3.0.1
+     */
+    public int getPrefetchThreshold() {
+        return _prefetch;
+    }
+
+    /**
+     * The number of values remaining in the current block at which the next
+     * block is allocated in the background.
+     *
+     * @since 3.0.1
+     */
+    public void setPrefetchThreshold(int prefetch) {
+        _prefetch = prefetch;
+    }
+
+    /**
+     * The upper bound of the number of values allocated for a block. If
+     * greater than {@link #getAllocate}, the block size doubles while blocks
+     * are consumed within a second, and halves down to
+     * {@link #getAllocate} while they last longer than ten seconds.
+     * Defaults to 0, which always allocates {@link #getAllocate} values.
+     *
+     * @since 3.0.1
+     */
+    public int getMaxAllocate() {
+        return _maxAlloc;
+    }
+
+    /**
+     * The upper bound of the number of values allocated for a block.
+     *
+     * @since 3.0.1
+     */
+    public void setMaxAllocate(int maxAlloc) {
+        _maxAlloc = maxAlloc;
+    }
     
     /**
      * Return the number as the initial number for the 
@@ -289,6 +350,8 @@ public class TableJDBCSeq extends AbstractJDBCSeq implements Configurable {
         if (stat == null)
             throw new InvalidStateException(_loc.get("bad-seq-type",
                 getClass(), mapping));
+        if (isPrefetching())
+            return nextPrefetched(store, mapping, stat);
 
         while (true) {
             synchronized (stat) {
@@ -297,11 +360,154 @@ public class TableJDBCSeq extends AbstractJDBCSeq implements Configurable {
                 stat.seq = Math.max(stat.seq, 1);
                 if (stat.seq < stat.max)
                     return stat.seq++;
-                allocateSequence(store, mapping, stat, _alloc, true);
+                allocateSequence(store, mapping, stat, nextAllocation(stat),
+                    true);
             }
         }
     }
 
+    /**
+     * Whether blocks are prefetched. Prefetching requires the sequence
+     * table to be updated outside of the current transaction.
+     */
+    private boolean isPrefetching() {
+        return _prefetch > 0 && type != TYPE_TRANSACTIONAL
+            && type != TYPE_CONTIGUOUS && !suspendInJTA();
+    }
+
+    /**
+     * Hand out the next value of the current block, allocating the next
+     * block in the background once the low-water mark is reached.
+     */
+    private long nextPrefetched(JDBCStore store, ClassMapping mapping,
+        Status stat)
+        throws SQLException {
+        while (true) {
+            Block block = stat.block;
+            if (block != null) {
+                long seq = block.next.getAndIncrement();
+                if (seq < block.max) {
+                    // only one thread obtains the value at the mark
+                    if (block.max - seq == _prefetch)
+                        prefetch(mapping, stat);
+                    return seq;
+                }
+            }
+            nextBlock(store, mapping, stat, block);
+        }
+    }
+
+    /**
+     * Replace the given exhausted block with the next allocated block, or
+     * with a newly allocated one if there is none.
+     */
+    private void nextBlock(JDBCStore store, ClassMapping mapping,
+        Status stat, Block exhausted)
+        throws SQLException {
+        synchronized (stat) {
+            if (stat.block != exhausted)
+                return;
+
+            Block block = (stat.prefetched == null) ? null
+                : stat.prefetched.poll();
+            if (block == null && stat.pending != null) {
+                try {
+                    block = stat.pending.get();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ee) {
+                    if (_log.isWarnEnabled())
+                        _log.warn(_loc.get("seq-prefetch-failed", mapping),
+                            ee.getCause());
+                }
+                stat.pending = null;
+            }
+            if (block == null)
+                block = allocateBlock(store, mapping, nextAllocation(stat));
+            stat.block = block;
+            if (block.max - block.next.get() <= _prefetch)
+                prefetch(mapping, stat);
+        }
+    }
+
+    /**
+     * Start allocating the next block in the background unless a block has
+     * already been allocated ahead of the current one.
+     */
+    private void prefetch(final ClassMapping mapping, Status stat) {
+        synchronized (stat) {
+            if ((stat.prefetched != null && !stat.prefetched.isEmpty())
+                || stat.pending != null)
+                return;
+            final int alloc = nextAllocation(stat);
+            stat.pending = PrefetchPool.getPool().submit(
+                new Callable<Block>() {
+                    public Block call()
+                        throws SQLException {
+                        return allocateBlock(mapping, alloc);
+                    }
+                });
+        }
+    }
+
+    /**
+     * Allocate a block of the given number of values from the sequence
+     * table on a connection of its own. Used by prefetching threads, which
+     * must not use the store of the thread that started the prefetch: its
+     * broker may have been closed, and stores are not thread safe.
+     */
+    private Block allocateBlock(ClassMapping mapping, int alloc)
+        throws SQLException {
+        Status range = new Status();
+        Connection conn = _conf.getDataSource2(null).getConnection();
+        try {
+            if (conn.getAutoCommit())
+                conn.setAutoCommit(false);
+            if (!setSequence(mapping, range, alloc, true, conn))
+                throw new SQLException(_loc.get("no-seq-row", mapping,
+                    _table).getMessage());
+            conn.commit();
+        } finally {
+            try { conn.close(); } catch (SQLException se) {}
+        }
+        return new Block(range.seq, range.max);
+    }
+
+    /**
+     * Allocate a block of the given number of values from the sequence
+     * table.
+     */
+    private Block allocateBlock(JDBCStore store, ClassMapping mapping,
+        int alloc)
+        throws SQLException {
+        Status range = new Status();
+        allocateSequence(store, mapping, range, alloc, true);
+        return new Block(range.seq, range.max);
+    }
+
+    /**
+     * Return the number of values to allocate for the next block, adapting
+     * it to the rate at which values were consumed since the last
+     * allocation. Call while holding the lock on <code>stat</code>.
+     */
+    private int nextAllocation(Status stat) {
+        if (_maxAlloc <= _alloc)
+            return _alloc;
+
+        long now = System.nanoTime();
+        if (stat.alloc == 0)
+            stat.alloc = _alloc;
+        else {
+            long elapsed = now - stat.allocated;
+            if (elapsed < ADAPT_INTERVAL)
+                stat.alloc = (int) Math.min((long) stat.alloc * 2, _maxAlloc);
+            else if (elapsed > ADAPT_INTERVAL * 10)
+                stat.alloc = Math.max(stat.alloc / 2, _alloc);
+        }
+        stat.allocated = now;
+        return stat.alloc;
+    }
+
     protected Object currentInternal(JDBCStore store, ClassMapping mapping)
         throws Exception {
         if (current == null) {
@@ -329,6 +535,27 @@ public class TableJDBCSeq extends AbstractJDBCSeq implements Configurable {
         Status stat = getStatus(mapping);
         if (stat == null)
             return;
+        if (isPrefetching()) {
+            synchronized (stat) {
+                long available = 0;
+                if (stat.block != null)
+                    available = Math.max(0, stat.block.max
+                        - stat.block.next.get());
+                if (stat.prefetched != null)
+                    for (Block block : stat.prefetched)
+                        available += block.max - block.next.get();
+                if (available >= count)
+                    return;
+
+                // hand out the new block after the blocks already allocated
+                Block block = allocateBlock(store, mapping,
+                    (int) (count - available));
+                if (stat.prefetched == null)
+                    stat.prefetched = new LinkedList<Block>();
+                stat.prefetched.add(block);
+            }
+            return;
+        }
 
         while (true) {
             int available;
@@ -809,6 +1036,54 @@ public class TableJDBCSeq extends AbstractJDBCSeq implements Configurable {
 
         public long seq = 1L;
         public long max = 0L;
+
+        // adaptive allocation size and the nanoTime it was last used
+        transient int alloc;
+        transient long allocated;
+
+        // state of prefetching sequences: the current block, read without
+        // locking, and the blocks allocated ahead of it in the order they
+        // are handed out, guarded by this status
+        transient volatile Block block;
+        transient LinkedList<Block> prefetched;
+        transient Future<Block> pending;
+    }
+
+    /**
+     * A block of allocated sequence values, handed out by incrementing its
+     * counter.
+     */
+    private static class Block {
+
+        final AtomicLong next;
+        final long max;
+
+        Block(long first, long max) {
+            this.next = new AtomicLong(Math.max(first, 1));
+            this.max = max;
+        }
+    }
+
+    /**
+     * Threads allocating prefetched blocks.
+     */
+    private static class PrefetchPool {
+
+        private static final ExecutorService _pool =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger _count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "OpenJPA-SequencePrefetch-"
+                        + _count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+        public static ExecutorService getPool() {
+            return _pool;
+        }
     }
 
     /**
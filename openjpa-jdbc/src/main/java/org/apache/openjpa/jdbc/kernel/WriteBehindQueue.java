@@ -0,0 +1,783 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.jdbc.kernel;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.openjpa.event.AbstractTransactionListener;
+import org.apache.openjpa.event.TransactionEvent;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.meta.ClassMapping;
+import org.apache.openjpa.jdbc.meta.FieldMapping;
+import org.apache.openjpa.jdbc.schema.Column;
+import org.apache.openjpa.jdbc.schema.ForeignKey;
+import org.apache.openjpa.jdbc.schema.Table;
+import org.apache.openjpa.jdbc.sql.PrimaryRow;
+import org.apache.openjpa.jdbc.sql.RowImpl;
+import org.apache.openjpa.jdbc.sql.RowManager;
+import org.apache.openjpa.jdbc.sql.RowManagerImpl;
+import org.apache.openjpa.kernel.Broker;
+import org.apache.openjpa.kernel.BrokerFactory;
+import org.apache.openjpa.kernel.BrokerImpl;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.kernel.StateManagerImpl;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.JavaTypes;
+import org.apache.openjpa.util.ImplHelper;
+import org.apache.openjpa.util.OptimisticException;
+import org.apache.openjpa.util.StoreException;
+
+/**
+ * Queue of committed updates to instances of write-behind types. The
+ * update rows of such instances are not executed by the flush that prepares
+ * the commit of their transaction. Instead they are queued when the
+ * transaction commits and written later by a background flusher, in a
+ * single transaction and grouped by SQL so that they can be batched.
+ * Repeated updates to the same instance are coalesced into one row that sets
+ * the latest value of every updated column and keeps the version condition
+ * of the first update. Only updates of basic fields are deferred; inserts,
+ * deletes and relation changes are always flushed with their transaction,
+ * and so are all changes flushed before the commit, so that queries of the
+ * transaction see them.
+ * <p>
+ * Queued rows are not visible to other transactions until they are written.
+ * Bulk updates and native SQL that change queued rows are overwritten by
+ * the queued values unless they also change the version of the rows.
+ *
+ * @since 3.0.1
+ */
+public class WriteBehindQueue {
+
+    private static final Localizer _loc = Localizer.forPackage
+        (WriteBehindQueue.class);
+
+    private final AbstractUpdateManager _mgr;
+    private final Log _log;
+    private final Set<String> _types;
+    private final long _interval;
+    private final int _maxSize;
+
+    // described type -> whether it is a write-behind type
+    private final Map<Class<?>, Boolean> _typeCache =
+        new ConcurrentHashMap<Class<?>, Boolean>();
+    private final ConcurrentHashMap<String, TypeStatistics> _stats =
+        new ConcurrentHashMap<String, TypeStatistics>();
+    private final LongAdder _flushes = new LongAdder();
+    private final Date _start = new Date();
+    private volatile Date _since = _start;
+
+    // committed entries in order of their first update and the number of
+    // queued or still unwritten rows of each oid; guarded by this
+    private Map<Key, Entry> _entries = new LinkedHashMap<Key, Entry>();
+    private Map<Object, Integer> _oids = new HashMap<Object, Integer>();
+    private ScheduledExecutorService _flusher = null;
+    private volatile boolean _closed = false;
+    private volatile BrokerFactory _factory = null;
+
+    // held while writing, so that entries are written in commit order
+    private final ReentrantLock _flushLock = new ReentrantLock();
+
+    /**
+     * Constructor.
+     *
+     * @param mgr the update manager creating statements for the flusher
+     * @param types names or entity names of the write-behind types;
+     * subclasses of these types are written behind as well
+     * @param interval milliseconds between background flushes
+     * @param maxSize number of queued instances at which committing
+     * transactions flush the queue themselves
+     */
+    public WriteBehindQueue(AbstractUpdateManager mgr, JDBCConfiguration conf,
+        Collection<String> types, long interval, int maxSize) {
+        _mgr = mgr;
+        _log = conf.getLog(JDBCConfiguration.LOG_RUNTIME);
+        _types = new HashSet<String>(types);
+        _interval = interval;
+        _maxSize = maxSize;
+    }
+
+    /**
+     * Milliseconds between background flushes.
+     */
+    public long getInterval() {
+        return _interval;
+    }
+
+    /**
+     * Number of queued instances at which committing transactions flush the
+     * queue themselves.
+     */
+    public int getMaxSize() {
+        return _maxSize;
+    }
+
+    /**
+     * Whether the given instance is flushed for the commit of its
+     * transaction, is of a write-behind type and only its basic fields are
+     * to be updated.
+     */
+    public boolean isDeferrable(OpenJPAStateManager sm) {
+        if (sm.isNew() || sm.isDeleted() || !sm.isDirty()
+            || !isCommitFlushing(sm.getContext().getBroker())
+            || !isWriteBehindType(sm.getMetaData()))
+            return false;
+        if (sm instanceof StateManagerImpl
+            && ((StateManagerImpl) sm).getMappedByIdFields() != null)
+            return false;
+
+        BitSet dirty = ImplHelper.getUpdateFields(sm);
+        if (dirty == null)
+            return false;
+        ClassMapping mapping = (ClassMapping) sm.getMetaData();
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1))
+            if (!isBasic(mapping.getFieldMapping(i)))
+                return false;
+        return true;
+    }
+
+    /**
+     * Whether the given broker is flushing for the commit of its
+     * transaction. Changes flushed before have to be visible to its queries.
+     */
+    private static boolean isCommitFlushing(Broker broker) {
+        return broker instanceof BrokerImpl
+            && ((BrokerImpl) broker).isCommitFlushing();
+    }
+
+    private boolean isWriteBehindType(ClassMetaData meta) {
+        Boolean match = _typeCache.get(meta.getDescribedType());
+        if (match == null) {
+            match = Boolean.FALSE;
+            for (ClassMetaData sup = meta; sup != null;
+                sup = sup.getPCSuperclassMetaData()) {
+                if (_types.contains(sup.getDescribedType().getName())
+                    || _types.contains(sup.getTypeAlias())) {
+                    match = Boolean.TRUE;
+                    break;
+                }
+            }
+            _typeCache.put(meta.getDescribedType(), match);
+        }
+        return match;
+    }
+
+    /**
+     * Whether the given field is stored in columns of its own class tables
+     * and never as a stream.
+     */
+    private static boolean isBasic(FieldMapping fm) {
+        if (fm.isPrimaryKey() || fm.getForeignKey() != null
+            || fm.getJoinForeignKey() != null)
+            return false;
+        switch (fm.getDeclaredTypeCode()) {
+            case JavaTypes.PC:
+            case JavaTypes.PC_UNTYPED:
+            case JavaTypes.COLLECTION:
+            case JavaTypes.MAP:
+            case JavaTypes.ARRAY:
+            case JavaTypes.OID:
+            case JavaTypes.INPUT_STREAM:
+            case JavaTypes.INPUT_READER:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Defer the rows of the given row manager, which holds the rows of
+     * deferrable instances only, to the commit of the current transaction.
+     *
+     * @return false if the rows have to be flushed now, because they are not
+     * all plain updates or the queue is full and cannot be written
+     */
+    public boolean defer(RowManager rowMgr, JDBCStore store) {
+        if (!(rowMgr instanceof RowManagerImpl))
+            return false;
+        RowManagerImpl rows = (RowManagerImpl) rowMgr;
+        if (!rows.getInserts().isEmpty() || !rows.getDeletes().isEmpty()
+            || !rows.getSecondaryUpdates().isEmpty()
+            || !rows.getSecondaryDeletes().isEmpty()
+            || !rows.getAllRowUpdates().isEmpty()
+            || !rows.getAllRowDeletes().isEmpty())
+            return false;
+        for (PrimaryRow row : rows.getUpdates())
+            if (hasDeferredValues(row))
+                return false;
+
+        // back-pressure: a full queue is written by the committing thread
+        if (_closed)
+            return false;
+        if (size() >= _maxSize) {
+            flush();
+            if (size() >= _maxSize)
+                return false;
+        }
+
+        Broker broker = store.getContext().getBroker();
+        if (_factory == null)
+            _factory = broker.getBrokerFactory();
+        Pending pending = (Pending) broker.getUserObject(this);
+        if (pending == null) {
+            pending = new Pending();
+            broker.putUserObject(this, pending);
+            broker.addTransactionListener(pending);
+        }
+
+        for (PrimaryRow row : rows.getUpdates()) {
+            // resolves the primary key values of the row
+            if (row.getSQL(store.getDBDictionary()).length() == 0)
+                continue;
+            OpenJPAStateManager sm = row.getPrimaryKey();
+            Object oid = sm.getObjectId();
+            WriteBehindRow copy = new WriteBehindRow(row.getColumns(), oid);
+            row.copyInto(copy, false);
+            pending.add(new Entry(new Key(row.getTable(), oid),
+                sm.getMetaData().getDescribedType().getName(), copy));
+        }
+        return true;
+    }
+
+    /**
+     * Write the queued updates of the given instance, which is flushed
+     * without deferral, so that its flush finds its rows in the state it
+     * expects. Updates deferred by the current transaction are not queued
+     * before it commits and need not be written, because only the commit
+     * flush defers and it flushes every instance once.
+     */
+    public void flushPending(OpenJPAStateManager sm) {
+        if (!sm.isNew() && isWriteBehindType(sm.getMetaData())
+            && contains(sm.getObjectId()))
+            flush();
+    }
+
+    /**
+     * Whether updates of the given oid are queued or being written.
+     */
+    private synchronized boolean contains(Object oid) {
+        return _oids.containsKey(oid);
+    }
+
+    /**
+     * Count a row of the given oid that is put in the queue.
+     */
+    private void indexOid(Object oid) {
+        Integer count = _oids.get(oid);
+        _oids.put(oid, (count == null) ? 1 : count + 1);
+    }
+
+    /**
+     * Stop counting the given entries, which have been written.
+     */
+    private synchronized void unindex(List<Entry> entries) {
+        for (Entry entry : entries) {
+            Integer count = _oids.get(entry.key._oid);
+            if (count == null)
+                continue;
+            if (count <= 1)
+                _oids.remove(entry.key._oid);
+            else
+                _oids.put(entry.key._oid, count - 1);
+        }
+    }
+
+    /**
+     * Whether the given row sets values that are only resolved when its
+     * SQL is generated for a flush.
+     */
+    private static boolean hasDeferredValues(PrimaryRow row) {
+        for (ForeignKey fk : row.getTable().getForeignKeys())
+            if (row.getForeignKeySet(fk) != null)
+                return true;
+        for (Column col : row.getTable().getRelationIdColumns())
+            if (row.getRelationIdSet(col) != null)
+                return true;
+        return false;
+    }
+
+    /**
+     * Queue the given committed entries.
+     */
+    private void enqueue(Collection<Entry> entries) {
+        synchronized (this) {
+            for (Entry entry : entries) {
+                TypeStatistics stats = getStatistics(entry.type, true);
+                stats._queued.increment();
+                Entry prev = _entries.get(entry.key);
+                if (prev == null) {
+                    entry.time = System.currentTimeMillis();
+                    _entries.put(entry.key, entry);
+                    indexOid(entry.key._oid);
+                    stats._pending.incrementAndGet();
+                } else {
+                    _entries.put(entry.key, merge(prev, entry));
+                    stats._coalesced.increment();
+                }
+            }
+            if (_flusher == null && !_closed)
+                startFlusher();
+        }
+        if (_closed)
+            flush();
+    }
+
+    private void startFlusher() {
+        _flusher = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "OpenJPA-WriteBehind");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        _flusher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    flush();
+                } catch (RuntimeException re) {
+                    // keep the flusher scheduled
+                    _log.warn(_loc.get("write-behind-failed", re));
+                }
+            }
+        }, _interval, _interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Return an entry with the where conditions and time of the given older
+     * entry and the values set by both entries, newer values first. The
+     * newer entry may be null to copy the older one into an unflushed row.
+     */
+    private static Entry merge(Entry older, Entry newer) {
+        WriteBehindRow row = new WriteBehindRow(older.row.getColumns(),
+            older.row.getFailedObject());
+        older.row.copyInto(row, false);
+        if (newer != null) {
+            Object[] vals = newer.row.getVals();
+            int[] types = newer.row.getTypes();
+            for (int i = 0; i < row.getColumns().length; i++) {
+                if (vals[i] != null) {
+                    row.getVals()[i] = vals[i];
+                    row.getTypes()[i] = types[i];
+                }
+            }
+        }
+        Entry entry = new Entry(older.key, older.type, row);
+        entry.time = older.time;
+        return entry;
+    }
+
+    /**
+     * Number of queued instances.
+     */
+    public synchronized int size() {
+        return _entries.size();
+    }
+
+    /**
+     * Write all queued entries in a new transaction. Entries that cannot be
+     * written are queued again and retried on the next flush, except for
+     * updates that fail their version condition, which are logged as lost.
+     * The oids of the entries stay indexed until they are written, so that
+     * instances flushed meanwhile wait for their queued updates.
+     */
+    public void flush() {
+        _flushLock.lock();
+        try {
+            List<Entry> entries;
+            synchronized (this) {
+                if (_entries.isEmpty())
+                    return;
+                entries = new ArrayList<Entry>(_entries.values());
+                _entries = new LinkedHashMap<Key, Entry>();
+                for (Entry entry : entries)
+                    getStatistics(entry.type, true)._pending.decrementAndGet();
+            }
+            try {
+                write(entries);
+                unindex(entries);
+            } catch (RuntimeException re) {
+                requeue(entries);
+                throw re;
+            }
+        } finally {
+            _flushLock.unlock();
+        }
+    }
+
+    private void write(List<Entry> entries) {
+        Broker broker = _factory.newBroker();
+        try {
+            broker.begin();
+            broker.beginStore();
+            JDBCStore store = (JDBCStore) broker.getStoreManager().
+                getInnermostDelegate();
+            Collection<Exception> exceps;
+            Connection conn = store.getConnection();
+            try {
+                PreparedStatementManager psMgr =
+                    _mgr.newPreparedStatementManager(store, conn);
+                for (Entry entry : groupBySQL(entries, store))
+                    psMgr.flush(entry.row);
+                psMgr.flush();
+                exceps = psMgr.getExceptions();
+            } finally {
+                try { conn.close(); } catch (SQLException se) {}
+            }
+
+            // failed version conditions are lost, all else is retried
+            Set<Object> lost = new HashSet<Object>();
+            for (Exception e : exceps) {
+                if (!(e instanceof OptimisticException))
+                    throw (e instanceof RuntimeException)
+                        ? (RuntimeException) e : new StoreException(e);
+                lost.add(((OptimisticException) e).getFailedObject());
+            }
+            broker.commit();
+            _flushes.increment();
+
+            for (Entry entry : entries) {
+                TypeStatistics stats = getStatistics(entry.type, true);
+                if (lost.contains(entry.row.getFailedObject())) {
+                    stats._failed.increment();
+                    _log.warn(_loc.get("write-behind-lost", entry.type,
+                        entry.row.getFailedObject()));
+                } else
+                    stats._written.increment();
+            }
+        } finally {
+            if (broker.isActive())
+                broker.rollback();
+            broker.close();
+        }
+    }
+
+    /**
+     * Order the given entries so that the entries with the same SQL follow
+     * each other.
+     */
+    private static Collection<Entry> groupBySQL(List<Entry> entries,
+        JDBCStore store) {
+        Map<String, List<Entry>> bySQL = new LinkedHashMap<String,
+            List<Entry>>();
+        for (Entry entry : entries) {
+            String sql = entry.row.getSQL(store.getDBDictionary());
+            List<Entry> group = bySQL.get(sql);
+            if (group == null) {
+                group = new ArrayList<Entry>();
+                bySQL.put(sql, group);
+            }
+            group.add(entry);
+        }
+        List<Entry> grouped = new ArrayList<Entry>(entries.size());
+        for (List<Entry> group : bySQL.values())
+            grouped.addAll(group);
+        return grouped;
+    }
+
+    /**
+     * Put back entries that could not be written, ahead of and merged with
+     * the entries queued since.
+     */
+    private synchronized void requeue(List<Entry> entries) {
+        Map<Key, Entry> requeued = new LinkedHashMap<Key, Entry>();
+        for (Entry entry : entries) {
+            requeued.put(entry.key, merge(entry, null));
+            getStatistics(entry.type, true)._pending.incrementAndGet();
+        }
+        for (Entry entry : _entries.values()) {
+            Entry prev = requeued.get(entry.key);
+            if (prev == null)
+                requeued.put(entry.key, entry);
+            else {
+                requeued.put(entry.key, merge(prev, entry));
+                getStatistics(entry.type, true)._pending.decrementAndGet();
+            }
+        }
+        _entries = requeued;
+        _oids = new HashMap<Object, Integer>();
+        for (Key key : requeued.keySet())
+            indexOid(key._oid);
+    }
+
+    /**
+     * Stop the background flusher and write all queued entries. Updates
+     * committed after closing are written by the committing transaction.
+     */
+    public void close() {
+        ScheduledExecutorService flusher;
+        synchronized (this) {
+            if (_closed)
+                return;
+            _closed = true;
+            flusher = _flusher;
+            _flusher = null;
+        }
+        if (flusher != null)
+            flusher.shutdown();
+        try {
+            flush();
+        } catch (RuntimeException re) {
+            _log.error(_loc.get("write-behind-close-failed", size()), re);
+        }
+    }
+
+    /**
+     * Milliseconds since the oldest queued update of the given type was
+     * committed, or 0 if none are queued.
+     *
+     * @param type the type name, or null for all types
+     */
+    public synchronized long getLag(String type) {
+        for (Entry entry : _entries.values())
+            if (type == null || type.equals(entry.type))
+                return System.currentTimeMillis() - entry.time;
+        return 0;
+    }
+
+    /**
+     * Statistics of the given type name, or null if no update of the type
+     * has been queued.
+     */
+    public TypeStatistics getStatistics(String type) {
+        return getStatistics(type, false);
+    }
+
+    private TypeStatistics getStatistics(String type, boolean create) {
+        TypeStatistics stats = _stats.get(type);
+        if (stats == null && create) {
+            stats = new TypeStatistics(type);
+            TypeStatistics prev = _stats.putIfAbsent(type, stats);
+            if (prev != null)
+                stats = prev;
+        }
+        return stats;
+    }
+
+    /**
+     * Statistics of all types with queued updates.
+     */
+    public Collection<TypeStatistics> getStatistics() {
+        return _stats.values();
+    }
+
+    /**
+     * Number of transactions that wrote queued entries.
+     */
+    public long getFlushCount() {
+        return _flushes.sum();
+    }
+
+    /**
+     * Reset the counters of all types.
+     */
+    public void reset() {
+        _flushes.reset();
+        for (TypeStatistics stats : _stats.values())
+            stats.reset();
+        _since = new Date();
+    }
+
+    public Date start() {
+        return _start;
+    }
+
+    public Date since() {
+        return _since;
+    }
+
+    /**
+     * Write-behind counters of a type.
+     */
+    public static class TypeStatistics {
+
+        private final String _type;
+        private final AtomicInteger _pending = new AtomicInteger();
+        private final LongAdder _queued = new LongAdder();
+        private final LongAdder _coalesced = new LongAdder();
+        private final LongAdder _written = new LongAdder();
+        private final LongAdder _failed = new LongAdder();
+
+        TypeStatistics(String type) {
+            _type = type;
+        }
+
+        public String getType() {
+            return _type;
+        }
+
+        /**
+         * Number of instances with queued updates.
+         */
+        public int getPendingCount() {
+            return _pending.get();
+        }
+
+        /**
+         * Number of committed row updates queued since the last reset.
+         */
+        public long getQueuedCount() {
+            return _queued.sum();
+        }
+
+        /**
+         * Number of queued row updates merged into an update that was
+         * already queued.
+         */
+        public long getCoalescedCount() {
+            return _coalesced.sum();
+        }
+
+        /**
+         * Number of rows written.
+         */
+        public long getWrittenCount() {
+            return _written.sum();
+        }
+
+        /**
+         * Number of rows whose update was lost because their version
+         * condition failed.
+         */
+        public long getFailedCount() {
+            return _failed.sum();
+        }
+
+        void reset() {
+            _queued.reset();
+            _coalesced.reset();
+            _written.reset();
+            _failed.reset();
+        }
+    }
+
+    /**
+     * Rows of a transaction, queued when it commits.
+     */
+    private class Pending
+        extends AbstractTransactionListener {
+
+        private Map<Key, Entry> _rows = new LinkedHashMap<Key, Entry>();
+
+        public void add(Entry entry) {
+            Entry prev = _rows.get(entry.key);
+            _rows.put(entry.key, (prev == null) ? entry : merge(prev, entry));
+        }
+
+        public void afterCommit(TransactionEvent event) {
+            if (_rows.isEmpty())
+                return;
+            Collection<Entry> rows = _rows.values();
+            _rows = new LinkedHashMap<Key, Entry>();
+            enqueue(rows);
+        }
+
+        public void afterRollback(TransactionEvent event) {
+            if (!_rows.isEmpty())
+                _rows = new LinkedHashMap<Key, Entry>();
+        }
+    }
+
+    /**
+     * Table and oid of a queued row.
+     */
+    private static class Key {
+
+        private final Table _table;
+        private final Object _oid;
+
+        public Key(Table table, Object oid) {
+            _table = table;
+            _oid = oid;
+        }
+
+        public int hashCode() {
+            return _table.hashCode() ^ _oid.hashCode();
+        }
+
+        public boolean equals(Object other) {
+            if (other == this)
+                return true;
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return _table == key._table && _oid.equals(key._oid);
+        }
+    }
+
+    /**
+     * A queued row.
+     */
+    private static class Entry {
+
+        public final Key key;
+        public final String type;
+        public final WriteBehindRow row;
+        public long time;
+
+        public Entry(Key key, String type, WriteBehindRow row) {
+            this.key = key;
+            this.type = type;
+            this.row = row;
+        }
+    }
+
+    /**
+     * Update row that reports its oid when its version condition fails and
+     * holds no reference to the state manager it was created for.
+     */
+    private static class WriteBehindRow
+        extends RowImpl {
+
+        private final Object _oid;
+
+        public WriteBehindRow(Column[] cols, Object oid) {
+            super(cols, ACTION_UPDATE);
+            _oid = oid;
+        }
+
+        public Object getFailedObject() {
+            return _oid;
+        }
+
+        protected RowImpl newInstance(Column[] cols, int action) {
+            return new WriteBehindRow(cols, _oid);
+        }
+    }
+}
@@ -82,6 +82,7 @@ public class FieldMapping
     private Index _idx = null;
     private boolean _outer = false;
     private int _fetchMode = Integer.MAX_VALUE;
+    private int _lazyBatchSize = Integer.MAX_VALUE;
     private Unique[] _joinTableUniques; // Unique constraints on JoinTable
     private Boolean _bidirectionalJoinTableOwner = null;
     private Boolean _bidirectionalJoinTableNonOwner = null;
@@ -394,6 +395,30 @@ public class FieldMapping
         _fetchMode = mode;
     }
 
+    /**
+     * The maximum number of managed instances whose value of this field is
+     * loaded by a single select, or {@link FetchConfiguration#DEFAULT} to
+     * use the batch size of the fetch configuration.
+     *
+     * @since 3.0.1
+     */
+    public int getLazyFetchBatchSize() {
+        if (_lazyBatchSize == Integer.MAX_VALUE)
+            _lazyBatchSize = FetchConfiguration.DEFAULT;
+        return _lazyBatchSize;
+    }
+
+    /**
+     * The maximum number of managed instances whose value of this field is
+     * loaded by a single select, or {@link FetchConfiguration#DEFAULT} to
+     * use the batch size of the fetch configuration.
+     *
+     * @since 3.0.1
+     */
+    public void setLazyFetchBatchSize(int size) {
+        _lazyBatchSize = size;
+    }
+
     /**
      * Convenience method to perform cast from
      * {@link FieldMetaData#getRepository}
@@ -551,6 +576,8 @@ public class FieldMapping
         super.copy(fmd);
         if (_fetchMode == Integer.MAX_VALUE)
             _fetchMode = ((FieldMapping) fmd).getEagerFetchMode();
+        if (_lazyBatchSize == Integer.MAX_VALUE)
+            _lazyBatchSize = ((FieldMapping) fmd).getLazyFetchBatchSize();
     }
 
     protected boolean validateDataStoreExtensionPrefix(String prefix) {
@@ -21,7 +21,12 @@ package org.apache.openjpa.jdbc.meta.strats;
 import java.lang.reflect.Array;
 import java.math.BigDecimal;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.openjpa.jdbc.identifier.DBIdentifier;
 import org.apache.openjpa.jdbc.kernel.JDBCFetchConfiguration;
@@ -38,6 +43,7 @@ import org.apache.openjpa.jdbc.sql.Joins;
 import org.apache.openjpa.jdbc.sql.Result;
 import org.apache.openjpa.jdbc.sql.Row;
 import org.apache.openjpa.jdbc.sql.RowManager;
+import org.apache.openjpa.jdbc.sql.SQLBuffer;
 import org.apache.openjpa.jdbc.sql.Select;
 import org.apache.openjpa.kernel.MixedLockLevels;
 import org.apache.openjpa.kernel.OpenJPAStateManager;
@@ -59,6 +65,9 @@ public abstract class ColumnVersionStrategy
     private static final Localizer _loc = Localizer.forPackage
         (ColumnVersionStrategy.class);
 
+    // most instances to check with one select
+    private static final int CHECK_BATCH_SIZE = 1000;
+
     /**
      * Return the code from {@link JavaTypes} for the version values this
      * strategy uses. This method is only used during mapping installation.
@@ -315,6 +324,109 @@ public abstract class ColumnVersionStrategy
         }
     }
 
+    /**
+     * Check the versions of the given instances, which all use this
+     * strategy, with one select by primary key per chunk of instances
+     * rather than one select per instance. The in-memory versions are
+     * compared as in {@link #checkVersion} and are not updated.
+     *
+     * @return the instances whose in-memory version is out of date or whose
+     * row no longer exists
+     * @since 3.0.1
+     */
+    public Collection<OpenJPAStateManager> checkVersions(
+        List<OpenJPAStateManager> sms, JDBCStore store)
+        throws SQLException {
+        ClassMapping mapping = vers.getClassMapping();
+        Column[] pks = mapping.getPrimaryKeyColumns();
+        DBDictionary dict = store.getDBDictionary();
+        int size = CHECK_BATCH_SIZE;
+        if (pks.length == 1 && dict.inClauseLimit > 0)
+            size = Math.min(size, dict.inClauseLimit);
+        if (dict.maxParametersPerStatement > 0)
+            size = Math.min(size, dict.maxParametersPerStatement / pks.length);
+        size = Math.max(size, 1);
+
+        JDBCFetchConfiguration fetch = store.getFetchConfiguration();
+        if (fetch.getReadLockLevel() >= MixedLockLevels.LOCK_PESSIMISTIC_READ) {
+            fetch = (JDBCFetchConfiguration) fetch.clone();
+            fetch.setReadLockLevel(MixedLockLevels.LOCK_NONE);
+        }
+
+        Collection<OpenJPAStateManager> stale =
+            new ArrayList<OpenJPAStateManager>();
+        for (int start = 0; start < sms.size(); start += size)
+            checkVersions(sms.subList(start, Math.min(start + size,
+                sms.size())), mapping, pks, store, fetch, stale);
+        return stale;
+    }
+
+    /**
+     * Check the versions of a chunk of instances, adding the stale ones to
+     * <code>stale</code>.
+     */
+    private void checkVersions(List<OpenJPAStateManager> sms,
+        ClassMapping mapping, Column[] pks, JDBCStore store,
+        JDBCFetchConfiguration fetch, Collection<OpenJPAStateManager> stale)
+        throws SQLException {
+        Select sel = store.getSQLFactory().newSelect();
+        sel.select(pks);
+        sel.select(vers.getColumns());
+
+        Map<Object, OpenJPAStateManager> oids = new HashMap<Object,
+            OpenJPAStateManager>((int) (sms.size() * 1.33 + 1));
+        SQLBuffer buf = new SQLBuffer(store.getDBDictionary());
+        if (pks.length == 1)
+            buf.append(sel.getColumnAlias(pks[0])).append(" IN (");
+        else
+            buf.append("(");
+        int i = 0;
+        for (OpenJPAStateManager sm : sms) {
+            oids.put(sm.getObjectId(), sm);
+            Object val = mapping.toDataStoreValue(sm.getObjectId(), pks,
+                store);
+            if (pks.length == 1) {
+                if (i++ > 0)
+                    buf.append(", ");
+                buf.appendValue(val, pks[0]);
+                continue;
+            }
+            if (i++ > 0)
+                buf.append(" OR ");
+            buf.append("(");
+            Object[] vals = (Object[]) val;
+            for (int j = 0; j < pks.length; j++) {
+                if (j > 0)
+                    buf.append(" AND ");
+                buf.append(sel.getColumnAlias(pks[j]));
+                if (vals[j] == null)
+                    buf.append(" IS ");
+                else
+                    buf.append(" = ");
+                buf.appendValue(vals[j], pks[j]);
+            }
+            buf.append(")");
+        }
+        buf.append(")");
+        sel.where(buf);
+
+        Result res = sel.execute(store, fetch);
+        try {
+            while (res.next()) {
+                OpenJPAStateManager sm = oids.remove(mapping.getObjectId(
+                    store, res, null, true, null));
+                if (sm != null && compare(sm.getVersion(),
+                    populateFromResult(res, null)) < 0)
+                    stale.add(sm);
+            }
+        } finally {
+            res.close();
+        }
+
+        // instances without a row have been deleted
+        stale.addAll(oids.values());
+    }
+
     public int compareVersion(Object v1, Object v2) {
         if (v1 == v2)
             return StoreManager.VERSION_SAME;
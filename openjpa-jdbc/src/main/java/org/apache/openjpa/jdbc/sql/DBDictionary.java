@@ -266,6 +266,9 @@ public class DBDictionary
     public boolean supportsSimpleCaseExpression = true;
     public boolean supportsGeneralCaseExpression = true;
     public boolean useWildCardForCount = false;
+    public boolean supportsMultiRowInsert = false;
+    public boolean useMultiRowInsert = false;
+    public int maxParametersPerStatement = -1;
     
     /**
      * Some Databases append whitespace after the schema name 
@@ -69,6 +69,11 @@ public class DerbyDictionary
         
         supportsComments = true;
 
+        // very long statements exceed the size limits of the classes Derby
+        // generates for them
+        supportsMultiRowInsert = true;
+        maxParametersPerStatement = 2000;
+
         fixedSizeTypeNameSet.addAll(Arrays.asList(new String[]{
             "BIGINT", "INTEGER", "TEXT"
         }));
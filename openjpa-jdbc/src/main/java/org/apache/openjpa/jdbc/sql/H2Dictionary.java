@@ -60,6 +60,8 @@ public class H2Dictionary extends DBDictionary {
 
         supportsSelectStartIndex = true;
         supportsSelectEndIndex = true;
+        supportsMultiRowInsert = true;
+        maxParametersPerStatement = 10000;
         rangePosition = RANGE_POST_LOCK;
         supportsDeferredConstraints = false;
 
@@ -93,6 +93,8 @@ public class MariaDBDictionary extends DBDictionary {
         requiresTargetForDelete = true;
         supportsSelectStartIndex = true;
         supportsSelectEndIndex = true;
+        supportsMultiRowInsert = true;
+        maxParametersPerStatement = 65535;
 
         concatenateFunction = "CONCAT({0},{1})";
 
@@ -94,6 +94,8 @@ public class MySQLDictionary
         requiresTargetForDelete = true;
         supportsSelectStartIndex = true;
         supportsSelectEndIndex = true;
+        supportsMultiRowInsert = true;
+        maxParametersPerStatement = 65535;
 
         concatenateFunction = "CONCAT({0},{1})";
 
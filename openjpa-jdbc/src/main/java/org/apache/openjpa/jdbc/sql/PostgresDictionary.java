@@ -130,6 +130,8 @@ public class PostgresDictionary
         supportsDeferredConstraints = true;
         supportsSelectStartIndex = true;
         supportsSelectEndIndex = true;
+        supportsMultiRowInsert = true;
+        maxParametersPerStatement = 32767;
 
         maxTableNameLength = 63;
         maxColumnNameLength = 63;
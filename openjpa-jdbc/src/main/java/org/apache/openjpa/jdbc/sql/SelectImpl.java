@@ -37,6 +37,13 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.Stack;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.collections.iterators.EmptyIterator;
 import org.apache.openjpa.lib.util.StringUtil;
@@ -407,11 +414,23 @@ public class SelectImpl
         }
 
         logEagerRelations();
+        return execute(store, fetch, forUpdate, false);
+    }
+
+    /**
+     * Execute this select on the store's connection or on a new connection
+     * from its data source. The connection is closed along with the
+     * returned result.
+     */
+    private Result execute(JDBCStore store, JDBCFetchConfiguration fetch,
+        boolean forUpdate, boolean newConnection)
+        throws SQLException {
         SQLBuffer sql = toSelect(forUpdate, fetch);
         boolean isLRS = isLRS();
         int rsType = (isLRS && supportsRandomAccess(forUpdate))
             ? -1 : ResultSet.TYPE_FORWARD_ONLY;
-        Connection conn = store.getConnection();
+        Connection conn = (newConnection) ? store.getNewConnection()
+            : store.getConnection();
         PreparedStatement stmnt = null;
         ResultSet rs = null;
         try {
@@ -443,12 +462,23 @@ public class SelectImpl
         if (sel._eager == null)
             return;
 
+        // independent selects may run concurrently on their own connections;
+        // their results are added first so that they are closed with the
+        // given result should a later serial select fail
+        Map concurrent = null;
+        if (!res.isLocking() && isConcurrentEagerAllowed(store, fetch))
+            concurrent = executeConcurrently(sel, store, fetch);
+        if (concurrent != null)
+            res.setEagerMap(new HashMap(concurrent));
+
         // execute eager selects
         Map.Entry entry;
         Result eres;
         Map eager;
         for (Iterator itr = sel._eager.entrySet().iterator(); itr.hasNext();) {
             entry = (Map.Entry) itr.next();
+            if (concurrent != null && concurrent.containsKey(entry.getKey()))
+                continue;
 
             // simulated batched selects for inner/outer joins; for separate
             // selects, don't pass on lock level, because they're probably
@@ -468,6 +498,122 @@ public class SelectImpl
         }
     }
 
+    /**
+     * Whether the parallel eager selects of a query may execute on
+     * connections other than the context's own. Selects inside a managed
+     * transaction or a datastore transaction (as used by pessimistic
+     * locking or after a flush) must see the transaction's locks and
+     * changes, so they always execute serially.
+     */
+    private static boolean isConcurrentEagerAllowed(JDBCStore store,
+        JDBCFetchConfiguration fetch) {
+        if (fetch.getEagerFetchParallelism() < 2)
+            return false;
+        StoreContext ctx = store.getContext();
+        if (ctx == null)
+            return false;
+        return !ctx.isActive() || (!ctx.isManaged() && !ctx.isStoreActive());
+    }
+
+    /**
+     * Execute the independent eager selects of the given select concurrently,
+     * each on a new connection, running at most
+     * {@link JDBCFetchConfiguration#getEagerFetchParallelism} of them at
+     * once. Selects with eager selects of their own, large result set
+     * selects and selects that would lock rows are left for serial
+     * execution.
+     *
+     * @return the results keyed like the eager selects, or null if there
+     * were fewer than two selects eligible for concurrent execution
+     */
+    private static Map executeConcurrently(SelectImpl sel,
+        final JDBCStore store, final JDBCFetchConfiguration fetch)
+        throws SQLException {
+        final List keys = new ArrayList();
+        final List sels = new ArrayList();
+        JDBCLockManager lm = store.getLockManager();
+        Map.Entry entry;
+        SelectImpl esel;
+        for (Iterator itr = sel._eager.entrySet().iterator(); itr.hasNext();) {
+            entry = (Map.Entry) itr.next();
+            if (entry.getValue() == sel
+                || !(entry.getValue() instanceof SelectImpl))
+                continue;
+            esel = (SelectImpl) entry.getValue();
+            if (esel._eager != null || esel.isLRS())
+                continue;
+            if (lm != null && !esel.isAggregate() && esel._grouping == null
+                && lm.selectForUpdate(esel, fetch.getReadLockLevel()))
+                return null;
+            keys.add(entry.getKey());
+            sels.add(esel);
+        }
+        if (sels.size() < 2)
+            return null;
+
+        final Result[] results = new Result[sels.size()];
+        final boolean[] aborted = new boolean[1];
+        final AtomicInteger next = new AtomicInteger();
+        int workers = Math.min(fetch.getEagerFetchParallelism(), sels.size());
+        List futures = new ArrayList(workers);
+        for (int i = 0; i < workers; i++) {
+            futures.add(EagerSelectPool.getPool().submit(new Callable() {
+                public Object call() throws SQLException {
+                    Result res;
+                    for (int idx; (idx = next.getAndIncrement())
+                        < results.length;) {
+                        SelectImpl esel = (SelectImpl) sels.get(idx);
+                        esel.logEagerRelations();
+                        res = esel.execute(store, fetch, false, true);
+                        synchronized (results) {
+                            if (aborted[0])
+                                res.close();
+                            else
+                                results[idx] = res;
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        Throwable failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                ((Future) futures.get(i)).get();
+            } catch (ExecutionException ee) {
+                if (failure == null)
+                    failure = ee.getCause();
+                next.set(results.length);
+            } catch (InterruptedException ie) {
+                failure = ie;
+                next.set(results.length);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (failure != null) {
+            synchronized (results) {
+                aborted[0] = true;
+                for (int i = 0; i < results.length; i++)
+                    if (results[i] != null)
+                        results[i].close();
+            }
+            if (failure instanceof SQLException)
+                throw (SQLException) failure;
+            if (failure instanceof RuntimeException)
+                throw (RuntimeException) failure;
+            if (failure instanceof Error)
+                throw (Error) failure;
+            throw new SQLException(failure);
+        }
+
+        Map map = new HashMap((int) (results.length * 1.33 + 1));
+        for (int i = 0; i < results.length; i++)
+            map.put(keys.get(i), results[i]);
+        return map;
+    }
+
 
     /**
      * This method is to provide override for non-JDBC or JDBC-like 
@@ -2262,6 +2408,29 @@ public class SelectImpl
      */
     private static class Placeholder {
     }
+
+    /**
+     * Lazily created pool of daemon threads executing parallel eager
+     * selects concurrently.
+     */
+    private static class EagerSelectPool {
+
+        private static final ExecutorService _pool =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger _count = new AtomicInteger();
+
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "OpenJPA-EagerSelect-"
+                        + _count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+        public static ExecutorService getPool() {
+            return _pool;
+        }
+    }
     
     public SelectImpl clone(Context ctx) {
         SelectImpl sel = (SelectImpl) _conf.getSQLFactoryInstance().newSelect();
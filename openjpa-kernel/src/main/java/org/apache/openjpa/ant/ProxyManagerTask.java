@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.    
+ */
+package org.apache.openjpa.ant;
+
+import java.io.IOException;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.conf.OpenJPAConfigurationImpl;
+import org.apache.openjpa.lib.ant.AbstractTask;
+import org.apache.openjpa.lib.conf.ConfigurationImpl;
+import org.apache.openjpa.lib.util.Files;
+import org.apache.openjpa.util.ProxyManagerImpl;
+
+/**
+ * <p>Generates the proxy classes for the collection, map, date, and calendar
+ * types of the persistent fields of all persistent types.  This task can
+ * take the following arguments:
+ * <ul>
+ * <li><code>directory</code></li>
+ * <li><code>utils</code></li>
+ * </ul>
+ * Any nested filesets are ignored; the persistent types are those of the
+ * configured persistence unit.</p>
+ *
+ * @since 3.0.1
+ */
+public class ProxyManagerTask
+    extends AbstractTask {
+
+    protected ProxyManagerImpl.Flags flags = new ProxyManagerImpl.Flags();
+    protected String dirName = null;
+
+    /**
+     * Set the root output directory to write the proxy classes to.
+     */
+    public void setDirectory(String dirName) {
+        this.dirName = dirName;
+    }
+
+    /**
+     * Set the Java version whose standard java.util types to generate
+     * proxies for instead of scanning the persistent types.
+     */
+    public void setUtils(int utils) {
+        flags.utils = utils;
+    }
+
+    protected ConfigurationImpl newConfiguration() {
+        return new OpenJPAConfigurationImpl();
+    }
+
+    protected void executeOn(String[] files)
+        throws IOException, ClassNotFoundException {
+        flags.directory = (dirName == null) ? null
+            : Files.getFile(dirName, getClassLoader());
+        ProxyManagerImpl.run((OpenJPAConfiguration) getConfiguration(),
+            new String[0], flags, getClassLoader());
+    }
+}
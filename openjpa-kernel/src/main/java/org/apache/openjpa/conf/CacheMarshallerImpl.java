@@ -25,11 +25,14 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.openjpa.lib.conf.Configurable;
 import org.apache.openjpa.lib.conf.Configuration;
@@ -61,6 +64,7 @@ public class CacheMarshallerImpl
     private String _inputResourceLocation;
     
     private boolean _consumeErrors = true;
+    private boolean _compress = false;
 
     public Object load() {
         if (_inputURL == null) {
@@ -71,8 +75,7 @@ public class CacheMarshallerImpl
         Object o = null;
         ObjectInputStream in = null;
         try {
-            in = new ObjectInputStream(new BufferedInputStream(
-                _inputURL.openStream()));
+            in = new ObjectInputStream(openInput());
 
             o = in.readObject();
             o = _validationPolicy.getValidData(o);
@@ -107,6 +110,20 @@ public class CacheMarshallerImpl
         return o;
     }
 
+    /**
+     * Open the input, uncompressing it if it was stored compressed.
+     */
+    private InputStream openInput()
+        throws IOException {
+        InputStream in = new BufferedInputStream(_inputURL.openStream());
+        in.mark(2);
+        int magic = in.read() | (in.read() << 8);
+        in.reset();
+        if (magic == GZIPInputStream.GZIP_MAGIC)
+            return new BufferedInputStream(new GZIPInputStream(in));
+        return in;
+    }
+
     private void configure(Object o) {
         if (o instanceof Configurable) {
             ((Configurable) o).setConfiguration(_conf);
@@ -123,11 +140,15 @@ public class CacheMarshallerImpl
         OutputStream out = null;
         try {
             out = new FileOutputStream(_outputFile);
+            if (_compress)
+                out = new GZIPOutputStream(out);
             ObjectOutputStream oos =
                 new ObjectOutputStream(new BufferedOutputStream(out));
             Object toStore = _validationPolicy.getCacheableData(o);
             oos.writeObject(toStore);
             oos.flush();
+            if (_compress)
+                ((GZIPOutputStream) out).finish();
             out.flush();
             if (_log.isTraceEnabled())
                 _log.trace(_loc.get("cache-marshaller-stored",
@@ -170,6 +191,20 @@ public class CacheMarshallerImpl
         _consumeErrors = consume;
     }
 
+    /**
+     * Whether to compress the stored data. Compressed data is detected and
+     * uncompressed automatically when loading. Defaults to false.
+     *
+     * @since 3.0.1
+     */
+    public void setCompress(boolean compress) {
+        _compress = compress;
+    }
+
+    public boolean getCompress() {
+        return _compress;
+    }
+
     public String getId() {
         return _id;
     }
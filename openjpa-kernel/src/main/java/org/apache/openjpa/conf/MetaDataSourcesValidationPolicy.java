@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.conf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.conf.Configurations;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.lib.util.StringUtil;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.MetaDataRepository;
+
+/**
+ * Validation policy for a cached {@link MetaDataRepository} that, in addition
+ * to the checks of {@link OpenJPAVersionAndConfigurationTypeValidationPolicy},
+ * records a checksum of the class file of every cached type and of every
+ * mapping file resource, and considers the cached data stale as soon as any
+ * of them changed. The repository is then built from the annotations and
+ * mapping files as usual.
+ *
+ * @since 3.0.1
+ */
+public class MetaDataSourcesValidationPolicy
+    extends OpenJPAVersionAndConfigurationTypeValidationPolicy {
+
+    private static final Localizer _loc =
+        Localizer.forPackage(MetaDataSourcesValidationPolicy.class);
+
+    // the implicit JPA mapping file
+    private static final String DEFAULT_MAPPING = "META-INF/orm.xml";
+
+    private OpenJPAConfiguration _conf;
+    private Log _log;
+
+    public Object getCacheableData(Object o) {
+        return super.getCacheableData(new Object[] {
+            checksumSources(o), o,
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public Object getValidData(Object o) {
+        Object[] array = (Object[]) super.getValidData(o);
+        if (array == null || array.length != 2
+            || !(array[0] instanceof Map))
+            return null;
+
+        Map<String, Long> sums = (Map<String, Long>) array[0];
+        ClassLoader loader = getClassLoader();
+        for (Map.Entry<String, Long> entry : sums.entrySet()) {
+            if (entry.getValue().longValue()
+                != checksum(loader, entry.getKey())) {
+                if (_log != null && _log.isInfoEnabled())
+                    _log.info(_loc.get("cache-stale-source", entry.getKey()));
+                return null;
+            }
+        }
+        return array[1];
+    }
+
+    /**
+     * Checksum the class files of the types in the repository contained in
+     * the given data, and the configured mapping files.
+     */
+    private Map<String, Long> checksumSources(Object o) {
+        Collection<String> names = new ArrayList<String>();
+        MetaDataRepository repos = findRepository(o);
+        if (repos != null)
+            for (ClassMetaData meta : repos.getMetaDatas())
+                names.add(meta.getDescribedType().getName());
+        return checksumSources(_conf, names, getClassLoader());
+    }
+
+    /**
+     * Checksum the class files of the given types and the mapping files
+     * configured for the given configuration, keyed by resource name. The
+     * checksum of a missing resource is -1.
+     */
+    public static Map<String, Long> checksumSources(OpenJPAConfiguration conf,
+        Collection<String> typeNames, ClassLoader loader) {
+        Map<String, Long> sums = new TreeMap<String, Long>();
+        for (String name : typeNames) {
+            String rsrc = name.replace('.', '/') + ".class";
+            sums.put(rsrc, checksum(loader, rsrc));
+        }
+
+        String props = Configurations.getProperties(conf.getMetaDataFactory());
+        String rsrcs = Configurations.parseProperties(props).
+            getProperty("resources", "Resources", null);
+        if (!StringUtil.isEmpty(rsrcs))
+            for (String rsrc : StringUtil.split(rsrcs, ";", 0))
+                sums.put(rsrc, checksum(loader, rsrc));
+        sums.put(DEFAULT_MAPPING, checksum(loader, DEFAULT_MAPPING));
+        return sums;
+    }
+
+    private static MetaDataRepository findRepository(Object o) {
+        if (o instanceof MetaDataRepository)
+            return (MetaDataRepository) o;
+        if (o instanceof Object[])
+            for (Object elem : (Object[]) o)
+                if (elem instanceof MetaDataRepository)
+                    return (MetaDataRepository) elem;
+        return null;
+    }
+
+    /**
+     * Return the CRC32 checksum of the given resource, or -1 if it does not
+     * exist.
+     */
+    private static long checksum(ClassLoader loader, String rsrc) {
+        URL url = loader.getResource(rsrc);
+        if (url == null)
+            return -1;
+
+        CRC32 crc = new CRC32();
+        InputStream in = null;
+        try {
+            in = url.openStream();
+            byte[] buf = new byte[4096];
+            for (int len; (len = in.read(buf)) != -1; )
+                crc.update(buf, 0, len);
+        } catch (IOException ioe) {
+            return -1;
+        } finally {
+            if (in != null)
+                try { in.close(); } catch (IOException e) { }
+        }
+        return crc.getValue();
+    }
+
+    private ClassLoader getClassLoader() {
+        return _conf.getClassResolverInstance().getClassLoader(getClass(),
+            null);
+    }
+
+    public void setConfiguration(Configuration conf) {
+        super.setConfiguration(conf);
+        _conf = (OpenJPAConfiguration) conf;
+        _log = conf.getConfigurationLog();
+    }
+}
@@ -30,7 +30,9 @@ import org.apache.openjpa.datacache.ConcurrentDataCache;
 import org.apache.openjpa.datacache.ConcurrentQueryCache;
 import org.apache.openjpa.datacache.DataCacheManager;
 import org.apache.openjpa.datacache.DataCacheManagerImpl;
+import org.apache.openjpa.datacache.OffHeapDataCache;
 import org.apache.openjpa.datacache.PartitionedDataCache;
+import org.apache.openjpa.datacache.SegmentedDataCache;
 import org.apache.openjpa.ee.ManagedRuntime;
 import org.apache.openjpa.enhance.RuntimeUnenhancedClassesModes;
 import org.apache.openjpa.event.BrokerFactoryEventManager;
@@ -265,6 +267,8 @@ public class OpenJPAConfigurationImpl
             "true", ConcurrentDataCache.class.getName(), 
             "concurrent", ConcurrentDataCache.class.getName(),
             "partitioned", PartitionedDataCache.class.getName(),
+            "segmented", SegmentedDataCache.class.getName(),
+            "offheap", OffHeapDataCache.class.getName(),
         };
         dataCachePlugin.setAliases(aliases);
         dataCachePlugin.setDefault(aliases[0]);
@@ -313,7 +317,9 @@ public class OpenJPAConfigurationImpl
 
         savepointManagerPlugin = addPlugin("SavepointManager", true);
         aliases = new String[] { 
-                "in-mem", "org.apache.openjpa.kernel.InMemorySavepointManager", };
+                "in-mem", "org.apache.openjpa.kernel.InMemorySavepointManager",
+                "copy-on-write",
+                "org.apache.openjpa.kernel.CopyOnWriteSavepointManager", };
         savepointManagerPlugin.setAliases(aliases);
         savepointManagerPlugin.setDefault(aliases[0]);
         savepointManagerPlugin.setString(aliases[0]);
@@ -22,6 +22,7 @@ import java.util.Collections;
 import java.util.Hashtable;
 import java.util.Map;
 
+import org.apache.openjpa.kernel.PersistentQueryCompilationCache;
 import org.apache.openjpa.lib.conf.Configuration;
 import org.apache.openjpa.lib.conf.PluginValue;
 import java.util.concurrent.ConcurrentHashMap;
@@ -41,6 +42,7 @@ public class QueryCompilationCacheValue
         "true", CacheMap.class.getName(),
         "all", ConcurrentHashMap.class.getName(),
         "false", null,
+        "persistent", PersistentQueryCompilationCache.class.getName(),
     };
 
     public QueryCompilationCacheValue(String prop) {
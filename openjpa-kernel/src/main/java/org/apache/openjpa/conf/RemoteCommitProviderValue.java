@@ -40,6 +40,7 @@ public class RemoteCommitProviderValue
         "sjvm", "org.apache.openjpa.event.SingleJVMRemoteCommitProvider",
         "jms", "org.apache.openjpa.event.JMSRemoteCommitProvider",
         "tcp", "org.apache.openjpa.event.TCPRemoteCommitProvider",
+        "nio", "org.apache.openjpa.event.NIORemoteCommitProvider",
     };
 
     private Options _opts = null;
@@ -0,0 +1,645 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.openjpa.kernel.AbstractPCData;
+import org.apache.openjpa.kernel.PCData;
+import org.apache.openjpa.kernel.PCDataImpl;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.JavaTypes;
+import org.apache.openjpa.meta.ValueMetaData;
+import org.apache.openjpa.util.CompactEncoding;
+import org.apache.openjpa.util.InternalException;
+import org.apache.openjpa.util.OpenJPAId;
+import org.apache.openjpa.util.Serialization;
+
+/**
+ * Binary encoding of {@link DataCachePCData} for caches that hold their
+ * data outside of the Java heap. Field values are written according to the
+ * type codes of their {@link FieldMetaData}: relations are written as
+ * their object id keys without type names where the id type is the
+ * declared type of the field, collections, maps and arrays are written
+ * element by element, and embedded instances are written as nested records.
+ * Values of unknown types fall back to Java serialization.
+ *
+ * @since 3.0.1
+ */
+class DataCachePCDataCodec {
+
+    // tags 1 to 4 are the object id tags of CompactEncoding
+    private static final byte T_NULL = 0;
+    private static final byte T_TRUE = 5;
+    private static final byte T_FALSE = 6;
+    private static final byte T_INT = 7;
+    private static final byte T_LONG = 8;
+    private static final byte T_SHORT = 9;
+    private static final byte T_BYTE = 10;
+    private static final byte T_CHAR = 11;
+    private static final byte T_FLOAT = 12;
+    private static final byte T_DOUBLE = 13;
+    private static final byte T_STRING = 14;
+    private static final byte T_BIGDECIMAL = 15;
+    private static final byte T_BIGINTEGER = 16;
+    private static final byte T_DATE = 17;
+    private static final byte T_SQL_DATE = 18;
+    private static final byte T_TIME = 19;
+    private static final byte T_TIMESTAMP = 20;
+    private static final byte T_LOCALE = 21;
+    private static final byte T_ENUM = 22;
+    private static final byte T_BYTES = 23;
+    private static final byte T_CHARS = 24;
+    private static final byte T_COLLECTION = 25;
+    private static final byte T_MAP = 26;
+    private static final byte T_ARRAY = 27;
+    private static final byte T_EMBEDDED = 28;
+    private static final byte T_SERIALIZED = 29;
+
+    // field states
+    private static final int ABSENT = 0;
+    private static final int DATA = 1;
+    private static final int INTERMEDIATE = 2;
+    private static final int IMPL = 0x10;
+
+    // type flags of ids and enums
+    private static final int DECLARED = 1;
+    private static final int SUBCLASSES = 2;
+
+    private static final Localizer _loc = Localizer.forPackage
+        (DataCachePCDataCodec.class);
+
+    private final ClassLoader _loader;
+    private final Map<String, Class<?>> _types =
+        new ConcurrentHashMap<String, Class<?>>();
+
+    /**
+     * Constructor; supply the loader used to resolve the types named in
+     * encoded data.
+     */
+    public DataCachePCDataCodec(ClassLoader loader) {
+        _loader = loader;
+    }
+
+    /**
+     * Encode the given data of an instance of the given type, returning
+     * null if the data holds values that cannot be encoded.
+     */
+    public byte[] encode(DataCachePCData data, ClassMetaData meta) {
+        Output out = new Output(256);
+        try {
+            writeRecord(out, data, meta, data.getTimeOut());
+        } catch (IOException ioe) {
+            return null;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode the data of the instance with the given oid and type.
+     */
+    public DataCachePCData decode(Object oid, ClassMetaData meta,
+        String cache, byte[] bytes) {
+        try {
+            return readRecord(new Input(bytes, cache), oid, meta);
+        } catch (IOException ioe) {
+            throw new InternalException(ioe);
+        } catch (ClassNotFoundException cnfe) {
+            throw new InternalException(cnfe);
+        }
+    }
+
+    /**
+     * Decode only the expiration time and version of the data of the
+     * instance with the given oid and type, leaving its fields unloaded.
+     * The given bytes may be a prefix of the encoded data; returns null if
+     * they are too few to hold the header.
+     */
+    public DataCachePCData decodeHeader(Object oid, ClassMetaData meta,
+        String cache, byte[] bytes) {
+        try {
+            return readHeader(new Input(bytes, cache), oid, meta);
+        } catch (EOFException eofe) {
+            return null;
+        } catch (IOException ioe) {
+            throw new InternalException(ioe);
+        } catch (ClassNotFoundException cnfe) {
+            throw new InternalException(cnfe);
+        }
+    }
+
+    private void writeRecord(Output out, PCData data, ClassMetaData meta,
+        long exp)
+        throws IOException {
+        out.writeVarLong(CompactEncoding.zigZag(exp));
+        writeValue(out, null, data.getVersion());
+        writeValue(out, null, data.getImplData());
+
+        PCDataImpl impl = (data instanceof PCDataImpl) ? (PCDataImpl) data
+            : null;
+        FieldMetaData[] fmds = meta.getFields();
+        out.writeVarLong(fmds.length);
+        for (int i = 0; i < fmds.length; i++) {
+            int state = ABSENT;
+            Object val = null;
+            if (data.isLoaded(i)) {
+                state = DATA;
+                val = data.getData(i);
+            } else if (impl != null && impl.getIntermediate(i) != null) {
+                state = INTERMEDIATE;
+                val = impl.getIntermediate(i);
+            }
+            Object implData = (impl == null) ? null : impl.getImplData(i);
+            if (implData != null)
+                state |= IMPL;
+
+            out.writeByte(state);
+            if ((state & DATA) != 0)
+                writeField(out, fmds[i], val);
+            else if ((state & INTERMEDIATE) != 0)
+                writeValue(out, null, val);
+            if (implData != null)
+                writeValue(out, null, implData);
+        }
+    }
+
+    private DataCachePCDataImpl readHeader(Input in, Object oid,
+        ClassMetaData meta)
+        throws IOException, ClassNotFoundException {
+        long exp = CompactEncoding.unZigZag(in.readVarLong());
+        DataCachePCDataImpl data = new DataCachePCDataImpl(oid, meta,
+            in.cache, exp);
+        data.setVersion(readValue(in, null));
+        return data;
+    }
+
+    private DataCachePCData readRecord(Input in, Object oid,
+        ClassMetaData meta)
+        throws IOException, ClassNotFoundException {
+        DataCachePCDataImpl data = readHeader(in, oid, meta);
+        data.setImplData(readValue(in, null));
+
+        FieldMetaData[] fmds = meta.getFields();
+        int len = (int) in.readVarLong();
+        if (len != fmds.length)
+            throw new IOException(_loc.get("offheap-field-count", meta)
+                .getMessage());
+        for (int i = 0; i < len; i++) {
+            int state = in.readByte();
+            if ((state & DATA) != 0)
+                data.setData(i, readField(in, fmds[i]));
+            else if ((state & INTERMEDIATE) != 0)
+                data.setIntermediate(i, readValue(in, null));
+            if ((state & IMPL) != 0)
+                data.setImplData(i, readValue(in, null));
+        }
+        return data;
+    }
+
+    /**
+     * Write the cached value of the given field, as produced by
+     * {@link AbstractPCData#toData}.
+     */
+    private void writeField(Output out, FieldMetaData fmd, Object val)
+        throws IOException {
+        if (val == null) {
+            out.writeByte(T_NULL);
+            return;
+        }
+
+        switch (fmd.getDeclaredTypeCode()) {
+            case JavaTypes.COLLECTION:
+                if (!(val instanceof List))
+                    break;
+                Collection c = (Collection) val;
+                out.writeByte(T_COLLECTION);
+                out.writeVarLong(c.size());
+                out.writeVarLong(AbstractPCData.getNextSequence(val));
+                for (Iterator itr = c.iterator(); itr.hasNext();)
+                    writeValue(out, fmd.getElement(), itr.next());
+                return;
+            case JavaTypes.MAP:
+                if (!(val instanceof Map))
+                    break;
+                Map m = (Map) val;
+                out.writeByte(T_MAP);
+                out.writeVarLong(m.size());
+                for (Iterator itr = m.entrySet().iterator(); itr.hasNext();) {
+                    Map.Entry e = (Map.Entry) itr.next();
+                    writeValue(out, fmd.getKey(), e.getKey());
+                    writeValue(out, fmd.getElement(), e.getValue());
+                }
+                return;
+            case JavaTypes.ARRAY:
+                if (!val.getClass().isArray() || val instanceof byte[]
+                    || val instanceof char[])
+                    break;
+                int len = Array.getLength(val);
+                out.writeByte(T_ARRAY);
+                out.writeVarLong(len);
+                for (int i = 0; i < len; i++)
+                    writeValue(out, fmd.getElement(), Array.get(val, i));
+                return;
+        }
+        writeValue(out, fmd, val);
+    }
+
+    private Object readField(Input in, FieldMetaData fmd)
+        throws IOException, ClassNotFoundException {
+        int tag = in.peekByte();
+        int size;
+        switch (tag) {
+            case T_COLLECTION:
+                in.readByte();
+                size = (int) in.readVarLong();
+                int seq = (int) in.readVarLong();
+                List elems = new ArrayList(size);
+                for (int i = 0; i < size; i++)
+                    elems.add(readValue(in, fmd.getElement()));
+                return AbstractPCData.newCollectionData(elems, seq);
+            case T_MAP:
+                in.readByte();
+                size = (int) in.readVarLong();
+                if (size == 0)
+                    return Collections.EMPTY_MAP;
+                Map m = new HashMap(size);
+                for (int i = 0; i < size; i++) {
+                    Object key = readValue(in, fmd.getKey());
+                    m.put(key, readValue(in, fmd.getElement()));
+                }
+                return m;
+            case T_ARRAY:
+                in.readByte();
+                size = (int) in.readVarLong();
+                if (size == 0)
+                    return new Object[0];
+                Object a = (isImmutableType(fmd.getElement()))
+                    ? Array.newInstance(fmd.getElement().getDeclaredType(),
+                        size)
+                    : new Object[size];
+                for (int i = 0; i < size; i++)
+                    Array.set(a, i, readValue(in, fmd.getElement()));
+                return a;
+            default:
+                return readValue(in, fmd);
+        }
+    }
+
+    /**
+     * Write a single value. The given metadata may be null for values that
+     * are not field data.
+     */
+    private void writeValue(Output out, ValueMetaData vmd, Object val)
+        throws IOException {
+        if (val == null) {
+            out.writeByte(T_NULL);
+            return;
+        }
+
+        Class<?> declared = (vmd == null) ? null : vmd.getDeclaredType();
+        if (val instanceof PCData && vmd != null && vmd.isEmbedded()
+            && vmd.getEmbeddedMetaData() != null) {
+            PCData data = (PCData) val;
+            ClassMetaData meta = vmd.getEmbeddedMetaData();
+            if (data.getType() != meta.getDescribedType()
+                || !(data instanceof DataCachePCData))
+                throw new IOException(_loc.get("offheap-unsupported-embedded",
+                    data).getMessage());
+            out.writeByte(T_EMBEDDED);
+            writeValue(out, null, data.getId());
+            writeRecord(out, data, meta,
+                ((DataCachePCData) data).getTimeOut());
+            return;
+        }
+
+        Class<?> cls = val.getClass();
+        if (cls == String.class) {
+            out.writeByte(T_STRING);
+            out.writeString((String) val);
+        } else if (cls == Integer.class) {
+            out.writeByte(T_INT);
+            out.writeVarLong(CompactEncoding.zigZag((Integer) val));
+        } else if (cls == Long.class) {
+            out.writeByte(T_LONG);
+            out.writeVarLong(CompactEncoding.zigZag((Long) val));
+        } else if (cls == Boolean.class) {
+            out.writeByte(((Boolean) val) ? T_TRUE : T_FALSE);
+        } else if (cls == Short.class) {
+            out.writeByte(T_SHORT);
+            out.writeVarLong(CompactEncoding.zigZag((Short) val));
+        } else if (cls == Byte.class) {
+            out.writeByte(T_BYTE);
+            out.writeByte((Byte) val);
+        } else if (cls == Character.class) {
+            out.writeByte(T_CHAR);
+            out.writeVarLong((Character) val);
+        } else if (cls == Float.class) {
+            out.writeByte(T_FLOAT);
+            out.writeInt(Float.floatToIntBits((Float) val));
+        } else if (cls == Double.class) {
+            out.writeByte(T_DOUBLE);
+            out.writeLong(Double.doubleToLongBits((Double) val));
+        } else if (cls == BigDecimal.class) {
+            out.writeByte(T_BIGDECIMAL);
+            out.writeVarLong(CompactEncoding.zigZag(
+                ((BigDecimal) val).scale()));
+            out.writeBytes(((BigDecimal) val).unscaledValue().toByteArray());
+        } else if (cls == BigInteger.class) {
+            out.writeByte(T_BIGINTEGER);
+            out.writeBytes(((BigInteger) val).toByteArray());
+        } else if (cls == Date.class) {
+            out.writeByte(T_DATE);
+            out.writeVarLong(CompactEncoding.zigZag(((Date) val).getTime()));
+        } else if (cls == java.sql.Date.class) {
+            out.writeByte(T_SQL_DATE);
+            out.writeVarLong(CompactEncoding.zigZag(((Date) val).getTime()));
+        } else if (cls == Time.class) {
+            out.writeByte(T_TIME);
+            out.writeVarLong(CompactEncoding.zigZag(((Date) val).getTime()));
+        } else if (cls == Timestamp.class) {
+            out.writeByte(T_TIMESTAMP);
+            out.writeVarLong(CompactEncoding.zigZag(((Date) val).getTime()));
+            out.writeVarLong(((Timestamp) val).getNanos());
+        } else if (cls == Locale.class) {
+            Locale locale = (Locale) val;
+            out.writeByte(T_LOCALE);
+            out.writeString(locale.getLanguage());
+            out.writeString(locale.getCountry());
+            out.writeString(locale.getVariant());
+        } else if (val instanceof Enum) {
+            Enum e = (Enum) val;
+            out.writeByte(T_ENUM);
+            writeType(out, e.getDeclaringClass(), declared, false);
+            out.writeVarLong(e.ordinal());
+        } else if (cls == byte[].class) {
+            out.writeByte(T_BYTES);
+            out.writeBytes((byte[]) val);
+        } else if (cls == char[].class) {
+            out.writeByte(T_CHARS);
+            out.writeString(new String((char[]) val));
+        } else if (CompactEncoding.getIdTag(val) != 0) {
+            OpenJPAId id = (OpenJPAId) val;
+            out.writeByte(CompactEncoding.getIdTag(id));
+            writeType(out, id.getType(), declared, id.hasSubclasses());
+            CompactEncoding.writeIdKey(out, id);
+        } else if (val instanceof Serializable) {
+            out.writeByte(T_SERIALIZED);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            oos.writeObject(val);
+            oos.close();
+            out.writeBytes(bytes.toByteArray());
+        } else
+            throw new IOException(_loc.get("offheap-unsupported-value",
+                cls).getMessage());
+    }
+
+    private Object readValue(Input in, ValueMetaData vmd)
+        throws IOException, ClassNotFoundException {
+        Class<?> declared = (vmd == null) ? null : vmd.getDeclaredType();
+        int tag = in.readByte();
+        int flags;
+        switch (tag) {
+            case T_NULL:
+                return null;
+            case T_TRUE:
+                return Boolean.TRUE;
+            case T_FALSE:
+                return Boolean.FALSE;
+            case T_INT:
+                return (int) CompactEncoding.unZigZag(in.readVarLong());
+            case T_LONG:
+                return CompactEncoding.unZigZag(in.readVarLong());
+            case T_SHORT:
+                return (short) CompactEncoding.unZigZag(in.readVarLong());
+            case T_BYTE:
+                return (byte) in.readByte();
+            case T_CHAR:
+                return (char) in.readVarLong();
+            case T_FLOAT:
+                return Float.intBitsToFloat(in.readInt());
+            case T_DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case T_STRING:
+                return in.readString();
+            case T_BIGDECIMAL:
+                int scale = (int) CompactEncoding.unZigZag(in.readVarLong());
+                return new BigDecimal(new BigInteger(in.readBytes()), scale);
+            case T_BIGINTEGER:
+                return new BigInteger(in.readBytes());
+            case T_DATE:
+                return new Date(CompactEncoding.unZigZag(in.readVarLong()));
+            case T_SQL_DATE:
+                return new java.sql.Date(CompactEncoding.unZigZag(
+                    in.readVarLong()));
+            case T_TIME:
+                return new Time(CompactEncoding.unZigZag(in.readVarLong()));
+            case T_TIMESTAMP:
+                Timestamp ts = new Timestamp(CompactEncoding.unZigZag(
+                    in.readVarLong()));
+                ts.setNanos((int) in.readVarLong());
+                return ts;
+            case T_LOCALE:
+                return new Locale(in.readString(), in.readString(),
+                    in.readString());
+            case T_ENUM:
+                Class<?> type = readType(in, in.readByte(), declared);
+                return type.getEnumConstants()[(int) in.readVarLong()];
+            case T_BYTES:
+                return in.readBytes();
+            case T_CHARS:
+                return in.readString().toCharArray();
+            case CompactEncoding.DATASTORE_ID:
+            case CompactEncoding.LONG_ID:
+            case CompactEncoding.INT_ID:
+            case CompactEncoding.STRING_ID:
+                flags = in.readByte();
+                return CompactEncoding.readId(in, tag,
+                    readType(in, flags, declared), (flags & SUBCLASSES) != 0);
+            case T_EMBEDDED:
+                Object oid = readValue(in, null);
+                return readRecord(in, oid, vmd.getEmbeddedMetaData());
+            case T_SERIALIZED:
+                ObjectInputStream ois =
+                    new Serialization.ClassResolvingObjectInputStream(
+                        new ByteArrayInputStream(in.readBytes()));
+                try {
+                    return ois.readObject();
+                } finally {
+                    ois.close();
+                }
+            default:
+                throw CompactEncoding.unknownTag(tag);
+        }
+    }
+
+    /**
+     * Types equal to the declared type of the value are only flagged;
+     * others are written by name.
+     */
+    private void writeType(Output out, Class<?> type, Class<?> declared,
+        boolean subs)
+        throws IOException {
+        int flags = (subs) ? SUBCLASSES : 0;
+        if (type == declared) {
+            out.writeByte(flags | DECLARED);
+            return;
+        }
+        out.writeByte(flags);
+        out.writeString(type.getName());
+    }
+
+    private Class<?> readType(Input in, int flags, Class<?> declared)
+        throws IOException, ClassNotFoundException {
+        if ((flags & DECLARED) != 0)
+            return declared;
+        String name = in.readString();
+        Class<?> type = _types.get(name);
+        if (type == null) {
+            type = Class.forName(name, false, _loader);
+            _types.put(name, type);
+        }
+        return type;
+    }
+
+    /**
+     * Mirrors the element types that {@link AbstractPCData} caches in typed
+     * arrays.
+     */
+    private static boolean isImmutableType(ValueMetaData element) {
+        switch (element.getDeclaredTypeCode()) {
+            case JavaTypes.BOOLEAN:
+            case JavaTypes.BYTE:
+            case JavaTypes.CHAR:
+            case JavaTypes.DOUBLE:
+            case JavaTypes.FLOAT:
+            case JavaTypes.INT:
+            case JavaTypes.LONG:
+            case JavaTypes.SHORT:
+            case JavaTypes.STRING:
+            case JavaTypes.NUMBER:
+            case JavaTypes.BOOLEAN_OBJ:
+            case JavaTypes.BYTE_OBJ:
+            case JavaTypes.CHAR_OBJ:
+            case JavaTypes.DOUBLE_OBJ:
+            case JavaTypes.FLOAT_OBJ:
+            case JavaTypes.INT_OBJ:
+            case JavaTypes.LONG_OBJ:
+            case JavaTypes.SHORT_OBJ:
+            case JavaTypes.BIGDECIMAL:
+            case JavaTypes.BIGINTEGER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Output into a growable buffer.
+     */
+    private static class Output
+        extends DataOutputStream {
+
+        public Output(int size) {
+            super(new ByteArrayOutputStream(size));
+        }
+
+        public void writeVarLong(long val)
+            throws IOException {
+            CompactEncoding.writeVarLong(this, val);
+        }
+
+        public void writeBytes(byte[] bytes)
+            throws IOException {
+            CompactEncoding.writeBytes(this, bytes);
+        }
+
+        public void writeString(String str)
+            throws IOException {
+            CompactEncoding.writeString(this, str);
+        }
+
+        public byte[] toByteArray() {
+            return ((ByteArrayOutputStream) out).toByteArray();
+        }
+    }
+
+    /**
+     * Input over an encoded record.
+     */
+    private static class Input
+        extends DataInputStream {
+
+        // name of the cache the decoded data belongs to
+        final String cache;
+
+        public Input(byte[] buf, String cache) {
+            super(new ByteArrayInputStream(buf));
+            this.cache = cache;
+        }
+
+        public int peekByte()
+            throws IOException {
+            in.mark(1);
+            int b = readByte();
+            in.reset();
+            return b;
+        }
+
+        public long readVarLong()
+            throws IOException {
+            return CompactEncoding.readVarLong(this);
+        }
+
+        public byte[] readBytes()
+            throws IOException {
+            return CompactEncoding.readBytes(this);
+        }
+
+        public String readString()
+            throws IOException {
+            return CompactEncoding.readString(this);
+        }
+    }
+}
@@ -61,6 +61,18 @@ public class DataCachePCDataImpl
             _exp = -1;
     }
 
+    /**
+     * Constructor for restoring cached data that expires at the given time.
+     *
+     * @param exp the expiration time in milliseconds, or -1 for none
+     * @since 3.0.1
+     */
+    public DataCachePCDataImpl(Object oid, ClassMetaData meta, String name,
+        long exp) {
+        super(oid, meta, name);
+        _exp = exp;
+    }
+
     public boolean isTimedOut() {
         return _exp != -1 && _exp < System.currentTimeMillis();
     }
@@ -0,0 +1,655 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.security.AccessController;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.openjpa.event.RemoteCommitListener;
+import org.apache.openjpa.lib.util.J2DoPrivHelper;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.MetaDataRepository;
+
+/**
+ * A {@link DataCache} implementation that keeps cached data outside of the
+ * Java heap, so that the size of the cache does not add to garbage
+ * collection pauses. Each cached instance is encoded field by field into
+ * direct memory; only its oid and a small index entry stay on the heap.
+ * The cache is bounded by the <code>MaxMemory</code> property, and
+ * optionally by the number of entries. When memory runs out, least
+ * recently used entries are evicted.
+ *
+ * @since 3.0.1
+ */
+@SuppressWarnings("serial")
+public class OffHeapDataCache
+    extends AbstractDataCache
+    implements RemoteCommitListener {
+
+    // bytes read to decode the expiration time and version of cached data
+    private static final int HEADER_LENGTH = 32;
+
+    private static final Localizer _loc = Localizer.forPackage
+        (OffHeapDataCache.class);
+
+    private long _maxMemory = 64L * 1024 * 1024;
+    private int _slabSize = 1024 * 1024;
+    private int _cacheSize = -1;
+    private int _concurrencyLevel = 16;
+
+    private OffHeapMemory _memory;
+    private DataCachePCDataCodec _codec;
+    private Segment[] _segments;
+    private final ReentrantLock _writeLock = new ReentrantLock();
+
+    /**
+     * The maximum number of bytes of memory to allocate outside of the
+     * heap, optionally followed by a <code>K</code>, <code>M</code> or
+     * <code>G</code> unit. Defaults to 64M.
+     */
+    public void setMaxMemory(String size) {
+        _maxMemory = parseSize(size);
+    }
+
+    /**
+     * The maximum number of bytes of memory to allocate outside of the heap.
+     */
+    public long getMaxMemory() {
+        return _maxMemory;
+    }
+
+    /**
+     * The size of the blocks memory is allocated in, optionally followed by
+     * a <code>K</code> or <code>M</code> unit. Instances whose encoded data
+     * is larger than a block are not cached. Defaults to 1M.
+     */
+    public void setSlabSize(String size) {
+        _slabSize = (int) parseSize(size);
+    }
+
+    /**
+     * The size of the blocks memory is allocated in.
+     */
+    public int getSlabSize() {
+        return (_memory == null) ? _slabSize : _memory.getSlabSize();
+    }
+
+    /**
+     * Sets the maximum number of unpinned objects to keep. Defaults to
+     * <code>-1</code>, which bounds the cache only by its memory.
+     */
+    public void setCacheSize(int size) {
+        _cacheSize = size;
+    }
+
+    /**
+     * Returns the maximum number of unpinned objects to keep.
+     */
+    public int getCacheSize() {
+        return _cacheSize;
+    }
+
+    /**
+     * Sets the number of independently locked segments of the cache.
+     * Defaults to 16.
+     */
+    public void setConcurrencyLevel(int level) {
+        _concurrencyLevel = level;
+    }
+
+    /**
+     * Returns the number of independently locked segments of the cache.
+     */
+    public int getConcurrencyLevel() {
+        return _concurrencyLevel;
+    }
+
+    /**
+     * The number of bytes of memory allocated outside of the heap.
+     */
+    public long getAllocatedMemory() {
+        return _memory.getAllocatedMemory();
+    }
+
+    /**
+     * The number of bytes of memory holding cached data.
+     */
+    public long getUsedMemory() {
+        return _memory.getUsedMemory();
+    }
+
+    /**
+     * The number of cached instances.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment seg : _segments) {
+            seg.lock();
+            try {
+                size += seg.entries.size();
+            } finally {
+                seg.unlock();
+            }
+        }
+        return size;
+    }
+
+    public void initialize(DataCacheManager mgr) {
+        super.initialize(mgr);
+        conf.getRemoteCommitEventManager().addInternalListener(this);
+
+        ClassLoader ctxLoader = AccessController.doPrivileged(
+            J2DoPrivHelper.getContextClassLoaderAction());
+        _codec = new DataCachePCDataCodec(conf.getClassResolverInstance().
+            getClassLoader(null, ctxLoader));
+        _memory = new OffHeapMemory(_slabSize, _maxMemory);
+
+        int segments = Math.max(1, _concurrencyLevel);
+        int max = (_cacheSize < 0) ? -1
+            : Math.max(1, (_cacheSize + segments - 1) / segments);
+        _segments = new Segment[segments];
+        for (int i = 0; i < segments; i++)
+            _segments[i] = new Segment(max);
+        if (log.isInfoEnabled())
+            log.info(_loc.get("offheap-cache-init", getName(),
+                _maxMemory, _memory.getSlabSize()));
+    }
+
+    public void unpinAll(Class<?> cls, boolean subs) {
+        if (log.isWarnEnabled())
+            log.warn(_loc.get("cache-class-unpin-all", getName()));
+        List<Object> keys = new ArrayList<Object>();
+        for (Segment seg : _segments) {
+            seg.lock();
+            try {
+                keys.addAll(seg.pinned);
+            } finally {
+                seg.unlock();
+            }
+        }
+        unpinAll(keys);
+    }
+
+    public void writeLock() {
+        _writeLock.lock();
+    }
+
+    public void writeUnlock() {
+        _writeLock.unlock();
+    }
+
+    protected DataCachePCData getInternal(Object key) {
+        Segment seg = segmentFor(key);
+        Entry entry;
+        byte[] bytes;
+        seg.lock();
+        try {
+            entry = seg.entries.get(key);
+            if (entry == null)
+                return null;
+            seg.touch(entry);
+            bytes = _memory.read(entry.handle, entry.length);
+        } finally {
+            seg.unlock();
+        }
+        return _codec.decode(key, entry.meta, getName(), bytes);
+    }
+
+    protected DataCachePCData putInternal(Object key, DataCachePCData pc) {
+        Segment seg = segmentFor(key);
+        ClassMetaData meta = getMetaData(pc.getType());
+        byte[] bytes = (meta == null) ? null : _codec.encode(pc, meta);
+        int cls = (bytes == null) ? -1 : _memory.sizeClass(bytes.length);
+        if (cls == -1 && log.isTraceEnabled())
+            log.trace(_loc.get("offheap-cache-uncacheable", key));
+
+        DataCachePCData old = null;
+        seg.lock();
+        try {
+            Entry entry = seg.entries.get(key);
+            if (entry != null) {
+                old = readHeader(key, entry);
+                seg.remove(key);
+            }
+        } finally {
+            seg.unlock();
+        }
+        if (cls == -1)
+            return old;
+
+        List<Object> evicted = new ArrayList<Object>();
+        long handle = allocate(cls, segmentIndex(key), evicted);
+        if (handle == -1) {
+            if (log.isTraceEnabled())
+                log.trace(_loc.get("offheap-cache-full", key));
+        } else {
+            _memory.write(handle, bytes);
+            seg.lock();
+            try {
+                seg.add(key, new Entry(meta, handle, bytes.length, cls));
+                for (Object evict; (evict = seg.evictOverflow()) != null;)
+                    evicted.add(evict);
+            } finally {
+                seg.unlock();
+            }
+        }
+        for (Object evict : evicted)
+            keyRemoved(evict, true);
+        return old;
+    }
+
+    /**
+     * Allocate a chunk of the given size class, evicting the least recently
+     * used unpinned entries of that class when memory is full. Eviction
+     * starts at the segment with the given index and moves on to the others
+     * when it has nothing left to evict. If no entry of the class is left,
+     * the entries of the slab of another class with the fewest chunks in use
+     * are evicted, so that the slab can be carved up for this class instead.
+     * Returns -1 if no chunk could be freed.
+     */
+    private long allocate(int cls, int start, List<Object> evicted) {
+        long handle = _memory.allocate(cls);
+        for (int i = 0; i < _segments.length && handle == -1;) {
+            Segment cur = _segments[(start + i) % _segments.length];
+            Object evict;
+            cur.lock();
+            try {
+                evict = cur.evict(cls);
+            } finally {
+                cur.unlock();
+            }
+            if (evict == null)
+                i++;
+            else {
+                evicted.add(evict);
+                handle = _memory.allocate(cls);
+            }
+        }
+        if (handle != -1)
+            return handle;
+
+        int slab = _memory.victimSlab(cls);
+        if (slab == -1)
+            return -1;
+        for (Segment seg : _segments) {
+            seg.lock();
+            try {
+                seg.evictSlab(slab, evicted);
+            } finally {
+                seg.unlock();
+            }
+        }
+        return _memory.allocate(cls);
+    }
+
+    protected DataCachePCData removeInternal(Object key) {
+        Segment seg = segmentFor(key);
+        Entry entry;
+        byte[] bytes;
+        seg.lock();
+        try {
+            entry = seg.entries.get(key);
+            if (entry == null)
+                return null;
+            bytes = _memory.read(entry.handle, entry.length);
+            seg.remove(key);
+        } finally {
+            seg.unlock();
+        }
+        keyRemoved(key, false);
+        return _codec.decode(key, entry.meta, getName(), bytes);
+    }
+
+    protected void removeAllInternal(Class<?> cls, boolean subs) {
+        List<Object> removed = new ArrayList<Object>();
+        for (Segment seg : _segments) {
+            seg.lock();
+            try {
+                for (Iterator<Map.Entry<Object, Entry>> itr =
+                    seg.entries.entrySet().iterator(); itr.hasNext();) {
+                    Map.Entry<Object, Entry> e = itr.next();
+                    Class<?> type = e.getValue().meta.getDescribedType();
+                    if (type == cls
+                        || (subs && cls.isAssignableFrom(type))) {
+                        seg.release(e.getValue());
+                        itr.remove();
+                        removed.add(e.getKey());
+                    }
+                }
+            } finally {
+                seg.unlock();
+            }
+        }
+        for (Object key : removed)
+            keyRemoved(key, false);
+    }
+
+    protected void clearInternal() {
+        List<Object> removed = new ArrayList<Object>();
+        for (Segment seg : _segments) {
+            seg.lock();
+            try {
+                for (Map.Entry<Object, Entry> e : seg.entries.entrySet()) {
+                    seg.release(e.getValue());
+                    removed.add(e.getKey());
+                }
+                seg.entries.clear();
+                seg.pinned.clear();
+            } finally {
+                seg.unlock();
+            }
+        }
+        for (Object key : removed)
+            keyRemoved(key, false);
+    }
+
+    protected boolean pinInternal(Object key) {
+        Segment seg = segmentFor(key);
+        seg.lock();
+        try {
+            seg.pinned.add(key);
+            Entry entry = seg.entries.get(key);
+            if (entry == null)
+                return false;
+            seg.pin(entry);
+            return true;
+        } finally {
+            seg.unlock();
+        }
+    }
+
+    protected boolean unpinInternal(Object key) {
+        Segment seg = segmentFor(key);
+        List<Object> evicted = new ArrayList<Object>();
+        boolean unpinned = false;
+        seg.lock();
+        try {
+            if (!seg.pinned.remove(key))
+                return false;
+            Entry entry = seg.entries.get(key);
+            if (entry == null)
+                return false;
+            seg.unpin(entry);
+            unpinned = true;
+            for (Object evict; (evict = seg.evictOverflow()) != null;)
+                evicted.add(evict);
+        } finally {
+            seg.unlock();
+            for (Object evict : evicted)
+                keyRemoved(evict, true);
+        }
+        return unpinned;
+    }
+
+    protected boolean recacheUpdates() {
+        return true;
+    }
+
+    private Segment segmentFor(Object key) {
+        return _segments[segmentIndex(key)];
+    }
+
+    private int segmentIndex(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7FFFFFFF) % _segments.length;
+    }
+
+    private ClassMetaData getMetaData(Class<?> type) {
+        MetaDataRepository repos = conf.getMetaDataRepositoryInstance();
+        ClassMetaData meta = repos.getCachedMetaData(type);
+        if (meta == null)
+            meta = repos.getMetaData(type, null, false);
+        return meta;
+    }
+
+    /**
+     * Decode only the header of the data of the given entry, which callers
+     * of put use to learn whether and which version of the data was
+     * replaced. Only as many bytes as the header usually takes are read.
+     */
+    private DataCachePCData readHeader(Object key, Entry entry) {
+        int len = Math.min(entry.length, HEADER_LENGTH);
+        DataCachePCData data = _codec.decodeHeader(key, entry.meta,
+            getName(), _memory.read(entry.handle, len));
+        if (data == null && len < entry.length)
+            data = _codec.decodeHeader(key, entry.meta, getName(),
+                _memory.read(entry.handle, entry.length));
+        return data;
+    }
+
+    /**
+     * Parse a size in bytes with an optional K, M or G unit.
+     */
+    private static long parseSize(String size) {
+        size = size.trim().toUpperCase();
+        long unit = 1;
+        if (size.endsWith("B"))
+            size = size.substring(0, size.length() - 1);
+        if (size.endsWith("K"))
+            unit = 1024;
+        else if (size.endsWith("M"))
+            unit = 1024 * 1024;
+        else if (size.endsWith("G"))
+            unit = 1024 * 1024 * 1024;
+        if (unit != 1)
+            size = size.substring(0, size.length() - 1).trim();
+        return Long.parseLong(size) * unit;
+    }
+
+    /**
+     * Index entry of a cached instance. Unpinned entries are linked into the
+     * recency lists of their segment and of their size class within it.
+     */
+    private static class Entry {
+
+        final ClassMetaData meta;
+        final long handle;
+        final int length;
+        final int sizeClass;
+        Object key;
+        boolean pinned;
+
+        Entry prev;
+        Entry next;
+        Entry classPrev;
+        Entry classNext;
+
+        Entry(ClassMetaData meta, long handle, int length, int sizeClass) {
+            this.meta = meta;
+            this.handle = handle;
+            this.length = length;
+            this.sizeClass = sizeClass;
+        }
+    }
+
+    /**
+     * Independently locked part of the cache index. Unpinned entries are
+     * kept in least recently used order, both all together and per size
+     * class, so that the entry to evict is found in constant time.
+     */
+    private class Segment
+        extends ReentrantLock {
+
+        final Map<Object, Entry> entries = new HashMap<Object, Entry>();
+        final Set<Object> pinned = new HashSet<Object>();
+        final int max;
+        int unpinned = 0;
+
+        private Entry _head;
+        private Entry _tail;
+        private final Entry[] _classHead;
+        private final Entry[] _classTail;
+
+        Segment(int max) {
+            this.max = max;
+            _classHead = new Entry[_memory.getSizeClassCount()];
+            _classTail = new Entry[_classHead.length];
+        }
+
+        void add(Object key, Entry entry) {
+            entry.key = key;
+            entry.pinned = pinned.contains(key);
+            Entry prev = entries.put(key, entry);
+            if (prev != null)
+                release(prev);
+            if (!entry.pinned) {
+                link(entry);
+                unpinned++;
+            }
+        }
+
+        Entry remove(Object key) {
+            Entry entry = entries.remove(key);
+            if (entry != null)
+                release(entry);
+            return entry;
+        }
+
+        /**
+         * Free the memory of the given entry and take it out of the recency
+         * lists. Does not remove it from the entries map.
+         */
+        void release(Entry entry) {
+            _memory.free(entry.handle, entry.sizeClass);
+            if (!entry.pinned) {
+                unlink(entry);
+                unpinned--;
+            }
+        }
+
+        /**
+         * Record an access to the given entry.
+         */
+        void touch(Entry entry) {
+            if (!entry.pinned && entry != _tail) {
+                unlink(entry);
+                link(entry);
+            }
+        }
+
+        void pin(Entry entry) {
+            if (!entry.pinned) {
+                unlink(entry);
+                entry.pinned = true;
+                unpinned--;
+            }
+        }
+
+        void unpin(Entry entry) {
+            if (entry.pinned) {
+                entry.pinned = false;
+                link(entry);
+                unpinned++;
+            }
+        }
+
+        private void link(Entry entry) {
+            entry.prev = _tail;
+            entry.next = null;
+            if (_tail == null)
+                _head = entry;
+            else
+                _tail.next = entry;
+            _tail = entry;
+
+            int cls = entry.sizeClass;
+            entry.classPrev = _classTail[cls];
+            entry.classNext = null;
+            if (_classTail[cls] == null)
+                _classHead[cls] = entry;
+            else
+                _classTail[cls].classNext = entry;
+            _classTail[cls] = entry;
+        }
+
+        private void unlink(Entry entry) {
+            if (entry.prev == null)
+                _head = entry.next;
+            else
+                entry.prev.next = entry.next;
+            if (entry.next == null)
+                _tail = entry.prev;
+            else
+                entry.next.prev = entry.prev;
+
+            int cls = entry.sizeClass;
+            if (entry.classPrev == null)
+                _classHead[cls] = entry.classNext;
+            else
+                entry.classPrev.classNext = entry.classNext;
+            if (entry.classNext == null)
+                _classTail[cls] = entry.classPrev;
+            else
+                entry.classNext.classPrev = entry.classPrev;
+            entry.prev = entry.next = entry.classPrev = entry.classNext = null;
+        }
+
+        /**
+         * Evict the least recently used unpinned entry of the given size
+         * class, returning its key, or null if there is none.
+         */
+        Object evict(int sizeClass) {
+            return evict(_classHead[sizeClass]);
+        }
+
+        /**
+         * Evict the least recently used unpinned entry if the segment holds
+         * more than its maximum, returning its key, or null if none.
+         */
+        Object evictOverflow() {
+            if (max < 0 || unpinned <= max)
+                return null;
+            return evict(_head);
+        }
+
+        private Object evict(Entry entry) {
+            if (entry == null)
+                return null;
+            entries.remove(entry.key);
+            release(entry);
+            return entry.key;
+        }
+
+        /**
+         * Evict the unpinned entries whose chunks lie in the given slab,
+         * adding their keys to the given list.
+         */
+        void evictSlab(int slab, List<Object> evicted) {
+            for (Iterator<Map.Entry<Object, Entry>> itr =
+                entries.entrySet().iterator(); itr.hasNext();) {
+                Map.Entry<Object, Entry> e = itr.next();
+                if (!e.getValue().pinned
+                    && OffHeapMemory.slabOf(e.getValue().handle) == slab) {
+                    release(e.getValue());
+                    itr.remove();
+                    evicted.add(e.getKey());
+                }
+            }
+        }
+    }
+}
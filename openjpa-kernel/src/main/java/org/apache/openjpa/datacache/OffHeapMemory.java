@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.datacache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Memory outside of the Java heap, allocated in slabs of direct
+ * {@link ByteBuffer}s. Each slab is divided into chunks of a single size
+ * class, where size classes are powers of two from 64 bytes up to the slab
+ * size. Freed chunks are reused for allocations of the same size class.
+ * Once all memory is allocated, a slab none of whose chunks is in use is
+ * taken from its size class and carved up for the size class that needs it.
+ *
+ * Allocation is synchronized. Reads and writes of a chunk are not, and
+ * must be guarded by the owner of the chunk.
+ *
+ * @since 3.0.1
+ */
+class OffHeapMemory {
+
+    private static final int MIN_CHUNK_BITS = 6;
+
+    private final int _slabSize;
+    private final long _maxMemory;
+    private final int _classes;
+
+    // per size class: free chunk handles, and the slab being carved up
+    private final long[][] _free;
+    private final int[] _freeCount;
+    private final int[] _carveSlab;
+    private final int[] _carveOffset;
+
+    // per slab: the size class it is carved up for, and the number of its
+    // chunks in use
+    private volatile ByteBuffer[] _slabs = new ByteBuffer[0];
+    private int[] _slabClass = new int[0];
+    private int[] _slabUsed = new int[0];
+    private long _used = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param slabSize the size of each slab, which is also the largest
+     * allocation; rounded up to a power of two
+     * @param maxMemory the maximum number of bytes to allocate
+     */
+    public OffHeapMemory(int slabSize, long maxMemory) {
+        int bits = MIN_CHUNK_BITS;
+        while ((1 << bits) < slabSize)
+            bits++;
+        _slabSize = 1 << bits;
+        _maxMemory = maxMemory;
+        _classes = bits - MIN_CHUNK_BITS + 1;
+        _free = new long[_classes][];
+        _freeCount = new int[_classes];
+        _carveSlab = new int[_classes];
+        _carveOffset = new int[_classes];
+        for (int i = 0; i < _classes; i++) {
+            _free[i] = new long[16];
+            _carveSlab[i] = -1;
+        }
+    }
+
+    /**
+     * The number of size classes.
+     */
+    public int getSizeClassCount() {
+        return _classes;
+    }
+
+    /**
+     * The size of each slab.
+     */
+    public int getSlabSize() {
+        return _slabSize;
+    }
+
+    /**
+     * The maximum number of bytes to allocate.
+     */
+    public long getMaxMemory() {
+        return _maxMemory;
+    }
+
+    /**
+     * The number of bytes allocated in slabs.
+     */
+    public long getAllocatedMemory() {
+        return (long) _slabs.length * _slabSize;
+    }
+
+    /**
+     * The number of bytes in chunks currently in use.
+     */
+    public synchronized long getUsedMemory() {
+        return _used;
+    }
+
+    /**
+     * Return the size class for allocations of the given length, or -1 if
+     * the length exceeds the slab size.
+     */
+    public int sizeClass(int len) {
+        if (len > _slabSize)
+            return -1;
+        int cls = 0;
+        while ((1 << (cls + MIN_CHUNK_BITS)) < len)
+            cls++;
+        return cls;
+    }
+
+    /**
+     * The size of the chunks of the given size class.
+     */
+    public int chunkSize(int cls) {
+        return 1 << (cls + MIN_CHUNK_BITS);
+    }
+
+    /**
+     * Allocate a chunk of the given size class, returning its handle, or -1
+     * if there is no free chunk, no memory left for another slab, and no
+     * slab without chunks in use.
+     */
+    public synchronized long allocate(int cls) {
+        long handle;
+        if (_freeCount[cls] > 0)
+            handle = _free[cls][--_freeCount[cls]];
+        else {
+            int size = chunkSize(cls);
+            if (_carveSlab[cls] == -1 || _carveOffset[cls] + size > _slabSize) {
+                int slab = newSlab();
+                if (slab == -1)
+                    return -1;
+                _slabClass[slab] = cls;
+                _carveSlab[cls] = slab;
+                _carveOffset[cls] = 0;
+            }
+            handle = ((long) _carveSlab[cls] << 32) | _carveOffset[cls];
+            _carveOffset[cls] += size;
+        }
+        _slabUsed[slabOf(handle)]++;
+        _used += chunkSize(cls);
+        return handle;
+    }
+
+    /**
+     * Return the index of a slab to carve up: a newly allocated slab if
+     * memory is left, or else a slab of any size class none of whose chunks
+     * is in use. Returns -1 if there is none.
+     */
+    private int newSlab() {
+        if (getAllocatedMemory() + _slabSize <= _maxMemory) {
+            int len = _slabs.length;
+            ByteBuffer[] slabs = new ByteBuffer[len + 1];
+            System.arraycopy(_slabs, 0, slabs, 0, len);
+            slabs[len] = ByteBuffer.allocateDirect(_slabSize);
+            int[] slabClass = new int[len + 1];
+            System.arraycopy(_slabClass, 0, slabClass, 0, len);
+            int[] slabUsed = new int[len + 1];
+            System.arraycopy(_slabUsed, 0, slabUsed, 0, len);
+            _slabClass = slabClass;
+            _slabUsed = slabUsed;
+            _slabs = slabs;
+            return len;
+        }
+
+        for (int i = 0; i < _slabs.length; i++) {
+            if (_slabUsed[i] == 0) {
+                reclaim(i);
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Take the given slab, none of whose chunks is in use, from its size
+     * class by dropping its chunks from the free chunks of the class.
+     */
+    private void reclaim(int slab) {
+        int cls = _slabClass[slab];
+        if (_carveSlab[cls] == slab)
+            _carveSlab[cls] = -1;
+
+        long[] free = _free[cls];
+        int count = 0;
+        for (int i = 0; i < _freeCount[cls]; i++)
+            if (slabOf(free[i]) != slab)
+                free[count++] = free[i];
+        _freeCount[cls] = count;
+    }
+
+    /**
+     * Return the slab with the fewest chunks in use among the slabs of size
+     * classes other than the given one, or -1 if there is none. Freeing the
+     * chunks of this slab lets it be reclaimed for the given size class.
+     */
+    public synchronized int victimSlab(int cls) {
+        int victim = -1;
+        for (int i = 0; i < _slabs.length; i++)
+            if (_slabClass[i] != cls
+                && (victim == -1 || _slabUsed[i] < _slabUsed[victim]))
+                victim = i;
+        return victim;
+    }
+
+    /**
+     * Return the index of the slab of the chunk with the given handle.
+     */
+    public static int slabOf(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+    /**
+     * Return the chunk with the given handle to the free chunks of its size
+     * class.
+     */
+    public synchronized void free(long handle, int cls) {
+        if (_freeCount[cls] == _free[cls].length) {
+            long[] free = new long[_free[cls].length * 2];
+            System.arraycopy(_free[cls], 0, free, 0, _freeCount[cls]);
+            _free[cls] = free;
+        }
+        _free[cls][_freeCount[cls]++] = handle;
+        _slabUsed[slabOf(handle)]--;
+        _used -= chunkSize(cls);
+    }
+
+    /**
+     * Copy the given bytes into the chunk with the given handle.
+     */
+    public void write(long handle, byte[] bytes) {
+        ByteBuffer buf = _slabs[slabOf(handle)].duplicate();
+        buf.position((int) handle);
+        buf.put(bytes);
+    }
+
+    /**
+     * Copy the given number of bytes out of the chunk with the given handle.
+     */
+    public byte[] read(long handle, int len) {
+        ByteBuffer buf = _slabs[slabOf(handle)].duplicate();
+        buf.position((int) handle);
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,836 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.lib.util.StringUtil;
+import org.apache.openjpa.util.GeneralException;
+
+/**
+ * {@link RemoteCommitProvider} that propagates commit events to its peers
+ * over non-blocking socket channels. All network I/O of a provider is
+ * performed by a single selector thread, so a slow or unreachable peer does
+ * not hold up the delivery to the others or the committing threads.
+ * Events broadcast within the coalescing window are merged into a single
+ * frame, whose object ids use the compact {@link RemoteCommitEventCodec}
+ * encoding. While a peer is still busy receiving earlier frames the window
+ * is extended, so that a backlog results in fewer and larger frames. Frames
+ * exceeding a peer's queue limit, and frames for a peer that cannot be
+ * reached, are dropped and counted.
+ *
+ * @since 3.0.1
+ */
+public class NIORemoteCommitProvider
+    extends AbstractRemoteCommitProvider
+    implements Runnable {
+
+    private static final int DEFAULT_PORT = 5637;
+    private static final int PROTOCOL_VERSION = 0x4f4a4e01;
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_DEFERRALS = 10;
+    // milliseconds queued frames are given to go out on close, and that
+    // close waits for the I/O thread to stop
+    private static final int CLOSE_DRAIN_MILLIS = 1000;
+    private static final int CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private static final Localizer s_loc = Localizer.forPackage
+        (NIORemoteCommitProvider.class);
+    private static long s_idSequence = System.currentTimeMillis();
+
+    private final long _id;
+    private int _port = DEFAULT_PORT;
+    private String _addresses = "";
+    private int _coalesceWindowMillis = 5;
+    private int _maxQueuedBytes = 8 * 1024 * 1024;
+    private int _recoveryTimeMillis = 15000;
+
+    private OpenJPAConfiguration _conf;
+    private RemoteCommitEventCodec _codec;
+    private final List<Peer> _peers = new ArrayList<Peer>();
+    private Selector _selector;
+    private ServerSocketChannel _server;
+    private Thread _thread;
+    private volatile boolean _running;
+
+    // events waiting for the next frame and the nanoTime it is due
+    private final List<RemoteCommitEvent> _pending =
+        new ArrayList<RemoteCommitEvent>();
+    private long _flushAt;
+    private int _deferrals;
+
+    private final AtomicLong _eventsSent = new AtomicLong();
+    private final AtomicLong _eventsReceived = new AtomicLong();
+    private final AtomicLong _framesSent = new AtomicLong();
+    private final AtomicLong _framesReceived = new AtomicLong();
+    private final AtomicLong _framesDropped = new AtomicLong();
+    private final AtomicLong _framesDeferred = new AtomicLong();
+    private final AtomicLong _bytesSent = new AtomicLong();
+    private final AtomicLong _queuedBytes = new AtomicLong();
+    private final AtomicLong _peakQueuedBytes = new AtomicLong();
+
+    public NIORemoteCommitProvider() {
+        synchronized (NIORemoteCommitProvider.class) {
+            _id = s_idSequence++;
+        }
+    }
+
+    /**
+     * The port that this provider should listen on.
+     */
+    public int getPort() {
+        return _port;
+    }
+
+    /**
+     * The port that this provider should listen on. Set once only.
+     */
+    public void setPort(int port) {
+        _port = port;
+    }
+
+    /**
+     * The semicolon-separated list of peers to send events to, in the form
+     * "myhost1:portA;myhost2:portB". An entry naming this provider's own
+     * port on a local address is ignored, so that all members of a cluster
+     * can share the same list.
+     */
+    public String getAddresses() {
+        return _addresses;
+    }
+
+    /**
+     * The semicolon-separated list of peers to send events to, in the form
+     * "myhost1:portA;myhost2:portB". Set once only.
+     */
+    public void setAddresses(String addresses) {
+        _addresses = (addresses == null) ? "" : addresses;
+    }
+
+    /**
+     * The number of milliseconds events are collected before being sent as
+     * a single frame. Defaults to 5. A value of 0 sends each event as soon as
+     * the I/O thread gets to it, which still coalesces events broadcast
+     * while it is busy.
+     */
+    public int getCoalesceWindowMillis() {
+        return _coalesceWindowMillis;
+    }
+
+    /**
+     * The number of milliseconds events are collected before being sent as
+     * a single frame.
+     */
+    public void setCoalesceWindowMillis(int millis) {
+        _coalesceWindowMillis = Math.max(0, millis);
+    }
+
+    /**
+     * The maximum number of bytes queued for a single peer. Frames that
+     * would exceed the limit are dropped. Defaults to 8MB.
+     */
+    public int getMaxQueuedBytes() {
+        return _maxQueuedBytes;
+    }
+
+    /**
+     * The maximum number of bytes queued for a single peer.
+     */
+    public void setMaxQueuedBytes(int bytes) {
+        _maxQueuedBytes = bytes;
+    }
+
+    /**
+     * The number of milliseconds to wait before retrying
+     * to reconnect to a peer after it becomes unreachable.
+     */
+    public int getRecoveryTimeMillis() {
+        return _recoveryTimeMillis;
+    }
+
+    /**
+     * The number of milliseconds to wait before retrying
+     * to reconnect to a peer after it becomes unreachable.
+     */
+    public void setRecoveryTimeMillis(int millis) {
+        _recoveryTimeMillis = millis;
+    }
+
+    /**
+     * The number of events broadcast by this provider.
+     */
+    public long getEventsSent() {
+        return _eventsSent.get();
+    }
+
+    /**
+     * The number of events received from peers.
+     */
+    public long getEventsReceived() {
+        return _eventsReceived.get();
+    }
+
+    /**
+     * The number of frames completely written to peers. A frame is counted
+     * once for each peer.
+     */
+    public long getFramesSent() {
+        return _framesSent.get();
+    }
+
+    /**
+     * The number of frames received from peers.
+     */
+    public long getFramesReceived() {
+        return _framesReceived.get();
+    }
+
+    /**
+     * The number of frames not delivered to a peer, either because the
+     * peer was unreachable or because its queue was full.
+     */
+    public long getFramesDropped() {
+        return _framesDropped.get();
+    }
+
+    /**
+     * The number of times sending pending events was postponed because a
+     * peer was still busy receiving earlier frames.
+     */
+    public long getFramesDeferred() {
+        return _framesDeferred.get();
+    }
+
+    /**
+     * The number of bytes written to peers.
+     */
+    public long getBytesSent() {
+        return _bytesSent.get();
+    }
+
+    /**
+     * The number of bytes currently queued for all peers.
+     */
+    public long getQueuedBytes() {
+        return _queuedBytes.get();
+    }
+
+    /**
+     * The largest number of bytes queued for all peers at any time.
+     */
+    public long getPeakQueuedBytes() {
+        return _peakQueuedBytes.get();
+    }
+
+    // ---------- Configurable implementation ----------
+
+    public void setConfiguration(Configuration conf) {
+        super.setConfiguration(conf);
+        _conf = (OpenJPAConfiguration) conf;
+    }
+
+    public void endConfiguration() {
+        super.endConfiguration();
+        ClassLoader loader = (_conf == null)
+            ? getClass().getClassLoader()
+            : _conf.getClassResolverInstance().getClassLoader(getClass(),
+                null);
+        _codec = new RemoteCommitEventCodec(loader);
+        try {
+            parseAddresses();
+            _selector = Selector.open();
+            _server = ServerSocketChannel.open();
+            _server.socket().setReuseAddress(true);
+            _server.socket().bind(new InetSocketAddress(_port));
+            _server.configureBlocking(false);
+            _server.register(_selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException ioe) {
+            closeQuietly();
+            throw new GeneralException(s_loc.get("nio-init-exception",
+                String.valueOf(_port)), ioe).setFatal(true);
+        }
+
+        _running = true;
+        _thread = new Thread(this, "OpenJPA-NIORemoteCommitProvider-"
+            + _port);
+        _thread.setDaemon(true);
+        _thread.start();
+        if (log.isInfoEnabled())
+            log.info(s_loc.get("tcp-start-listener", String.valueOf(_port)));
+    }
+
+    private void parseAddresses()
+        throws UnknownHostException, SocketException {
+        String[] toks = StringUtil.split(_addresses, ";", 0);
+        for (int i = 0; i < toks.length; i++) {
+            String host = toks[i].trim();
+            if (host.length() == 0)
+                continue;
+            int port = DEFAULT_PORT;
+            int colon = host.lastIndexOf(':');
+            if (colon != -1) {
+                port = Integer.parseInt(host.substring(colon + 1));
+                host = host.substring(0, colon);
+            }
+            InetAddress address = InetAddress.getByName(host);
+            if (port == _port && isLocal(address)) {
+                if (log.isTraceEnabled())
+                    log.trace(s_loc.get("tcp-address-asself",
+                        host + ":" + port));
+                continue;
+            }
+            _peers.add(new Peer(new InetSocketAddress(address, port)));
+            if (log.isTraceEnabled())
+                log.trace(s_loc.get("tcp-address-set", host + ":" + port));
+        }
+    }
+
+    private static boolean isLocal(InetAddress address)
+        throws SocketException {
+        return address.isAnyLocalAddress() || address.isLoopbackAddress()
+            || NetworkInterface.getByInetAddress(address) != null;
+    }
+
+    // ---------- RemoteCommitProvider implementation ----------
+
+    public void broadcast(RemoteCommitEvent event) {
+        boolean wakeup;
+        synchronized (_pending) {
+            _pending.add(event);
+            wakeup = _pending.size() == 1;
+            if (wakeup) {
+                _flushAt = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(_coalesceWindowMillis);
+                _deferrals = 0;
+            }
+        }
+        _eventsSent.incrementAndGet();
+        if (wakeup && _selector != null)
+            _selector.wakeup();
+    }
+
+    public void close() {
+        if (!_running)
+            return;
+        _running = false;
+        _selector.wakeup();
+        try {
+            _thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException ie) {
+            // Ignore.
+        }
+        if (_thread.isAlive() && log.isWarnEnabled())
+            log.warn(s_loc.get("nio-close-timeout",
+                String.valueOf(CLOSE_TIMEOUT_MILLIS)));
+    }
+
+    // ---------- I/O thread ----------
+
+    public void run() {
+        try {
+            while (_running) {
+                _selector.select(getSelectTimeout());
+                processSelectedKeys();
+                flushPending(false);
+            }
+
+            // give queued events a last chance to go out before closing
+            flushPending(true);
+            long end = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(CLOSE_DRAIN_MILLIS);
+            while (hasQueuedFrames() && System.nanoTime() < end) {
+                _selector.select(100);
+                processSelectedKeys();
+            }
+        } catch (Throwable t) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("nio-thread-error"), t);
+        } finally {
+            closeQuietly();
+            if (log.isInfoEnabled())
+                log.info(s_loc.get("tcp-close-listener",
+                    String.valueOf(_port)));
+        }
+    }
+
+    /**
+     * Milliseconds until pending events are due, or 0 to wait until woken.
+     */
+    private long getSelectTimeout() {
+        synchronized (_pending) {
+            if (_pending.isEmpty())
+                return 0;
+            long millis = TimeUnit.NANOSECONDS.toMillis(_flushAt
+                - System.nanoTime());
+            return Math.max(1, millis);
+        }
+    }
+
+    private void processSelectedKeys() {
+        Set<SelectionKey> keys = _selector.selectedKeys();
+        for (Iterator<SelectionKey> itr = keys.iterator(); itr.hasNext();) {
+            SelectionKey key = itr.next();
+            itr.remove();
+            if (!key.isValid())
+                continue;
+            if (key.isAcceptable()) {
+                accept();
+                continue;
+            }
+
+            Object att = key.attachment();
+            if (att instanceof Peer) {
+                Peer peer = (Peer) att;
+                try {
+                    if (key.isConnectable())
+                        peer.finishConnect();
+                    if (key.isValid() && key.isWritable())
+                        peer.write();
+                    // peers never send on outgoing connections, so a
+                    // readable channel has been closed by the peer
+                    if (key.isValid() && key.isReadable())
+                        peer.checkClosed();
+                } catch (IOException ioe) {
+                    peer.fail(ioe);
+                }
+            } else {
+                Receiver receiver = (Receiver) att;
+                try {
+                    receiver.read();
+                } catch (IOException ioe) {
+                    if (log.isWarnEnabled())
+                        log.warn(s_loc.get("tcp-receive-error"), ioe);
+                    receiver.close();
+                } catch (RuntimeException re) {
+                    // a malformed frame must not stop the I/O thread
+                    if (log.isWarnEnabled())
+                        log.warn(s_loc.get("nio-receive-failed",
+                            receiver._channel.socket()
+                            .getRemoteSocketAddress()), re);
+                    receiver.close();
+                }
+            }
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = _server.accept();
+            if (channel == null)
+                return;
+            channel.configureBlocking(false);
+            Receiver receiver = new Receiver(channel);
+            channel.register(_selector, SelectionKey.OP_READ, receiver);
+            if (log.isTraceEnabled())
+                log.trace(s_loc.get("tcp-received-connection",
+                    channel.socket().getRemoteSocketAddress()));
+        } catch (IOException ioe) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("tcp-accept-error"), ioe);
+        }
+    }
+
+    /**
+     * Encode the pending events into a frame and queue it for each peer,
+     * once they are due and no peer is still busy with earlier frames.
+     */
+    private void flushPending(boolean force) {
+        List<RemoteCommitEvent> events;
+        synchronized (_pending) {
+            if (_pending.isEmpty())
+                return;
+            long now = System.nanoTime();
+            if (!force && now < _flushAt)
+                return;
+            if (!force && _deferrals < MAX_DEFERRALS && isBacklogged()) {
+                _deferrals++;
+                _framesDeferred.incrementAndGet();
+                _flushAt = now + TimeUnit.MILLISECONDS.toNanos(
+                    Math.max(1, _coalesceWindowMillis));
+                return;
+            }
+            events = new ArrayList<RemoteCommitEvent>(_pending);
+            _pending.clear();
+        }
+        if (_peers.isEmpty())
+            return;
+
+        byte[] frame;
+        try {
+            frame = encode(coalesce(events));
+        } catch (IOException ioe) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("tcp-payload-create-error"), ioe);
+            return;
+        }
+        for (Peer peer : _peers)
+            peer.enqueue(frame);
+    }
+
+    private boolean isBacklogged() {
+        for (Peer peer : _peers)
+            if (peer.isBacklogged())
+                return true;
+        return false;
+    }
+
+    private boolean hasQueuedFrames() {
+        for (Peer peer : _peers)
+            if (!peer._queue.isEmpty())
+                return true;
+        return false;
+    }
+
+    /**
+     * Merge events of the same payload type.
+     */
+    private static List<RemoteCommitEvent> coalesce(
+        List<RemoteCommitEvent> events) {
+        if (events.size() == 1)
+            return events;
+
+        List<RemoteCommitEvent> merged = new ArrayList<RemoteCommitEvent>(4);
+        for (int payload = RemoteCommitEvent.PAYLOAD_OIDS;
+            payload <= RemoteCommitEvent.PAYLOAD_LOCAL_STALE_DETECTION;
+            payload++) {
+            Set addIds = null;
+            Set addClasses = null;
+            Set updates = null;
+            Set deletes = null;
+            for (RemoteCommitEvent event : events) {
+                if (event.getPayloadType() != payload)
+                    continue;
+                if (addClasses == null) {
+                    addClasses = new LinkedHashSet();
+                    updates = new LinkedHashSet();
+                    deletes = new LinkedHashSet();
+                }
+                addClasses.addAll(event.getPersistedTypeNames());
+                if (payload == RemoteCommitEvent.PAYLOAD_EXTENTS) {
+                    updates.addAll(event.getUpdatedTypeNames());
+                    deletes.addAll(event.getDeletedTypeNames());
+                    continue;
+                }
+                if (payload == RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS) {
+                    if (addIds == null)
+                        addIds = new LinkedHashSet();
+                    addIds.addAll(event.getPersistedObjectIds());
+                }
+                updates.addAll(event.getUpdatedObjectIds());
+                deletes.addAll(event.getDeletedObjectIds());
+            }
+            if (addClasses != null)
+                merged.add(new RemoteCommitEvent(payload, addIds, addClasses,
+                    updates, deletes));
+        }
+        return merged;
+    }
+
+    private byte[] encode(Collection<RemoteCommitEvent> events)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // length placeholder
+        out.writeInt(PROTOCOL_VERSION);
+        out.writeLong(_id);
+        _codec.write(out, events);
+        out.flush();
+
+        byte[] frame = bytes.toByteArray();
+        int len = frame.length - 4;
+        frame[0] = (byte) (len >>> 24);
+        frame[1] = (byte) (len >>> 16);
+        frame[2] = (byte) (len >>> 8);
+        frame[3] = (byte) len;
+        return frame;
+    }
+
+    private void receive(byte[] frame, SocketChannel channel)
+        throws IOException {
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(frame));
+        if (in.readInt() != PROTOCOL_VERSION) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("tcp-wrong-version-error",
+                    channel.socket().getRemoteSocketAddress()));
+            return;
+        }
+        if (in.readLong() == _id)
+            return;
+
+        List<RemoteCommitEvent> events;
+        try {
+            events = _codec.read(in);
+        } catch (ClassNotFoundException cnfe) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("tcp-receive-error"), cnfe);
+            return;
+        }
+        _framesReceived.incrementAndGet();
+        if (log.isTraceEnabled())
+            log.trace(s_loc.get("tcp-received-event",
+                channel.socket().getRemoteSocketAddress()));
+        for (RemoteCommitEvent event : events) {
+            _eventsReceived.incrementAndGet();
+            if (eventManager != null)
+                fireEvent(event);
+        }
+    }
+
+    private void addQueuedBytes(long bytes) {
+        long queued = _queuedBytes.addAndGet(bytes);
+        long peak;
+        while (queued > (peak = _peakQueuedBytes.get())
+            && !_peakQueuedBytes.compareAndSet(peak, queued));
+    }
+
+    private void closeQuietly() {
+        for (Peer peer : _peers)
+            peer.close();
+        try {
+            if (_selector != null) {
+                for (SelectionKey key : _selector.keys())
+                    if (key.attachment() instanceof Receiver)
+                        ((Receiver) key.attachment()).close();
+                _selector.close();
+            }
+        } catch (IOException ioe) {
+            // Ignore.
+        }
+        try {
+            if (_server != null)
+                _server.close();
+        } catch (IOException ioe) {
+            // Ignore.
+        }
+    }
+
+    /**
+     * Outgoing connection to a peer and the frames queued for it. Only
+     * accessed by the I/O thread.
+     */
+    private class Peer {
+
+        private final InetSocketAddress _address;
+        private final LinkedList<ByteBuffer> _queue =
+            new LinkedList<ByteBuffer>();
+        private SocketChannel _channel;
+        private SelectionKey _key;
+        private boolean _connected;
+        private long _queued;
+        private long _retryAt;
+        private boolean _overflowed;
+
+        Peer(InetSocketAddress address) {
+            _address = address;
+        }
+
+        boolean isBacklogged() {
+            return _connected && !_queue.isEmpty();
+        }
+
+        void enqueue(byte[] frame) {
+            if (_channel == null) {
+                if (_retryAt != 0 && System.nanoTime() - _retryAt < 0) {
+                    _framesDropped.incrementAndGet();
+                    return;
+                }
+                try {
+                    connect();
+                } catch (IOException ioe) {
+                    fail(ioe);
+                    _framesDropped.incrementAndGet();
+                    return;
+                }
+            }
+
+            if (_queued + frame.length > _maxQueuedBytes) {
+                _framesDropped.incrementAndGet();
+                if (!_overflowed && log.isWarnEnabled())
+                    log.warn(s_loc.get("nio-queue-full", _address,
+                        String.valueOf(_maxQueuedBytes)));
+                _overflowed = true;
+                return;
+            }
+            _overflowed = false;
+            _queue.add(ByteBuffer.wrap(frame));
+            _queued += frame.length;
+            addQueuedBytes(frame.length);
+            if (_connected)
+                _key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        void connect()
+            throws IOException {
+            if (log.isTraceEnabled())
+                log.trace(s_loc.get("nio-open-connection", _address));
+            _channel = SocketChannel.open();
+            _channel.configureBlocking(false);
+            _channel.socket().setTcpNoDelay(true);
+            if (_channel.connect(_address)) {
+                _key = _channel.register(_selector, SelectionKey.OP_READ,
+                    this);
+                _connected = true;
+            } else
+                _key = _channel.register(_selector, SelectionKey.OP_CONNECT,
+                    this);
+        }
+
+        void finishConnect()
+            throws IOException {
+            if (!_channel.finishConnect())
+                return;
+            _connected = true;
+            _retryAt = 0;
+            _key.interestOps((_queue.isEmpty()) ? SelectionKey.OP_READ
+                : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        void write()
+            throws IOException {
+            while (!_queue.isEmpty()) {
+                ByteBuffer buf = _queue.getFirst();
+                _bytesSent.addAndGet(_channel.write(buf));
+                if (buf.hasRemaining())
+                    return;
+                _queue.removeFirst();
+                _queued -= buf.capacity();
+                addQueuedBytes(-buf.capacity());
+                _framesSent.incrementAndGet();
+            }
+            _key.interestOps(SelectionKey.OP_READ);
+        }
+
+        void checkClosed()
+            throws IOException {
+            ByteBuffer buf = ByteBuffer.allocate(64);
+            if (_channel.read(buf) < 0)
+                throw new IOException(s_loc.get("nio-peer-closed", _address)
+                    .getMessage());
+        }
+
+        /**
+         * Drop the connection and its queued frames, and wait for the
+         * recovery time before connecting again.
+         */
+        void fail(IOException ioe) {
+            if (log.isWarnEnabled())
+                log.warn(s_loc.get("tcp-send-error", _address), ioe);
+            _framesDropped.addAndGet(_queue.size());
+            close();
+            _retryAt = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(_recoveryTimeMillis);
+        }
+
+        void close() {
+            addQueuedBytes(-_queued);
+            _queue.clear();
+            _queued = 0;
+            _connected = false;
+            if (_channel != null) {
+                try {
+                    _channel.close();
+                } catch (IOException ioe) {
+                    // Ignore.
+                }
+            }
+            _channel = null;
+            _key = null;
+        }
+    }
+
+    /**
+     * Incoming connection from a peer, assembling the frames it receives.
+     * Only accessed by the I/O thread.
+     */
+    private class Receiver {
+
+        private final SocketChannel _channel;
+        private ByteBuffer _buf = ByteBuffer.allocate(8 * 1024);
+
+        Receiver(SocketChannel channel) {
+            _channel = channel;
+        }
+
+        void read()
+            throws IOException {
+            int read = _channel.read(_buf);
+            if (read < 0) {
+                close();
+                return;
+            }
+
+            _buf.flip();
+            while (_buf.remaining() >= 4) {
+                int len = _buf.getInt(_buf.position());
+                if (len < 12 || len > MAX_FRAME_SIZE)
+                    throw new IOException(s_loc.get("nio-bad-frame",
+                        String.valueOf(len)).getMessage());
+                if (_buf.remaining() < len + 4) {
+                    if (_buf.capacity() < len + 4) {
+                        ByteBuffer grown = ByteBuffer.allocate(len + 4);
+                        grown.put(_buf);
+                        _buf = grown;
+                        return;
+                    }
+                    break;
+                }
+                _buf.getInt();
+                byte[] frame = new byte[len];
+                _buf.get(frame);
+                receive(frame, _channel);
+            }
+            _buf.compact();
+        }
+
+        void close() {
+            try {
+                _channel.close();
+            } catch (IOException ioe) {
+                // Ignore.
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.util.CompactEncoding;
+import org.apache.openjpa.util.OpenJPAId;
+import org.apache.openjpa.util.Serialization;
+
+/**
+ * Compact binary encoding of {@link RemoteCommitEvent}s. Datastore
+ * identities and single field identities of <code>long</code>,
+ * <code>int</code> and <code>String</code> keys are written as a reference
+ * to their type name followed by a variable length key, where each type name
+ * is written once per encoded block. Other object ids fall back to Java
+ * serialization.
+ *
+ * @see CompactEncoding
+ * @since 3.0.1
+ */
+public class RemoteCommitEventCodec {
+
+    // tags 1 to 4 are the object id tags of CompactEncoding
+    private static final byte NULL = 0;
+    private static final byte NAME = 5;
+    private static final byte SERIALIZED = 6;
+
+    private static final int SUBCLASSES = 0x80;
+
+    private static final Localizer _loc = Localizer.forPackage
+        (RemoteCommitEventCodec.class);
+
+    private final ClassLoader _loader;
+    private final Map<String, Class<?>> _types =
+        new ConcurrentHashMap<String, Class<?>>();
+
+    /**
+     * Constructor; supply the loader used to resolve the types of decoded
+     * object ids.
+     */
+    public RemoteCommitEventCodec(ClassLoader loader) {
+        _loader = loader;
+    }
+
+    /**
+     * Write the given events.
+     */
+    public void write(DataOutput out, Collection<RemoteCommitEvent> events)
+        throws IOException {
+        Map<String, Integer> names = new HashMap<String, Integer>();
+        CompactEncoding.writeVarLong(out, events.size());
+        for (RemoteCommitEvent event : events) {
+            int payload = event.getPayloadType();
+            out.writeByte(payload);
+            if (payload == RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS)
+                writeCollection(out, event.getPersistedObjectIds(), names);
+            writeCollection(out, event.getPersistedTypeNames(), names);
+            if (payload == RemoteCommitEvent.PAYLOAD_EXTENTS) {
+                writeCollection(out, event.getUpdatedTypeNames(), names);
+                writeCollection(out, event.getDeletedTypeNames(), names);
+            } else {
+                writeCollection(out, event.getUpdatedObjectIds(), names);
+                writeCollection(out, event.getDeletedObjectIds(), names);
+            }
+        }
+    }
+
+    /**
+     * Read events written by {@link #write}. Malformed input results in an
+     * {@link IOException}; counts and lengths are checked against the bytes
+     * left in the input when it is a stream.
+     */
+    public List<RemoteCommitEvent> read(DataInput in)
+        throws IOException, ClassNotFoundException {
+        List<String> names = new ArrayList<String>();
+        int size = CompactEncoding.readLength(in);
+        List<RemoteCommitEvent> events = new ArrayList<RemoteCommitEvent>(size);
+        for (int i = 0; i < size; i++) {
+            int payload = in.readByte();
+            Collection addIds = null;
+            if (payload == RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS)
+                addIds = readCollection(in, names);
+            Collection addClasses = readCollection(in, names);
+            Collection updates = readCollection(in, names);
+            Collection deletes = readCollection(in, names);
+            events.add(new RemoteCommitEvent(payload, addIds, addClasses,
+                updates, deletes));
+        }
+        return events;
+    }
+
+    private void writeCollection(DataOutput out, Collection c,
+        Map<String, Integer> names)
+        throws IOException {
+        CompactEncoding.writeVarLong(out, c.size());
+        for (Iterator itr = c.iterator(); itr.hasNext();)
+            writeValue(out, itr.next(), names);
+    }
+
+    private Collection readCollection(DataInput in, List<String> names)
+        throws IOException, ClassNotFoundException {
+        int size = CompactEncoding.readLength(in);
+        List c = new ArrayList(size);
+        for (int i = 0; i < size; i++)
+            c.add(readValue(in, names));
+        return c;
+    }
+
+    private void writeValue(DataOutput out, Object val,
+        Map<String, Integer> names)
+        throws IOException {
+        if (val == null) {
+            out.writeByte(NULL);
+            return;
+        }
+        if (val instanceof String) {
+            out.writeByte(NAME);
+            writeName(out, (String) val, names);
+            return;
+        }
+
+        byte tag = CompactEncoding.getIdTag(val);
+        if (tag == 0) {
+            out.writeByte(SERIALIZED);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            oos.writeObject(val);
+            oos.close();
+            CompactEncoding.writeBytes(out, bytes.toByteArray());
+            return;
+        }
+
+        OpenJPAId id = (OpenJPAId) val;
+        out.writeByte((id.hasSubclasses()) ? tag | SUBCLASSES : tag);
+        writeName(out, id.getType().getName(), names);
+        CompactEncoding.writeIdKey(out, id);
+    }
+
+    private Object readValue(DataInput in, List<String> names)
+        throws IOException, ClassNotFoundException {
+        int tag = in.readByte() & 0xFF;
+        boolean subs = (tag & SUBCLASSES) != 0;
+        tag &= ~SUBCLASSES;
+        switch (tag) {
+            case NULL:
+                return null;
+            case NAME:
+                return readName(in, names);
+            case SERIALIZED:
+                byte[] bytes = CompactEncoding.readBytes(in);
+                ObjectInputStream ois =
+                    new Serialization.ClassResolvingObjectInputStream(
+                        new ByteArrayInputStream(bytes));
+                try {
+                    return ois.readObject();
+                } finally {
+                    ois.close();
+                }
+            case CompactEncoding.DATASTORE_ID:
+            case CompactEncoding.LONG_ID:
+            case CompactEncoding.INT_ID:
+            case CompactEncoding.STRING_ID:
+                return CompactEncoding.readId(in, tag,
+                    toType(readName(in, names)), subs);
+            default:
+                throw CompactEncoding.unknownTag(tag);
+        }
+    }
+
+    /**
+     * Names are written in full on first use within a block and as an index
+     * afterwards.
+     */
+    private static void writeName(DataOutput out, String name,
+        Map<String, Integer> names)
+        throws IOException {
+        Integer idx = names.get(name);
+        if (idx != null) {
+            CompactEncoding.writeVarLong(out, idx.intValue() + 1);
+            return;
+        }
+        names.put(name, names.size());
+        CompactEncoding.writeVarLong(out, 0);
+        CompactEncoding.writeString(out, name);
+    }
+
+    private static String readName(DataInput in, List<String> names)
+        throws IOException {
+        long idx = CompactEncoding.readVarLong(in);
+        if (idx < 0 || idx > names.size())
+            throw new IOException(_loc.get("codec-bad-name",
+                String.valueOf(idx)).getMessage());
+        if (idx > 0)
+            return names.get((int) idx - 1);
+        String name = CompactEncoding.readString(in);
+        names.add(name);
+        return name;
+    }
+
+    private Class<?> toType(String name)
+        throws ClassNotFoundException {
+        Class<?> type = _types.get(name);
+        if (type == null) {
+            type = Class.forName(name, true, _loader);
+            _types.put(name, type);
+        }
+        return type;
+    }
+}
@@ -42,7 +42,9 @@ public class JMXProvider
     public static final String[] JMX_INSTRUMENT_ALIASES = {
         "DataCache", "org.apache.openjpa.instrumentation.jmx.DataCacheJMXInstrument",
         "QueryCache", "org.apache.openjpa.instrumentation.jmx.QueryCacheJMXInstrument",
-        "QuerySQLCache", "org.apache.openjpa.instrumentation.jmx.PreparedQueryCacheJMXInstrument"
+        "QuerySQLCache", "org.apache.openjpa.instrumentation.jmx.PreparedQueryCacheJMXInstrument",
+        "SQLStatistics", "org.apache.openjpa.jdbc.instrumentation.jmx.SQLStatisticsJMXInstrument",
+        "WriteBehind", "org.apache.openjpa.jdbc.instrumentation.jmx.WriteBehindJMXInstrument"
     };
     
     /**
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -32,6 +33,10 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 import javax.transaction.Status;
@@ -63,6 +68,7 @@ import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.lib.util.concurrent.ConcurrentReferenceHashSet;
 import org.apache.openjpa.meta.MetaDataModes;
 import org.apache.openjpa.meta.MetaDataRepository;
+import org.apache.openjpa.meta.QueryMetaData;
 import org.apache.openjpa.util.GeneralException;
 import org.apache.openjpa.util.InternalException;
 import org.apache.openjpa.util.InvalidStateException;
@@ -889,6 +895,17 @@ public abstract class AbstractBrokerFactory
             mdr.preload();
         }
 
+        // Map a persistent query compilation cache up front rather than on the first query.
+        Map compCache = _conf.getQueryCompilationCacheInstance();
+        if (compCache instanceof PersistentQueryCompilationCache) {
+            ((PersistentQueryCompilationCache) compCache).open();
+        }
+
+        // Compile after mapping the persistent cache so that the compilations are stored with it.
+        if (MetaDataRepository.needsQueryCompilation(_conf) == true) {
+            compileQueries();
+        }
+
         // Get a DataCacheManager instance up front to avoid threading concerns on first call.
         // _conf.getDataCacheManagerInstance();
 
@@ -898,5 +915,107 @@ public abstract class AbstractBrokerFactory
             imgr.start(InstrumentationLevel.FACTORY, this);
         }
     }
-}
 
+    /**
+     * Compile all named queries in parallel, each thread with a broker of its own. Logs the compile time of the
+     * queries, and throws an exception listing all invalid queries.
+     */
+    private void compileQueries() {
+        final MetaDataRepository mdr = _conf.getMetaDataRepositoryInstance();
+        ClassLoader loader = _conf.getClassResolverInstance().getClassLoader(getClass(),
+            AccessController.doPrivileged(J2DoPrivHelper.getContextClassLoaderAction()));
+        // parsing the metadata of the persistent types registers their named queries
+        for (Class<?> cls : mdr.loadPersistentTypes(false, loader)) {
+            mdr.getMetaData(cls, loader, false);
+        }
+        final QueryMetaData[] qmds = mdr.getQueryMetaDatas();
+        if (qmds.length == 0) {
+            return;
+        }
+
+        final long[] times = new long[qmds.length];
+        final RuntimeException[] errors = new RuntimeException[qmds.length];
+        final AtomicInteger next = new AtomicInteger();
+        int threads = Math.max(1, Math.min(mdr.getPreloadParallelism(), qmds.length));
+        long start = System.currentTimeMillis();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(new Runnable() {
+                    public void run() {
+                        Broker broker = newBroker(_conf.getConnectionUserName(), _conf.getConnectionPassword(),
+                            _conf.isConnectionFactoryModeManaged(), _conf.getConnectionRetainModeConstant(), false);
+                        try {
+                            for (int j = next.getAndIncrement(); j < qmds.length; j = next.getAndIncrement()) {
+                                long begin = System.nanoTime();
+                                try {
+                                    Query q = broker.newQuery(qmds[j].getLanguage(), null);
+                                    qmds[j].setInto(q);
+                                    q.compile();
+                                } catch (RuntimeException re) {
+                                    errors[j] = re;
+                                }
+                                times[j] = System.nanoTime() - begin;
+                            }
+                        } finally {
+                            broker.close();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException ee) {
+            throw new GeneralException(ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new GeneralException(ie);
+        } finally {
+            pool.shutdownNow();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        Integer[] order = new Integer[qmds.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return Long.compare(times[i2], times[i1]);
+            }
+        });
+        Log log = _conf.getLog(OpenJPAConfiguration.LOG_QUERY);
+        if (log.isTraceEnabled()) {
+            for (Integer i : order) {
+                log.trace(_loc.get("compile-query-time", qmds[i].getName(), times[i] / 1000000));
+            }
+        }
+        if (log.isInfoEnabled()) {
+            StringBuilder slowest = new StringBuilder();
+            for (int i = 0; i < Math.min(5, order.length); i++) {
+                if (i > 0) {
+                    slowest.append(", ");
+                }
+                slowest.append(qmds[order[i]].getName()).append(" (").append(times[order[i]] / 1000000)
+                    .append(" ms)");
+            }
+            log.info(_loc.get("compile-queries", qmds.length, elapsed, slowest));
+        }
+
+        List<String> names = new ArrayList<String>();
+        List<Throwable> nested = new ArrayList<Throwable>();
+        for (int i = 0; i < qmds.length; i++) {
+            if (errors[i] != null) {
+                names.add(qmds[i].getName());
+                nested.add(errors[i]);
+            }
+        }
+        if (!names.isEmpty()) {
+            UserException ue = new UserException(_loc.get("compile-queries-failed", names.size(), names));
+            ue.setNestedThrowables(nested.toArray(new Throwable[nested.size()]));
+            throw ue;
+        }
+    }
+}
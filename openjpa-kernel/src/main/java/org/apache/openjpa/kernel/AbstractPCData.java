@@ -26,6 +26,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -403,6 +404,33 @@ public abstract class AbstractPCData
         return pcdata;
     }
 
+    /**
+     * Return a cached collection value holding the given elements, as
+     * produced by {@link #toData} for collection fields.
+     *
+     * @param nextSequence the next sequence of the collection's change
+     * tracker
+     * @since 3.0.1
+     */
+    public static List newCollectionData(Collection elements,
+        int nextSequence) {
+        ProxyDataList c = new ProxyDataList(elements.size());
+        c.addAll(elements);
+        c.nextSequence = nextSequence;
+        return c;
+    }
+
+    /**
+     * Return the next change tracker sequence of the given cached collection
+     * value.
+     *
+     * @since 3.0.1
+     */
+    public static int getNextSequence(Object data) {
+        return (data instanceof ProxyDataList)
+            ? ((ProxyDataList) data).nextSequence : 0;
+    }
+
     /**
      * Tracks proxy data along with list elements.
      */
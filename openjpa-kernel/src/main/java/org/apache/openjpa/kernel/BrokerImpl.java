@@ -146,6 +146,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
     private static final int FLAG_REMOTE_LISTENER = 2 << 9;
     private static final int FLAG_RETAINED_CONN = 2 << 10;
     private static final int FLAG_TRANS_ENDING = 2 << 11;
+    private static final int FLAG_COMMIT_FLUSHING = 2 << 12;
 
     private static final Object[] EMPTY_OBJECTS = new Object[0];
     
@@ -208,6 +209,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
     // (the first uses the transactional cache)
     private Set<StateManagerImpl> _savepointCache = null;
     private LinkedMap _savepoints = null;
+    // last savepoint, if it records the changes made after it
+    private CopyOnWriteSavepoint _cowSavepoint = null;
     private transient SavepointManager _spm = null;
 
     // track open queries and extents so we can free their resources on close
@@ -240,6 +243,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
     private boolean _cachePreparedQuery = true;
     private boolean _cacheFinderQuery = true;
     private boolean _suppressBatchOLELogging = false;
+    private boolean _primitiveIdCache = false;
     private boolean _allowReferenceToSiblingContext = false;
     private boolean _postLoadOnMerge = false;
     
@@ -912,6 +916,27 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
     public boolean getSuppressBatchOLELogging() {
         return _suppressBatchOLELogging;
     }
+    /**
+     * Set whether this Broker caches the managed instances with single field numeric or string identity in tables
+     * keyed on the primitive id value, rather than in the map returned by {@link #newManagedObjectCache}. The tables
+     * save memory and hashing for large persistence contexts, but hold the instances strongly. Defaults to false.
+     *
+     * @since 3.0.1
+     */
+    public void setPrimitiveIdCache(boolean primitive) {
+        _primitiveIdCache = primitive;
+    }
+
+    /**
+     * Return whether this Broker caches the managed instances with single field numeric or string identity in
+     * tables keyed on the primitive id value.
+     *
+     * @since 3.0.1
+     */
+    public boolean getPrimitiveIdCache() {
+        return _primitiveIdCache;
+    }
+
     ///////////
     // Lookups
     ///////////
@@ -1692,6 +1717,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
                     ("savepoint-flush-not-supported"));
 
             OpenJPASavepoint save = _spm.newSavepoint(name, this);
+            if (save instanceof CopyOnWriteSavepoint)
+                ((CopyOnWriteSavepoint) save).setPrevious(_cowSavepoint);
             if (_savepoints == null || _savepoints.isEmpty()) {
                 save.save(getTransactionalStates());
                 _savepoints = new LinkedMap();
@@ -1704,6 +1731,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
                 }
             }
             _savepoints.put(name, save);
+            setCopyOnWriteSavepoint();
         } catch (OpenJPAException ke) {
             throw ke;
         } catch (Exception e) {
@@ -1747,6 +1775,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
             save.release(true);
             if (_savepointCache != null)
                 _savepointCache.clear();
+            setCopyOnWriteSavepoint();
         } catch (OpenJPAException ke) {
             throw ke;
         } catch (Exception e) {
@@ -1790,7 +1819,10 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
             Collection saved = save.rollback(_savepoints.values());
             if (_savepointCache != null)
                 _savepointCache.clear();
-            if (hasTransactionalObjects()) {
+            _cowSavepoint = null;
+            if (save instanceof CopyOnWriteSavepoint)
+                rollbackChanged(saved);
+            else if (hasTransactionalObjects()) {
                 // build up a new collection of states
                 TransactionalCache oldTransCache = _transCache;
                 TransactionalCache newTransCache = new TransactionalCache
@@ -1822,6 +1854,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
                 }
                 _transCache = newTransCache;
             }
+            setCopyOnWriteSavepoint();
         }
         catch (OpenJPAException ke) {
             throw ke;
@@ -1831,6 +1864,50 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
             endOperation();
         }
     }
+
+    /**
+     * Restore the instances changed since a copy-on-write savepoint. Other
+     * transactional instances are left as they are.
+     */
+    private void rollbackChanged(Collection<SavepointFieldManager> saved) {
+        StateManagerImpl sm;
+        for (SavepointFieldManager fm : saved) {
+            sm = fm.getStateManager();
+            if (!fm.wasTransactional()) {
+                // became transactional after the savepoint
+                sm.rollback();
+                removeFromTransaction(sm);
+                continue;
+            }
+
+            sm.rollbackToSavepoint(fm);
+            if (!hasTransactionalObjects())
+                _transCache = new TransactionalCache(_orderDirty);
+            _transCache.remove(sm);
+            if (sm.isDirty())
+                _transCache.addDirty(sm);
+            else
+                _transCache.addClean(sm);
+        }
+    }
+
+    /**
+     * Record changes with the last savepoint if it copies on write.
+     */
+    private void setCopyOnWriteSavepoint() {
+        Object last = (_savepoints == null || _savepoints.isEmpty()) ? null
+            : _savepoints.getValue(_savepoints.size() - 1);
+        _cowSavepoint = (last instanceof CopyOnWriteSavepoint)
+            ? (CopyOnWriteSavepoint) last : null;
+    }
+
+    /**
+     * Return the last savepoint if it records the changes made after it,
+     * or null.
+     */
+    CopyOnWriteSavepoint getCopyOnWriteSavepoint() {
+        return _cowSavepoint;
+    }
     
     /**
      * Sets the given flag to the status.
@@ -1947,6 +2024,16 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         }
     }
 
+    /**
+     * Return whether the store manager is flushing the changes of the
+     * current transaction in preparation of its commit.
+     *
+     * @since 3.0.1
+     */
+    public boolean isCommitFlushing() {
+        return (_flags & FLAG_COMMIT_FLUSHING) != 0;
+    }
+
     /**
      * Return whether the current transaction is ending, i.e. in the 2nd phase
      * of a commit or rollback
@@ -2018,6 +2105,8 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
             if (_sync != null)
                 _sync.beforeCompletion();
 
+            // changes made while committing are not rolled back to savepoints
+            _cowSavepoint = null;
             flushSafe(FLUSH_COMMIT);
         } catch (OpenJPAException ke) {
             if (_log.isTraceEnabled())
@@ -2208,11 +2297,14 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         try {
             if (flush && reason != FLUSH_LOGICAL) {
                 _flags |= FLAG_STORE_FLUSHING;
+                if (reason == FLUSH_COMMIT)
+                    _flags |= FLAG_COMMIT_FLUSHING;
                 exceps = add(exceps,
                     newFlushException(_store.flush(transactional)));
             }
         } finally {
             _flags &= ~FLAG_STORE_FLUSHING;
+            _flags &= ~FLAG_COMMIT_FLUSHING;
 
             if (reason == FLUSH_ROLLBACK)
                 exceps = add(exceps, endStoreManagerTransaction(true));
@@ -2383,6 +2475,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         // appropriate transaction change
         boolean rollback = status != Status.STATUS_COMMITTED;
         List<Exception> exceps = null;
+        _cowSavepoint = null;
 
         try {
             exceps = add(exceps, endStoreManagerTransaction(rollback));
@@ -4429,6 +4522,7 @@ public class BrokerImpl implements Broker, FindCallbacks, Cloneable, Serializabl
         _transEventManager = null;
         _lifeEventManager = null;
 
+        _cowSavepoint = null;
         OpenJPASavepoint save;
         while (_savepoints != null && !_savepoints.isEmpty()) {
             save =
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Savepoint that saves nothing when it is set. Instead, the broker reports
+ * each instance before it first changes after the savepoint, and the
+ * savepoint saves the state of the instance then and each field before
+ * its first change. Rolling back restores only these instances.
+ *
+ * When a savepoint is released, the instances it saved become part of the
+ * enclosing savepoint, which keeps its own saved state of an instance and
+ * takes over only the fields it does not hold yet.
+ *
+ * @since 3.0.1
+ */
+@SuppressWarnings("serial")
+public class CopyOnWriteSavepoint
+    extends OpenJPASavepoint {
+
+    private CopyOnWriteSavepoint _prev = null;
+    private Map<StateManagerImpl, SavepointFieldManager> _images = null;
+
+    public CopyOnWriteSavepoint(Broker broker, String name) {
+        super(broker, name, true);
+    }
+
+    /**
+     * Set the enclosing savepoint, which takes over the saved instances
+     * when this savepoint is released.
+     */
+    void setPrevious(CopyOnWriteSavepoint prev) {
+        _prev = prev;
+    }
+
+    protected Map<StateManagerImpl, SavepointFieldManager> getStates() {
+        return _images;
+    }
+
+    /**
+     * Proxy the mutable fields of the given instances and of the instances
+     * changed since the enclosing savepoint, so that changes to the fields
+     * in place are reported.
+     */
+    public void save(Collection<StateManagerImpl> states) {
+        if (_images != null)
+            throw new IllegalStateException();
+
+        _images = new HashMap<StateManagerImpl, SavepointFieldManager>();
+        for (StateManagerImpl sm : states)
+            proxyFields(sm);
+        if (_prev != null && _prev._images != null)
+            for (StateManagerImpl sm : _prev._images.keySet())
+                proxyFields(sm);
+    }
+
+    private static void proxyFields(StateManagerImpl sm) {
+        if (sm.isTransactional())
+            sm.proxyFields(false, false);
+    }
+
+    /**
+     * Save the state of the given instance if it has not changed since this
+     * savepoint, and the given field if it is not -1 and has not changed.
+     */
+    void beforeWrite(StateManagerImpl sm, int field) {
+        SavepointFieldManager image = getImage(sm);
+        if (field != -1)
+            image.saveField(field);
+    }
+
+    /**
+     * Save the state and all loaded fields of the given instance, which
+     * are about to be replaced without being written one by one, as on
+     * refresh.
+     */
+    void beforeClear(StateManagerImpl sm) {
+        getImage(sm).saveFields();
+    }
+
+    private SavepointFieldManager getImage(StateManagerImpl sm) {
+        SavepointFieldManager image = _images.get(sm);
+        if (image == null) {
+            image = new SavepointFieldManager(sm);
+            _images.put(sm, image);
+        }
+        return image;
+    }
+
+    public void release(boolean user) {
+        if (_prev != null && _prev._images != null && _images != null)
+            _prev.absorb(_images);
+        _images = null;
+        _prev = null;
+    }
+
+    /**
+     * Merge the instances saved by the given later savepoint into this one.
+     * The smaller of the two maps is merged into the larger, so that the
+     * cost of releasing a chain of savepoints stays proportional to the
+     * number of changed instances.
+     */
+    private void absorb(Map<StateManagerImpl, SavepointFieldManager> later) {
+        boolean swap = later.size() > _images.size();
+        Map<StateManagerImpl, SavepointFieldManager> into =
+            (swap) ? later : _images;
+        Map<StateManagerImpl, SavepointFieldManager> from =
+            (swap) ? _images : later;
+        for (Map.Entry<StateManagerImpl, SavepointFieldManager> entry
+            : from.entrySet()) {
+            SavepointFieldManager image = entry.getValue();
+            SavepointFieldManager other = into.get(entry.getKey());
+            if (other == null)
+                into.put(entry.getKey(), image);
+            else if (swap) {
+                // the image from this savepoint is the earlier one
+                image.absorb(other);
+                into.put(entry.getKey(), image);
+            } else
+                other.absorb(image);
+        }
+        _images = into;
+    }
+
+    /**
+     * Return the saved state of the instances changed since this savepoint.
+     * Later savepoints have been released into this one already, and
+     * earlier savepoints do not apply.
+     */
+    public Collection<SavepointFieldManager> rollback(
+        Collection<OpenJPASavepoint> previous) {
+        Collection<SavepointFieldManager> saved = _images.values();
+        _images = null;
+        _prev = null;
+        return saved;
+    }
+}
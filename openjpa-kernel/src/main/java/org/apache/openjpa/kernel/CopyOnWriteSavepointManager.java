@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+/**
+ * A {@link SavepointManager} implementation which stores data in memory,
+ * but only for the instances that change after a savepoint, and only when
+ * they first change. Setting a savepoint therefore costs nothing for
+ * instances that are not changed afterwards, which suits transactions that
+ * set many savepoints over many instances. Unlike
+ * {@link InMemorySavepointManager}, changes are only noticed through field
+ * interception, so types that rely on dirty checking of unenhanced
+ * instances are not restored correctly.
+ *
+ * @since 3.0.1
+ */
+public class CopyOnWriteSavepointManager
+    implements SavepointManager {
+
+    private boolean _preFlush = false;
+
+    /**
+     * Return whether to call {@link Broker#preFlush}
+     * before a savepoint is set. While this will allow for tracking of
+     * newly embedded fields, it goes through pre-flush operations for all
+     * transactional instances. Defaults to false.
+     */
+    public boolean getPreFlush() {
+        return _preFlush;
+    }
+
+    /**
+     * Set whether to call {@link Broker#preFlush}
+     * before a savepoint is set. While this will allow for tracking of
+     * newly embedded fields, it goes through pre-flush operations for all
+     * transactional instances.
+     */
+    public void setPreFlush(boolean preFlush) {
+        _preFlush = preFlush;
+    }
+
+    public OpenJPASavepoint newSavepoint(String name, Broker broker) {
+        // pre-flush before creating the savepoint so that the changes of
+        // pre-flush are not rolled back to it
+        if (_preFlush)
+            broker.preFlush();
+        return new CopyOnWriteSavepoint(broker, name);
+    }
+
+    public boolean supportsIncrementalFlush() {
+        // flushed changes cannot be restored
+        return false;
+    }
+}
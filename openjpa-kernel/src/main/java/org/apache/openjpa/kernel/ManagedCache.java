@@ -52,7 +52,23 @@ class ManagedCache implements Serializable {
      */
     ManagedCache(BrokerImpl broker) {
         this.broker = broker;
-        _main = (Map<Object, StateManagerImpl>) broker.newManagedObjectCache();
+        _main = newMainCache();
+    }
+
+    /**
+     * Create the primary cache map.
+     */
+    private Map<Object,StateManagerImpl> newMainCache() {
+        Map<Object,StateManagerImpl> main = (Map<Object, StateManagerImpl>) broker.newManagedObjectCache();
+        return (broker.getPrimitiveIdCache()) ? new ManagedIdMap(main) : main;
+    }
+
+    /**
+     * Create a map for the new or conflicting instances.
+     */
+    private Map<Object,StateManagerImpl> newCache() {
+        Map<Object,StateManagerImpl> map = new HashMap<Object,StateManagerImpl>();
+        return (broker.getPrimitiveIdCache()) ? new ManagedIdMap(map) : map;
     }
 
     /**
@@ -114,7 +130,7 @@ class ManagedCache implements Serializable {
         // permanent oid yet
         if (sm.isNew()) {
             if (_news == null)
-                _news = new HashMap<Object,StateManagerImpl>();
+                _news = newCache();
             _news.put(sm.getId(), sm);
             return;
         }
@@ -194,7 +210,7 @@ class ManagedCache implements Serializable {
 
             // same oid as deleted instance; put in conflict cache
             if (_conflicts == null)
-                _conflicts = new HashMap<Object,StateManagerImpl>();
+                _conflicts = newCache();
             _conflicts.put(sm.getObjectId(), sm);
         }
     }
@@ -275,7 +291,7 @@ class ManagedCache implements Serializable {
      * Clear the cache.
      */
     public void clear() {
-        _main = (Map<Object, StateManagerImpl>) broker.newManagedObjectCache();
+        _main = newMainCache();
         if (_conflicts != null)
             _conflicts = null;
         if (_news != null)
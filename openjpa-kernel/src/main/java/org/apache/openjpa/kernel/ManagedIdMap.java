@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.apache.openjpa.util.ByteId;
+import org.apache.openjpa.util.CharId;
+import org.apache.openjpa.util.IntId;
+import org.apache.openjpa.util.LongId;
+import org.apache.openjpa.util.OpenJPAId;
+import org.apache.openjpa.util.ShortId;
+import org.apache.openjpa.util.StringId;
+
+/**
+ * Map of state managers by oid for large persistence contexts. Oids of
+ * single field numeric or string identity are stored in open addressing
+ * tables keyed on the primitive id value, one table per least-derived
+ * persistent type, so that no entry is allocated per instance. All other
+ * oids are stored in a delegate map. Unlike the delegate, the tables hold
+ * their state managers strongly.
+ *
+ * @since 3.0.1
+ */
+class ManagedIdMap
+    extends AbstractMap<Object, StateManagerImpl>
+    implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<Object, StateManagerImpl> _delegate;
+
+    // persistent type -> table of its least-derived type
+    private final Map<Class<?>, Table> _tables = new HashMap<Class<?>, Table>();
+    private final List<Table> _roots = new ArrayList<Table>();
+    private int _size = 0;
+
+    // most recently used table
+    private transient Class<?> _lastType = null;
+    private transient Table _lastTable = null;
+
+    /**
+     * Constructor; supply the map for oids that are not stored in tables.
+     */
+    ManagedIdMap(Map<Object, StateManagerImpl> delegate) {
+        _delegate = delegate;
+    }
+
+    /**
+     * Whether the given oid is stored in a table.
+     */
+    private static boolean isTabled(Object oid) {
+        if (oid == null)
+            return false;
+        Class<?> cls = oid.getClass();
+        return cls == LongId.class || cls == IntId.class
+            || cls == StringId.class || cls == ShortId.class
+            || cls == ByteId.class || cls == CharId.class;
+    }
+
+    /**
+     * The table key of the given tabled oid: the id value itself for numeric
+     * ids, the string hash for string ids.
+     */
+    private static long key(Object oid) {
+        Class<?> cls = oid.getClass();
+        if (cls == LongId.class)
+            return ((LongId) oid).getId();
+        if (cls == IntId.class)
+            return ((IntId) oid).getId();
+        if (cls == StringId.class) {
+            String str = ((StringId) oid).getId();
+            return (str == null) ? 0 : str.hashCode();
+        }
+        if (cls == ShortId.class)
+            return ((ShortId) oid).getId();
+        if (cls == ByteId.class)
+            return ((ByteId) oid).getId();
+        return ((CharId) oid).getId();
+    }
+
+    /**
+     * Return the table for the type of the given tabled oid, or null if none
+     * and not asked to create it.
+     */
+    private Table table(Object oid, boolean create) {
+        Class<?> type = ((OpenJPAId) oid).getType();
+        if (type == _lastType)
+            return _lastTable;
+
+        Table table = _tables.get(type);
+        if (table == null) {
+            // equal oids always share the least-derived non-object type,
+            // as with their hash codes
+            Class<?> base = type;
+            while (base.getSuperclass() != null
+                && base.getSuperclass() != Object.class)
+                base = base.getSuperclass();
+            table = _tables.get(base);
+            if (table == null) {
+                if (!create)
+                    return null;
+                table = new Table();
+                _tables.put(base, table);
+                _roots.add(table);
+            }
+            _tables.put(type, table);
+        }
+        _lastType = type;
+        _lastTable = table;
+        return table;
+    }
+
+    public int size() {
+        return _size + _delegate.size();
+    }
+
+    public boolean isEmpty() {
+        return _size == 0 && _delegate.isEmpty();
+    }
+
+    public boolean containsKey(Object oid) {
+        if (!isTabled(oid))
+            return _delegate.containsKey(oid);
+        Table table = table(oid, false);
+        return table != null && table.indexOf(key(oid), oid) != -1;
+    }
+
+    public StateManagerImpl get(Object oid) {
+        if (!isTabled(oid))
+            return _delegate.get(oid);
+        Table table = table(oid, false);
+        if (table == null)
+            return null;
+        int idx = table.indexOf(key(oid), oid);
+        return (idx == -1) ? null : table.sms[idx];
+    }
+
+    public StateManagerImpl put(Object oid, StateManagerImpl sm) {
+        if (!isTabled(oid))
+            return _delegate.put(oid, sm);
+        Table table = table(oid, true);
+        int size = table.size;
+        StateManagerImpl orig = table.put(key(oid), oid, sm);
+        _size += table.size - size;
+        return orig;
+    }
+
+    public StateManagerImpl remove(Object oid) {
+        if (!isTabled(oid))
+            return _delegate.remove(oid);
+        Table table = table(oid, false);
+        if (table == null)
+            return null;
+        int idx = table.indexOf(key(oid), oid);
+        if (idx == -1)
+            return null;
+        StateManagerImpl orig = table.sms[idx];
+        table.delete(idx);
+        _size--;
+        return orig;
+    }
+
+    public void clear() {
+        _tables.clear();
+        _roots.clear();
+        _size = 0;
+        _lastType = null;
+        _lastTable = null;
+        _delegate.clear();
+    }
+
+    public Collection<StateManagerImpl> values() {
+        return new AbstractCollection<StateManagerImpl>() {
+            public Iterator<StateManagerImpl> iterator() {
+                final Iterator<Entry<Object, StateManagerImpl>> itr =
+                    entrySet().iterator();
+                return new Iterator<StateManagerImpl>() {
+                    public boolean hasNext() {
+                        return itr.hasNext();
+                    }
+
+                    public StateManagerImpl next() {
+                        return itr.next().getValue();
+                    }
+                };
+            }
+
+            public int size() {
+                return ManagedIdMap.this.size();
+            }
+        };
+    }
+
+    public Set<Entry<Object, StateManagerImpl>> entrySet() {
+        return new AbstractSet<Entry<Object, StateManagerImpl>>() {
+            public Iterator<Entry<Object, StateManagerImpl>> iterator() {
+                return new EntryIterator();
+            }
+
+            public int size() {
+                return ManagedIdMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Read-only iterator over the entries of all tables, then the delegate.
+     */
+    private class EntryIterator
+        implements Iterator<Entry<Object, StateManagerImpl>> {
+
+        private int _table = 0;
+        private int _idx = -1;
+        private Iterator<Entry<Object, StateManagerImpl>> _itr = null;
+
+        public EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            for (; _table < _roots.size(); _table++) {
+                Object[] oids = _roots.get(_table).oids;
+                for (_idx++; _idx < oids.length; _idx++)
+                    if (oids[_idx] != null)
+                        return;
+                _idx = -1;
+            }
+            if (_itr == null)
+                _itr = _delegate.entrySet().iterator();
+        }
+
+        public boolean hasNext() {
+            return _itr == null || _itr.hasNext();
+        }
+
+        public Entry<Object, StateManagerImpl> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            if (_itr != null)
+                return _itr.next();
+            Table table = _roots.get(_table);
+            Entry<Object, StateManagerImpl> entry =
+                new SimpleImmutableEntry<Object, StateManagerImpl>(
+                    table.oids[_idx], table.sms[_idx]);
+            advance();
+            return entry;
+        }
+    }
+
+    /**
+     * Open addressing table with linear probing. Slots with a null oid are
+     * free. Several oids may share a key, for instance string ids with the
+     * same hash, so matches are confirmed with the oid's equals method.
+     */
+    private static class Table
+        implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        long[] keys = new long[16];
+        Object[] oids = new Object[16];
+        StateManagerImpl[] sms = new StateManagerImpl[16];
+        int size = 0;
+
+        private int slot(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & (oids.length - 1);
+        }
+
+        /**
+         * Return the slot of the given oid, or -1 if not present.
+         */
+        int indexOf(long key, Object oid) {
+            int mask = oids.length - 1;
+            for (int i = slot(key); oids[i] != null; i = (i + 1) & mask)
+                if (keys[i] == key && (oids[i] == oid || oid.equals(oids[i])))
+                    return i;
+            return -1;
+        }
+
+        StateManagerImpl put(long key, Object oid, StateManagerImpl sm) {
+            int idx = indexOf(key, oid);
+            if (idx != -1) {
+                StateManagerImpl orig = sms[idx];
+                oids[idx] = oid;
+                sms[idx] = sm;
+                return orig;
+            }
+
+            // keep the load factor at 3/4 at most
+            if ((size + 1) * 4 > oids.length * 3)
+                resize(oids.length * 2);
+            insert(key, oid, sm);
+            size++;
+            return null;
+        }
+
+        private void insert(long key, Object oid, StateManagerImpl sm) {
+            int mask = oids.length - 1;
+            int i = slot(key);
+            while (oids[i] != null)
+                i = (i + 1) & mask;
+            keys[i] = key;
+            oids[i] = oid;
+            sms[i] = sm;
+        }
+
+        private void resize(int len) {
+            long[] oldKeys = keys;
+            Object[] oldOids = oids;
+            StateManagerImpl[] oldSms = sms;
+            keys = new long[len];
+            oids = new Object[len];
+            sms = new StateManagerImpl[len];
+            for (int i = 0; i < oldOids.length; i++)
+                if (oldOids[i] != null)
+                    insert(oldKeys[i], oldOids[i], oldSms[i]);
+        }
+
+        /**
+         * Free the given slot, shifting back the entries that follow it in
+         * its probe sequence so that no lookup stops short of them.
+         */
+        void delete(int idx) {
+            int mask = oids.length - 1;
+            int free = idx;
+            for (int i = (free + 1) & mask; oids[i] != null;
+                i = (i + 1) & mask) {
+                int home = slot(keys[i]);
+                boolean reachable = (free <= i) ? (free < home && home <= i)
+                    : (free < home || home <= i);
+                if (reachable)
+                    continue;
+                keys[free] = keys[i];
+                oids[free] = oids[i];
+                sms[free] = sms[i];
+                free = i;
+            }
+            keys[free] = 0;
+            oids[free] = null;
+            sms[free] = null;
+            size--;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardCopyOption;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import org.apache.openjpa.conf.MetaDataSourcesValidationPolicy;
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.conf.OpenJPAVersion;
+import org.apache.openjpa.kernel.QueryImpl.Compilation;
+import org.apache.openjpa.kernel.QueryImpl.CompilationKey;
+import org.apache.openjpa.kernel.jpql.JPQLParser;
+import org.apache.openjpa.lib.conf.Configurable;
+import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.conf.Value;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.lib.util.Closeable;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.util.CacheMap;
+import org.apache.openjpa.util.Serialization;
+
+/**
+ * Query compilation cache that also keeps the parsed JPQL queries in a file,
+ * so that they survive restarts. The file is memory-mapped when the broker
+ * factory is created, and its entries are only deserialized when a query is
+ * first compiled. The queries parsed while running are added to the file
+ * when the configuration is closed.
+ * The file is only used as long as the OpenJPA version, the database
+ * dictionary and the class and mapping files of the persistent types are
+ * unchanged; otherwise it is rewritten.
+ * Only the parsed form of queries is stored. The SQL of the prepared query
+ * cache depends on the select of an actual execution, and is regenerated.
+ *
+ * @since 3.0.1
+ */
+public class PersistentQueryCompilationCache
+    extends CacheMap
+    implements Configurable, Closeable {
+
+    private static final Localizer _loc = Localizer.forPackage
+        (PersistentQueryCompilationCache.class);
+
+    private static final int MAGIC = 0x4f4a5143;
+    private static final int FORMAT = 1;
+
+    private OpenJPAConfiguration _conf;
+    private Log _log;
+    private File _file;
+
+    // the mapped file and its index of key to offset and length; the index
+    // is null until the file is opened
+    private ByteBuffer _buf;
+    private volatile Map<String, int[]> _index;
+    private String _storedFingerprint;
+    private String _fingerprint;
+
+    // parsed queries added while running, by key
+    private final Map<String, Object> _added =
+        new ConcurrentHashMap<String, Object>();
+
+    /**
+     * The file to store the parsed queries in.
+     */
+    public File getFile() {
+        return _file;
+    }
+
+    /**
+     * The file to store the parsed queries in.
+     */
+    public void setFile(String file) {
+        _file = (file == null) ? null : new File(file);
+    }
+
+    public Object get(Object key) {
+        Object val = super.get(key);
+        if (val != null || !(key instanceof CompilationKey))
+            return val;
+
+        String str = toString((CompilationKey) key);
+        Object data = (str == null) ? null : load(str);
+        if (data == null)
+            return null;
+
+        Compilation comp = new Compilation();
+        comp.storeData = data;
+        put(key, comp);
+        return comp;
+    }
+
+    protected void entryAdded(Object key, Object value) {
+        super.entryAdded(key, value);
+        if (!(key instanceof CompilationKey) || !(value instanceof Compilation))
+            return;
+
+        Object data = ((Compilation) value).storeData;
+        String str = toString((CompilationKey) key);
+        if (str != null && data instanceof Serializable)
+            _added.put(str, data);
+    }
+
+    /**
+     * Map the file and read its index, unless already done.
+     */
+    public synchronized void open() {
+        if (_index != null)
+            return;
+        _index = Collections.emptyMap();
+        if (_file == null || !_file.isFile())
+            return;
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(_file, "r");
+            ByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                0, raf.length());
+            if (buf.getInt() != MAGIC || buf.getInt() != FORMAT) {
+                if (_log.isWarnEnabled())
+                    _log.warn(_loc.get("compilation-store-bad", _file, ""));
+                return;
+            }
+            String fingerprint = readString(buf);
+            int count = buf.getInt();
+            Map<String, int[]> index = new HashMap<String, int[]>(
+                count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                String key = readString(buf);
+                index.put(key, new int[] { buf.getInt(), buf.getInt() });
+            }
+            _buf = buf;
+            _storedFingerprint = fingerprint;
+            _index = index;
+            if (_log.isTraceEnabled())
+                _log.trace(_loc.get("compilation-store-open", _file,
+                    String.valueOf(count)));
+        } catch (Exception e) {
+            if (_log.isWarnEnabled())
+                _log.warn(_loc.get("compilation-store-bad", _file, e));
+        } finally {
+            // the mapping stays valid
+            if (raf != null)
+                try { raf.close(); } catch (IOException ioe) { }
+        }
+    }
+
+    /**
+     * Whether the stored entries were written for the current metadata.
+     */
+    private synchronized boolean isValid() {
+        if (_fingerprint == null) {
+            _fingerprint = fingerprint();
+            if (_storedFingerprint != null
+                && !_storedFingerprint.equals(_fingerprint)
+                && _log.isInfoEnabled())
+                _log.info(_loc.get("compilation-store-stale", _file));
+        }
+        return _fingerprint.equals(_storedFingerprint);
+    }
+
+    /**
+     * Return the stored parsed query for the given key, or null if none.
+     */
+    private Object load(String key) {
+        open();
+        if (!isValid())
+            return null;
+        byte[] bytes = read(key);
+        if (bytes == null)
+            return null;
+        try {
+            return Serialization.deserialize(bytes, null);
+        } catch (RuntimeException re) {
+            if (_log.isWarnEnabled())
+                _log.warn(_loc.get("compilation-store-bad", _file, re));
+            return null;
+        }
+    }
+
+    /**
+     * Copy the stored bytes of the given key out of the mapped file, or
+     * return null if none. Synchronized with the release of the mapping.
+     */
+    private synchronized byte[] read(String key) {
+        int[] pos = (_buf == null) ? null : _index.get(key);
+        if (pos == null)
+            return null;
+        byte[] bytes = new byte[pos[1]];
+        ByteBuffer buf = _buf.duplicate();
+        buf.position(pos[0]);
+        buf.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Write the stored and added entries to the file if any entry was added.
+     */
+    public synchronized void close() {
+        // the fingerprint is computed on the first lookup of a query; if
+        // there was none, there is nothing to add
+        if (_file == null || _fingerprint == null)
+            return;
+
+        // maps the file again if it was replaced by a previous close
+        open();
+        boolean valid = _fingerprint.equals(_storedFingerprint);
+        Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+        if (valid) {
+            for (Map.Entry<String, int[]> entry : _index.entrySet()) {
+                byte[] bytes = new byte[entry.getValue()[1]];
+                ByteBuffer buf = _buf.duplicate();
+                buf.position(entry.getValue()[0]);
+                buf.get(bytes);
+                entries.put(entry.getKey(), bytes);
+            }
+        }
+        int added = 0;
+        for (Map.Entry<String, Object> entry : _added.entrySet()) {
+            if (entries.containsKey(entry.getKey()))
+                continue;
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeObject(entry.getValue());
+                out.close();
+                entries.put(entry.getKey(), bytes.toByteArray());
+                added++;
+            } catch (IOException ioe) {
+                if (_log.isTraceEnabled())
+                    _log.trace(_loc.get("compilation-store-skip",
+                        entry.getKey(), ioe));
+            }
+        }
+        if (added == 0 && valid)
+            return;
+
+        // some platforms do not allow replacing a mapped file; lookups after
+        // closing open the new file
+        ByteBuffer mapped = _buf;
+        _buf = null;
+        _index = null;
+        _storedFingerprint = null;
+        unmap(mapped);
+        try {
+            write(entries);
+            if (_log.isInfoEnabled())
+                _log.info(_loc.get("compilation-store-write", _file,
+                    String.valueOf(entries.size())));
+        } catch (IOException ioe) {
+            if (_log.isWarnEnabled())
+                _log.warn(_loc.get("compilation-store-write-failed", _file,
+                    ioe));
+        }
+    }
+
+    /**
+     * Write the given entries to a temporary file that then replaces the
+     * file, so that running instances keep reading the old mapping.
+     */
+    private void write(Map<String, byte[]> entries)
+        throws IOException {
+        List<byte[]> keys = new ArrayList<byte[]>(entries.size());
+        byte[] fingerprint = _fingerprint.getBytes("UTF-8");
+        int offset = 12 + fingerprint.length;
+        for (String key : entries.keySet()) {
+            byte[] bytes = key.getBytes("UTF-8");
+            keys.add(bytes);
+            offset += 12 + bytes.length;
+        }
+
+        File dir = _file.getAbsoluteFile().getParentFile();
+        if (dir != null)
+            dir.mkdirs();
+        File tmp = File.createTempFile(_file.getName(), ".tmp", dir);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream
+            (new FileOutputStream(tmp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(fingerprint.length);
+            out.write(fingerprint);
+            out.writeInt(entries.size());
+            int i = 0;
+            for (byte[] data : entries.values()) {
+                byte[] key = keys.get(i++);
+                out.writeInt(key.length);
+                out.write(key);
+                out.writeInt(offset);
+                out.writeInt(data.length);
+                offset += data.length;
+            }
+            for (byte[] data : entries.values())
+                out.write(data);
+        } finally {
+            out.close();
+        }
+        try {
+            java.nio.file.Files.move(tmp.toPath(), _file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ioe) {
+            tmp.delete();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Release the mapping of the given buffer now rather than when it is
+     * garbage collected. Does nothing if the JVM does not allow it, in which
+     * case replacing the file may fail.
+     */
+    private static void unmap(final ByteBuffer buf) {
+        if (buf == null || !buf.isDirect())
+            return;
+        AccessController.doPrivileged(new PrivilegedAction<Object>() {
+            public Object run() {
+                try {
+                    // Java 9 and later
+                    Class<?> cls = Class.forName("sun.misc.Unsafe");
+                    Method clean = cls.getMethod("invokeCleaner",
+                        ByteBuffer.class);
+                    Field field = cls.getDeclaredField("theUnsafe");
+                    field.setAccessible(true);
+                    clean.invoke(field.get(null), buf);
+                } catch (NoSuchMethodException nsme) {
+                    // Java 8
+                    try {
+                        Method cleaner = buf.getClass().getMethod("cleaner");
+                        cleaner.setAccessible(true);
+                        Object c = cleaner.invoke(buf);
+                        if (c != null)
+                            c.getClass().getMethod("clean").invoke(c);
+                    } catch (Exception e) {
+                    }
+                } catch (Exception e) {
+                }
+                return null;
+            }
+        });
+    }
+
+    private static String readString(ByteBuffer buf)
+        throws IOException {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Return the key to store the compilation of the given query under, or
+     * null if it is not stored.
+     */
+    private static String toString(CompilationKey key) {
+        if (!JPQLParser.LANG_JPQL.equals(key.language) || key.query == null)
+            return null;
+        if (key.storeKey != null && !(key.storeKey instanceof Number)
+            && !(key.storeKey instanceof String))
+            return null;
+
+        StringBuilder buf = new StringBuilder();
+        buf.append(key.queryType == null ? "" : key.queryType.getName());
+        buf.append('|');
+        buf.append(key.candidateType == null ? ""
+            : key.candidateType.getName());
+        buf.append('|').append(key.subclasses);
+        buf.append('|').append(key.storeKey);
+        buf.append('|').append(key.query);
+        return buf.toString();
+    }
+
+    /**
+     * Identify the OpenJPA version, the dictionary and the sources of the
+     * metadata of the persistent types the stored queries were parsed for.
+     */
+    private String fingerprint() {
+        ClassLoader loader = _conf.getClassResolverInstance().
+            getClassLoader(getClass(), null);
+        Set<String> names = _conf.getMetaDataRepositoryInstance().
+            getPersistentTypeNames(true, loader);
+        Map<String, Long> sums = MetaDataSourcesValidationPolicy.
+            checksumSources(_conf, (names == null)
+            ? Collections.<String> emptySet() : names, loader);
+        CRC32 crc = new CRC32();
+        for (Map.Entry<String, Long> entry : sums.entrySet()) {
+            crc.update(entry.getKey().getBytes());
+            crc.update(entry.getValue().toString().getBytes());
+        }
+
+        Value dict = _conf.getValue("jdbc.DBDictionary");
+        String dictionary = (dict == null) ? null : dict.getString();
+        if (dictionary == null)
+            dictionary = _conf.getConnectionDriverName();
+        return OpenJPAVersion.VERSION_ID + "|" + dictionary + "|"
+            + Long.toHexString(crc.getValue());
+    }
+
+    public void setConfiguration(Configuration conf) {
+        _conf = (OpenJPAConfiguration) conf;
+        _log = conf.getLog(OpenJPAConfiguration.LOG_QUERY);
+    }
+
+    public void startConfiguration() {
+    }
+
+    public void endConfiguration() {
+    }
+}
@@ -1815,7 +1815,7 @@ public class QueryImpl
     /**
      * Struct to hold the unparsed properties associated with a query.
      */
-    private static class CompilationKey
+    static class CompilationKey
         implements Serializable {
 
         public Class queryType = null;
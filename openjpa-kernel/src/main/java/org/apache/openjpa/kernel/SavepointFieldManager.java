@@ -52,6 +52,10 @@ class SavepointFieldManager
     private final BitSet _dirty;
     private final BitSet _flush;
     private final PCState _state;
+    private final boolean _transactional;
+
+    // fields whose values are held in the copy
+    private final BitSet _saved;
     private transient PersistenceCapable _copy;
 
     private final Object _version;
@@ -70,10 +74,12 @@ class SavepointFieldManager
     public SavepointFieldManager(StateManagerImpl sm, boolean copy) {
         _sm = sm;
         _state = _sm.getPCState();
+        _transactional = true;
 
         _dirty = (BitSet) _sm.getDirty().clone();
         _flush = (BitSet) _sm.getFlushed().clone();
         _loaded = (BitSet) _sm.getLoaded().clone();
+        _saved = _loaded;
 
         FieldMetaData[] fields = _sm.getMetaData().getFields();
         for (int i = 0; i < _loaded.length(); i++) {
@@ -97,6 +103,36 @@ class SavepointFieldManager
         _loadVersion = _sm.getLoadVersion ();
     }
 
+    /**
+     * Constructor for copy-on-write savepoints. Saves the state of the given
+     * instance but none of its fields, which are saved with
+     * {@link #saveField(int)} before they first change. The state of an
+     * instance that is not transactional is not saved at all, as the
+     * instance is rolled back rather than restored.
+     *
+     * @since 3.0.1
+     */
+    SavepointFieldManager(StateManagerImpl sm) {
+        _sm = sm;
+        _state = _sm.getPCState();
+        _transactional = _state.isTransactional();
+        if (_transactional) {
+            _dirty = (BitSet) _sm.getDirty().clone();
+            _flush = (BitSet) _sm.getFlushed().clone();
+            _loaded = (BitSet) _sm.getLoaded().clone();
+            _saved = new BitSet(_loaded.length());
+            _version = _sm.getVersion();
+            _loadVersion = _sm.getLoadVersion();
+        } else {
+            _dirty = null;
+            _flush = null;
+            _loaded = null;
+            _saved = null;
+            _version = null;
+            _loadVersion = null;
+        }
+    }
+
     /**
      * Return the state manager that this manager is associated with.
      */
@@ -119,6 +155,15 @@ class SavepointFieldManager
         return _copy;
     }
 
+    /**
+     * Whether the instance was transactional when its state was saved.
+     *
+     * @since 3.0.1
+     */
+    public boolean wasTransactional() {
+        return _transactional;
+    }
+
     /**
      * Return the saved {@link PCState}
      */
@@ -174,13 +219,70 @@ class SavepointFieldManager
         }
     }
 
+    /**
+     * Save the given field before its first change, unless it is already
+     * saved or was not loaded when the state of the instance was saved.
+     *
+     * @since 3.0.1
+     */
+    void saveField(int field) {
+        if (!_transactional || _saved.get(field) || !_loaded.get(field))
+            return;
+        if (_copy == null)
+            _copy = _sm.getPersistenceCapable().pcNewInstance(_sm, true);
+        _saved.set(field);
+        storeField(_sm.getMetaData().getField(field));
+    }
+
+    /**
+     * Save all loaded fields that are not saved yet.
+     *
+     * @since 3.0.1
+     */
+    void saveFields() {
+        if (!_transactional)
+            return;
+        for (int i = _loaded.nextSetBit(0); i >= 0;
+            i = _loaded.nextSetBit(i + 1))
+            saveField(i);
+    }
+
+    /**
+     * Take over the fields saved by a later manager of the same instance
+     * that this manager does not hold, leaving the state saved by this
+     * manager as it is.
+     *
+     * @since 3.0.1
+     */
+    void absorb(SavepointFieldManager later) {
+        if (!_transactional || !later._transactional)
+            return;
+        for (int i = later._saved.nextSetBit(0); i >= 0;
+            i = later._saved.nextSetBit(i + 1)) {
+            if (_saved.get(i) || !_loaded.get(i))
+                continue;
+            if (_copy == null)
+                _copy = _sm.getPersistenceCapable().pcNewInstance(_sm, true);
+            if (_copyField == null)
+                _copyField = new int[1];
+            _copyField[0] = i;
+            _copy.pcCopyFields(later._copy, _copyField);
+            if (later._mutable != null && later._mutable.get(i)) {
+                if (_mutable == null)
+                    _mutable = new BitSet(_sm.getMetaData().getFields().length);
+                _mutable.set(i);
+            }
+            _saved.set(i);
+        }
+    }
+
     /**
      * Restore the given field. If this method returns true, then you need
      * to use this field manager to replace the given field in the state
      * manager's instance.
      */
     public boolean restoreField(int field) {
-        if (!_loaded.get(field))
+        if (!_saved.get(field))
             return false;
         if (_mutable != null && _mutable.get(field))
             return true;
@@ -269,6 +269,10 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
         if (_state == state)
             return;
 
+        CopyOnWriteSavepoint save = _broker.getCopyOnWriteSavepoint();
+        if (save != null)
+            save.beforeWrite(this, -1);
+
         PCState prev = _state;
         lock();
         try {
@@ -1319,6 +1323,9 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
         try {
             // if dirty need to clear fields
             if (isDirty()) {
+                CopyOnWriteSavepoint save = _broker.getCopyOnWriteSavepoint();
+                if (save != null)
+                    save.beforeClear(this);
                 clearFields();
                 return true;
             }
@@ -1770,6 +1777,11 @@ public class StateManagerImpl implements OpenJPAStateManager, Serializable {
                 }
             }
 
+            // save the field for savepoint rollback if needed
+            CopyOnWriteSavepoint save = _broker.getCopyOnWriteSavepoint();
+            if (save != null)
+                save.beforeWrite(this, field);
+
             // possibly change state
             boolean active = _broker.isActive();
             clean = !_state.isDirty(); // intentional direct access
@@ -18,6 +18,9 @@
  */
 package org.apache.openjpa.kernel.jpql;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
 import java.lang.reflect.Field;
@@ -2400,9 +2403,9 @@ public class JPQLExpressionBuilder
     public static class ParsedJPQL
         implements Serializable {
 
-        // This is only ever used during parse; when ParsedJPQL instances
-        // are serialized, they will have already been parsed.
-        private final transient JPQLNode root;
+        // The nodes refer to the parser, which is not serializable, so the
+        // tree is serialized in a form of its own.
+        private transient JPQLNode root;
 
         private final String query;
         
@@ -2454,6 +2457,57 @@ public class JPQLExpressionBuilder
             return _candidateType;
         }
 
+        private void writeObject(ObjectOutputStream out)
+            throws IOException {
+            out.defaultWriteObject();
+            writeNode(out, root);
+        }
+
+        private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            // the nodes only use the parser for the query string
+            root = readNode(in, new JPQL(query == null ? "" : query), null);
+        }
+
+        private static void writeNode(ObjectOutputStream out, JPQLNode node)
+            throws IOException {
+            if (node == null) {
+                out.writeInt(-1);
+                return;
+            }
+            out.writeInt(node.id);
+            out.writeBoolean(node.text != null);
+            if (node.text != null)
+                out.writeUTF(node.text);
+            out.writeBoolean(node.not);
+            out.writeBoolean(node.inEnumPath);
+            out.writeInt(node.jjtGetNumChildren());
+            for (int i = 0; i < node.jjtGetNumChildren(); i++)
+                writeNode(out, node.children[i]);
+        }
+
+        private static JPQLNode readNode(ObjectInputStream in, JPQL parser,
+            JPQLNode parent)
+            throws IOException {
+            int id = in.readInt();
+            if (id == -1)
+                return null;
+            JPQLNode node = new SimpleNode(parser, id);
+            node.parent = parent;
+            if (in.readBoolean())
+                node.text = in.readUTF();
+            node.not = in.readBoolean();
+            node.inEnumPath = in.readBoolean();
+            int children = in.readInt();
+            if (children > 0) {
+                node.children = new JPQLNode[children];
+                for (int i = 0; i < children; i++)
+                    node.children[i] = readNode(in, parser, node);
+            }
+            return node;
+        }
+
         public String toString ()
 		{
 			return this.query;
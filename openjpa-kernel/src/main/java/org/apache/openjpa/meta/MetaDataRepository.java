@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -33,7 +34,11 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.openjpa.conf.OpenJPAConfiguration;
 import org.apache.openjpa.enhance.DynamicPersistenceCapable;
@@ -111,21 +116,26 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
     // to metadatas
     private Map<Class<?>, ClassMetaData> _metas = new HashMap<Class<?>, ClassMetaData>();
     private Map<String, ClassMetaData> _metaStringMap = new ConcurrentHashMap<String, ClassMetaData>();
-    private Map<Class<?>, Class<?>> _oids = Collections.synchronizedMap(new HashMap<Class<?>, Class<?>>());
-    private Map<Class<?>, Collection<Class<?>>> _impls =
-        Collections.synchronizedMap(new HashMap<Class<?>, Collection<Class<?>>>());
-    private Map<Class<?>, Class<?>> _ifaces = Collections.synchronizedMap(new HashMap<Class<?>, Class<?>>());
+    // the oid, interface, alias, non-persistent, metamodel and subclass lookups are read without locking once
+    // preloading completed, so they are concurrent maps; oid classes and aliases that are known not to denote a
+    // persistent type are recorded with the NO_TYPE and NO_TYPES markers
+    private Map<Class<?>, Class<?>> _oids = new ConcurrentHashMap<Class<?>, Class<?>>();
+    private Map<Class<?>, Collection<Class<?>>> _impls = new ConcurrentHashMap<Class<?>, Collection<Class<?>>>();
+    private Map<Class<?>, Class<?>> _ifaces = new ConcurrentHashMap<Class<?>, Class<?>>();
     private Map<String, QueryMetaData> _queries = new HashMap<String, QueryMetaData>();
     private Map<String, SequenceMetaData> _seqs = new HashMap<String, SequenceMetaData>();
-    private Map<String, List<Class<?>>> _aliases = Collections.synchronizedMap(new HashMap<String, List<Class<?>>>());
-    private Map<Class<?>, NonPersistentMetaData> _pawares =
-        Collections.synchronizedMap(new HashMap<Class<?>, NonPersistentMetaData>());
+    private Map<String, List<Class<?>>> _aliases = new ConcurrentHashMap<String, List<Class<?>>>();
+    private Map<Class<?>, NonPersistentMetaData> _pawares = new ConcurrentHashMap<Class<?>, NonPersistentMetaData>();
     private Map<Class<?>, NonPersistentMetaData> _nonMapped =
-        Collections.synchronizedMap(new HashMap<Class<?>, NonPersistentMetaData>());
-    private Map<Class<?>, Class<?>> _metamodel = Collections.synchronizedMap(new HashMap<Class<?>, Class<?>>());
+        new ConcurrentHashMap<Class<?>, NonPersistentMetaData>();
+    private Map<Class<?>, Class<?>> _metamodel = new ConcurrentHashMap<Class<?>, Class<?>>();
 
     // map of classes to lists of their subclasses
-    private Map<Class<?>, List<Class<?>>> _subs = Collections.synchronizedMap(new HashMap<Class<?>, List<Class<?>>>());
+    private Map<Class<?>, List<Class<?>>> _subs = new ConcurrentHashMap<Class<?>, List<Class<?>>>();
+
+    // markers for object id classes and aliases that do not denote a persistent type
+    private static final Class<?> NO_TYPE = Void.class;
+    private static final List<Class<?>> NO_TYPES = Collections.emptyList();
 
     // xml mapping
     protected final XMLMetaData[] EMPTY_XMLMETAS;
@@ -155,8 +165,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
 
     protected boolean _preload = false;
     protected boolean _preloadComplete = false;
+    private int _preloadParallelism = Runtime.getRuntime().availableProcessors();
+    private boolean _compileQueries = false;
     protected boolean _locking = true;
     private static final String PRELOAD_STR = "Preload";
+    private static final String COMPILE_QUERIES_STR = "CompileQueries";
     
     // A boolean used to decide whether or not we need to call to PCEnhancer to check whether we have any down level
     // Entities.
@@ -303,6 +316,48 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         _preload = l;
     }
 
+    /**
+     * The number of threads that load the persistent classes in parallel during preloading. The classes are
+     * initialized and their metadata is parsed and resolved on the preloading thread afterwards. This is also the
+     * number of threads that compile the named queries if {@link #getCompileQueries} is set. Defaults to the
+     * number of available processors.
+     *
+     * @since 3.0.1
+     */
+    public int getPreloadParallelism() {
+        return _preloadParallelism;
+    }
+
+    /**
+     * The number of threads that load the persistent classes in parallel during preloading. A value of 1 loads
+     * them serially.
+     *
+     * @since 3.0.1
+     */
+    public void setPreloadParallelism(int parallelism) {
+        _preloadParallelism = parallelism;
+    }
+
+    /**
+     * Whether all named queries are compiled when the broker factory is created, so that invalid queries are
+     * reported at once and the first executions do not parse them. Defaults to false.
+     *
+     * @since 3.0.1
+     */
+    public boolean getCompileQueries() {
+        return _compileQueries;
+    }
+
+    /**
+     * Sets whether all named queries are compiled when the broker factory is created, so that invalid queries are
+     * reported at once and the first executions do not parse them. Defaults to false.
+     *
+     * @since 3.0.1
+     */
+    public void setCompileQueries(boolean compile) {
+        _compileQueries = compile;
+    }
+
 
      /**
      * If the openjpa.MetaDataRepository plugin value Preload=true is set, this method will load all
@@ -340,16 +395,21 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
             _log.trace(_loc.get("repos-initializeEager-found", classes));
         }
 
-        List<Class<?>> loaded = new ArrayList<Class<?>>();
-        for (String c : classes) {
+        List<Class<?>> loaded = loadClasses(classes, multi);
+        // parse superclasses before their subclasses
+        Collections.sort(loaded, new Comparator<Class<?>>() {
+            public int compare(Class<?> c1, Class<?> c2) {
+                return Integer.compare(depth(c1), depth(c2));
+            }
+        });
+        for (Class<?> cls : loaded) {
             try {
-                Class<?> cls = AccessController.doPrivileged((J2DoPrivHelper.getForNameAction(c, true, multi)));
-                loaded.add(cls);
-                // This call may be unnecessary?
-                _factory.load(cls, MODE_ALL, multi);
+                AccessController.doPrivileged(J2DoPrivHelper.getForNameAction(cls.getName(), true, multi));
             } catch (PrivilegedActionException pae) {
                 throw new MetaDataException(_loc.get("repos-initializeEager-error"), pae);
             }
+            // This call may be unnecessary?
+            _factory.load(cls, MODE_ALL, multi);
         }
         resolveAll(multi);
         
@@ -372,7 +432,58 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         _preloadComplete = true;
     }
 
-    
+
+    /**
+     * Load the given classes without initializing them, in parallel if so configured. Class loading, including
+     * any load-time enhancement, dominates the preloading of large models; static initializers are left to the
+     * preloading thread so that initializers that reference each other cannot deadlock.
+     */
+    private List<Class<?>> loadClasses(Set<String> names, final ClassLoader loader) {
+        List<Class<?>> loaded = new ArrayList<Class<?>>(names.size());
+        if (_preloadParallelism <= 1 || names.size() < 2) {
+            for (String name : names) {
+                try {
+                    loaded.add(AccessController.doPrivileged(J2DoPrivHelper.getForNameAction(name, false, loader)));
+                } catch (PrivilegedActionException pae) {
+                    throw new MetaDataException(_loc.get("repos-initializeEager-error"), pae);
+                }
+            }
+            return loaded;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(_preloadParallelism, names.size()));
+        try {
+            List<Future<Class<?>>> futures = new ArrayList<Future<Class<?>>>(names.size());
+            for (final String name : names) {
+                futures.add(pool.submit(new Callable<Class<?>>() {
+                    public Class<?> call() throws Exception {
+                        return AccessController.doPrivileged(J2DoPrivHelper.getForNameAction(name, false, loader));
+                    }
+                }));
+            }
+            for (Future<Class<?>> future : futures)
+                loaded.add(future.get());
+        } catch (ExecutionException ee) {
+            throw new MetaDataException(_loc.get("repos-initializeEager-error"), ee.getCause());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new MetaDataException(_loc.get("repos-initializeEager-error"), ie);
+        } finally {
+            pool.shutdownNow();
+        }
+        return loaded;
+    }
+
+    /**
+     * The number of superclasses of the given class.
+     */
+    private static int depth(Class<?> cls) {
+        int depth = 0;
+        for (Class<?> sup = cls.getSuperclass(); sup != null; sup = sup.getSuperclass())
+            depth++;
+        return depth;
+    }
+
     /**
      * Return the metadata for the given class.
      * 
@@ -457,8 +568,12 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
                 // also check to ensure that the class is in that list
                 if (pcNames == null || pcNames.size() == 0 || pcNames.contains(nc.getName())) {
                     cls = nc;
-                    if (!classList.contains(cls))
-                        classList.add(cls);
+                    if (!classList.contains(cls)) {
+                        // copy on write, as the list is read without locking
+                        List<Class<?>> classes = new ArrayList<Class<?>>(classList);
+                        classes.add(cls);
+                        _aliases.put(alias, classes);
+                    }
                     break;
                 }
             } catch (Throwable t) {
@@ -482,7 +597,7 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         // is a thread in getAliasNames() AND this class isn't using any locking.
         synchronized (_aliases) {
             // record that this is an invalid type
-            _aliases.put(alias, null);
+            _aliases.put(alias, NO_TYPES);
         }
 
         if (!mustExist)
@@ -524,7 +639,7 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
     private Collection<String> getAliasNamesInternal() {
         Collection<String> aliases = new HashSet<String>();
         for(Map.Entry<String, List<Class<?>>> e : _aliases.entrySet()){
-            if (e.getValue() != null) {
+            if (!e.getValue().isEmpty()) {
                 aliases.add(e.getKey());
             }            
         }
@@ -1170,11 +1285,11 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         // check cache
         processRegisteredClasses(envLoader);
         Class<?> cls = _oids.get(oid.getClass());
-        if (cls != null)
+        if (cls != null && cls != NO_TYPE)
             return getMetaData(cls, envLoader, mustExist);
 
         // maybe this is some type we've seen but just isn't valid
-        if (_oids.containsKey(oid.getClass())) {
+        if (cls == NO_TYPE) {
             if (mustExist)
                 throw new MetaDataException(_loc.get("no-oid-meta", oid, oid.getClass(), _oids));
             return null;
@@ -1185,12 +1300,12 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         resolveIdentityClass(oid);
         if (processRegisteredClasses(envLoader).length > 0) {
             cls = _oids.get(oid.getClass());
-            if (cls != null)
+            if (cls != null && cls != NO_TYPE)
                 return getMetaData(cls, envLoader, mustExist);
         }
 
         // record that this is an invalid type
-        _oids.put(oid.getClass(), null);
+        _oids.put(oid.getClass(), NO_TYPE);
 
         if (!mustExist)
             return null;
@@ -1293,7 +1408,7 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      * given class is not registered as persistence-aware.
      */
     public NonPersistentMetaData getPersistenceAware(Class<?> cls) {
-        return (NonPersistentMetaData) _pawares.get(cls);
+        return (cls == null) ? null : (NonPersistentMetaData) _pawares.get(cls);
     }
 
     /**
@@ -1352,7 +1467,7 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      * @return true if removed
      */
     public boolean removePersistenceAware(Class<?> cls) {
-        return _pawares.remove(cls) != null;
+        return cls != null && _pawares.remove(cls) != null;
     }
 
     /**
@@ -1360,7 +1475,7 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      * interface is not registered as persistence-aware.
      */
     public NonPersistentMetaData getNonMappedInterface(Class<?> iface) {
-        return (NonPersistentMetaData) _nonMapped.get(iface);
+        return (iface == null) ? null : (NonPersistentMetaData) _nonMapped.get(iface);
     }
 
     /**
@@ -1421,7 +1536,7 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
      * @return true if removed
      */
     public boolean removeNonMappedInterface(Class<?> iface) {
-        return _nonMapped.remove(iface) != null;
+        return iface != null && _nonMapped.remove(iface) != null;
     }
 
     /**
@@ -1734,6 +1849,8 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         }
         if (oid != null) {
             Class<?> existing = _oids.get(oid.getClass());
+            if (existing == NO_TYPE)
+                existing = null;
             if (existing != null) {
                 // if there is already a class for this OID, then we know
                 // that multiple classes are using the same OID: therefore,
@@ -1780,9 +1897,9 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         try {
             if (alias != null) {
                 List<Class<?>> classes = _aliases.get(alias);
-                if (classes == null)
-                    classes = new ArrayList<Class<?>>(3);
-                if (!classes.contains(cls)) {
+                if (classes == null || !classes.contains(cls)) {
+                    // copy on write, as the list is read without locking
+                    classes = (classes == null) ? new ArrayList<Class<?>>(3) : new ArrayList<Class<?>>(classes);
                     classes.add(cls);
                     _aliases.put(alias, classes);
                 }
@@ -1924,16 +2041,7 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         initializeMetaDataFactory();
 		if (_implGen == null)
 			_implGen = new InterfaceImplGenerator(this);
-        if (_preload == true) {
-            _oids = new HashMap<Class<?>, Class<?>>();
-            _impls = new HashMap<Class<?>, Collection<Class<?>>>();
-            _ifaces = new HashMap<Class<?>, Class<?>>();
-            _aliases = new HashMap<String, List<Class<?>>>();
-            _pawares = new HashMap<Class<?>, NonPersistentMetaData>();
-            _nonMapped = new HashMap<Class<?>, NonPersistentMetaData>();
-            _subs = new HashMap<Class<?>, List<Class<?>>>();
-            // Wait till we're done loading MetaData to flip _lock boolean.
-        }            
+        // Wait till we're done loading MetaData to flip _lock boolean.
     }
 
     private void initializeMetaDataFactory() {
@@ -2498,6 +2606,18 @@ public class MetaDataRepository implements PCRegistry.RegisterClassListener, Con
         return false;
     }
 
+    /**
+     * Whether the openjpa.MetaDataRepository plugin value CompileQueries=true is set.
+     *
+     * @since 3.0.1
+     */
+    public static boolean needsQueryCompilation(OpenJPAConfiguration conf) {
+        if (conf == null)
+            return false;
+        Options o = Configurations.parseProperties(Configurations.getProperties(conf.getMetaDataRepository()));
+        return o.getBooleanProperty(COMPILE_QUERIES_STR) || o.getBooleanProperty(COMPILE_QUERIES_STR.toLowerCase());
+    }
+
     /**
      * This private worker ensures that a message is logged when an Entity is enhanced by a version of the enhancer that
      * is older than the current version.
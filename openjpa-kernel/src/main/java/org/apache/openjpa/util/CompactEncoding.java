@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.    
+ */
+package org.apache.openjpa.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.openjpa.lib.util.Localizer;
+
+/**
+ * Helpers for compact binary encodings, such as those of remote commit
+ * events and of cached data held outside of the heap. Numbers are written
+ * as variable length longs, signed numbers zig-zag encoded first. Object
+ * ids of datastore identity and of <code>long</code>, <code>int</code> and
+ * <code>String</code> single field identity are written as a tag followed
+ * by their key; the encoding using them writes their type.
+ *
+ * @since 3.0.1
+ */
+public class CompactEncoding {
+
+    /**
+     * Tag of {@link Id}s.
+     */
+    public static final byte DATASTORE_ID = 1;
+
+    /**
+     * Tag of {@link LongId}s.
+     */
+    public static final byte LONG_ID = 2;
+
+    /**
+     * Tag of {@link IntId}s.
+     */
+    public static final byte INT_ID = 3;
+
+    /**
+     * Tag of {@link StringId}s.
+     */
+    public static final byte STRING_ID = 4;
+
+    private static final Localizer _loc = Localizer.forPackage
+        (CompactEncoding.class);
+
+    /**
+     * Return the tag of the given object id, or 0 if its key cannot be
+     * written compactly.
+     */
+    public static byte getIdTag(Object oid) {
+        if (oid == null)
+            return 0;
+        Class<?> cls = oid.getClass();
+        if (cls == Id.class)
+            return DATASTORE_ID;
+        if (cls == LongId.class)
+            return LONG_ID;
+        if (cls == IntId.class)
+            return INT_ID;
+        if (cls == StringId.class)
+            return STRING_ID;
+        return 0;
+    }
+
+    /**
+     * Write the key of the given object id, whose tag must not be 0.
+     */
+    public static void writeIdKey(DataOutput out, OpenJPAId id)
+        throws IOException {
+        switch (getIdTag(id)) {
+            case DATASTORE_ID:
+                writeVarLong(out, zigZag(((Id) id).getId()));
+                break;
+            case LONG_ID:
+                writeVarLong(out, zigZag(((LongId) id).getId()));
+                break;
+            case INT_ID:
+                writeVarLong(out, zigZag(((IntId) id).getId()));
+                break;
+            case STRING_ID:
+                writeString(out, ((StringId) id).getId());
+                break;
+            default:
+                throw new InternalException(id.getClass().getName());
+        }
+    }
+
+    /**
+     * Read the key of an object id with the given tag and create the id.
+     */
+    public static OpenJPAId readId(DataInput in, int tag, Class<?> type,
+        boolean subs)
+        throws IOException {
+        switch (tag) {
+            case DATASTORE_ID:
+                return new Id(type, unZigZag(readVarLong(in)), subs);
+            case LONG_ID:
+                return new LongId(type, unZigZag(readVarLong(in)), subs);
+            case INT_ID:
+                return new IntId(type, (int) unZigZag(readVarLong(in)), subs);
+            case STRING_ID:
+                return new StringId(type, readString(in), subs);
+            default:
+                throw unknownTag(tag);
+        }
+    }
+
+    /**
+     * Map signed numbers to unsigned ones, so that numbers of small
+     * magnitude have short variable length encodings.
+     */
+    public static long zigZag(long val) {
+        return (val << 1) ^ (val >> 63);
+    }
+
+    /**
+     * Reverse {@link #zigZag}.
+     */
+    public static long unZigZag(long val) {
+        return (val >>> 1) ^ -(val & 1);
+    }
+
+    /**
+     * Write the given number in 7-bit groups, least significant first.
+     */
+    public static void writeVarLong(DataOutput out, long val)
+        throws IOException {
+        while ((val & ~0x7FL) != 0) {
+            out.writeByte((int) ((val & 0x7F) | 0x80));
+            val >>>= 7;
+        }
+        out.writeByte((int) val);
+    }
+
+    /**
+     * Read a number written by {@link #writeVarLong}.
+     */
+    public static long readVarLong(DataInput in)
+        throws IOException {
+        long val = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readByte();
+            val |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return val;
+        }
+        throw new IOException(_loc.get("compact-malformed-number")
+            .getMessage());
+    }
+
+    /**
+     * Read a number of elements or bytes written by {@link #writeVarLong}.
+     * As every element takes at least a byte, the number must not exceed
+     * the bytes left in the given input when it is a stream, so that
+     * malformed data cannot make readers allocate more than it holds.
+     */
+    public static int readLength(DataInput in)
+        throws IOException {
+        long len = readVarLong(in);
+        long left = (in instanceof InputStream)
+            ? ((InputStream) in).available() : Integer.MAX_VALUE;
+        if (len < 0 || len > left)
+            throw new IOException(_loc.get("compact-bad-length",
+                String.valueOf(len), String.valueOf(left)).getMessage());
+        return (int) len;
+    }
+
+    /**
+     * Write the given bytes preceded by their number.
+     */
+    public static void writeBytes(DataOutput out, byte[] bytes)
+        throws IOException {
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read bytes written by {@link #writeBytes}.
+     */
+    public static byte[] readBytes(DataInput in)
+        throws IOException {
+        byte[] bytes = new byte[readLength(in)];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Write the UTF-8 bytes of the given string. Unlike
+     * {@link DataOutput#writeUTF}, strings of any length can be written.
+     */
+    public static void writeString(DataOutput out, String str)
+        throws IOException {
+        writeBytes(out, str.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read a string written by {@link #writeString}.
+     */
+    public static String readString(DataInput in)
+        throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the exception to throw for an unknown tag in encoded data.
+     */
+    public static IOException unknownTag(int tag) {
+        return new IOException(_loc.get("compact-unknown-tag",
+            String.valueOf(tag)).getMessage());
+    }
+}
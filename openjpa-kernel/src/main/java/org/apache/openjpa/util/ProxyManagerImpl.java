@@ -38,6 +38,7 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -49,14 +50,21 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.Queue;
 
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.conf.OpenJPAConfigurationImpl;
 import org.apache.openjpa.enhance.AsmAdaptor;
 import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.lib.conf.Configurations;
 import org.apache.openjpa.lib.util.ClassUtil;
 import org.apache.openjpa.lib.util.Files;
 import org.apache.openjpa.lib.util.J2DoPrivHelper;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.lib.util.Options;
 import org.apache.openjpa.lib.util.StringUtil;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.JavaTypes;
+import org.apache.openjpa.meta.MetaDataRepository;
 
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -506,7 +514,20 @@ public class ProxyManagerImpl
                     return proxyClass;
                 }
             }
-            return Class.forName(getProxyClassName(type, false), true, loader);
+            String name = getProxyClassName(type, false);
+            try {
+                return Class.forName(name, true, loader);
+            } catch (ClassNotFoundException cnfe) {
+                // proxies generated into the output directory of the
+                // application might only be visible to the context loader
+                ClassLoader ctx = AccessController.doPrivileged(
+                    J2DoPrivHelper.getContextClassLoaderAction());
+                if (ctx == null || ctx == loader)
+                    return null;
+                Class<?> cls = Class.forName(name, true, ctx);
+                return (cls.getSuperclass() == type
+                    && Proxy.class.isAssignableFrom(cls)) ? cls : null;
+            }
         } catch (Throwable t) {
             return null;
         }
@@ -1645,33 +1666,156 @@ public class ProxyManagerImpl
 
     /**
      * Usage: java org.apache.openjpa.util.proxy.ProxyManagerImpl [option]*
-     * &lt;class name&gt;+<br />
+     * [&lt;class name&gt;]*<br />
      * Where the following options are recognized:
      * <ul> 
+     * <li><i>-properties/-p &lt;properties file or resource&gt;</i>: The
+     * path or resource name of an OpenJPA properties file containing
+     * information as outlined in {@link OpenJPAConfiguration}. Optional.</li>
+     * <li><i>-&lt;property name&gt; &lt;property value&gt;</i>: All bean
+     * properties of the OpenJPA {@link OpenJPAConfiguration} can be set by
+     * using their names and supplying a value.</li>
+     * <li><i>-directory/-d &lt;output directory&gt;</i>: The root directory
+     * to write the generated classes to, such as the class output directory
+     * of the application.</li>
      * <li><i>-utils/-u &lt;number&gt;</i>: Generate proxies for the standard
      * java.util collection, map, date, and calendar classes of the given Java
      * version.  Use 4 for Java 1.4, 5 for Java 5, etc.</li>
      * </ul>
      *
      * The main method generates .class files for the proxies to the classes    
-     * given on the command line.  It writes the generated classes to beside the
-     * ProxyManagerImpl.class file if possible; otherwise it writes to the 
-     * current directory.  The proxy manager looks for these classes 
-     * before generating its own proxies at runtime.
+     * given on the command line.  If neither classes nor a utils version are
+     * given, it generates proxies for the collection, map, date, and calendar
+     * types of the persistent fields of all persistent types of the
+     * configured persistence unit.  It writes the generated classes to the
+     * given directory, or beside the ProxyManagerImpl.class file if possible;
+     * otherwise it writes to the current directory.  The proxy manager looks
+     * for these classes before generating its own proxies at runtime.
      */
     public static void main(String[] args) 
         throws ClassNotFoundException, IOException {
-        File dir = Files.getClassFile(ProxyManagerImpl.class);
-        dir = (dir == null) ? new File(AccessController.doPrivileged(
-            J2DoPrivHelper.getPropertyAction("user.dir")))
-            : dir.getParentFile();
-
         Options opts = new Options();
-        args = opts.setFromCmdLine(args);
+        final String[] arguments = opts.setFromCmdLine(args);
+        final Flags flags = new Flags();
+        flags.directory = Files.getFile(opts.removeProperty("directory", "d",
+            null), null);
+        flags.utils = opts.removeIntProperty("utils", "u", 0);
+
+        // explicit types do not need a persistence unit
+        if (arguments.length > 0 || flags.utils > 0) {
+            run(null, arguments, flags, AccessController.doPrivileged(
+                J2DoPrivHelper.getClassLoaderAction(ProxyManagerImpl.class)));
+            return;
+        }
+
+        Configurations.runAgainstAllAnchors(opts,
+            new Configurations.Runnable() {
+            public boolean run(Options opts)
+                throws ClassNotFoundException, IOException {
+                OpenJPAConfiguration conf = new OpenJPAConfigurationImpl();
+                try {
+                    Configurations.populateConfiguration(conf, opts);
+                    ClassLoader loader = conf.getClassResolverInstance().
+                        getClassLoader(ProxyManagerImpl.class, null);
+                    return ProxyManagerImpl.run(conf, arguments, flags,
+                        loader);
+                } finally {
+                    conf.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Generate the proxies for the given types and the standard types of
+     * the utils version of the given flags.  If neither are given, generate
+     * the proxies for the second class object types of the persistent model
+     * of the given configuration instead.  Returns false if there was
+     * nothing to generate proxies for.
+     *
+     * @param conf the configuration of the persistent model; may be null
+     * if types or a utils version are given
+     * @since 3.0.1
+     */
+    public static boolean run(OpenJPAConfiguration conf, String[] args,
+        Flags flags, ClassLoader loader)
+        throws ClassNotFoundException, IOException {
+        final ProxyManagerImpl mgr = new ProxyManagerImpl();
+        Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+        for (int i = 0; i < args.length; i++)
+            types.add(Class.forName(args[i], true, loader));
+        for (String name : getStandardTypes(flags.utils))
+            types.add(Class.forName(name));
+        if (args.length == 0 && flags.utils <= 0) {
+            if (conf == null)
+                return false;
+            mgr.addPersistentModelTypes(conf, loader, types);
+        }
+
+        File dir = flags.directory;
+        boolean flat = dir == null;
+        if (flat) {
+            dir = Files.getClassFile(ProxyManagerImpl.class);
+            dir = (dir == null) ? new File(AccessController.doPrivileged(
+                J2DoPrivHelper.getPropertyAction("user.dir")))
+                : dir.getParentFile();
+        }
+
+        BCClass bc;
+        File file;
+        for (final Class cls : types) {
+            // proxies of the standard types only change with the JDK, so
+            // keep the ones that exist; always regenerate those of
+            // application types, which might have changed
+            if (cls.getClassLoader() == null) {
+                try {
+                    if (Class.forName(getProxyClassName(cls, false), true,
+                        GeneratedClasses.getMostDerivedLoader(cls,
+                        Proxy.class)) != null)
+                        continue;
+                } catch (Throwable t) {
+                    // expected if the class hasn't been generated
+                }
+            }
+
+            if (Collection.class.isAssignableFrom(cls))
+                bc = mgr.generateProxyCollectionBytecode(cls, false);         
+            else if (Map.class.isAssignableFrom(cls))
+                bc = mgr.generateProxyMapBytecode(cls, false);         
+            else if (Date.class.isAssignableFrom(cls))
+                bc = mgr.generateProxyDateBytecode(cls, false);
+            else if (Calendar.class.isAssignableFrom(cls))
+                bc = mgr.generateProxyCalendarBytecode(cls, false);
+            else {
+                // TODO Move this to J2DOPrivHelper
+                bc = AccessController
+                    .doPrivileged(new PrivilegedAction<BCClass>() {
+                        public BCClass run() {
+                            return mgr.generateProxyBeanBytecode(cls, false);
+                        }
+                    });
+            }
+            // START - ALLOW PRINT STATEMENTS
+            System.out.println(bc.getName());
+            // STOP - ALLOW PRINT STATEMENTS
+            if (flat)
+                file = new File(dir, bc.getClassName() + ".class");
+            else {
+                file = new File(dir, bc.getName().replace('.',
+                    File.separatorChar) + ".class");
+                file.getParentFile().mkdirs();
+            }
+            AsmAdaptor.write(bc, file);
+        }
+        return true;
+    }
 
-        List types = new ArrayList();
-        types.addAll(Arrays.asList(args));
-        int utils = opts.removeIntProperty("utils", "u", 0);
+    /**
+     * Return the names of the standard java.util types to generate proxies
+     * for with the given Java version.
+     */
+    private static List<String> getStandardTypes(int utils) {
+        List<String> types = new ArrayList<String>();
         if (utils >= 4) {
             types.addAll(Arrays.asList(new String[] {
                 java.sql.Date.class.getName(),
@@ -1699,43 +1843,72 @@ public class ProxyManagerImpl
                 "java.util.PriorityQueue",
             })); 
         }
+        return types;
+    }
 
-        final ProxyManagerImpl mgr = new ProxyManagerImpl();
-        Class cls;
-        BCClass bc;
-        for (int i = 0; i < types.size(); i++) {
-            cls = Class.forName((String) types.get(i));
-            try {
-                if (Class.forName(getProxyClassName(cls, false), true,
-                    GeneratedClasses.getMostDerivedLoader(cls, Proxy.class))
-                    != null)
-                    continue;
-            } catch (Throwable t) {
-                // expected if the class hasn't been generated
+    /**
+     * Add the types that proxies are created for when loading the
+     * collection, map, date, and calendar fields of the persistent types of
+     * the given configuration.
+     */
+    private void addPersistentModelTypes(OpenJPAConfiguration conf,
+        ClassLoader loader, Collection<Class<?>> types) {
+        MetaDataRepository repos = conf.newMetaDataRepositoryInstance();
+        repos.setValidate(MetaDataRepository.VALIDATE_NONE, true);
+        repos.setResolve(MetaDataRepository.MODE_MAPPING, false);
+        ClassMetaData meta;
+        Class<?> type;
+        for (Class<?> cls : repos.loadPersistentTypes(true, loader)) {
+            meta = repos.getMetaData(cls, loader, false);
+            if (meta == null)
+                continue;
+            for (FieldMetaData fmd : meta.getDeclaredFields()) {
+                type = toProxyableType(fmd);
+                if (type != null)
+                    types.add(type);
             }
+        }
+    }
 
-            if (Collection.class.isAssignableFrom(cls))
-                bc = mgr.generateProxyCollectionBytecode(cls, false);         
-            else if (Map.class.isAssignableFrom(cls))
-                bc = mgr.generateProxyMapBytecode(cls, false);         
-            else if (Date.class.isAssignableFrom(cls))
-                bc = mgr.generateProxyDateBytecode(cls, false);
-            else if (Calendar.class.isAssignableFrom(cls))
-                bc = mgr.generateProxyCalendarBytecode(cls, false);
-            else {
-                final Class fCls = cls;
-                // TODO Move this to J2DOPrivHelper
-                bc = AccessController
-                    .doPrivileged(new PrivilegedAction<BCClass>() {
-                        public BCClass run() {
-                            return mgr.generateProxyBeanBytecode(fCls, false);
-                        }
-                    });
+    /**
+     * Return the concrete type that proxies are created for when loading
+     * the given field, or null if the field is not proxied.
+     */
+    private Class<?> toProxyableType(FieldMetaData fmd) {
+        Class<?> type = fmd.getProxyType();
+        try {
+            switch (fmd.getDeclaredTypeCode()) {
+                case JavaTypes.COLLECTION:
+                    type = toProxyableCollectionType(type);
+                    break;
+                case JavaTypes.MAP:
+                    type = toProxyableMapType(type);
+                    break;
+                case JavaTypes.CALENDAR:
+                    if (type == Calendar.class)
+                        type = GregorianCalendar.class;
+                    break;
+                case JavaTypes.DATE:
+                    break;
+                default:
+                    return null;
             }
-            // START - ALLOW PRINT STATEMENTS
-            System.out.println(bc.getName());
-            // STOP - ALLOW PRINT STATEMENTS
-            AsmAdaptor.write(bc, new File(dir, bc.getClassName() + ".class"));
+        } catch (UnsupportedException ue) {
+            return null;
         }
+        if (Modifier.isAbstract(type.getModifiers()) || !isProxyable(type))
+            return null;
+        return type;
+    }
+
+    /**
+     * Run flags.
+     *
+     * @since 3.0.1
+     */
+    public static class Flags {
+
+        public File directory = null;
+        public int utils = 0;
     }
 }
@@ -0,0 +1,631 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.openjpa.lib.util.ReferenceMap;
+import org.apache.openjpa.lib.util.SizedMap;
+import org.apache.openjpa.lib.util.concurrent.ConcurrentReferenceHashMap;
+
+/**
+ * Fixed-size map with the same pin/unpin and soft reference overflow
+ * behavior as {@link CacheMap}, but without a map-wide lock. Keys are spread
+ * over a number of independently locked segments. Lookups never lock; puts,
+ * removals and pins only lock the segment of the key involved.
+ * Each segment evicts with the CLOCK algorithm, an approximation of LRU in
+ * which a lookup merely marks an entry as recently used.
+ * The maximum size is divided evenly among the segments, so the total
+ * number of entries held before eviction starts is approximate.
+ *
+ * @since 3.0.1
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class SegmentedCacheMap
+    extends AbstractMap
+    implements Map {
+
+    private final Segment[] _segments;
+    private final int _mask;
+
+    // configured totals; Integer.MAX_VALUE for no limit
+    private volatile int _cacheSize;
+    private volatile int _softSize = Integer.MAX_VALUE;
+
+    // serializes compound operations of callers; never used internally
+    private final ReentrantLock _writeLock = new ReentrantLock();
+
+    /**
+     * Create a cache map with a size of 1000 and 16 segments.
+     */
+    public SegmentedCacheMap() {
+        this(1000, 16);
+    }
+
+    /**
+     * Create a cache map with the given properties.
+     *
+     * @param max the maximum number of unpinned entries to hold hard
+     * references to, or -1 for no limit
+     * @param concurrencyLevel the number of segments; rounded up to the next
+     * power of two
+     */
+    public SegmentedCacheMap(int max, int concurrencyLevel) {
+        int segments = 1;
+        while (segments < concurrencyLevel)
+            segments <<= 1;
+        _segments = new Segment[segments];
+        _mask = segments - 1;
+        _cacheSize = (max < 0) ? Integer.MAX_VALUE : max;
+        for (int i = 0; i < segments; i++)
+            _segments[i] = new Segment(perSegment(_cacheSize),
+                perSegment(_softSize));
+    }
+
+    /**
+     * Invoked when a key-value pair is evicted from this data
+     * structure. This is invoked with <code>expired</code> set to
+     * <code>true</code> when an object is dropped because of space
+     * requirements or through garbage collection of soft references.
+     * It is invoked with <code>expired</code> set to <code>false</code>
+     * when an object is explicitly removed via the {@link #remove} or
+     * {@link #clear} methods. This may be invoked more than once for a
+     * given entry.
+     *
+     * @param value may be null if the value was a soft reference that has
+     * been GCd
+     */
+    protected void entryRemoved(Object key, Object value, boolean expired) {
+    }
+
+    /**
+     * Invoked when an entry is added to the cache. This may be invoked
+     * more than once for an entry.
+     */
+    protected void entryAdded(Object key, Object value) {
+    }
+
+    /**
+     * Acquire the write lock. The lock is not needed for individual
+     * operations on this map; it allows callers to make a sequence of
+     * operations atomic with respect to each other without blocking readers.
+     */
+    public void writeLock() {
+        _writeLock.lock();
+    }
+
+    /**
+     * Release the write lock.
+     */
+    public void writeUnlock() {
+        _writeLock.unlock();
+    }
+
+    /**
+     * The number of segments.
+     */
+    public int getConcurrencyLevel() {
+        return _segments.length;
+    }
+
+    /**
+     * The maximum number of hard references to maintain, or -1 for no limit.
+     */
+    public void setCacheSize(int size) {
+        _cacheSize = (size < 0) ? Integer.MAX_VALUE : size;
+        int max = perSegment(_cacheSize);
+        for (Segment seg : _segments) {
+            seg.lock();
+            try {
+                seg.max = max;
+                seg.evict();
+            } finally {
+                seg.unlock();
+            }
+        }
+    }
+
+    /**
+     * The maximum number of hard references to maintain, or -1 for no limit.
+     */
+    public int getCacheSize() {
+        return (_cacheSize == Integer.MAX_VALUE) ? -1 : _cacheSize;
+    }
+
+    /**
+     * The maximum number of soft references to maintain, or -1 for no limit.
+     */
+    public void setSoftReferenceSize(int size) {
+        _softSize = (size < 0) ? Integer.MAX_VALUE : size;
+        int max = perSegment(_softSize);
+        for (Segment seg : _segments) {
+            seg.lock();
+            try {
+                seg.soft.setMaxSize(max);
+            } finally {
+                seg.unlock();
+            }
+        }
+    }
+
+    /**
+     * The maximum number of soft references to maintain, or -1 for no limit.
+     */
+    public int getSoftReferenceSize() {
+        return (_softSize == Integer.MAX_VALUE) ? -1 : _softSize;
+    }
+
+    /**
+     * The keys pinned into the map.
+     */
+    public Set getPinnedKeys() {
+        Set keys = new HashSet();
+        for (Segment seg : _segments)
+            for (Node node : seg.nodes.values())
+                if (node.pinned)
+                    keys.add(node.key);
+        return Collections.unmodifiableSet(keys);
+    }
+
+    /**
+     * Locks the given key and its value into the map. Objects pinned into
+     * the map are not counted towards the maximum cache size, and are never
+     * evicted implicitly. You may pin keys for which no value is in the map.
+     *
+     * @return true if the given key's value was pinned; false if no value
+     * for the given key is cached
+     */
+    public boolean pin(Object key) {
+        Segment seg = segmentFor(key);
+        seg.lock();
+        try {
+            Node node = seg.nodes.get(key);
+            if (node != null && node.pinned)
+                return node.value != null;
+
+            Object val;
+            if (node != null) {
+                val = node.value;
+                seg.size--;
+                if (node.queued)
+                    seg.stale++;
+            } else {
+                val = seg.soft.remove(key);
+                node = new Node(key, val);
+                seg.nodes.put(key, node);
+            }
+            node.pinned = true;
+            if (val == null)
+                return false;
+            seg.pinnedSize++;
+            return true;
+        } finally {
+            seg.unlock();
+        }
+    }
+
+    /**
+     * Undo a pinning.
+     */
+    public boolean unpin(Object key) {
+        Segment seg = segmentFor(key);
+        seg.lock();
+        try {
+            Node node = seg.nodes.get(key);
+            if (node == null || !node.pinned)
+                return false;
+
+            Object val = node.value;
+            if (val == null) {
+                seg.nodes.remove(key);
+                return false;
+            }
+            node.pinned = false;
+            seg.pinnedSize--;
+            seg.size++;
+            if (node.queued)
+                seg.stale--;
+            else
+                seg.enqueue(node);
+            entryAdded(key, val);
+            seg.evict();
+            return true;
+        } finally {
+            seg.unlock();
+        }
+    }
+
+    public Object get(Object key) {
+        Segment seg = segmentFor(key);
+        Node node = seg.nodes.get(key);
+        if (node != null) {
+            Object val = node.value;
+            if (val != null && !node.referenced)
+                node.referenced = true;
+            return val;
+        }
+
+        Object val = seg.soft.get(key);
+        if (val != null)
+            seg.promote(key);
+        return val;
+    }
+
+    public Object put(Object key, Object value) {
+        if (value == null)
+            return remove(key);
+
+        Segment seg = segmentFor(key);
+        seg.lock();
+        try {
+            // if the key is pinned, just replace the pinned value
+            Node node = seg.nodes.get(key);
+            Object val;
+            if (node != null && node.pinned) {
+                val = node.value;
+                node.value = value;
+                if (val == null)
+                    seg.pinnedSize++;
+                else
+                    entryRemoved(key, val, false);
+                entryAdded(key, value);
+                return val;
+            }
+
+            // if no hard refs, don't put anything
+            if (seg.max == 0)
+                return null;
+
+            if (node != null) {
+                val = node.value;
+                node.value = value;
+            } else {
+                val = seg.soft.remove(key);
+                node = new Node(key, value);
+                seg.nodes.put(key, node);
+                seg.size++;
+                seg.enqueue(node);
+            }
+            if (val != null)
+                entryRemoved(key, val, false);
+            entryAdded(key, value);
+            seg.evict();
+            return val;
+        } finally {
+            seg.unlock();
+        }
+    }
+
+    /**
+     * If <code>key</code> is pinned into the cache, the pin is
+     * retained and the value is removed.
+     */
+    public Object remove(Object key) {
+        Segment seg = segmentFor(key);
+        seg.lock();
+        try {
+            Node node = seg.nodes.get(key);
+            Object val;
+            if (node != null && node.pinned) {
+                // keep the key pinned without a value
+                val = node.value;
+                node.value = null;
+                if (val != null) {
+                    seg.pinnedSize--;
+                    entryRemoved(key, val, false);
+                }
+                return val;
+            }
+
+            if (node != null) {
+                val = node.value;
+                node.value = null;
+                seg.unlink(node);
+            } else
+                val = seg.soft.remove(key);
+            if (val != null)
+                entryRemoved(key, val, false);
+            return val;
+        } finally {
+            seg.unlock();
+        }
+    }
+
+    /**
+     * Removes pinned objects as well as unpinned ones.
+     */
+    public void clear() {
+        for (Segment seg : _segments) {
+            seg.lock();
+            try {
+                for (Node node : seg.nodes.values())
+                    if (node.value != null)
+                        entryRemoved(node.key, node.value, false);
+                seg.nodes.clear();
+                seg.clock.clear();
+                seg.size = 0;
+                seg.pinnedSize = 0;
+                seg.stale = 0;
+
+                Map.Entry entry;
+                for (Iterator itr = seg.soft.entrySet().iterator();
+                    itr.hasNext();) {
+                    entry = (Map.Entry) itr.next();
+                    if (entry.getValue() != null)
+                        entryRemoved(entry.getKey(), entry.getValue(), false);
+                }
+                seg.soft.clear();
+            } finally {
+                seg.unlock();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment seg : _segments)
+            size += seg.size + seg.pinnedSize + seg.soft.size();
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(Object key) {
+        Segment seg = segmentFor(key);
+        Node node = seg.nodes.get(key);
+        if (node != null && node.value != null)
+            return true;
+        return seg.soft.containsKey(key);
+    }
+
+    public Set entrySet() {
+        return new EntrySet();
+    }
+
+    public String toString() {
+        return "SegmentedCacheMap:" + super.toString();
+    }
+
+    private Segment segmentFor(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return _segments[(h >>> 16) & _mask];
+    }
+
+    private int perSegment(int total) {
+        if (total == Integer.MAX_VALUE)
+            return total;
+        return (int) (((long) total + _segments.length - 1)
+            / _segments.length);
+    }
+
+    /**
+     * Cache entry. The value of an unpinned node is never null.
+     */
+    private static final class Node {
+
+        final Object key;
+        volatile Object value;
+        volatile boolean referenced;
+        volatile boolean pinned;
+
+        // whether this node is in the segment's clock; guarded by the lock
+        boolean queued;
+
+        Node(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Independently locked portion of the map. Readers access the node map
+     * and soft map without the lock; all mutations hold it.
+     */
+    private final class Segment
+        extends ReentrantLock {
+
+        final ConcurrentHashMap<Object, Node> nodes =
+            new ConcurrentHashMap<Object, Node>();
+        final ArrayDeque<Node> clock = new ArrayDeque<Node>();
+        final SizedMap soft;
+
+        // number of unpinned and pinned values held by nodes
+        volatile int size;
+        volatile int pinnedSize;
+        volatile int max;
+
+        // number of clock entries that are pinned or no longer mapped
+        int stale;
+
+        Segment(int max, int softMax) {
+            this.max = max;
+            soft = new ConcurrentReferenceHashMap(ReferenceMap.HARD,
+                ReferenceMap.SOFT) {
+                public void overflowRemoved(Object key, Object value) {
+                    entryRemoved(key, value, true);
+                }
+
+                public void valueExpired(Object key) {
+                    entryRemoved(key, null, true);
+                }
+            };
+            soft.setMaxSize(softMax);
+        }
+
+        /**
+         * Move a soft reference back into the hard cache.
+         */
+        void promote(Object key) {
+            lock();
+            try {
+                if (max == 0 || nodes.containsKey(key))
+                    return;
+                Object val = soft.remove(key);
+                if (val == null)
+                    return;
+                Node node = new Node(key, val);
+                node.referenced = true;
+                nodes.put(key, node);
+                size++;
+                enqueue(node);
+                evict();
+            } finally {
+                unlock();
+            }
+        }
+
+        void enqueue(Node node) {
+            node.queued = true;
+            clock.add(node);
+        }
+
+        /**
+         * Remove the given unpinned node from the map.
+         */
+        void unlink(Node node) {
+            nodes.remove(node.key);
+            size--;
+            if (node.queued)
+                stale++;
+            if (stale > 32 && stale > clock.size() / 2)
+                purge();
+        }
+
+        /**
+         * Evict unpinned entries until the segment is within its bounds,
+         * giving every recently used entry a second chance.
+         */
+        void evict() {
+            Node node;
+            while (size > max && (node = clock.poll()) != null) {
+                node.queued = false;
+                if (node.pinned || nodes.get(node.key) != node) {
+                    stale--;
+                    continue;
+                }
+                if (node.referenced) {
+                    node.referenced = false;
+                    enqueue(node);
+                    continue;
+                }
+
+                nodes.remove(node.key);
+                size--;
+                Object val = node.value;
+                if (soft.size() < soft.getMaxSize())
+                    soft.put(node.key, val);
+                else
+                    entryRemoved(node.key, val, true);
+            }
+        }
+
+        /**
+         * Drop pinned and unmapped nodes from the clock.
+         */
+        private void purge() {
+            Node node;
+            for (Iterator<Node> itr = clock.iterator(); itr.hasNext();) {
+                node = itr.next();
+                if (node.pinned || nodes.get(node.key) != node) {
+                    node.queued = false;
+                    itr.remove();
+                }
+            }
+            stale = 0;
+        }
+    }
+
+    /**
+     * View of the entry set.
+     */
+    private class EntrySet
+        extends AbstractSet {
+
+        public int size() {
+            return SegmentedCacheMap.this.size();
+        }
+
+        public Iterator iterator() {
+            return new EntryIterator();
+        }
+    }
+
+    /**
+     * Iterator over the entries of all segments, including soft references.
+     */
+    private class EntryIterator
+        implements Iterator {
+
+        private int _seg = 0;
+        private Iterator _nodes = null;
+        private Iterator _soft = null;
+        private Map.Entry _next = null;
+        private Object _last = null;
+
+        public boolean hasNext() {
+            while (_next == null) {
+                if (_nodes != null && _nodes.hasNext()) {
+                    Node node = (Node) _nodes.next();
+                    Object val = node.value;
+                    if (val != null)
+                        _next = new SimpleImmutableEntry(node.key, val);
+                } else if (_soft != null && _soft.hasNext()) {
+                    Map.Entry entry = (Map.Entry) _soft.next();
+                    if (entry.getValue() != null)
+                        _next = new SimpleImmutableEntry(entry.getKey(),
+                            entry.getValue());
+                } else if (_seg < _segments.length) {
+                    _nodes = _segments[_seg].nodes.values().iterator();
+                    _soft = _segments[_seg].soft.entrySet().iterator();
+                    _seg++;
+                } else
+                    return false;
+            }
+            return true;
+        }
+
+        public Object next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Map.Entry next = _next;
+            _next = null;
+            _last = next.getKey();
+            return next;
+        }
+
+        public void remove() {
+            if (_last == null)
+                throw new IllegalStateException();
+            SegmentedCacheMap.this.remove(_last);
+            _last = null;
+        }
+    }
+}
@@ -18,8 +18,11 @@
  */
 package org.apache.openjpa.util;
 
+import java.io.File;
 import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.AbstractMap;
@@ -816,6 +819,34 @@ public class TestProxyManager extends TestCase {
         }
     }
 
+    public void testBuildTimeProxy() throws Exception {
+        File dir = new File("target/" + getClass().getName() + "-proxies");
+        ProxyManagerImpl.Flags flags = new ProxyManagerImpl.Flags();
+        flags.directory = dir;
+        assertTrue(ProxyManagerImpl.run(null,
+            new String[] { CustomSortedSet.class.getName() }, flags,
+            getClass().getClassLoader()));
+
+        String name = getClass().getPackage().getName() + "."
+            + CustomSortedSet.class.getName().replace('.', '$') + "$proxy";
+        assertTrue(new File(dir, name.replace('.', File.separatorChar)
+            + ".class").exists());
+
+        // the proxy is only visible to the context loader
+        ClassLoader loader = new URLClassLoader(new URL[] {
+            dir.toURI().toURL() }, getClass().getClassLoader());
+        Class cls = Class.forName(name, false, loader);
+        Thread thread = Thread.currentThread();
+        ClassLoader ctx = thread.getContextClassLoader();
+        thread.setContextClassLoader(loader);
+        try {
+            assertSame(cls, _mgr.newCollectionProxy(CustomSortedSet.class,
+                null, null, true).getClass());
+        } finally {
+            thread.setContextClassLoader(ctx);
+        }
+    }
+
     public static void main(String[] args) {
         TestRunner.run(TestProxyManager.class);
     }
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the pin, overflow and expiration behavior of
+ * {@link SegmentedCacheMap}.
+ */
+public class TestSegmentedCacheMap extends TestCase {
+
+    private RecordingMap _map;
+
+    public void setUp() {
+        // a single segment makes eviction order deterministic
+        _map = new RecordingMap(3, 1);
+        _map.setSoftReferenceSize(0);
+    }
+
+    public void testPutGetRemove() {
+        assertNull(_map.put("a", "1"));
+        assertEquals("1", _map.get("a"));
+        assertEquals("1", _map.put("a", "2"));
+        assertEquals(1, _map.removed.size());
+        assertEquals(Boolean.FALSE, _map.expired.get(0));
+        assertEquals("2", _map.remove("a"));
+        assertNull(_map.get("a"));
+        assertTrue(_map.isEmpty());
+    }
+
+    public void testOverflowEvictsUnreferencedEntry() {
+        _map.put("a", "1");
+        _map.put("b", "2");
+        _map.put("c", "3");
+        // touch a and c so that b is the eviction candidate
+        _map.get("a");
+        _map.get("c");
+        _map.put("d", "4");
+
+        assertEquals(3, _map.size());
+        assertNull(_map.get("b"));
+        assertEquals("1", _map.get("a"));
+        assertEquals("3", _map.get("c"));
+        assertEquals("4", _map.get("d"));
+        assertEquals("b", _map.removed.get(0));
+        assertEquals(Boolean.TRUE, _map.expired.get(0));
+    }
+
+    public void testOverflowToSoftReferences() {
+        _map.setSoftReferenceSize(-1);
+        for (int i = 0; i < 10; i++)
+            _map.put("k" + i, "v" + i);
+        assertTrue(_map.removed.isEmpty());
+        assertEquals(10, _map.size());
+        for (int i = 0; i < 10; i++)
+            assertEquals("v" + i, _map.get("k" + i));
+    }
+
+    public void testPinnedEntriesAreNotEvicted() {
+        _map.put("a", "1");
+        assertTrue(_map.pin("a"));
+        assertFalse(_map.pin("x"));
+        for (int i = 0; i < 10; i++)
+            _map.put("k" + i, "v" + i);
+
+        assertEquals("1", _map.get("a"));
+        assertEquals(4, _map.size());
+        assertTrue(_map.getPinnedKeys().contains("a"));
+        assertTrue(_map.getPinnedKeys().contains("x"));
+
+        // removing a pinned value keeps the key pinned
+        assertEquals("1", _map.remove("a"));
+        assertTrue(_map.getPinnedKeys().contains("a"));
+        assertNull(_map.put("a", "2"));
+        assertTrue(_map.unpin("a"));
+        assertFalse(_map.unpin("x"));
+        assertTrue(_map.getPinnedKeys().isEmpty());
+        assertEquals(3, _map.size());
+    }
+
+    public void testClearRemovesPins() {
+        _map.put("a", "1");
+        _map.pin("a");
+        _map.put("b", "2");
+        _map.clear();
+
+        assertTrue(_map.isEmpty());
+        assertTrue(_map.getPinnedKeys().isEmpty());
+        assertEquals(2, _map.removed.size());
+        assertFalse(_map.expired.contains(Boolean.TRUE));
+    }
+
+    public void testShrinkCacheSize() {
+        for (int i = 0; i < 3; i++)
+            _map.put("k" + i, "v" + i);
+        _map.setCacheSize(1);
+        assertEquals(1, _map.size());
+        assertEquals(2, _map.removed.size());
+        assertEquals(1, _map.getCacheSize());
+
+        _map.setCacheSize(0);
+        assertNull(_map.put("x", "y"));
+        assertNull(_map.get("x"));
+    }
+
+    public void testSegmentsShareCacheSize() {
+        SegmentedCacheMap map = new SegmentedCacheMap(1000, 10);
+        assertEquals(16, map.getConcurrencyLevel());
+        for (int i = 0; i < 5000; i++)
+            map.put(i, i);
+        map.setSoftReferenceSize(0);
+        assertTrue(map.size() <= 1008);
+        assertTrue(map.size() >= 900);
+        int count = 0;
+        for (Iterator<?> itr = map.entrySet().iterator(); itr.hasNext();
+            itr.next())
+            count++;
+        assertEquals(map.size(), count);
+    }
+
+    private static class RecordingMap extends SegmentedCacheMap {
+
+        final List<Object> removed = new ArrayList<Object>();
+        final List<Boolean> expired = new ArrayList<Boolean>();
+
+        RecordingMap(int max, int concurrencyLevel) {
+            super(max, concurrencyLevel);
+        }
+
+        protected void entryRemoved(Object key, Object value, boolean exp) {
+            removed.add(key);
+            expired.add(exp);
+        }
+    }
+}
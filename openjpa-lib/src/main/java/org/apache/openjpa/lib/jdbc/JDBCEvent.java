@@ -97,6 +97,8 @@ public class JDBCEvent extends EventObject {
 
     private final short type;
     private final long time;
+    private final long nanoTime;
+    private final int updateCount;
     private final String sql;
     private final JDBCEvent associatedEvent;
     private final transient Statement statement;
@@ -106,9 +108,23 @@ public class JDBCEvent extends EventObject {
      */
     public JDBCEvent(Connection source, short type, JDBCEvent associatedEvent,
         Statement statement, String sql) {
+        this(source, type, associatedEvent, statement, sql, -1);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param updateCount the number of rows affected by the statement
+     * execution that completed, or -1 if not known
+     * @since 3.0.1
+     */
+    public JDBCEvent(Connection source, short type, JDBCEvent associatedEvent,
+        Statement statement, String sql, int updateCount) {
         super(source);
         this.type = type;
         this.time = System.currentTimeMillis();
+        this.nanoTime = System.nanoTime();
+        this.updateCount = updateCount;
         this.associatedEvent = associatedEvent;
         this.sql = sql;
         this.statement = statement;
@@ -135,6 +151,28 @@ public class JDBCEvent extends EventObject {
         return time;
     }
 
+    /**
+     * Return the value of {@link System#nanoTime} when the event was
+     * constructed. Only meaningful relative to the same value of another
+     * event, such as the associated event.
+     *
+     * @since 3.0.1
+     */
+    public final long getNanoTime() {
+        return nanoTime;
+    }
+
+    /**
+     * Return the number of rows affected by the statement execution this
+     * {@link #AFTER_EXECUTE_STATEMENT} event reports, or -1 if it is not
+     * known, as for queries.
+     *
+     * @since 3.0.1
+     */
+    public final int getUpdateCount() {
+        return updateCount;
+    }
+
     /**
      * Return the associated {@link JDBCEvent} for this event.
      * For AFTER_XXX events, this will typically be the JDBCEvent
@@ -47,15 +47,41 @@ public class JDBCEventConnectionDecorator extends AbstractConcurrentEventManager
      */
     private JDBCEvent fireEvent(Connection source, short type,
         JDBCEvent associatedEvent, Statement stmnt, String sql) {
+        return fireEvent(source, type, associatedEvent, stmnt, sql, -1);
+    }
+
+    /**
+     * Fire the given event to all listeners, reporting the number of rows
+     * affected by a completed statement execution.
+     */
+    private JDBCEvent fireEvent(Connection source, short type,
+        JDBCEvent associatedEvent, Statement stmnt, String sql,
+        int updateCount) {
         if (!hasListeners())
             return null;
 
         JDBCEvent event = new JDBCEvent(source, type, associatedEvent,
-            stmnt, sql);
+            stmnt, sql, updateCount);
         fireEvent(event);
         return event;
     }
 
+    /**
+     * Return the total number of rows affected by a batch, or -1 if the
+     * driver did not report it.
+     */
+    private static int sum(int[] counts) {
+        if (counts == null)
+            return -1;
+        int total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] < 0)
+                return -1;
+            total += counts[i];
+        }
+        return total;
+    }
+
     /**
      * Fire the given event to all listeners.
      */
@@ -222,12 +248,14 @@ public class JDBCEventConnectionDecorator extends AbstractConcurrentEventManager
         public int executeUpdate() throws SQLException {
             JDBCEvent before = fireEvent(_conn.getDelegate(),
                 JDBCEvent.BEFORE_EXECUTE_STATEMENT, null, getDelegate(), _sql);
+            int count = -1;
             try {
-                return super.executeUpdate();
+                count = super.executeUpdate();
+                return count;
             } finally {
                 fireEvent(_conn.getDelegate(),
                     JDBCEvent.AFTER_EXECUTE_STATEMENT, before,
-                    getDelegate(), _sql);
+                    getDelegate(), _sql, count);
             }
         }
 
@@ -246,12 +274,14 @@ public class JDBCEventConnectionDecorator extends AbstractConcurrentEventManager
         public int[] executeBatch() throws SQLException {
             JDBCEvent before = fireEvent(_conn.getDelegate(),
                 JDBCEvent.BEFORE_EXECUTE_STATEMENT, null, getDelegate(), _sql);
+            int[] counts = null;
             try {
-                return super.executeBatch();
+                counts = super.executeBatch();
+                return counts;
             } finally {
                 fireEvent(_conn.getDelegate(),
                     JDBCEvent.AFTER_EXECUTE_STATEMENT, before,
-                    getDelegate(), _sql);
+                    getDelegate(), _sql, sum(counts));
             }
         }
 
@@ -270,48 +300,56 @@ public class JDBCEventConnectionDecorator extends AbstractConcurrentEventManager
         public int executeUpdate(String sql) throws SQLException {
             JDBCEvent before = fireEvent(_conn.getDelegate(),
                 JDBCEvent.BEFORE_EXECUTE_STATEMENT, null, getDelegate(), sql);
+            int count = -1;
             try {
-                return super.executeUpdate(sql);
+                count = super.executeUpdate(sql);
+                return count;
             } finally {
                 fireEvent(_conn.getDelegate(),
                     JDBCEvent.AFTER_EXECUTE_STATEMENT, before,
-                    getDelegate(), sql);
+                    getDelegate(), sql, count);
             }
         }
 
         public int executeUpdate(String sql, int i) throws SQLException {
             JDBCEvent before = fireEvent(_conn.getDelegate(),
                 JDBCEvent.BEFORE_EXECUTE_STATEMENT, null, getDelegate(), sql);
+            int count = -1;
             try {
-                return super.executeUpdate(sql, i);
+                count = super.executeUpdate(sql, i);
+                return count;
             } finally {
                 fireEvent(_conn.getDelegate(),
                     JDBCEvent.AFTER_EXECUTE_STATEMENT, before,
-                    getDelegate(), sql);
+                    getDelegate(), sql, count);
             }
         }
 
         public int executeUpdate(String sql, int[] ia) throws SQLException {
             JDBCEvent before = fireEvent(_conn.getDelegate(),
                 JDBCEvent.BEFORE_EXECUTE_STATEMENT, null, getDelegate(), sql);
+            int count = -1;
             try {
-                return super.executeUpdate(sql, ia);
+                count = super.executeUpdate(sql, ia);
+                return count;
             } finally {
                 fireEvent(_conn.getDelegate(),
                     JDBCEvent.AFTER_EXECUTE_STATEMENT, before,
-                    getDelegate(), sql);
+                    getDelegate(), sql, count);
             }
         }
 
         public int executeUpdate(String sql, String[] sa) throws SQLException {
             JDBCEvent before = fireEvent(_conn.getDelegate(),
                 JDBCEvent.BEFORE_EXECUTE_STATEMENT, null, getDelegate(), sql);
+            int count = -1;
             try {
-                return super.executeUpdate(sql, sa);
+                count = super.executeUpdate(sql, sa);
+                return count;
             } finally {
                 fireEvent(_conn.getDelegate(),
                     JDBCEvent.AFTER_EXECUTE_STATEMENT, before,
-                    getDelegate(), sql);
+                    getDelegate(), sql, count);
             }
         }
 
@@ -379,12 +417,14 @@ public class JDBCEventConnectionDecorator extends AbstractConcurrentEventManager
         public int executeUpdate(String sql) throws SQLException {
             JDBCEvent before = fireEvent(_conn.getDelegate(),
                 JDBCEvent.BEFORE_EXECUTE_STATEMENT, null, getDelegate(), sql);
+            int count = -1;
             try {
-                return super.executeUpdate(sql);
+                count = super.executeUpdate(sql);
+                return count;
             } finally {
                 fireEvent(_conn.getDelegate(),
                     JDBCEvent.AFTER_EXECUTE_STATEMENT, before,
-                    getDelegate(), sql);
+                    getDelegate(), sql, count);
             }
         }
 
@@ -416,36 +456,42 @@ public class JDBCEventConnectionDecorator extends AbstractConcurrentEventManager
         public int executeUpdate(String sql, int i) throws SQLException {
             JDBCEvent before = fireEvent(_conn.getDelegate(),
                 JDBCEvent.BEFORE_EXECUTE_STATEMENT, null, getDelegate(), sql);
+            int count = -1;
             try {
-                return super.executeUpdate(sql, i);
+                count = super.executeUpdate(sql, i);
+                return count;
             } finally {
                 fireEvent(_conn.getDelegate(),
                     JDBCEvent.AFTER_EXECUTE_STATEMENT, before,
-                    getDelegate(), sql);
+                    getDelegate(), sql, count);
             }
         }
 
         public int executeUpdate(String sql, int[] ia) throws SQLException {
             JDBCEvent before = fireEvent(_conn.getDelegate(),
                 JDBCEvent.BEFORE_EXECUTE_STATEMENT, null, getDelegate(), sql);
+            int count = -1;
             try {
-                return super.executeUpdate(sql, ia);
+                count = super.executeUpdate(sql, ia);
+                return count;
             } finally {
                 fireEvent(_conn.getDelegate(),
                     JDBCEvent.AFTER_EXECUTE_STATEMENT, before,
-                    getDelegate(), sql);
+                    getDelegate(), sql, count);
             }
         }
 
         public int executeUpdate(String sql, String[] sa) throws SQLException {
             JDBCEvent before = fireEvent(_conn.getDelegate(),
                 JDBCEvent.BEFORE_EXECUTE_STATEMENT, null, getDelegate(), sql);
+            int count = -1;
             try {
-                return super.executeUpdate(sql, sa);
+                count = super.executeUpdate(sql, sa);
+                return count;
             } finally {
                 fireEvent(_conn.getDelegate(),
                     JDBCEvent.AFTER_EXECUTE_STATEMENT, before,
-                    getDelegate(), sql);
+                    getDelegate(), sql, count);
             }
         }
 
@@ -25,6 +25,9 @@ import java.util.Comparator;
  * A result object provider that merges multiple result object provider
  * delegates. Support exists for maintaining ordering of the internally held
  * results, provided that each of the individual results is itself ordered.
+ * Ordered delegates are merged through a binary heap, so that each result
+ * costs a logarithmic number of comparisons in the number of delegates, and
+ * a delegate is only advanced once its previous result has been consumed.
  *
  * @author Abe White
  * @author Marc Prud'hommeaux
@@ -41,6 +44,9 @@ public class MergedResultObjectProvider implements ResultObjectProvider {
     private final byte[] _status;
     private Object[] _values;
     private Object[] _orderValues;
+    private final int[] _heap;
+    private int _heapSize = -1;
+    private int _last = -1;
     private Object _cur = null;
     private int _size = -1;
 
@@ -61,6 +67,7 @@ public class MergedResultObjectProvider implements ResultObjectProvider {
         _status = new byte[rops.length];
         _values = (comp == null) ? null : new Object[rops.length];
         _orderValues = (comp == null) ? null : new Object[rops.length];
+        _heap = (comp == null) ? null : new int[rops.length];
     }
 
     public boolean supportsRandomAccess() {
@@ -132,6 +139,8 @@ public class MergedResultObjectProvider implements ResultObjectProvider {
 
     private void clear() {
         _cur = null;
+        _heapSize = -1;
+        _last = -1;
         for (int i = 0; i < _rops.length; i++) {
             _status[i] = OPENED;
             if (_values != null)
@@ -148,67 +157,119 @@ public class MergedResultObjectProvider implements ResultObjectProvider {
     }
 
     public boolean next() throws Exception {
-        // initialize all rops with the latest values
-        boolean hasValue = false;
+        if (_comp != null)
+            return nextOrdered();
+
         for (int i = 0; i < _status.length; i++) {
             switch (_status[i]) {
                 case UNOPENED:
-                    // this will only ever be the case if we aren't ordering
                     _rops[i].open();
                     _status[i] = OPENED;
                     // no break
                 case OPENED:
-                    // if this rop has a value, cache it; if we're not ordering,
-                    // then that's the value to return
+                    // the first rop with a value is the one to return
                     if (_rops[i].next()) {
-                        if (_comp == null) {
-                            _cur = _rops[i].getResultObject();
-                            return true;
-                        } else {
-                            hasValue = true;
-                            _status[i] = VALUE;
-                            _values[i] = _rops[i].getResultObject();
-                            _orderValues[i] = getOrderingValue(_values[i],
-                                i, _rops[i]);
-                        }
-                    } else
-                        _status[i] = DONE;
-                    break;
-                case VALUE:
-                    // we only use this state when ordering
-                    hasValue = true;
+                        _cur = _rops[i].getResultObject();
+                        return true;
+                    }
+                    _status[i] = DONE;
                     break;
             }
         }
+        return false;
+    }
 
-        // if we get to this point without a comparator, it means none
-        // of our rops have any more values
-        if (_comp == null || !hasValue)
-            return false;
-
-        // for all the rops with values, find the 'least' one according to
-        // the comparator
-        int least = -1;
-        Object orderVal = null;
-        for (int i = 0; i < _orderValues.length; i++) {
-            if (_status[i] != VALUE)
-                continue;
-            if (least == -1 || _comp.compare(_orderValues[i], orderVal) < 0) {
-                least = i;
-                orderVal = _orderValues[i];
-            }
+    /**
+     * Return the least of the current values of the delegates, advancing only
+     * the delegate whose value was returned last.
+     */
+    private boolean nextOrdered() throws Exception {
+        if (_heapSize == -1) {
+            // first call: fetch the first value of every rop
+            _heapSize = 0;
+            for (int i = 0; i < _status.length; i++)
+                if (advance(i))
+                    push(i);
+        } else if (_last != -1) {
+            if (advance(_last))
+                push(_last);
         }
+        _last = -1;
+        if (_heapSize == 0)
+            return false;
 
         // assign the least value to the current one, and clear the cached
-        // value for that rop so that we know to get the next value for
-        // the next comparison
+        // value for that rop so that we know to get its next value on the
+        // next call
+        int least = pop();
         _cur = _values[least];
         _values[least] = null;
         _orderValues[least] = null;
         _status[least] = OPENED;
+        _last = least;
         return true;
     }
 
+    /**
+     * Cache the next value of the given rop, if any.
+     */
+    private boolean advance(int i) throws Exception {
+        if (_status[i] == UNOPENED) {
+            _rops[i].open();
+            _status[i] = OPENED;
+        }
+        if (_status[i] != OPENED)
+            return false;
+        if (!_rops[i].next()) {
+            _status[i] = DONE;
+            return false;
+        }
+        _status[i] = VALUE;
+        _values[i] = _rops[i].getResultObject();
+        _orderValues[i] = getOrderingValue(_values[i], i, _rops[i]);
+        return true;
+    }
+
+    private void push(int idx) {
+        int pos = _heapSize++;
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!less(idx, _heap[parent]))
+                break;
+            _heap[pos] = _heap[parent];
+            pos = parent;
+        }
+        _heap[pos] = idx;
+    }
+
+    private int pop() {
+        int least = _heap[0];
+        int idx = _heap[--_heapSize];
+        int pos = 0;
+        int half = _heapSize >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            if (child + 1 < _heapSize && less(_heap[child + 1], _heap[child]))
+                child++;
+            if (!less(_heap[child], idx))
+                break;
+            _heap[pos] = _heap[child];
+            pos = child;
+        }
+        _heap[pos] = idx;
+        return least;
+    }
+
+    /**
+     * Whether the current value of the first rop sorts before that of the
+     * second. Equal values sort in the order of the rops, as a linear scan
+     * would.
+     */
+    private boolean less(int i, int j) {
+        int cmp = _comp.compare(_orderValues[i], _orderValues[j]);
+        return cmp < 0 || (cmp == 0 && i < j);
+    }
+
     public Object getResultObject() throws Exception {
         return _cur;
     }
@@ -19,6 +19,7 @@
 package org.apache.openjpa.lib.rop;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -62,10 +63,63 @@ public class TestOrderedMergedResultObjectProvider extends ResultListTest {
         };
     }
 
+    public void testManyProvidersWithDuplicates() throws Exception {
+        int n = 37;
+        ResultObjectProvider[] rops = new ResultObjectProvider[n];
+        List expected = new ArrayList();
+        for (int i = 0; i < n; i++) {
+            List list = new ArrayList();
+            for (int j = 0; j < i % 5; j++)
+                list.add(String.valueOf(j * 3 + i % 4));
+            expected.addAll(list);
+            rops[i] = new ListResultObjectProvider(list);
+        }
+        Comparator comp = new IntValueComparator();
+        Collections.sort(expected, comp);
+
+        MergedResultObjectProvider merged = new MergedResultObjectProvider(rops, comp);
+        merged.open();
+        List actual = new ArrayList();
+        while (merged.next())
+            actual.add(merged.getResultObject());
+        merged.close();
+        assertEquals(expected, actual);
+    }
+
+    public void testAdvancesOnlyConsumedProvider() throws Exception {
+        CountingResultObjectProvider first = new CountingResultObjectProvider("1", "4", "5");
+        CountingResultObjectProvider second = new CountingResultObjectProvider("2", "3", "6");
+        MergedResultObjectProvider merged = new MergedResultObjectProvider(
+            new ResultObjectProvider[]{ first, second }, new IntValueComparator());
+        merged.open();
+        assertTrue(merged.next());
+        assertEquals("1", merged.getResultObject());
+        assertEquals(1, first.count);
+        assertEquals(1, second.count);
+        assertTrue(merged.next());
+        assertEquals("2", merged.getResultObject());
+        assertEquals(2, first.count);
+        assertEquals(1, second.count);
+        merged.close();
+    }
+
     public static void main(String[] args) {
         main();
     }
 
+    private static class CountingResultObjectProvider extends ListResultObjectProvider {
+        int count;
+
+        CountingResultObjectProvider(String... values) {
+            super(Arrays.asList(values));
+        }
+
+        public boolean next() throws Exception {
+            count++;
+            return super.next();
+        }
+    }
+
     private static class IntValueComparator implements Comparator {
 
         public int compare(Object o1, Object o2) {
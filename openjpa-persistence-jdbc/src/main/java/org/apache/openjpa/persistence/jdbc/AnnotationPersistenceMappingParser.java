@@ -181,6 +181,7 @@ public class AnnotationPersistenceMappingParser
         _tags.put(EmbeddedMapping.class, EMBEDDED_MAPPING);
         _tags.put(ForeignKey.class, FK);
         _tags.put(Index.class, INDEX);
+        _tags.put(LazyFetchBatchSize.class, LAZY_FETCH_BATCH_SIZE);
         _tags.put(MappingOverride.class, MAPPING_OVERRIDE);
         _tags.put(MappingOverrides.class, MAPPING_OVERRIDES);
         _tags.put(Nonpolymorphic.class, NONPOLY);
@@ -1173,6 +1174,10 @@ public class AnnotationPersistenceMappingParser
                     fm.setEagerFetchMode(toEagerFetchModeConstant
                         (((EagerFetchMode) anno).value()));
                     break;
+                case LAZY_FETCH_BATCH_SIZE:
+                    fm.setLazyFetchBatchSize(((LazyFetchBatchSize) anno)
+                        .value());
+                    break;
                 case ELEM_CLASS_CRIT:
                     fm.getElementMapping().getValueInfo().setUseClassCriteria
                         (((ElementClassCriteria) anno).value());
@@ -57,6 +57,41 @@ public interface JDBCFetchPlan
      */
     public JDBCFetchPlan setSubclassFetchMode(FetchMode mode);
 
+    /**
+     * Maximum number of parallel eager selects that may execute
+     * concurrently on separate connections.
+     *
+     * @since 3.0.1
+     */
+    public int getEagerFetchParallelism();
+
+    /**
+     * Maximum number of parallel eager selects that may execute
+     * concurrently on separate connections. Values below 2 execute the
+     * selects serially.
+     *
+     * @since 3.0.1
+     */
+    public JDBCFetchPlan setEagerFetchParallelism(int parallelism);
+
+    /**
+     * Maximum number of managed instances of the same type whose lazy
+     * relation is loaded by a single select when the relation of one of
+     * them is accessed.
+     *
+     * @since 3.0.1
+     */
+    public int getLazyFetchBatchSize();
+
+    /**
+     * Maximum number of managed instances of the same type whose lazy
+     * relation is loaded by a single select when the relation of one of
+     * them is accessed. Values below 2 disable batch fetching.
+     *
+     * @since 3.0.1
+     */
+    public JDBCFetchPlan setLazyFetchBatchSize(int size);
+
     /**
      * Type of JDBC result set to use for query results.
      */
@@ -131,6 +131,24 @@ public class JDBCFetchPlanImpl
         return this;
     }
 
+    public int getEagerFetchParallelism() {
+        return _fetch.getEagerFetchParallelism();
+    }
+
+    public JDBCFetchPlanImpl setEagerFetchParallelism(int parallelism) {
+        _fetch.setEagerFetchParallelism(parallelism);
+        return this;
+    }
+
+    public int getLazyFetchBatchSize() {
+        return _fetch.getLazyFetchBatchSize();
+    }
+
+    public JDBCFetchPlanImpl setLazyFetchBatchSize(int size) {
+        _fetch.setLazyFetchBatchSize(size);
+        return this;
+    }
+
     public ResultSetType getResultSetType() {
         return ResultSetType.fromKernelConstant(_fetch.getResultSetType());
     }
@@ -120,6 +120,8 @@ public class JDBCPersistenceProductDerivation
     private static Set<String> _hints = new HashSet<String>();
     static {
         _hints.add("openjpa.FetchPlan.EagerFetchMode");
+        _hints.add("openjpa.FetchPlan.EagerFetchParallelism");
+        _hints.add("openjpa.FetchPlan.LazyFetchBatchSize");
         _hints.add("openjpa.FetchPlan.FetchDirection");
         _hints.add("openjpa.FetchPlan.Isolation");
         _hints.add("openjpa.FetchPlan.JoinSyntax");
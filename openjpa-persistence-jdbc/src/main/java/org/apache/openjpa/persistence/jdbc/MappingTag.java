@@ -92,6 +92,7 @@ enum MappingTag {
     KEY_JOIN_COLS,
     KEY_NONPOLY,
     KEY_STRAT,
+    LAZY_FETCH_BATCH_SIZE,
     MAP_KEY_COL,
     MAP_KEY_JOIN_COL,
     MAP_KEY_JOIN_COLS,
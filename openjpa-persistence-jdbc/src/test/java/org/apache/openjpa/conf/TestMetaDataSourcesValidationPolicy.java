@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.conf;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.openjpa.meta.MetaDataRepository;
+import org.apache.openjpa.persistence.simple.AllFieldTypes;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+public class TestMetaDataSourcesValidationPolicy
+    extends SingleEMFTestCase {
+
+    private MetaDataSourcesValidationPolicy vp;
+    private MetaDataRepository repos;
+
+    public void setUp() {
+        setUp(AllFieldTypes.class);
+        repos = emf.getConfiguration().getMetaDataRepositoryInstance();
+        repos.getMetaData(AllFieldTypes.class, null, true);
+        vp = new MetaDataSourcesValidationPolicy();
+        vp.setConfiguration(emf.getConfiguration());
+    }
+
+    public void testChecksumsSources() {
+        Object[] data = new Object[] { repos, null };
+        Object[] cached = (Object[]) vp.getCacheableData(data);
+
+        assertEquals(3, cached.length);
+        assertEquals(OpenJPAVersion.VERSION_ID, cached[0]);
+        Map<String, Long> sums = (Map<String, Long>) ((Object[]) cached[2])[0];
+        Long sum = sums.get(AllFieldTypes.class.getName().replace('.', '/')
+            + ".class");
+        assertNotNull(sum);
+        assertTrue(sum.longValue() != -1);
+
+        assertSame(data, vp.getValidData(cached));
+    }
+
+    public void testChangedSourceIsStale() {
+        Object[] cached = (Object[]) vp.getCacheableData(
+            new Object[] { repos, null });
+        Map<String, Long> sums = (Map<String, Long>) ((Object[]) cached[2])[0];
+        String rsrc = AllFieldTypes.class.getName().replace('.', '/')
+            + ".class";
+        sums.put(rsrc, sums.get(rsrc) + 1);
+
+        assertNull(vp.getValidData(cached));
+    }
+
+    public void testCompressedRoundTrip()
+        throws Exception {
+        File file = new File("target/" + getClass().getName() + ".ser");
+        CacheMarshallerImpl cm = new CacheMarshallerImpl();
+        cm.setConfiguration(emf.getConfiguration());
+        cm.setId(getClass().getName());
+        cm.setValidationPolicy(
+            OpenJPAVersionAndConfigurationTypeValidationPolicy.class.getName());
+        cm.setOutputFile(file);
+        cm.setInputURL(file.toURI().toURL());
+        cm.setCompress(true);
+        cm.endConfiguration();
+
+        cm.store("foo");
+        InputStream in = new FileInputStream(file);
+        try {
+            assertEquals(GZIPInputStream.GZIP_MAGIC,
+                in.read() | (in.read() << 8));
+        } finally {
+            in.close();
+        }
+        assertEquals("foo", cm.load());
+
+        cm.setCompress(false);
+        cm.store("bar");
+        assertEquals("bar", cm.load());
+        file.delete();
+    }
+}
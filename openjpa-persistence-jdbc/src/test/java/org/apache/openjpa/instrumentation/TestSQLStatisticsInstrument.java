@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.instrumentation;
+
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.jdbc.instrumentation.SQLStatementStatistics;
+import org.apache.openjpa.jdbc.instrumentation.SQLStatistics;
+import org.apache.openjpa.jdbc.instrumentation.SQLStatisticsInstrument;
+import org.apache.openjpa.lib.instrumentation.Instrument;
+import org.apache.openjpa.lib.instrumentation.InstrumentationProvider;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+/**
+ * Verifies the SQL execution statistics instrument.
+ */
+public class TestSQLStatisticsInstrument extends SingleEMFTestCase {
+
+    public void setUp() throws Exception {
+        super.setUp(CLEAR_TABLES, CacheableEntity.class,
+            "openjpa.Instrumentation", "jmx(Instrument='SQLStatistics')");
+    }
+
+    public void testStatementsAreAggregated() {
+        SQLStatisticsInstrument inst = getInstrument();
+        inst.reset();
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < 5; i++) {
+            CacheableEntity ce = new CacheableEntity();
+            ce.setId(i);
+            ce.setName("entity" + i);
+            em.persist(ce);
+        }
+        em.getTransaction().commit();
+        for (int i = 0; i < 3; i++) {
+            em.createQuery("select c from CacheableEntity c where c.id < " + i
+                + " and c.name <> 'x'").getResultList();
+        }
+        em.close();
+
+        String insert = null;
+        String select = null;
+        Set<String> statements = inst.statements();
+        for (String sql : statements) {
+            if (sql.startsWith("INSERT INTO INST_CACHE_ENT"))
+                insert = sql;
+            else if (sql.startsWith("SELECT") && sql.contains("INST_CACHE_ENT"))
+                select = sql;
+        }
+        assertNotNull(statements.toString(), insert);
+        assertNotNull(statements.toString(), select);
+
+        // literals are normalized, so the three queries share one entry
+        assertEquals(3, inst.getExecutionCount(select));
+        assertEquals(5, inst.getRowCount(insert));
+        assertTrue(inst.getTotalTime(select) >= 0);
+        assertTrue(inst.getMaxTime(select) >= inst.getMeanTime(select));
+        assertTrue(inst.getExecutionCount() >= 8);
+
+        long executions = 0;
+        for (long count : inst.getHistogram(select))
+            executions += count;
+        assertEquals(3, executions);
+
+        String[] top = inst.getTopStatements(1);
+        assertEquals(1, top.length);
+        assertTrue(statements.contains(top[0]));
+    }
+
+    public void testReset() {
+        SQLStatisticsInstrument inst = getInstrument();
+        EntityManager em = emf.createEntityManager();
+        em.createQuery("select c from CacheableEntity c").getResultList();
+        em.close();
+        assertFalse(inst.statements().isEmpty());
+
+        inst.reset();
+        assertTrue(inst.statements().isEmpty());
+        assertEquals(0, inst.getExecutionCount());
+        assertFalse(inst.sinceDate().before(inst.startDate()));
+    }
+
+    public void testNormalize() {
+        assertEquals("SELECT t0.ID FROM T t0 WHERE t0.ID IN (?)",
+            SQLStatistics.normalize("SELECT t0.ID FROM T t0 "
+                + "WHERE t0.ID IN (?, ?,?)"));
+        assertEquals("SELECT A1 FROM T WHERE B = ? AND C > ?",
+            SQLStatistics.normalize("SELECT  A1 FROM T\n WHERE B = 'it''s' "
+                + "AND C > 42.5"));
+        assertEquals("UPDATE \"T 1\" SET A = ?, B = ? WHERE ID = ?",
+            SQLStatistics.normalize("UPDATE \"T 1\" SET A = ?, B = ? "
+                + "WHERE ID = ?"));
+    }
+
+    public void testMaxStatements() {
+        SQLStatistics stats = new SQLStatistics();
+        stats.setMaxStatements(2);
+        stats.record("SELECT A FROM T", 1000, -1);
+        stats.record("SELECT B FROM T", 2000, -1);
+        stats.record("SELECT C FROM T", 5000, -1);
+        stats.record("SELECT D FROM T", 3000, -1);
+
+        assertEquals(3, stats.getStatistics().size());
+        SQLStatementStatistics other = stats.getStatistics(SQLStatistics.OTHER);
+        assertEquals(2, other.getExecutionCount());
+        assertEquals(8000, other.getTotalTime());
+        assertEquals(5000, other.getMaxTime());
+        assertSame(other, stats.getTopStatements(1).get(0));
+    }
+
+    private SQLStatisticsInstrument getInstrument() {
+        InstrumentationManager mgr =
+            emf.getConfiguration().getInstrumentationManagerInstance();
+        for (InstrumentationProvider provider : mgr.getProviders()) {
+            Instrument inst = provider.getInstrumentByName("SQLStatistics");
+            if (inst != null)
+                return (SQLStatisticsInstrument) inst;
+        }
+        fail("SQLStatistics instrument not found");
+        return null;
+    }
+}
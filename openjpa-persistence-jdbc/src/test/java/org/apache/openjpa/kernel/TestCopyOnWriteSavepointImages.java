@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.persistence.LockModeType;
+
+import org.apache.openjpa.persistence.EntityManagerImpl;
+import org.apache.openjpa.persistence.simple.NamedEntity;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+/**
+ * Tests that copy-on-write savepoints save and restore only the instances
+ * that change after them.
+ */
+public class TestCopyOnWriteSavepointImages extends SingleEMFTestCase {
+
+    private static final int INSTANCES = 50;
+    private static final int SAVEPOINTS = 20;
+
+    public void setUp() {
+        super.setUp(NamedEntity.class, CLEAR_TABLES,
+            "openjpa.SavepointManager",
+            RecordingSavepointManager.class.getName());
+    }
+
+    public void testOnlyChangedInstanceIsSaved() {
+        EntityManagerImpl em = (EntityManagerImpl) emf.createEntityManager();
+        em.getTransaction().begin();
+        List<NamedEntity> pcs = new ArrayList<NamedEntity>();
+        for (int i = 0; i < INSTANCES; i++) {
+            NamedEntity pc = new NamedEntity();
+            pc.setName("name" + i);
+            em.persist(pc);
+            pcs.add(pc);
+        }
+        em.getTransaction().commit();
+
+        // every instance is transactional and covered by every savepoint
+        em.getTransaction().begin();
+        for (NamedEntity pc : pcs)
+            em.lock(pc, LockModeType.READ);
+        for (int i = 0; i < SAVEPOINTS; i++)
+            em.setSavepoint("sp" + i);
+        NamedEntity changed = pcs.get(INSTANCES / 2);
+        changed.setName("changed");
+
+        BrokerImpl broker = (BrokerImpl) ((DelegatingBroker) em.getBroker())
+            .getInnermostDelegate();
+        Collection<StateManagerImpl> saved = broker.getCopyOnWriteSavepoint()
+            .getStates().keySet();
+        assertEquals(1, saved.size());
+        assertSame(changed, saved.iterator().next().getManagedInstance());
+
+        em.rollbackToSavepoint("sp0");
+        Collection<SavepointFieldManager> restored =
+            ((RecordingSavepointManager) emf.getConfiguration()
+            .getSavepointManagerInstance()).restored;
+        assertEquals(1, restored.size());
+        assertSame(changed, restored.iterator().next().getStateManager()
+            .getManagedInstance());
+        assertEquals("name" + INSTANCES / 2, changed.getName());
+        em.getTransaction().rollback();
+        em.close();
+    }
+
+    /**
+     * Copy-on-write savepoint manager that records the saved state its
+     * savepoints restore.
+     */
+    public static class RecordingSavepointManager
+        extends CopyOnWriteSavepointManager {
+
+        Collection<SavepointFieldManager> restored;
+
+        public OpenJPASavepoint newSavepoint(String name, Broker broker) {
+            return new CopyOnWriteSavepoint(broker, name) {
+                public Collection<SavepointFieldManager> rollback(
+                    Collection<OpenJPASavepoint> previous) {
+                    restored = new ArrayList<SavepointFieldManager>(
+                        super.rollback(previous));
+                    return restored;
+                }
+            };
+        }
+    }
+}
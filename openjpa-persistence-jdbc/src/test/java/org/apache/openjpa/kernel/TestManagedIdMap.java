@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.persistence.JPAFacadeHelper;
+import org.apache.openjpa.persistence.simple.Person;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+import org.apache.openjpa.util.IntId;
+import org.apache.openjpa.util.LongId;
+import org.apache.openjpa.util.StringId;
+
+public class TestManagedIdMap extends SingleEMFTestCase {
+
+    private EntityManager em;
+    private BrokerImpl broker;
+    private ClassMetaData meta;
+
+    public void setUp() {
+        setUp(Person.class, CLEAR_TABLES,
+            "openjpa.BrokerImpl", "PrimitiveIdCache=true");
+        em = emf.createEntityManager();
+        broker = (BrokerImpl) JPAFacadeHelper.toBroker(em);
+        meta = broker.getConfiguration().getMetaDataRepositoryInstance().
+            getMetaData(Person.class, null, true);
+    }
+
+    public void tearDown() throws Exception {
+        em.close();
+        super.tearDown();
+    }
+
+    private StateManagerImpl newStateManager(Object oid) {
+        return new StateManagerImpl(oid, meta, broker);
+    }
+
+    /**
+     * Random puts and removes give the same results as a hash map, also when
+     * removals shift back colliding entries.
+     */
+    public void testMatchesHashMap() {
+        Map<Object, StateManagerImpl> map =
+            new ManagedIdMap(new HashMap<Object, StateManagerImpl>());
+        Map<Object, StateManagerImpl> expected =
+            new HashMap<Object, StateManagerImpl>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            Object oid;
+            switch (random.nextInt(3)) {
+                case 0:
+                    oid = new IntId(Person.class, random.nextInt(500));
+                    break;
+                case 1:
+                    oid = new StringId(Person.class,
+                        "id" + random.nextInt(500));
+                    break;
+                default:
+                    oid = "other" + random.nextInt(50);
+            }
+            if (random.nextInt(3) == 0) {
+                assertSame(expected.remove(oid), map.remove(oid));
+            } else {
+                StateManagerImpl sm = newStateManager(oid);
+                assertSame(expected.put(oid, sm), map.put(oid, sm));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+
+        for (Map.Entry<Object, StateManagerImpl> entry : expected.entrySet())
+            assertSame(entry.getValue(), map.get(entry.getKey()));
+        assertEquals(new HashSet<StateManagerImpl>(expected.values()),
+            new HashSet<StateManagerImpl>(map.values()));
+        assertEquals(expected.size(), map.entrySet().size());
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+
+    /**
+     * Oids of a superclass match the instances of its subclasses, but oids of
+     * sibling classes do not match each other.
+     */
+    public void testInheritance() {
+        Map<Object, StateManagerImpl> map =
+            new ManagedIdMap(new HashMap<Object, StateManagerImpl>());
+        StateManagerImpl array = newStateManager(null);
+        StateManagerImpl linked = newStateManager(null);
+        map.put(new LongId(ArrayList.class, 5L, false), array);
+        map.put(new LongId(LinkedList.class, 5L, false), linked);
+        assertEquals(2, map.size());
+
+        assertSame(array, map.get(new LongId(ArrayList.class, 5L)));
+        assertSame(linked, map.get(new LongId(LinkedList.class, 5L)));
+        assertNotNull(map.get(new LongId(AbstractList.class, 5L)));
+        assertNull(map.get(new LongId(ArrayList.class, 6L)));
+
+        assertSame(array, map.remove(new LongId(ArrayList.class, 5L)));
+        assertSame(linked, map.get(new LongId(AbstractList.class, 5L)));
+        assertEquals(1, map.size());
+    }
+
+    public void testPersistenceContext() {
+        em.getTransaction().begin();
+        List<Person> persons = new ArrayList<Person>();
+        for (int i = 0; i < 100; i++) {
+            Person person = new Person();
+            person.setId(i);
+            person.setForename("forename" + i);
+            em.persist(person);
+            persons.add(person);
+        }
+        em.getTransaction().commit();
+
+        for (Person person : persons)
+            assertSame(person, em.find(Person.class, person.getId()));
+        assertEquals(100, broker.getManagedObjects().size());
+
+        em.clear();
+        List<Person> loaded = em.createQuery("select p from Person p",
+            Person.class).getResultList();
+        assertEquals(100, loaded.size());
+        for (Person person : loaded)
+            assertSame(person, em.find(Person.class, person.getId()));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.kernel;
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.openjpa.kernel.QueryImpl.Compilation;
+import org.apache.openjpa.kernel.jpql.JPQLExpressionBuilder.ParsedJPQL;
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.apache.openjpa.persistence.simple.AllFieldTypes;
+import org.apache.openjpa.persistence.simple.NamedEntity;
+import org.apache.openjpa.persistence.test.AbstractPersistenceTestCase;
+
+/**
+ * Tests that parsed queries are stored in the file of the persistent query
+ * compilation cache and are only used while the metadata is unchanged.
+ */
+public class TestPersistentQueryCompilationCache
+    extends AbstractPersistenceTestCase {
+
+    private static final String JPQL =
+        "select o from named o where o.name = :name";
+    private static final String JPQL2 =
+        "select o from named o where o.name <> :name";
+
+    private File file;
+
+    public void setUp() {
+        file = new File("target/" + getClass().getName() + ".bin");
+        file.delete();
+    }
+
+    public void tearDown()
+        throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testCompilationSurvivesRestart() {
+        OpenJPAEntityManagerFactorySPI emf = newEMF(NamedEntity.class);
+        Map cache = emf.getConfiguration().getQueryCompilationCacheInstance();
+        assertTrue(cache instanceof PersistentQueryCompilationCache);
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        NamedEntity pc = new NamedEntity();
+        pc.setName("stored");
+        em.persist(pc);
+        em.getTransaction().commit();
+        assertEquals(1, em.createQuery(JPQL).setParameter("name", "stored").
+            getResultList().size());
+        em.close();
+        Object key = cache.keySet().iterator().next();
+        closeEMF(emf);
+        assertTrue(file.exists());
+
+        emf = newEMF(NamedEntity.class);
+        cache = emf.getConfiguration().getQueryCompilationCacheInstance();
+        assertEquals(0, cache.size());
+        Compilation comp = (Compilation) cache.get(key);
+        assertNotNull(comp);
+        assertEquals(NamedEntity.class,
+            ((ParsedJPQL) comp.storeData).getCandidateType());
+
+        em = emf.createEntityManager();
+        assertEquals(1, em.createQuery(JPQL).setParameter("name", "stored").
+            getResultList().size());
+        em.createQuery(JPQL2).compile();
+        em.close();
+
+        // replaces the file this factory has mapped
+        closeEMF(emf);
+
+        emf = newEMF(NamedEntity.class);
+        cache = emf.getConfiguration().getQueryCompilationCacheInstance();
+        assertNotNull(cache.get(key));
+        em = emf.createEntityManager();
+        em.createQuery(JPQL2).compile();
+        em.close();
+        assertEquals(2, cache.size());
+        closeEMF(emf);
+    }
+
+    public void testStaleFileIsIgnored() {
+        OpenJPAEntityManagerFactorySPI emf = newEMF(NamedEntity.class);
+        Map cache = emf.getConfiguration().getQueryCompilationCacheInstance();
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.createQuery(JPQL).compile();
+        em.close();
+        Object key = cache.keySet().iterator().next();
+        closeEMF(emf);
+
+        // another persistent type changes the metadata the file was
+        // written for
+        emf = newEMF(NamedEntity.class, AllFieldTypes.class);
+        assertNull(emf.getConfiguration().getQueryCompilationCacheInstance().
+            get(key));
+        closeEMF(emf);
+    }
+
+    private OpenJPAEntityManagerFactorySPI newEMF(Class<?>... types) {
+        return createEMF(types, "openjpa.jdbc.SynchronizeMappings",
+            "buildSchema", "openjpa.QueryCompilationCache",
+            "persistent(File=" + file.getPath() + ")");
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.sql.DBDictionary;
+import org.apache.openjpa.lib.jdbc.JDBCListener;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.apache.openjpa.persistence.batch.exception.Ent1;
+import org.apache.openjpa.persistence.test.AbstractPersistenceTestCase;
+import org.apache.openjpa.persistence.test.FilteringJDBCListener;
+
+/**
+ * Tests that batched inserts are flushed as multi-row inserts sized to the
+ * batch limit and the dictionary's parameter limit.
+ */
+public class TestMultiRowInsert extends AbstractPersistenceTestCase {
+
+    private List<String> _sql = new ArrayList<String>();
+    private OpenJPAEntityManagerFactorySPI _emf;
+
+    public void tearDown() throws Exception {
+        closeEMF(_emf);
+        _emf = null;
+        super.tearDown();
+    }
+
+    public void testRowsPerStatementLimitedByBatchLimit() {
+        if (!newEmf("BatchLimit=10,UseMultiRowInsert=true"))
+            return;
+        persist(0, 25);
+
+        assertEquals(_sql.toString(), 3, countInserts());
+        assertTrue(_sql.toString(), _sql.get(0).contains("), ("));
+        assertPersisted(25);
+    }
+
+    public void testRowsPerStatementLimitedByParameters() {
+        if (!newEmf("BatchLimit=-1,UseMultiRowInsert=true,"
+            + "MaxParametersPerStatement=6"))
+            return;
+        persist(0, 25);
+
+        // 2 parameters per row, so 3 rows per statement
+        assertEquals(_sql.toString(), 9, countInserts());
+        assertPersisted(25);
+    }
+
+    public void testLargeFlush() {
+        if (!newEmf("BatchLimit=-1,UseMultiRowInsert=true"))
+            return;
+        persist(0, 10000);
+
+        DBDictionary dict = ((JDBCConfiguration) _emf.getConfiguration())
+            .getDBDictionaryInstance();
+        int expected = 1;
+        if (dict.maxParametersPerStatement > 0) {
+            int rows = dict.maxParametersPerStatement / 2;
+            expected = (10000 + rows - 1) / rows;
+        }
+        assertEquals(expected, countInserts());
+        assertPersisted(10000);
+    }
+
+    public void testDisabledByDefault() {
+        if (!newEmf("BatchLimit=10"))
+            return;
+        persist(0, 5);
+
+        for (String sql : _sql)
+            assertFalse(sql, sql.contains("), ("));
+        assertPersisted(5);
+    }
+
+    public void testDuplicateRowFailsFlush() {
+        if (!newEmf("BatchLimit=10,UseMultiRowInsert=true"))
+            return;
+        persist(0, 5);
+
+        EntityManager em = _emf.createEntityManager();
+        em.getTransaction().begin();
+        em.persist(new Ent1(10, "name10"));
+        em.persist(new Ent1(3, "name3"));
+        em.persist(new Ent1(11, "name11"));
+        try {
+            em.getTransaction().commit();
+            fail("Expected duplicate key failure");
+        } catch (RuntimeException e) {
+            // expected
+        } finally {
+            if (em.getTransaction().isActive())
+                em.getTransaction().rollback();
+            em.close();
+        }
+        assertPersisted(5);
+    }
+
+    /**
+     * Create the factory with the given dictionary properties, returning
+     * false if the database does not support multi-row inserts.
+     */
+    private boolean newEmf(String dictProps) {
+        _emf = createEMF(Ent1.class,
+            "openjpa.jdbc.DBDictionary", dictProps,
+            "openjpa.jdbc.JDBCListeners",
+            new JDBCListener[] { new FilteringJDBCListener(_sql) },
+            CLEAR_TABLES);
+        DBDictionary dict = ((JDBCConfiguration) _emf.getConfiguration())
+            .getDBDictionaryInstance();
+        return dict.supportsMultiRowInsert;
+    }
+
+    private void persist(int from, int count) {
+        EntityManager em = _emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = from; i < from + count; i++)
+            em.persist(new Ent1(i, "name" + i));
+        _sql.clear();
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private int countInserts() {
+        int count = 0;
+        for (String sql : _sql)
+            if (sql.startsWith("INSERT INTO Ent1"))
+                count++;
+        return count;
+    }
+
+    private void assertPersisted(int count) {
+        EntityManager em = _emf.createEntityManager();
+        assertEquals(count, ((Number) em.createQuery(
+            "select count(e) from Ent1 e").getSingleResult()).intValue());
+        Ent1 e = em.find(Ent1.class, count - 1);
+        assertEquals("name" + (count - 1), e.getName());
+        em.close();
+    }
+}
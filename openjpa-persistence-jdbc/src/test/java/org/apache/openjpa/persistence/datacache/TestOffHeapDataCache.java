@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.datacache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.datacache.DataCache;
+import org.apache.openjpa.datacache.OffHeapDataCache;
+import org.apache.openjpa.datacache.PartitionedDataCache;
+import org.apache.openjpa.lib.jdbc.JDBCListener;
+import org.apache.openjpa.persistence.JPAFacadeHelper;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.apache.openjpa.persistence.StoreCache;
+import org.apache.openjpa.persistence.test.AbstractPersistenceTestCase;
+import org.apache.openjpa.persistence.test.FilteringJDBCListener;
+
+/**
+ * Tests that the off-heap data cache can be plugged in through
+ * <code>openjpa.DataCache</code> and restores relations, collections and
+ * embedded values from memory outside of the heap.
+ */
+public class TestOffHeapDataCache extends AbstractPersistenceTestCase {
+
+    private List<String> _sql = new ArrayList<String>();
+    private OpenJPAEntityManagerFactorySPI _emf;
+
+    public void tearDown() throws Exception {
+        closeEMF(_emf);
+        _emf = null;
+        super.tearDown();
+    }
+
+    public void testConfiguration() {
+        newEmf("offheap(MaxMemory=2M, SlabSize=64K, ConcurrencyLevel=4)");
+        OffHeapDataCache cache = getCache();
+        assertEquals(2 * 1024 * 1024, cache.getMaxMemory());
+        assertEquals(64 * 1024, cache.getSlabSize());
+        assertEquals(4, cache.getConcurrencyLevel());
+        assertEquals(-1, cache.getCacheSize());
+    }
+
+    public void testRelationsFromCache() {
+        newEmf("offheap");
+        EntityManager em = _emf.createEntityManager();
+        em.getTransaction().begin();
+        CachedManager m = new CachedManager();
+        m.setId(1);
+        m.setFirstName("boss");
+        m.setEmployees(new ArrayList<CachedEmployee>());
+        em.persist(m);
+        for (int i = 2; i <= 3; i++) {
+            CachedEmployee e = new CachedEmployee();
+            e.setId(i);
+            e.setFirstName("first" + i);
+            e.setManager(m);
+            m.getEmployees().add(e);
+            em.persist(e);
+        }
+        em.getTransaction().commit();
+        em.close();
+
+        _sql.clear();
+        em = _emf.createEntityManager();
+        m = em.find(CachedManager.class, 1);
+        assertEquals("boss", m.getFirstName());
+        assertEquals(2, m.getEmployees().size());
+        for (CachedEmployee e : m.getEmployees()) {
+            assertTrue(e.getFirstName().startsWith("first"));
+            assertSame(m, e.getManager());
+        }
+        em.close();
+        assertEquals(_sql.toString(), 0, _sql.size());
+        assertTrue(getCache().getUsedMemory() > 0);
+    }
+
+    public void testEmbeddedMapFromCache() {
+        newEmf("offheap");
+        EntityManager em = _emf.createEntityManager();
+        em.getTransaction().begin();
+        MapHolder holder = new MapHolder();
+        holder.setId(1);
+        Map<MapEmbeddable, MapEmbeddable> map =
+            new HashMap<MapEmbeddable, MapEmbeddable>();
+        map.put(new MapEmbeddable(1), new MapEmbeddable(10));
+        map.put(new MapEmbeddable(2), new MapEmbeddable(20));
+        holder.setEmbeddableMap(map);
+        em.persist(holder);
+        em.getTransaction().commit();
+        em.close();
+
+        _sql.clear();
+        em = _emf.createEntityManager();
+        holder = em.find(MapHolder.class, 1);
+        assertEquals(2, holder.getEmbeddableMap().size());
+        for (Map.Entry<MapEmbeddable, MapEmbeddable> e
+            : holder.getEmbeddableMap().entrySet())
+            assertEquals(e.getKey().getValue() * 10, e.getValue().getValue());
+        em.close();
+        assertEquals(_sql.toString(), 0, _sql.size());
+    }
+
+    public void testEvictsWhenMemoryIsFull() {
+        newEmf("offheap(MaxMemory=4K, SlabSize=1K)");
+        persist(1, 200);
+
+        OffHeapDataCache cache = getCache();
+        assertTrue(cache.size() > 0);
+        assertTrue(cache.size() < 200);
+        assertTrue(cache.getAllocatedMemory() <= 4 * 1024);
+
+        persist(201, 201);
+        StoreCache store = _emf.getStoreCache();
+        assertTrue(store.contains(CachedPerson.class, 201));
+        store.evict(CachedPerson.class, 1);
+
+        EntityManager em = _emf.createEntityManager();
+        assertEquals("first1", em.find(CachedPerson.class, 1).getFirstName());
+        em.close();
+        assertTrue(store.contains(CachedPerson.class, 1));
+    }
+
+    public void testOtherSizeClassAllocatesWhenMemoryIsFull() {
+        newEmf("offheap(MaxMemory=4K, SlabSize=1K)");
+        persist(1, 200);
+        OffHeapDataCache cache = getCache();
+        assertEquals(4 * 1024, cache.getAllocatedMemory());
+
+        // encodes into a larger size class than the instances cached so far
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 250; i++)
+            buf.append('x');
+        EntityManager em = _emf.createEntityManager();
+        em.getTransaction().begin();
+        CachedPerson p = new CachedPerson();
+        p.setId(1000);
+        p.setFirstName("large");
+        p.setLastName(buf.toString());
+        em.persist(p);
+        em.getTransaction().commit();
+        em.close();
+
+        StoreCache store = _emf.getStoreCache();
+        assertTrue(store.contains(CachedPerson.class, 1000));
+        assertTrue(cache.getAllocatedMemory() <= 4 * 1024);
+
+        // small instances still find room after the slab was taken
+        persist(201, 201);
+        assertTrue(store.contains(CachedPerson.class, 201));
+    }
+
+    public void testCacheSizeBound() {
+        newEmf("offheap(CacheSize=20, ConcurrencyLevel=1)");
+        persist(1, 50);
+        assertEquals(20, getCache().size());
+    }
+
+    public void testPinnedInstancesSurviveEviction() {
+        newEmf("offheap(CacheSize=10, ConcurrencyLevel=1)");
+        persist(1, 1);
+        StoreCache store = _emf.getStoreCache();
+        store.pin(CachedPerson.class, 1);
+
+        persist(2, 50);
+        assertTrue(store.contains(CachedPerson.class, 1));
+        Object oid = JPAFacadeHelper.toOpenJPAObjectId(_emf.getConfiguration()
+            .getMetaDataRepositoryInstance()
+            .getCachedMetaData(CachedPerson.class), 1);
+        assertTrue(getCache().unpin(oid));
+        assertFalse(getCache().unpin(oid));
+    }
+
+    public void testUpdateReplacesCachedData() {
+        newEmf("offheap");
+        persist(1, 1);
+        long used = getCache().getUsedMemory();
+
+        EntityManager em = _emf.createEntityManager();
+        em.getTransaction().begin();
+        em.find(CachedPerson.class, 1).setLastName("changed");
+        em.getTransaction().commit();
+        em.close();
+        assertEquals(used, getCache().getUsedMemory());
+
+        _sql.clear();
+        em = _emf.createEntityManager();
+        CachedPerson p = em.find(CachedPerson.class, 1);
+        assertEquals("changed", p.getLastName());
+        assertEquals(2, p.getVersion());
+        em.close();
+        assertEquals(0, _sql.size());
+    }
+
+    public void testOffHeapPartitions() {
+        newEmf("partitioned(PartitionType=offheap, partitions="
+            + "'(name=a,MaxMemory=1M),(name=b,MaxMemory=2M)')");
+        PartitionedDataCache cache = (PartitionedDataCache) _emf
+            .getConfiguration().getDataCacheManagerInstance()
+            .getSystemDataCache();
+        DataCache a = cache.getPartition("a", false);
+        DataCache b = cache.getPartition("b", false);
+        assertTrue(a instanceof OffHeapDataCache);
+        assertEquals(1024 * 1024, ((OffHeapDataCache) a).getMaxMemory());
+        assertEquals(2 * 1024 * 1024, ((OffHeapDataCache) b).getMaxMemory());
+    }
+
+    private void newEmf(String cache) {
+        _emf = createEMF(CachedPerson.class, CachedManager.class,
+            CachedEmployee.class, MapHolder.class, MapEmbeddable.class,
+            CLEAR_TABLES,
+            "openjpa.DataCache", cache,
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.jdbc.JDBCListeners",
+            new JDBCListener[] { new FilteringJDBCListener(_sql) });
+    }
+
+    private OffHeapDataCache getCache() {
+        return (OffHeapDataCache) _emf.getConfiguration()
+            .getDataCacheManagerInstance().getSystemDataCache();
+    }
+
+    private void persist(int from, int to) {
+        EntityManager em = _emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = from; i <= to; i++) {
+            CachedPerson p = new CachedPerson();
+            p.setId(i);
+            p.setFirstName("first" + i);
+            p.setLastName("last" + i);
+            em.persist(p);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+}
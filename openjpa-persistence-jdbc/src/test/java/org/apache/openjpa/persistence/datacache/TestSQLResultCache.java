@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.datacache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.kernel.SQLResultCache;
+import org.apache.openjpa.lib.jdbc.AbstractJDBCListener;
+import org.apache.openjpa.lib.jdbc.JDBCEvent;
+import org.apache.openjpa.lib.jdbc.JDBCListener;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.apache.openjpa.persistence.test.AbstractPersistenceTestCase;
+import org.apache.openjpa.persistence.test.FilteringJDBCListener;
+
+/**
+ * Tests caching the results of native SQL projections and their
+ * invalidation when the tables they read from change.
+ */
+public class TestSQLResultCache extends AbstractPersistenceTestCase {
+
+    private static final String NAMES =
+        "SELECT lastName FROM CachedPerson WHERE firstName = ?1";
+    private static final String COUNT = "SELECT COUNT(*) FROM CachedPerson";
+
+    private List<String> _sql = new ArrayList<String>();
+    private OpenJPAEntityManagerFactorySPI _emf;
+    private SQLResultCache _cache;
+    private Runnable _afterExecute;
+
+    public void tearDown() throws Exception {
+        closeEMF(_emf);
+        _emf = null;
+        super.tearDown();
+    }
+
+    public void testRepeatedQueryServedFromCache() {
+        newEmf("true");
+        persist(3);
+
+        assertEquals("last1", names("first1").get(0));
+        assertEquals("last1", names("first1").get(0));
+        assertEquals(1, _sql.size());
+        assertEquals(1, _cache.getHitCount());
+        assertEquals(1, _cache.getMissCount());
+
+        assertEquals("last2", names("first2").get(0));
+        assertEquals(2, _sql.size());
+        assertEquals(2, _cache.size());
+    }
+
+    public void testEntityCommitInvalidates() {
+        newEmf("true");
+        persist(3);
+        assertEquals(3, count());
+
+        EntityManager em = _emf.createEntityManager();
+        em.getTransaction().begin();
+        em.remove(em.find(CachedPerson.class, 1));
+        em.getTransaction().commit();
+        em.close();
+
+        assertEquals(2, count());
+        assertEquals(1, _cache.getInvalidationCount());
+    }
+
+    public void testNativeUpdateInvalidates() {
+        newEmf("true");
+        persist(3);
+        assertEquals("last1", names("first1").get(0));
+
+        EntityManager em = _emf.createEntityManager();
+        em.getTransaction().begin();
+        assertEquals(1, em.createNativeQuery("UPDATE CachedPerson "
+            + "SET lastName = 'changed' WHERE id = 1").executeUpdate());
+        em.getTransaction().commit();
+        em.close();
+
+        assertEquals(0, _cache.size());
+        assertEquals("changed", names("first1").get(0));
+    }
+
+    public void testBulkUpdateInvalidates() {
+        newEmf("true");
+        persist(3);
+        assertEquals("last1", names("first1").get(0));
+
+        EntityManager em = _emf.createEntityManager();
+        em.getTransaction().begin();
+        assertEquals(1, em.createQuery("UPDATE CachedPerson p "
+            + "SET p.lastName = 'changed' WHERE p.id = 1").executeUpdate());
+        em.getTransaction().commit();
+        em.close();
+
+        assertEquals("changed", names("first1").get(0));
+    }
+
+    public void testCommitWhileReadingIsNotCached() {
+        newEmf("true");
+        persist(3);
+
+        // commits a change to the table after the query is executed and
+        // before its result is read
+        _afterExecute = new Runnable() {
+            public void run() {
+                EntityManager em = _emf.createEntityManager();
+                em.getTransaction().begin();
+                CachedPerson p = new CachedPerson();
+                p.setId(99);
+                p.setFirstName("first99");
+                p.setLastName("last99");
+                em.persist(p);
+                em.getTransaction().commit();
+                em.close();
+            }
+        };
+        assertEquals("last1", names("first1").get(0));
+        assertNull(_afterExecute);
+        assertEquals(0, _cache.size());
+
+        _sql.clear();
+        assertEquals("last1", names("first1").get(0));
+        assertEquals(1, _sql.size());
+        assertEquals(1, _cache.size());
+    }
+
+    public void testCacheSizeBound() {
+        newEmf("true(CacheSize=2)");
+        persist(3);
+
+        for (int i = 0; i < 3; i++)
+            names("first" + i);
+        assertEquals(2, _cache.size());
+        assertEquals(1, _cache.getEvictionCount());
+    }
+
+    public void testLargeResultsNotCached() {
+        newEmf("true(MaxRows=2)");
+        persist(3);
+
+        EntityManager em = _emf.createEntityManager();
+        String sql = "SELECT firstName FROM CachedPerson";
+        assertEquals(3, em.createNativeQuery(sql).getResultList().size());
+        assertEquals(0, _cache.size());
+        assertEquals(1, em.createNativeQuery(sql).setMaxResults(1)
+            .getResultList().size());
+        assertEquals(0, _cache.size());
+        em.close();
+    }
+
+    public void testNotCachedInDatastoreTransaction() {
+        newEmf("true");
+        persist(3);
+
+        EntityManager em = _emf.createEntityManager();
+        em.getTransaction().begin();
+        em.find(CachedPerson.class, 1).setLastName("flushed");
+        em.flush();
+        assertEquals("flushed", em.createNativeQuery(NAMES)
+            .setParameter(1, "first1").getSingleResult());
+        em.getTransaction().rollback();
+        em.close();
+
+        assertEquals(0, _cache.size());
+        assertEquals("last1", names("first1").get(0));
+    }
+
+    public void testDisabledByDefault() {
+        newEmf(null);
+        assertNull(_cache);
+    }
+
+    private void newEmf(String cache) {
+        if (cache == null)
+            _emf = createEMF(CachedPerson.class, CLEAR_TABLES);
+        else
+            _emf = createEMF(CachedPerson.class, CLEAR_TABLES,
+                "openjpa.jdbc.SQLResultCache", cache,
+                "openjpa.jdbc.JDBCListeners",
+                new JDBCListener[] { new FilteringJDBCListener(_sql),
+                    new AfterExecuteListener() });
+        _cache = ((JDBCConfiguration) _emf.getConfiguration())
+            .getSQLResultCacheInstance();
+    }
+
+    private void persist(int count) {
+        EntityManager em = _emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < count; i++) {
+            CachedPerson p = new CachedPerson();
+            p.setId(i);
+            p.setFirstName("first" + i);
+            p.setLastName("last" + i);
+            em.persist(p);
+        }
+        em.getTransaction().commit();
+        em.close();
+        _cache.clear();
+        _sql.clear();
+    }
+
+    private List names(String first) {
+        EntityManager em = _emf.createEntityManager();
+        try {
+            return em.createNativeQuery(NAMES).setParameter(1, first)
+                .getResultList();
+        } finally {
+            em.close();
+        }
+    }
+
+    private int count() {
+        EntityManager em = _emf.createEntityManager();
+        try {
+            return ((Number) em.createNativeQuery(COUNT).getSingleResult())
+                .intValue();
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Runs the pending action after the names query is executed.
+     */
+    private class AfterExecuteListener extends AbstractJDBCListener {
+
+        public void afterExecuteStatement(JDBCEvent event) {
+            Runnable run = _afterExecute;
+            if (run != null && event.getSQL() != null
+                && event.getSQL().startsWith("SELECT lastName")) {
+                _afterExecute = null;
+                run.run();
+            }
+        }
+    }
+}
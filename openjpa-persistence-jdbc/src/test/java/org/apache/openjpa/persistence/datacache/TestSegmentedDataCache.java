@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.datacache;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.datacache.DataCache;
+import org.apache.openjpa.datacache.DataCachePCDataImpl;
+import org.apache.openjpa.datacache.SegmentedDataCache;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.persistence.JPAFacadeHelper;
+import org.apache.openjpa.persistence.StoreCache;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+import org.apache.openjpa.util.IntId;
+
+/**
+ * Tests that the segmented data cache can be plugged in through
+ * <code>openjpa.DataCache</code> and caches, pins and evicts instances.
+ */
+public class TestSegmentedDataCache extends SingleEMFTestCase {
+
+    public void setUp() {
+        super.setUp(CLEAR_TABLES, CachedPerson.class,
+            "openjpa.DataCache", "segmented(CacheSize=50, ConcurrencyLevel=4)",
+            "openjpa.RemoteCommitProvider", "sjvm");
+    }
+
+    public void testConfiguration() {
+        DataCache cache = emf.getConfiguration().getDataCacheManagerInstance()
+            .getSystemDataCache();
+        assertTrue(cache instanceof SegmentedDataCache);
+        SegmentedDataCache segmented = (SegmentedDataCache) cache;
+        assertEquals(50, segmented.getCacheSize());
+        assertEquals(4, segmented.getConcurrencyLevel());
+    }
+
+    public void testFindFromCache() {
+        persist(1, 10);
+        StoreCache cache = emf.getStoreCache();
+        for (int i = 1; i <= 10; i++)
+            assertTrue(cache.contains(CachedPerson.class, i));
+
+        EntityManager em = emf.createEntityManager();
+        CachedPerson p = em.find(CachedPerson.class, 5);
+        assertEquals("first5", p.getFirstName());
+        em.close();
+
+        cache.evict(CachedPerson.class, 5);
+        assertFalse(cache.contains(CachedPerson.class, 5));
+    }
+
+    public void testPinnedInstancesSurviveOverflow() {
+        persist(1, 1);
+        StoreCache cache = emf.getStoreCache();
+        cache.pin(CachedPerson.class, 1);
+
+        persist(2, 200);
+        assertTrue(cache.contains(CachedPerson.class, 1));
+        DataCache dc = emf.getConfiguration().getDataCacheManagerInstance()
+            .getSystemDataCache();
+        Object oid = JPAFacadeHelper.toOpenJPAObjectId(
+            emf.getConfiguration().getMetaDataRepositoryInstance()
+                .getCachedMetaData(CachedPerson.class), 1);
+        assertTrue(dc.unpin(oid));
+        assertFalse(dc.unpin(oid));
+    }
+
+    public void testConcurrentGetAndPut() throws Exception {
+        final DataCache cache = emf.getConfiguration()
+            .getDataCacheManagerInstance().getSystemDataCache();
+        final ClassMetaData meta = emf.getConfiguration()
+            .getMetaDataRepositoryInstance()
+            .getMetaData(CachedPerson.class, null, true);
+        for (int i = 0; i < 50; i++)
+            cache.put(new DataCachePCDataImpl(
+                new IntId(CachedPerson.class, i), meta));
+
+        // lookups with occasional puts under the write lock, over a key
+        // range twice the size of the cache
+        final AtomicLong hits = new AtomicLong();
+        final AtomicReference<Throwable> failure =
+            new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final Random random = new Random(t);
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 2000; i++) {
+                            IntId oid = new IntId(CachedPerson.class,
+                                random.nextInt(100));
+                            if (random.nextInt(10) != 0) {
+                                if (cache.get(oid) != null)
+                                    hits.incrementAndGet();
+                                continue;
+                            }
+                            cache.writeLock();
+                            try {
+                                cache.put(new DataCachePCDataImpl(oid, meta));
+                            } finally {
+                                cache.writeUnlock();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        if (failure.get() != null)
+            throw new Exception(failure.get());
+        assertTrue(hits.get() > 0);
+    }
+
+    private void persist(int from, int to) {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = from; i <= to; i++) {
+            CachedPerson p = new CachedPerson();
+            p.setId(i);
+            p.setFirstName("first" + i);
+            p.setLastName("last" + i);
+            em.persist(p);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+}
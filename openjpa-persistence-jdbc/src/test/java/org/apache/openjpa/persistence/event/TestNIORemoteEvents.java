@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.event.NIORemoteCommitProvider;
+import org.apache.openjpa.event.RemoteCommitEvent;
+import org.apache.openjpa.event.RemoteCommitEventCodec;
+import org.apache.openjpa.event.RemoteCommitListener;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.apache.openjpa.persistence.test.AbstractPersistenceTestCase;
+import org.apache.openjpa.util.Id;
+import org.apache.openjpa.util.IntId;
+import org.apache.openjpa.util.LongId;
+import org.apache.openjpa.util.StringId;
+
+/**
+ * Tests the encoding of remote commit events and their delivery between
+ * factories using the {@link NIORemoteCommitProvider}.
+ */
+public class TestNIORemoteEvents extends AbstractPersistenceTestCase {
+
+    private OpenJPAEntityManagerFactorySPI _sender;
+    private OpenJPAEntityManagerFactorySPI _receiver;
+
+    public void tearDown() throws Exception {
+        closeEMF(_sender);
+        closeEMF(_receiver);
+        _sender = null;
+        _receiver = null;
+        super.tearDown();
+    }
+
+    public void testCodecRoundTrip() throws Exception {
+        List<RemoteCommitEvent> events = new ArrayList<RemoteCommitEvent>();
+        events.add(new RemoteCommitEvent(
+            RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS,
+            Arrays.asList(new LongId(AnEntity.class, -5L),
+                new IntId(AnEntity.class, 7, true)),
+            Collections.singleton(AnEntity.class.getName()),
+            Arrays.asList(new StringId(AnEntity.class, "x"),
+                new Id(AnEntity.class, Long.MAX_VALUE)),
+            Collections.singleton("a serialized id")));
+        events.add(new RemoteCommitEvent(RemoteCommitEvent.PAYLOAD_EXTENTS,
+            null, Collections.EMPTY_LIST,
+            Collections.singleton(AnEntity.class.getName()),
+            Collections.EMPTY_LIST));
+
+        RemoteCommitEventCodec codec =
+            new RemoteCommitEventCodec(getClass().getClassLoader());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.write(new DataOutputStream(bytes), events);
+        List<RemoteCommitEvent> read = codec.read(new DataInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(2, read.size());
+        RemoteCommitEvent event = read.get(0);
+        assertEquals(RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS,
+            event.getPayloadType());
+        assertEquals(new ArrayList(events.get(0).getPersistedObjectIds()),
+            new ArrayList(event.getPersistedObjectIds()));
+        assertTrue(((IntId) new ArrayList(event.getPersistedObjectIds())
+            .get(1)).hasSubclasses());
+        assertEquals(new ArrayList(events.get(0).getUpdatedObjectIds()),
+            new ArrayList(event.getUpdatedObjectIds()));
+        assertEquals(new ArrayList(events.get(0).getDeletedObjectIds()),
+            new ArrayList(event.getDeletedObjectIds()));
+        assertEquals(new ArrayList(events.get(0).getPersistedTypeNames()),
+            new ArrayList(event.getPersistedTypeNames()));
+
+        event = read.get(1);
+        assertEquals(RemoteCommitEvent.PAYLOAD_EXTENTS,
+            event.getPayloadType());
+        assertEquals(Collections.singletonList(AnEntity.class.getName()),
+            new ArrayList(event.getUpdatedTypeNames()));
+        assertTrue(event.getDeletedTypeNames().isEmpty());
+    }
+
+    public void testMalformedInputIsRejected() throws Exception {
+        // an event count beyond the bytes left, a collection count that
+        // casts to a negative int, and an unknown name index
+        assertMalformed(new byte[]{ (byte) 0xFF, (byte) 0xFF, 0x7F });
+        assertMalformed(new byte[]{ 1, 0, (byte) 0x80, (byte) 0x80,
+            (byte) 0x80, (byte) 0x80, 0x08 });
+        assertMalformed(new byte[]{ 1, 0, 1, 5, 3 });
+    }
+
+    private void assertMalformed(byte[] bytes) throws Exception {
+        RemoteCommitEventCodec codec =
+            new RemoteCommitEventCodec(getClass().getClassLoader());
+        try {
+            codec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+            fail("Expected IOException");
+        } catch (IOException ioe) {
+            // expected
+        }
+    }
+
+    public void testEventsDelivered() throws Exception {
+        _sender = newEmf(5646, 6646);
+        _receiver = newEmf(6646, 5646);
+        Listener listener = new Listener();
+        _receiver.getConfiguration().getRemoteCommitEventManager()
+            .addListener(listener);
+
+        EntityManager em = _sender.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < 10; i++) {
+            AnEntity e = new AnEntity();
+            e.setId(i);
+            e.setName("name" + i);
+            em.persist(e);
+        }
+        em.getTransaction().commit();
+        for (int i = 0; i < 10; i++) {
+            em.getTransaction().begin();
+            em.find(AnEntity.class, i).setName("changed" + i);
+            em.getTransaction().commit();
+        }
+        em.close();
+
+        assertTrue(listener.awaitIds(20, 10000));
+        NIORemoteCommitProvider provider = provider(_sender);
+        NIORemoteCommitProvider receiver = provider(_receiver);
+        assertEquals(11, provider.getEventsSent());
+        assertEquals(0, provider.getFramesDropped());
+        assertTrue(provider.getFramesSent() <= 11);
+        assertEquals(provider.getFramesSent(), receiver.getFramesReceived());
+        assertEquals(0, provider.getQueuedBytes());
+        assertTrue(provider.getBytesSent() > 0);
+        assertEquals(0, provider(_sender).getEventsReceived());
+    }
+
+    public void testUnreachablePeerDropsFrames() throws Exception {
+        _sender = newEmf(5647, 6647);
+        EntityManager em = _sender.createEntityManager();
+        em.getTransaction().begin();
+        AnEntity e = new AnEntity();
+        e.setId(1);
+        em.persist(e);
+        em.getTransaction().commit();
+        em.close();
+
+        NIORemoteCommitProvider provider = provider(_sender);
+        long end = System.currentTimeMillis() + 10000;
+        while (provider.getFramesDropped() == 0
+            && System.currentTimeMillis() < end)
+            Thread.sleep(50);
+        assertEquals(1, provider.getFramesDropped());
+        assertEquals(0, provider.getFramesSent());
+    }
+
+    private OpenJPAEntityManagerFactorySPI newEmf(int port, int peer) {
+        return createEMF(AnEntity.class, CLEAR_TABLES,
+            "openjpa.RemoteCommitProvider", "nio(Port=" + port
+            + ", Addresses=127.0.0.1:" + port + ";127.0.0.1:" + peer
+            + ", CoalesceWindowMillis=20, TransmitPersistedObjectIds=true)");
+    }
+
+    private static NIORemoteCommitProvider provider(
+        OpenJPAEntityManagerFactorySPI emf) {
+        return (NIORemoteCommitProvider) emf.getConfiguration()
+            .getRemoteCommitEventManager().getRemoteCommitProvider();
+    }
+
+    /**
+     * Counts the added and updated object ids received.
+     */
+    private static class Listener implements RemoteCommitListener {
+
+        private int _ids;
+
+        public synchronized void afterCommit(RemoteCommitEvent event) {
+            if (event.getPayloadType()
+                == RemoteCommitEvent.PAYLOAD_OIDS_WITH_ADDS)
+                _ids += event.getPersistedObjectIds().size();
+            _ids += event.getUpdatedObjectIds().size();
+            notifyAll();
+        }
+
+        public synchronized boolean awaitIds(int count, long millis)
+            throws InterruptedException {
+            long end = System.currentTimeMillis() + millis;
+            while (_ids < count && System.currentTimeMillis() < end)
+                wait(100);
+            return _ids == count;
+        }
+
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.generationtype;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.jdbc.kernel.TableJDBCSeq;
+import org.apache.openjpa.kernel.StoreContext;
+import org.apache.openjpa.lib.jdbc.AbstractJDBCListener;
+import org.apache.openjpa.lib.jdbc.JDBCEvent;
+import org.apache.openjpa.lib.jdbc.JDBCListener;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.MetaDataRepository;
+import org.apache.openjpa.meta.SequenceMetaData;
+import org.apache.openjpa.persistence.EntityManagerImpl;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.apache.openjpa.persistence.test.AbstractPersistenceTestCase;
+
+/**
+ * Tests table sequences that prefetch blocks in the background and adapt
+ * the block size to the rate values are consumed at.
+ */
+public class TestTableGeneratorPrefetch extends AbstractPersistenceTestCase {
+
+    private static final int THREADS = 4;
+    private static final int LOOPS = 2000;
+
+    private final List<String> _threads = new CopyOnWriteArrayList<String>();
+    private OpenJPAEntityManagerFactorySPI _emf;
+    private TableJDBCSeq _seq;
+    private ClassMetaData _meta;
+
+    public void setUp() throws Exception {
+        super.setUp();
+        _emf = createEMF(Dog.class, CLEAR_TABLES,
+            "openjpa.jdbc.JDBCListeners",
+            new JDBCListener[] { new SequenceUpdateRecorder() });
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        MetaDataRepository repo = _emf.getConfiguration()
+            .getMetaDataRepositoryInstance();
+        _meta = repo.getMetaData(Dog.class, loader, true);
+        SequenceMetaData smeta = repo.getSequenceMetaData("Dog_Gen", loader,
+            true);
+        _seq = (TableJDBCSeq) smeta.getInstance(loader);
+        _seq.setInitialValue(1);
+    }
+
+    public void tearDown() throws Exception {
+        closeEMF(_emf);
+        _emf = null;
+        super.tearDown();
+    }
+
+    public void testPrefetchedValuesAreUnique() throws Exception {
+        _seq.setAllocate(50);
+        _seq.setPrefetchThreshold(20);
+
+        Set<Object> values = next(THREADS, LOOPS);
+        assertEquals(THREADS * LOOPS, values.size());
+        // only the first block is allocated by a thread obtaining values
+        int prefetched = 0;
+        for (String thread : _threads)
+            if (thread.startsWith("OpenJPA-SequencePrefetch-"))
+                prefetched++;
+        assertTrue(_threads.toString(), prefetched > 0);
+        assertEquals(_threads.toString(), 1, _threads.size() - prefetched);
+    }
+
+    public void testPrefetchThresholdAboveAllocate() throws Exception {
+        _seq.setAllocate(5);
+        _seq.setPrefetchThreshold(10);
+
+        Set<Object> values = next(THREADS, 100);
+        assertEquals(THREADS * 100, values.size());
+    }
+
+    public void testAllocateWithPrefetch() throws Exception {
+        _seq.setAllocate(10);
+        _seq.setPrefetchThreshold(5);
+
+        EntityManager em = _emf.createEntityManager();
+        StoreContext ctx = ((EntityManagerImpl) em).getBroker();
+        _seq.allocate(100, ctx, _meta);
+        int updates = _threads.size();
+        Set<Object> values = new HashSet<Object>();
+        for (int i = 0; i < 100; i++)
+            assertTrue(values.add(_seq.next(ctx, _meta)));
+        em.close();
+        assertTrue(_threads.toString(), _threads.size() - updates <= 2);
+    }
+
+    public void testAllocateKeepsCurrentBlock() throws Exception {
+        _seq.setAllocate(10);
+        _seq.setPrefetchThreshold(5);
+
+        EntityManager em = _emf.createEntityManager();
+        StoreContext ctx = ((EntityManagerImpl) em).getBroker();
+        long first = (Long) _seq.next(ctx, _meta);
+        for (int i = 1; i < 6; i++)
+            assertEquals(first + i, _seq.next(ctx, _meta));
+        // the rest of the current block is handed out before new blocks
+        _seq.allocate(8, ctx, _meta);
+        for (int i = 6; i < 10; i++)
+            assertEquals(first + i, _seq.next(ctx, _meta));
+        Set<Object> values = new HashSet<Object>();
+        for (int i = 0; i < 20; i++)
+            assertTrue(values.add(_seq.next(ctx, _meta)));
+        em.close();
+    }
+
+    public void testAdaptiveAllocation() throws Exception {
+        _seq.setAllocate(10);
+        _seq.setMaxAllocate(1000);
+
+        Set<Object> values = next(1, LOOPS);
+        assertEquals(LOOPS, values.size());
+        // a fixed allocation would need LOOPS / 10 updates
+        assertTrue(_threads.toString(), _threads.size() < LOOPS / 10 / 4);
+    }
+
+    public void testAdaptiveAllocationWithPrefetch() throws Exception {
+        _seq.setAllocate(10);
+        _seq.setMaxAllocate(1000);
+        _seq.setPrefetchThreshold(5);
+
+        Set<Object> values = next(THREADS, LOOPS);
+        assertEquals(THREADS * LOOPS, values.size());
+        assertTrue(_threads.toString(),
+            _threads.size() < THREADS * LOOPS / 10 / 4);
+    }
+
+    private Set<Object> next(int threads, final int loops)
+        throws InterruptedException {
+        final Set<Object> values = ConcurrentHashMap.newKeySet();
+        final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Thread() {
+                public void run() {
+                    EntityManager em = _emf.createEntityManager();
+                    try {
+                        StoreContext ctx = ((EntityManagerImpl) em)
+                            .getBroker();
+                        for (int j = 0; j < loops; j++)
+                            values.add(_seq.next(ctx, _meta));
+                    } catch (Throwable t) {
+                        errors.add(t);
+                    } finally {
+                        em.close();
+                    }
+                }
+            });
+        }
+        for (Thread t : workers)
+            t.start();
+        for (Thread t : workers)
+            t.join();
+        assertTrue(errors.toString(), errors.isEmpty());
+        return values;
+    }
+
+    /**
+     * Records the threads updating the sequence table.
+     */
+    public class SequenceUpdateRecorder extends AbstractJDBCListener {
+
+        public void beforeExecuteStatement(JDBCEvent event) {
+            String sql = event.getSQL();
+            if (sql != null && sql.startsWith("UPDATE ID_Gen"))
+                _threads.add(Thread.currentThread().getName());
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.jdbc.kernel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.sql.DBDictionary;
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.relations.OneManyEagerChild;
+import org.apache.openjpa.persistence.relations.OneManyEagerParent;
+import org.apache.openjpa.persistence.relations.OneManyLazyChild;
+import org.apache.openjpa.persistence.simple.Item;
+import org.apache.openjpa.persistence.test.SQLListenerTestCase;
+
+/**
+ * Tests that instances loaded together, as by <code>findAll</code>, are
+ * selected by batches of primary keys rather than one at a time.
+ */
+public class TestSetBasedLoadAll extends SQLListenerTestCase {
+
+    private static final int COUNT = 20;
+
+    private List<Object> _ids = new ArrayList<Object>();
+
+    public void setUp() {
+        setUp(CLEAR_TABLES, Item.class, OneManyEagerParent.class,
+            OneManyEagerChild.class, OneManyLazyChild.class);
+
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < COUNT; i++) {
+            Item item = new Item();
+            item.setItemName(name(i));
+            em.persist(item);
+        }
+        em.getTransaction().commit();
+        for (Item item : em.createQuery("select i from Item i "
+            + "order by i.itemName", Item.class).getResultList())
+            _ids.add(item.getItemId());
+        em.close();
+        resetSQL();
+    }
+
+    public void testFindAllSelectsOnce() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        List<Item> items = new ArrayList<Item>(em.findAll(Item.class, _ids));
+        em.close();
+
+        assertEquals(1, countItemSelects());
+        assertItems(items);
+    }
+
+    public void testFindAllWithMissingInstance() {
+        _ids.add(-1);
+        OpenJPAEntityManager em = emf.createEntityManager();
+        List<Item> items = new ArrayList<Item>(em.findAll(Item.class, _ids));
+        em.close();
+
+        assertEquals(COUNT + 1, items.size());
+        assertNull(items.get(COUNT));
+        assertItems(items.subList(0, COUNT));
+    }
+
+    public void testFindAllHonorsInClauseLimit() {
+        DBDictionary dict = ((JDBCConfiguration) emf.getConfiguration())
+            .getDBDictionaryInstance();
+        int limit = dict.inClauseLimit;
+        dict.inClauseLimit = 7;
+        try {
+            OpenJPAEntityManager em = emf.createEntityManager();
+            List<Item> items = new ArrayList<Item>(em.findAll(Item.class,
+                _ids));
+            em.close();
+
+            assertEquals(3, countItemSelects());
+            assertItems(items);
+        } finally {
+            dict.inClauseLimit = limit;
+        }
+    }
+
+    public void testRetrieveAllHollowInstances() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        List<Item> items = new ArrayList<Item>();
+        for (Object id : _ids)
+            items.add(em.getReference(Item.class, id));
+        resetSQL();
+        em.retrieveAll(items);
+
+        assertEquals(1, countItemSelects());
+        assertItems(items);
+        em.close();
+    }
+
+    public void testFindAllWithEagerToManyJoin() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        List<Object> ids = new ArrayList<Object>();
+        for (int j = 0; j < 3; j++) {
+            OneManyEagerParent parent = new OneManyEagerParent();
+            parent.setName("parent" + j);
+            for (int i = 0; i < 2; i++) {
+                OneManyEagerChild child = new OneManyEagerChild();
+                child.setName("eagerchild" + i);
+                parent.addEagerChild(child);
+                em.persist(child);
+            }
+            em.persist(parent);
+        }
+        em.getTransaction().commit();
+        for (OneManyEagerParent parent : em.createQuery("select p from "
+            + "OneManyEagerParent p order by p.name", OneManyEagerParent.class)
+            .getResultList())
+            ids.add(parent.getId());
+        em.close();
+
+        em = emf.createEntityManager();
+        List<OneManyEagerParent> parents = new ArrayList<OneManyEagerParent>(
+            em.findAll(OneManyEagerParent.class, ids));
+        em.close();
+
+        assertEquals(3, parents.size());
+        for (int j = 0; j < parents.size(); j++) {
+            OneManyEagerParent parent = parents.get(j);
+            assertEquals("parent" + j, parent.getName());
+            assertEquals(2, parent.getEagerChildren().size());
+            for (int i = 0; i < 2; i++) {
+                assertEquals("eagerchild" + i,
+                    parent.getEagerChildren().get(i).getName());
+                assertSame(parent,
+                    parent.getEagerChildren().get(i).getParent());
+            }
+        }
+    }
+
+    private int countItemSelects() {
+        int count = 0;
+        for (String s : sql)
+            if (s.startsWith("SELECT") && s.contains("I_ITEM"))
+                count++;
+        return count;
+    }
+
+    private static String name(int i) {
+        return (i < 10) ? "item0" + i : "item" + i;
+    }
+
+    private void assertItems(List<Item> items) {
+        assertEquals(COUNT, items.size());
+        for (int i = 0; i < COUNT; i++)
+            assertEquals(name(i), items.get(i).getItemName());
+    }
+}
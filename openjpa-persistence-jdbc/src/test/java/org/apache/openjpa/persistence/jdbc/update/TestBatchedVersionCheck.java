@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.jdbc.update;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.RollbackException;
+
+import org.apache.openjpa.persistence.test.SQLListenerTestCase;
+import org.apache.openjpa.util.ExceptionInfo;
+
+/**
+ * The versions of read-locked instances are checked at commit with one
+ * select for all instances of a version mapping.
+ */
+public class TestBatchedVersionCheck extends SQLListenerTestCase {
+
+    private static final int COUNT = 20;
+
+    public void setUp() {
+        super.setUp(CLEAR_TABLES, NumericVersionedEntity.class);
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < COUNT; i++) {
+            NumericVersionedEntity pc = new NumericVersionedEntity();
+            pc.setName("name" + i);
+            em.persist(pc);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    private List<NumericVersionedEntity> readLockAll(EntityManager em) {
+        List<NumericVersionedEntity> pcs = em.createQuery(
+            "select o from NumericVersionedEntity o order by o.id",
+            NumericVersionedEntity.class).getResultList();
+        for (NumericVersionedEntity pc : pcs)
+            em.lock(pc, LockModeType.READ);
+        return pcs;
+    }
+
+    private void update(long id) {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.find(NumericVersionedEntity.class, id).setName("changed");
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    public void testVersionsAreCheckedWithOneSelect() {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        assertEquals(COUNT, readLockAll(em).size());
+
+        resetSQL();
+        em.getTransaction().commit();
+        assertEquals(1, sql.size());
+        assertTrue(sql.get(0), sql.get(0).startsWith("SELECT"));
+        assertTrue(sql.get(0), sql.get(0).contains(" IN ("));
+        em.close();
+    }
+
+    public void testStaleInstancesFail() {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        List<NumericVersionedEntity> pcs = readLockAll(em);
+        update(pcs.get(3).getId());
+        update(pcs.get(11).getId());
+
+        resetSQL();
+        try {
+            em.getTransaction().commit();
+            fail("Expected optimistic lock failures");
+        } catch (RollbackException re) {
+            assertEquals(1, sql.size());
+            Throwable[] nested = ((ExceptionInfo) re.getCause()).
+                getNestedThrowables();
+            assertEquals(2, nested.length);
+            Set<Object> failed = new HashSet<Object>();
+            for (Throwable t : nested)
+                failed.add(((ExceptionInfo) t).getFailedObject());
+            assertTrue(failed.contains(pcs.get(3)));
+            assertTrue(failed.contains(pcs.get(11)));
+        }
+        em.close();
+    }
+
+    public void testDeletedInstanceFails() {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        List<NumericVersionedEntity> pcs = readLockAll(em);
+
+        EntityManager em2 = emf.createEntityManager();
+        em2.getTransaction().begin();
+        em2.remove(em2.find(NumericVersionedEntity.class, pcs.get(7).getId()));
+        em2.getTransaction().commit();
+        em2.close();
+
+        try {
+            em.getTransaction().commit();
+            fail("Expected optimistic lock failure");
+        } catch (RollbackException re) {
+            Throwable[] nested = ((ExceptionInfo) re.getCause()).
+                getNestedThrowables();
+            assertEquals(1, nested.length);
+            assertSame(pcs.get(7), ((ExceptionInfo) nested[0]).
+                getFailedObject());
+        }
+        em.close();
+    }
+}
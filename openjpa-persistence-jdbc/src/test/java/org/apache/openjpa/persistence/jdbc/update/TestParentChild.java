@@ -79,7 +79,8 @@ public class TestParentChild extends CombinatorialPersistenceTestCase {
 
 	private static String[] Option_UpdateManager = { 
 		"operation-order",
-		"constraint" };
+		"constraint",
+		"constraint(TableOrder=true)" };
 	
 	private static enum PersistOrder {
 		IMPLICIT_CASCADE, 
@@ -116,7 +117,7 @@ public class TestParentChild extends CombinatorialPersistenceTestCase {
 	}
 
 	/**
-     * This test will run in 2*2*2*3 = 24 times with different configurations.
+     * This test will run in 2*2*3*3 = 36 times with different configurations.
 	 */
 	public void testInsert() {
 		Parent parent = createData(getPersistOrder(), 3);
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.jdbc.update;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.kernel.ConstraintUpdateManager;
+import org.apache.openjpa.jdbc.meta.ClassMapping;
+import org.apache.openjpa.persistence.test.SQLListenerTestCase;
+
+/**
+ * Flushes of an acyclic model ordered by the cached table order of the
+ * {@link ConstraintUpdateManager}, against physical foreign keys.
+ */
+public class TestTableOrder extends SQLListenerTestCase {
+
+    public void setUp() {
+        super.setUp(DROP_TABLES, Parent.class, Child.class,
+            "openjpa.jdbc.UpdateManager", "constraint(TableOrder=true)",
+            "openjpa.jdbc.MappingDefaults",
+            "ForeignKeyDeleteAction=restrict, JoinForeignKeyDeleteAction=restrict",
+            "openjpa.jdbc.SchemaFactory", "native(ForeignKeys=true)");
+    }
+
+    public void testTableRanks() {
+        JDBCConfiguration conf = (JDBCConfiguration) emf.getConfiguration();
+        ConstraintUpdateManager updates =
+            (ConstraintUpdateManager) conf.getUpdateManagerInstance();
+        assertTrue(updates.getTableOrder());
+        ClassMapping parent = conf.getMappingRepositoryInstance().
+            getMapping(Parent.class, null, true);
+        ClassMapping child = conf.getMappingRepositoryInstance().
+            getMapping(Child.class, null, true);
+        assertTrue(updates.getTableRank(child.getTable())
+            > updates.getTableRank(parent.getTable()));
+    }
+
+    public void testInsertAndDelete() {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        List<Object> ids = new ArrayList<Object>();
+        for (int i = 0; i < 5; i++) {
+            Parent parent = new Parent();
+            parent.setName("parent" + i);
+            for (int j = 0; j < 3; j++)
+                em.persist(parent.newChild("child" + i + "-" + j));
+            em.persist(parent);
+            ids.add(parent.getId());
+        }
+        sql.clear();
+        em.getTransaction().commit();
+        em.clear();
+
+        // all parents are inserted before the first child
+        int lastParent = -1;
+        int firstChild = Integer.MAX_VALUE;
+        for (int i = 0; i < sql.size(); i++) {
+            if (sql.get(i).startsWith("INSERT INTO Parent"))
+                lastParent = i;
+            else if (sql.get(i).startsWith("INSERT INTO Child"))
+                firstChild = Math.min(firstChild, i);
+        }
+        assertTrue(lastParent != -1 && lastParent < firstChild);
+
+        em.getTransaction().begin();
+        for (Object id : ids)
+            em.remove(em.find(Parent.class, id));
+        em.getTransaction().commit();
+        assertEquals(0L, em.createQuery("select count(c) from Child c").
+            getSingleResult());
+        em.close();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.jdbc.update;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.kernel.AbstractUpdateManager;
+import org.apache.openjpa.jdbc.kernel.WriteBehindQueue;
+import org.apache.openjpa.persistence.OpenJPAEntityManagerFactorySPI;
+import org.apache.openjpa.persistence.test.SQLListenerTestCase;
+
+/**
+ * Updates of a write-behind type are queued on commit, coalesced and
+ * written by the queue.
+ */
+public class TestWriteBehind extends SQLListenerTestCase {
+
+    private static final String UPDATE_MANAGER = "batching-constraint("
+        + "WriteBehindTypes=NumericVersionedEntity, WriteBehindInterval=3600000)";
+
+    private WriteBehindQueue queue;
+    private long id;
+
+    public void setUp() {
+        super.setUp(CLEAR_TABLES, NumericVersionedEntity.class,
+            "openjpa.DataCache", "true",
+            "openjpa.RemoteCommitProvider", "sjvm",
+            "openjpa.jdbc.UpdateManager", UPDATE_MANAGER);
+        queue = getQueue(emf);
+        assertNotNull(queue);
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        NumericVersionedEntity pc = new NumericVersionedEntity();
+        pc.setName("v0");
+        em.persist(pc);
+        em.getTransaction().commit();
+        id = pc.getId();
+        em.close();
+    }
+
+    private static WriteBehindQueue getQueue(OpenJPAEntityManagerFactorySPI emf) {
+        return ((AbstractUpdateManager) ((JDBCConfiguration) emf.
+            getConfiguration()).getUpdateManagerInstance()).
+            getWriteBehindQueue();
+    }
+
+    private int countUpdates() {
+        int count = 0;
+        for (String s : sql)
+            if (s.startsWith("UPDATE"))
+                count++;
+        return count;
+    }
+
+    private NumericVersionedEntity findInDatabase() {
+        emf.getCache().evictAll();
+        EntityManager em = emf.createEntityManager();
+        NumericVersionedEntity pc = em.find(NumericVersionedEntity.class, id);
+        em.close();
+        return pc;
+    }
+
+    public void testUpdatesAreCoalesced() {
+        EntityManager em = emf.createEntityManager();
+        sql.clear();
+        for (int i = 1; i <= 3; i++) {
+            em.getTransaction().begin();
+            em.find(NumericVersionedEntity.class, id).setName("v" + i);
+            em.getTransaction().commit();
+        }
+        int version = em.find(NumericVersionedEntity.class, id).getVersion();
+        em.close();
+        assertEquals(0, countUpdates());
+        assertEquals(1, queue.size());
+        String type = NumericVersionedEntity.class.getName();
+        assertEquals(3, queue.getStatistics(type).getQueuedCount());
+        assertEquals(2, queue.getStatistics(type).getCoalescedCount());
+        assertTrue(queue.getLag(type) >= 0);
+
+        // committed values are served by the data cache
+        em = emf.createEntityManager();
+        assertEquals("v3", em.find(NumericVersionedEntity.class, id).getName());
+        em.close();
+
+        queue.flush();
+        assertEquals(1, countUpdates());
+        assertEquals(0, queue.size());
+        assertEquals(1, queue.getStatistics(type).getWrittenCount());
+
+        NumericVersionedEntity pc = findInDatabase();
+        assertEquals("v3", pc.getName());
+        assertEquals(version, pc.getVersion());
+    }
+
+    public void testRollbackIsDiscarded() {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.find(NumericVersionedEntity.class, id).setName("rolled back");
+        em.getTransaction().rollback();
+        em.close();
+        assertEquals(0, queue.size());
+        assertEquals("v0", findInDatabase().getName());
+    }
+
+    public void testFlushBeforeCommitIsNotDeferred() {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.find(NumericVersionedEntity.class, id).setName("flushed");
+        sql.clear();
+        long count = em.createQuery("select count(e) from "
+            + "NumericVersionedEntity e where e.name = :name", Long.class).
+            setParameter("name", "flushed").getSingleResult();
+        assertEquals(1, count);
+        assertEquals(1, countUpdates());
+        em.getTransaction().rollback();
+        em.close();
+        assertEquals(0, queue.size());
+        assertEquals("v0", findInDatabase().getName());
+
+        em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.find(NumericVersionedEntity.class, id).setName("flushed");
+        em.flush();
+        em.getTransaction().commit();
+        em.close();
+        assertEquals(0, queue.size());
+        assertEquals("flushed", findInDatabase().getName());
+    }
+
+    public void testDeleteIsNotDeferred() {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        em.find(NumericVersionedEntity.class, id).setName("deleted");
+        em.flush();
+        em.remove(em.find(NumericVersionedEntity.class, id));
+        em.getTransaction().commit();
+        em.close();
+        assertEquals(0, queue.size());
+        assertNull(findInDatabase());
+    }
+
+    public void testQueueIsWrittenOnClose() {
+        OpenJPAEntityManagerFactorySPI other = createEMF(
+            NumericVersionedEntity.class,
+            "openjpa.jdbc.UpdateManager", UPDATE_MANAGER);
+        EntityManager em = other.createEntityManager();
+        em.getTransaction().begin();
+        em.find(NumericVersionedEntity.class, id).setName("closed");
+        em.getTransaction().commit();
+        em.close();
+        assertEquals(1, getQueue(other).size());
+        other.close();
+        assertEquals("closed", findInDatabase().getName());
+    }
+}
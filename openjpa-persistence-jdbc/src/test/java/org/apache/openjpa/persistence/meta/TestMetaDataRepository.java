@@ -71,6 +71,27 @@ public class TestMetaDataRepository extends AbstractPersistenceTestCase {
 		}
 	}
 	
+	public void testParallelPreload() {
+		OpenJPAEntityManagerFactorySPI emf = null;
+		try {
+			emf = createNamedEMF(PU_NAME, "openjpa.MetaDataRepository",
+					"Preload=true,PreloadParallelism=4");
+			MetaDataRepository mdr = emf.getConfiguration()
+					.getMetaDataRepositoryInstance();
+			assertEquals(4, mdr.getPreloadParallelism());
+			assertNotNull(mdr.getCachedMetaData(MdrTestEntity.class));
+			assertTrue(mdr.getAliasNames().contains("MdrTestEntity"));
+			assertNotNull(mdr.getCachedQueryMetaData("query"));
+
+			// unknown aliases are remembered, but not reported as alias names
+			assertNull(mdr.getMetaData("NoSuchEntity", null, false));
+			assertNull(mdr.getMetaData("NoSuchEntity", null, false));
+			assertFalse(mdr.getAliasNames().contains("NoSuchEntity"));
+		} finally {
+			closeEMF(emf);
+		}
+	}
+
 	public void testPreloadCleanUp() {
         OpenJPAEntityManagerFactorySPI emf = null;
         emf = createNamedEMF(PU_NAME, "openjpa.MetaDataRepository", "Preload=true");
@@ -107,4 +128,18 @@ public class TestMetaDataRepository extends AbstractPersistenceTestCase {
         assertTrue(MetaDataRepository.needsPreload(emf.getConfiguration()));
         emf.close();
     }
+
+    public void testCompileQueries() {
+        OpenJPAEntityManagerFactorySPI emf = null;
+        try {
+            emf = createNamedEMF(PU_NAME, "openjpa.MetaDataRepository", "CompileQueries=true");
+            assertTrue(MetaDataRepository.needsQueryCompilation(emf.getConfiguration()));
+            assertFalse(MetaDataRepository.needsPreload(emf.getConfiguration()));
+
+            // the named query was compiled before any entity manager was created
+            assertFalse(emf.getConfiguration().getQueryCompilationCacheInstance().isEmpty());
+        } finally {
+            closeEMF(emf);
+        }
+    }
 }
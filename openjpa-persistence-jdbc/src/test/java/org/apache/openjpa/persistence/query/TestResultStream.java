@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.query;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.OpenJPAQuery;
+import org.apache.openjpa.persistence.simple.NamedEntity;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+public class TestResultStream extends SingleEMFTestCase {
+
+    private static final int COUNT = 25;
+
+    public void setUp() {
+        setUp(NamedEntity.class, Account.class, Customer.class, Order.class,
+            OrderItem.class, CLEAR_TABLES);
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < COUNT; i++) {
+            NamedEntity pc = new NamedEntity();
+            pc.setName("name" + i);
+            em.persist(pc);
+
+            Customer cust = new Customer(new Customer.CustomerKey("US", i),
+                "cust" + i, Customer.CreditRating.GOOD);
+            em.persist(cust);
+            Account acct = new Account();
+            acct.setName("acct" + i);
+            acct.setCustomer(cust);
+            em.persist(acct);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    public void testChunksAreDetached() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        OpenJPAQuery<NamedEntity> q = (OpenJPAQuery<NamedEntity>) em.createQuery(
+            "select o from named o order by o.name", NamedEntity.class);
+        q.getFetchPlan().setFetchBatchSize(10);
+
+        List<NamedEntity> seen = new ArrayList<NamedEntity>();
+        Stream<NamedEntity> stream = q.getResultStream();
+        Iterator<NamedEntity> itr = stream.iterator();
+        for (int i = 0; i < 10; i++)
+            seen.add(itr.next());
+        for (NamedEntity pc : seen)
+            assertTrue(em.contains(pc));
+
+        // moving on to the second chunk detaches the first
+        NamedEntity eleventh = itr.next();
+        for (NamedEntity pc : seen)
+            assertFalse(em.contains(pc));
+        assertTrue(em.contains(eleventh));
+
+        stream.close();
+        assertFalse(em.contains(eleventh));
+        assertFalse(itr.hasNext());
+        em.close();
+    }
+
+    public void testEagerRelationsAreDetached() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        OpenJPAQuery<Account> q = (OpenJPAQuery<Account>) em.createQuery(
+            "select a from Account a order by a.name", Account.class);
+        q.getFetchPlan().setFetchBatchSize(10);
+
+        List<Customer> seen = new ArrayList<Customer>();
+        Stream<Account> stream = q.getResultStream();
+        Iterator<Account> itr = stream.iterator();
+        for (int i = 0; i < 10; i++)
+            seen.add(itr.next().getCustomer());
+        for (Customer cust : seen)
+            assertTrue(em.contains(cust));
+
+        // the eagerly fetched customers are detached with their accounts
+        Customer eleventh = itr.next().getCustomer();
+        for (Customer cust : seen)
+            assertFalse(em.contains(cust));
+        assertTrue(em.contains(eleventh));
+
+        stream.close();
+        assertEquals(0, em.getManagedObjects().size());
+        em.close();
+    }
+
+    public void testDistinct() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        // duplicates are dropped by the database
+        Stream<Customer.CreditRating> stream =
+            ((OpenJPAQuery<Customer.CreditRating>) em.createQuery(
+            "select distinct a.cust.creditRating from Account a",
+            Customer.CreditRating.class)).getResultStream();
+        assertEquals(1, stream.count());
+        em.close();
+    }
+
+    public void testExhaustedStreamIsDetached() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        List<NamedEntity> seen = new ArrayList<NamedEntity>();
+        Stream<NamedEntity> stream = ((OpenJPAQuery<NamedEntity>) em.createQuery(
+            "select o from named o", NamedEntity.class)).getResultStream();
+        stream.forEach(seen::add);
+        assertEquals(COUNT, seen.size());
+        for (NamedEntity pc : seen)
+            assertFalse(em.contains(pc));
+        assertEquals(0, em.getManagedObjects().size());
+        em.close();
+    }
+
+    public void testProjection() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        Stream<Object[]> stream = ((OpenJPAQuery<Object[]>) em.createQuery(
+            "select o, o.name from named o", Object[].class)).getResultStream();
+        assertEquals(COUNT, stream.filter(row -> row[0] instanceof NamedEntity)
+            .count());
+        stream.close();
+        assertEquals(0, em.getManagedObjects().size());
+        em.close();
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.relations;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.lib.jdbc.AbstractJDBCListener;
+import org.apache.openjpa.lib.jdbc.JDBCEvent;
+import org.apache.openjpa.lib.jdbc.JDBCListener;
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.OpenJPAPersistence;
+import org.apache.openjpa.persistence.jdbc.JDBCFetchPlan;
+import org.apache.openjpa.persistence.test.SingleEMFTestCase;
+
+/**
+ * Tests that the parallel eager selects of a query execute concurrently
+ * on separate connections when <code>openjpa.jdbc.EagerFetchParallelism</code>
+ * allows it, and serially inside a datastore transaction.
+ */
+public class TestConcurrentEagerFetch extends SingleEMFTestCase {
+
+    private static final Set<String> THREADS =
+        new CopyOnWriteArraySet<String>();
+
+    public void setUp() {
+        setUp(CLEAR_TABLES, OneManyEagerParent.class, OneManyEagerChild.class,
+            OneManyLazyChild.class,
+            "openjpa.jdbc.EagerFetchMode", "parallel",
+            "openjpa.jdbc.EagerFetchParallelism", "4",
+            "openjpa.jdbc.JDBCListeners",
+            new JDBCListener[] { new ThreadRecorder() });
+
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int j = 0; j < 3; j++) {
+            OneManyEagerParent parent = new OneManyEagerParent();
+            parent.setName("parent" + j);
+            for (int i = 0; i < 2; i++) {
+                OneManyEagerChild child = new OneManyEagerChild();
+                child.setName("eagerchild" + i);
+                parent.addEagerChild(child);
+                em.persist(child);
+                OneManyLazyChild lazychild = new OneManyLazyChild();
+                lazychild.setName("lazychild" + i);
+                parent.addLazyChild(lazychild);
+                em.persist(lazychild);
+            }
+            em.persist(parent);
+        }
+        em.getTransaction().commit();
+        em.close();
+        THREADS.clear();
+    }
+
+    public void testConfiguration() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        JDBCFetchPlan plan = (JDBCFetchPlan) em.getFetchPlan();
+        assertEquals(4, plan.getEagerFetchParallelism());
+        plan.setEagerFetchParallelism(1);
+        assertEquals(1, plan.getEagerFetchParallelism());
+        em.close();
+    }
+
+    public void testEagerSelectsExecuteConcurrently() {
+        EntityManager em = emf.createEntityManager();
+        List<OneManyEagerParent> parents = query(em);
+        em.close();
+
+        assertParents(parents);
+        assertTrue(THREADS.toString(), hasEagerSelectThread());
+    }
+
+    public void testSerialWhenParallelismIsOne() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        ((JDBCFetchPlan) em.getFetchPlan()).setEagerFetchParallelism(1);
+        List<OneManyEagerParent> parents = query(em);
+        em.close();
+
+        assertParents(parents);
+        assertFalse(THREADS.toString(), hasEagerSelectThread());
+    }
+
+    public void testSerialInDatastoreTransaction() {
+        OpenJPAEntityManager em = OpenJPAPersistence.cast(
+            emf.createEntityManager());
+        em.setOptimistic(false);
+        em.getTransaction().begin();
+        List<OneManyEagerParent> parents = query(em);
+        em.getTransaction().commit();
+        em.close();
+
+        assertParents(parents);
+        assertFalse(THREADS.toString(), hasEagerSelectThread());
+    }
+
+    private List<OneManyEagerParent> query(EntityManager em) {
+        return em.createQuery("select p from OneManyEagerParent p "
+            + "order by p.name", OneManyEagerParent.class).getResultList();
+    }
+
+    private void assertParents(List<OneManyEagerParent> parents) {
+        assertEquals(3, parents.size());
+        for (int j = 0; j < parents.size(); j++) {
+            OneManyEagerParent parent = parents.get(j);
+            assertEquals("parent" + j, parent.getName());
+            assertEquals(2, parent.getEagerChildren().size());
+            assertEquals(2, parent.getLazyChildren().size());
+            for (int i = 0; i < 2; i++) {
+                assertEquals("eagerchild" + i,
+                    parent.getEagerChildren().get(i).getName());
+                assertSame(parent,
+                    parent.getEagerChildren().get(i).getParent());
+                assertEquals("lazychild" + i,
+                    parent.getLazyChildren().get(i).getName());
+            }
+        }
+    }
+
+    private static boolean hasEagerSelectThread() {
+        for (String thread : THREADS)
+            if (thread.startsWith("OpenJPA-EagerSelect-"))
+                return true;
+        return false;
+    }
+
+    /**
+     * Records the names of the threads executing statements.
+     */
+    public static class ThreadRecorder extends AbstractJDBCListener {
+
+        public void beforeExecuteStatement(JDBCEvent event) {
+            THREADS.add(Thread.currentThread().getName());
+        }
+    }
+}
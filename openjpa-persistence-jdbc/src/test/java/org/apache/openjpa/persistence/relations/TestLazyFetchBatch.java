@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.persistence.relations;
+
+import java.util.List;
+
+import org.apache.openjpa.persistence.OpenJPAEntityManager;
+import org.apache.openjpa.persistence.jdbc.JDBCFetchPlan;
+import org.apache.openjpa.persistence.test.SQLListenerTestCase;
+
+/**
+ * Tests that touching a lazy relation of one managed instance loads the
+ * same relation of its siblings in a single select.
+ */
+public class TestLazyFetchBatch extends SQLListenerTestCase {
+
+    private static final int PARENTS = 5;
+    private static final int CHILDREN = 3;
+
+    public void setUp() {
+        setUp(CLEAR_TABLES, BidiParent.class, BidiChild.class,
+            "openjpa.jdbc.LazyFetchBatchSize", "10");
+
+        OpenJPAEntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int j = 0; j < PARENTS; j++) {
+            BidiParent parent = new BidiParent();
+            parent.setName("parent" + j);
+            em.persist(parent);
+            for (int i = 0; i < CHILDREN; i++) {
+                BidiChild child = new BidiChild();
+                child.setName("child" + i);
+                child.setOneToManyParent(parent);
+                parent.getOneToManyChildren().add(child);
+                em.persist(child);
+            }
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    public void testLazyCollectionsLoadedInOneSelect() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        List<BidiParent> parents = em.createQuery("select p from BidiParent p "
+            + "order by p.name", BidiParent.class).getResultList();
+        resetSQL();
+
+        assertParents(parents);
+        assertEquals(1, countChildSelects());
+        em.close();
+    }
+
+    public void testFetchPlanDisablesBatching() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        JDBCFetchPlan plan = (JDBCFetchPlan) em.getFetchPlan();
+        assertEquals(10, plan.getLazyFetchBatchSize());
+        plan.setLazyFetchBatchSize(1);
+        List<BidiParent> parents = em.createQuery("select p from BidiParent p "
+            + "order by p.name", BidiParent.class).getResultList();
+        resetSQL();
+
+        assertParents(parents);
+        assertEquals(PARENTS, countChildSelects());
+        em.close();
+    }
+
+    public void testBatchSizeLimitsSiblings() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        ((JDBCFetchPlan) em.getFetchPlan()).setLazyFetchBatchSize(2);
+        List<BidiParent> parents = em.createQuery("select p from BidiParent p "
+            + "order by p.name", BidiParent.class).getResultList();
+        resetSQL();
+
+        assertParents(parents);
+        assertEquals(3, countChildSelects());
+        em.close();
+    }
+
+    public void testInstancesLoadedLaterJoinBatches() {
+        OpenJPAEntityManager em = emf.createEntityManager();
+        List<BidiParent> first = em.createQuery("select p from BidiParent p "
+            + "where p.name in ('parent0', 'parent1')", BidiParent.class)
+            .getResultList();
+        resetSQL();
+        for (BidiParent parent : first)
+            assertEquals(CHILDREN, parent.getOneToManyChildren().size());
+        assertEquals(1, countChildSelects());
+
+        // parents loaded after the first batch are batched with each other
+        List<BidiParent> rest = em.createQuery("select p from BidiParent p "
+            + "where p.name not in ('parent0', 'parent1')", BidiParent.class)
+            .getResultList();
+        resetSQL();
+        for (BidiParent parent : rest)
+            assertEquals(CHILDREN, parent.getOneToManyChildren().size());
+        assertEquals(1, countChildSelects());
+        em.close();
+    }
+
+    private void assertParents(List<BidiParent> parents) {
+        assertEquals(PARENTS, parents.size());
+        for (int j = 0; j < PARENTS; j++) {
+            BidiParent parent = parents.get(j);
+            assertEquals("parent" + j, parent.getName());
+            List<BidiChild> children = parent.getOneToManyChildren();
+            assertEquals(CHILDREN, children.size());
+            for (int i = 0; i < CHILDREN; i++)
+                assertEquals("child" + i, children.get(i).getName());
+        }
+    }
+
+    private int countChildSelects() {
+        int count = 0;
+        for (String s : sql)
+            if (s.startsWith("SELECT") && s.contains("BidiChild"))
+                count++;
+        return count;
+    }
+}
@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import javax.persistence.FlushModeType;
 import javax.persistence.Query;
@@ -130,6 +131,26 @@ public interface OpenJPAQuery<X> extends TypedQuery<X> {
      */
     public OpenJPAQuery<X> compile();
 
+    /**
+     * Execute the query and stream its results rather than collecting them
+     * in a list. The results are read from the database as the stream
+     * advances, with the fetch batch size and result set type of the
+     * query's fetch plan. Every time another {@link FetchPlan#getFetchBatchSize
+     * fetch batch size} results, or 1000 if the batch size is not positive,
+     * have been consumed, the managed instances among the previous results
+     * and the instances fetched with them are detached, so that the
+     * persistence context does not grow with the number of results. A
+     * negative fetch batch size is ignored. Results of aggregate and
+     * grouping queries, and results read outside a transaction when
+     * non-transactional reads are auto-detached, are still read up front.
+     * Distinct queries rely on the database to drop duplicates. The stream
+     * should be closed to release the database resources if it is not
+     * consumed to the end.
+     *
+     * @since 3.0.1
+     */
+    public Stream<X> getResultStream();
+
     /**
      * Whether this query has positional parameters.
      */
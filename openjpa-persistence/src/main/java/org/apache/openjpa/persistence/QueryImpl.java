@@ -21,12 +21,22 @@ package org.apache.openjpa.persistence;
 import static org.apache.openjpa.kernel.QueryLanguages.LANG_PREPARED_SQL;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.persistence.FlushModeType;
 import javax.persistence.LockModeType;
@@ -42,6 +52,7 @@ import org.apache.openjpa.kernel.DelegatingQuery;
 import org.apache.openjpa.kernel.DelegatingResultList;
 import org.apache.openjpa.kernel.DistinctResultList;
 import org.apache.openjpa.kernel.FetchConfiguration;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
 import org.apache.openjpa.kernel.PreparedQuery;
 import org.apache.openjpa.kernel.PreparedQueryCache;
 import org.apache.openjpa.kernel.QueryHints;
@@ -55,8 +66,11 @@ import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.rop.ResultList;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.lib.util.OrderedMap;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.JavaTypes;
 import org.apache.openjpa.meta.QueryMetaData;
 import org.apache.openjpa.persistence.criteria.CriteriaBuilderImpl;
+import org.apache.openjpa.util.DelayedProxy;
 import org.apache.openjpa.util.ImplHelper;
 import org.apache.openjpa.util.RuntimeExceptionTranslator;
 import org.apache.openjpa.util.UserException;
@@ -72,6 +86,10 @@ import org.apache.openjpa.util.UserException;
 public class QueryImpl<X> extends AbstractQuery<X> implements Serializable {
 
     private static final Localizer _loc = Localizer.forPackage(QueryImpl.class);
+
+    // results between detaching when streaming with no positive fetch batch size
+    private static final int STREAM_CHUNK_SIZE = 1000;
+
 	private transient FetchPlan _fetch;
 
 	private String _id;
@@ -307,6 +325,38 @@ public class QueryImpl<X> extends AbstractQuery<X> implements Serializable {
 		}
 	}
 
+	public Stream<X> getResultStream() {
+		_em.assertNotCloseInvoked();
+		FetchConfiguration fetch = _query.getFetchConfiguration();
+		int batch = fetch.getFetchBatchSize();
+		int chunk = (batch > 0) ? batch : STREAM_CHUNK_SIZE;
+		boolean queryFetchPlanUsed = pushQueryFetchPlan();
+		Object ob;
+		try {
+		    // a negative batch size would read all results up front
+		    if (batch < 0)
+		        fetch.setFetchBatchSize(chunk);
+		    ob = execute();
+		} finally {
+		    if (batch < 0)
+		        fetch.setFetchBatchSize(batch);
+			popQueryFetchPlan(queryFetchPlanUsed);
+		}
+
+		List list;
+		if (ob instanceof ResultList)
+		    list = new DelegatingResultList((ResultList) ob, PersistenceExceptions.getRollbackTranslator(_em));
+		else if (ob instanceof List)
+		    list = (List) ob;
+		else
+		    list = Collections.singletonList(ob);
+		// distinct queries rely on the database to drop duplicates, as
+		// remembering the streamed results would hold on to all of them
+		StreamIterator itr = new StreamIterator(list, chunk);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(itr, Spliterator.ORDERED), false)
+		    .onClose(itr);
+	}
+
 	/**
 	 * Execute a query that returns a single result.
 	 */
@@ -647,4 +697,128 @@ public class QueryImpl<X> extends AbstractQuery<X> implements Serializable {
         String result = _query.getQueryString(); 
         return result != null ? result : _id;
     }
+
+    /**
+     * Iterator over the results of a streamed query. Detaches the managed
+     * instances among the results of the previous chunk, and the instances
+     * fetched with them, whenever a chunk has been consumed, and the last
+     * chunk when closed or exhausted.
+     */
+    private class StreamIterator implements Iterator<X>, Runnable {
+
+        private final List _results;
+        private final Iterator _itr;
+        private final int _chunk;
+        private final List<Object> _pending;
+        private int _count = 0;
+        private boolean _closed = false;
+
+        StreamIterator(List results, int chunk) {
+            _results = results;
+            _itr = results.iterator();
+            _chunk = chunk;
+            _pending = new ArrayList<Object>(chunk);
+        }
+
+        public boolean hasNext() {
+            if (_closed)
+                return false;
+            if (_itr.hasNext())
+                return true;
+            run();
+            return false;
+        }
+
+        public X next() {
+            if (_closed)
+                throw new NoSuchElementException();
+            if (_count == _chunk)
+                detachPending();
+            Object next = _itr.next();
+            _count++;
+            if (next instanceof Object[])
+                Collections.addAll(_pending, (Object[]) next);
+            else if (next != null)
+                _pending.add(next);
+            return (X) next;
+        }
+
+        private void detachPending() {
+            if (!_pending.isEmpty() && _em.isOpen())
+                _em.detachAll(getFetchedGraph(_pending));
+            _pending.clear();
+            _count = 0;
+        }
+
+        /**
+         * Return the managed instances among the given results and the ones
+         * reachable from them through loaded relations, such as eagerly
+         * fetched ones, which detaching the results does not cascade to.
+         */
+        private Collection<Object> getFetchedGraph(List<Object> results) {
+            Broker broker = _em.getBroker();
+            Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+            List<Object> graph = new ArrayList<Object>(results.size());
+            LinkedList<Object> stack = new LinkedList<Object>(results);
+            while (!stack.isEmpty()) {
+                Object obj = stack.removeLast();
+                OpenJPAStateManager sm = broker.getStateManager(obj);
+                if (sm == null || sm.isDetached() || !seen.add(obj))
+                    continue;
+                // embedded instances are detached with their owner
+                if (!sm.isEmbedded())
+                    graph.add(obj);
+
+                BitSet loaded = sm.getLoaded();
+                FieldMetaData[] fmds = sm.getMetaData().getFields();
+                for (int i = 0; i < fmds.length; i++)
+                    if (loaded.get(i) && isRelation(fmds[i]))
+                        addRelated(sm.fetch(i), stack);
+            }
+            return graph;
+        }
+
+        /**
+         * Whether the given field may hold persistent instances whose
+         * contents are in memory.
+         */
+        private boolean isRelation(FieldMetaData fmd) {
+            if (fmd.isLRS())
+                return false;
+            return fmd.isDeclaredTypePC() || fmd.getElement().isDeclaredTypePC()
+                || fmd.getKey().isDeclaredTypePC() || fmd.getDeclaredTypeCode() == JavaTypes.PC_UNTYPED
+                || fmd.getElement().getDeclaredTypeCode() == JavaTypes.PC_UNTYPED
+                || fmd.getKey().getDeclaredTypeCode() == JavaTypes.PC_UNTYPED;
+        }
+
+        private void addRelated(Object val, List<Object> stack) {
+            // delay-loaded collections are not fetched with their owner
+            if (val == null || val instanceof DelayedProxy)
+                return;
+            if (val instanceof Collection)
+                stack.addAll((Collection<?>) val);
+            else if (val instanceof Map) {
+                stack.addAll(((Map<?, ?>) val).keySet());
+                stack.addAll(((Map<?, ?>) val).values());
+            } else if (val instanceof Object[])
+                Collections.addAll(stack, (Object[]) val);
+            else
+                stack.add(val);
+        }
+
+        /**
+         * Detach the last chunk and free the database resources.
+         */
+        public void run() {
+            if (_closed)
+                return;
+            _closed = true;
+            try {
+                detachPending();
+            } finally {
+                if (_results instanceof ResultList)
+                    ((ResultList) _results).close();
+            }
+        }
+    }
 }
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.slice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.lib.conf.Configurable;
+import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.log.Log;
+import org.apache.openjpa.util.QueryException;
+import org.apache.openjpa.util.StoreException;
+
+/**
+ * Base implementation of {@link SliceExecutor} that counts the tasks and marks the
+ * threads executing them as slice threads. Subclasses create the underlying
+ * {@link ExecutorService}, which is shut down when the configuration is closed.
+ *
+ * @since 3.0.1
+ */
+public abstract class AbstractSliceExecutor implements SliceExecutor, Configurable {
+    protected Log log;
+    private volatile ExecutorService _service;
+    private final AtomicLong _submitted = new AtomicLong();
+    private final AtomicLong _completed = new AtomicLong();
+    private final AtomicLong _cancelled = new AtomicLong();
+    private final AtomicInteger _active = new AtomicInteger();
+
+    /**
+     * Creates the service that executes the tasks.
+     */
+    protected abstract ExecutorService newExecutorService();
+
+    public void setConfiguration(Configuration conf) {
+        log = conf.getLog(OpenJPAConfiguration.LOG_RUNTIME);
+    }
+
+    public void startConfiguration() {
+    }
+
+    public void endConfiguration() {
+    }
+
+    protected ExecutorService getExecutorService() {
+        ExecutorService service = _service;
+        if (service == null) {
+            synchronized (this) {
+                if (_service == null)
+                    _service = newExecutorService();
+                service = _service;
+            }
+        }
+        return service;
+    }
+
+    public void execute(Runnable command) {
+        _submitted.incrementAndGet();
+        getExecutorService().execute(new SliceTask<Object>(command, null, null));
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        return submit(task, null);
+    }
+
+    public <T> Future<T> submit(Callable<T> task, Queue<Future<T>> completed) {
+        SliceTask<T> future = new SliceTask<T>(task, completed);
+        _submitted.incrementAndGet();
+        getExecutorService().execute(future);
+        return future;
+    }
+
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks, long timeout) {
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (Callable<T> task : tasks)
+            futures.add(submit(task));
+        List<T> results = new ArrayList<T>(futures.size());
+        long deadline = (timeout > 0) ? System.currentTimeMillis() + timeout : 0;
+        try {
+            for (Future<T> future : futures) {
+                if (deadline == 0)
+                    results.add(future.get());
+                else
+                    results.add(future.get(Math.max(0, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS));
+            }
+        } catch (TimeoutException e) {
+            cancel(futures);
+            throw new QueryException(null, (int) timeout);
+        } catch (InterruptedException e) {
+            cancel(futures);
+            throw new StoreException(e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new StoreException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Cancels the given tasks that have not started yet. Tasks being executed are
+     * neither interrupted nor cancelled, because an interrupt may leave their
+     * connection unusable.
+     */
+    protected void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures)
+            future.cancel(false);
+    }
+
+    public long getSubmittedTaskCount() {
+        return _submitted.get();
+    }
+
+    public long getCompletedTaskCount() {
+        return _completed.get();
+    }
+
+    public int getActiveTaskCount() {
+        return _active.get();
+    }
+
+    public int getQueuedTaskCount() {
+        return 0;
+    }
+
+    public long getCancelledTaskCount() {
+        return _cancelled.get();
+    }
+
+    public void close() throws Exception {
+        ExecutorService service = _service;
+        if (service != null)
+            service.shutdown();
+    }
+
+    /**
+     * A future of a slice task. It marks the thread running it as a slice thread,
+     * keeps the counts and notifies the completion queue, if any.
+     */
+    private class SliceTask<T> extends FutureTask<T> {
+        private final Queue<Future<T>> _queue;
+        private final AtomicBoolean _started = new AtomicBoolean();
+
+        SliceTask(Callable<T> task, Queue<Future<T>> queue) {
+            super(task);
+            _queue = queue;
+        }
+
+        SliceTask(Runnable task, T result, Queue<Future<T>> queue) {
+            super(task, result);
+            _queue = queue;
+        }
+
+        @Override
+        public void run() {
+            if (!_started.compareAndSet(false, true))
+                return;
+            boolean mark = !SliceThread.isSliceThread();
+            if (mark)
+                SliceThread.setSliceTask(true);
+            _active.incrementAndGet();
+            try {
+                super.run();
+            } finally {
+                _active.decrementAndGet();
+                _completed.incrementAndGet();
+                if (mark)
+                    SliceThread.setSliceTask(false);
+            }
+        }
+
+        /**
+         * Cancels this task only if it has not started, so that the result of a
+         * running task is always delivered and can be released by its receiver.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (!_started.compareAndSet(false, true))
+                return false;
+            boolean cancelled = super.cancel(false);
+            if (cancelled)
+                _cancelled.incrementAndGet();
+            return cancelled;
+        }
+
+        @Override
+        protected void done() {
+            if (_queue != null)
+                _queue.add(this);
+        }
+    }
+}
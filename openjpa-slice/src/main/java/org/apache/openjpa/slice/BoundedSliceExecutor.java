@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.slice;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes slice tasks on a bounded pool of {@link SliceThread slice threads}.
+ * Tasks wait in a bounded queue while all threads are busy. Once the queue is full
+ * as well, the thread that submits a task executes it itself, which slows down
+ * the callers instead of failing them.
+ *
+ * @since 3.0.1
+ */
+public class BoundedSliceExecutor extends AbstractSliceExecutor {
+    private int _maxThreads = 2 * Runtime.getRuntime().availableProcessors();
+    private int _queueSize = 1000;
+    private int _keepAlive = 60;
+    private final AtomicLong _callerRuns = new AtomicLong();
+
+    /**
+     * Sets the maximum number of threads. Defaults to twice the number of processors.
+     */
+    public void setMaxThreads(int max) {
+        _maxThreads = max;
+    }
+
+    public int getMaxThreads() {
+        return _maxThreads;
+    }
+
+    /**
+     * Sets the maximum number of tasks waiting for a thread. Defaults to 1000.
+     * A value of zero hands each task directly to a thread.
+     */
+    public void setQueueSize(int size) {
+        _queueSize = size;
+    }
+
+    public int getQueueSize() {
+        return _queueSize;
+    }
+
+    /**
+     * Sets the number of seconds an idle thread is kept alive. Defaults to 60.
+     */
+    public void setKeepAliveTime(int seconds) {
+        _keepAlive = seconds;
+    }
+
+    public int getKeepAliveTime() {
+        return _keepAlive;
+    }
+
+    /**
+     * Gets the number of tasks executed by the submitting thread because the queue
+     * was full.
+     */
+    public long getCallerRunsCount() {
+        return _callerRuns.get();
+    }
+
+    /**
+     * Gets the largest number of threads that were in the pool at the same time.
+     */
+    public int getLargestPoolSize() {
+        return ((ThreadPoolExecutor) getExecutorService()).getLargestPoolSize();
+    }
+
+    @Override
+    public int getQueuedTaskCount() {
+        return ((ThreadPoolExecutor) getExecutorService()).getQueue().size();
+    }
+
+    protected ExecutorService newExecutorService() {
+        BlockingQueue<Runnable> queue = (_queueSize > 0)
+            ? new ArrayBlockingQueue<Runnable>(_queueSize)
+            : new SynchronousQueue<Runnable>();
+        int threads = Math.max(1, _maxThreads);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+            _keepAlive, TimeUnit.SECONDS, queue, new SliceThread.SliceThreadFactory(),
+            new CallerRuns());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Runs a rejected task in the submitting thread, or cancels it if the pool is
+     * shut down.
+     */
+    private class CallerRuns implements RejectedExecutionHandler {
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor pool) {
+            if (pool.isShutdown()) {
+                if (r instanceof Future)
+                    ((Future<?>) r).cancel(false);
+                return;
+            }
+            _callerRuns.incrementAndGet();
+            r.run();
+        }
+    }
+}
@@ -176,4 +176,33 @@ public interface DistributedConfiguration extends OpenJPAConfiguration {
      */
     void setFinderTargetPolicy(String policy);
     
+    /**
+     * Gets the executor that runs database operations on the slices in parallel.
+     * 
+     * @since 3.0.1
+     */
+    SliceExecutor getExecutorInstance();
+    
+    /**
+     * Gets the executor, as a plugin string, that runs database operations on the 
+     * slices in parallel.
+     * 
+     * @since 3.0.1
+     */
+    String getExecutor();
+    
+    /**
+     * Sets the executor that runs database operations on the slices in parallel.
+     * 
+     * @since 3.0.1
+     */
+    void setExecutorInstance(SliceExecutor executor);
+    
+    /**
+     * Sets the executor, from the given plugin string, that runs database operations 
+     * on the slices in parallel.
+     * 
+     * @since 3.0.1
+     */
+    void setExecutor(String executor);
 }
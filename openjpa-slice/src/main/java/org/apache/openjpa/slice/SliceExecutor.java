@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.slice;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import org.apache.openjpa.lib.util.Closeable;
+
+/**
+ * Executes database operations on each slice in parallel.
+ * <br>
+ * Slice runtime submits one task per target slice for every query, bulk update
+ * or flush. The executor decides on which threads these tasks run. A task runs
+ * on behalf of the thread that submitted it, and shares its locks.
+ * <br>
+ * Slice provides the following implementations:
+ * <LI><code>cached</code>: an unbounded pool of threads created on demand. This is the default.
+ * <LI><code>bounded</code>: a fixed number of threads with a bounded queue of waiting tasks.
+ * <LI><code>virtual</code>: a virtual thread per task, on JDKs that support them.
+ *
+ * @see AbstractSliceExecutor
+ *
+ * @since 3.0.1
+ */
+public interface SliceExecutor extends Executor, Closeable {
+    /**
+     * Submits the given task for execution.
+     */
+    <T> Future<T> submit(Callable<T> task);
+
+    /**
+     * Submits the given task for execution, and adds its future to the given queue
+     * once the task completes or is cancelled.
+     */
+    <T> Future<T> submit(Callable<T> task, Queue<Future<T>> completed);
+
+    /**
+     * Executes the given tasks and waits for all of them to complete.
+     *
+     * @param tasks the tasks to execute
+     * @param timeout maximum time in milliseconds to wait for all the tasks.
+     * A value less than or equal to zero waits without limit.
+     *
+     * @return the results of the tasks in the order of the given tasks.
+     *
+     * @exception org.apache.openjpa.util.QueryException if the tasks did not complete
+     * within the given timeout. The tasks that have not started are cancelled.
+     * @exception org.apache.openjpa.util.StoreException if any task failed.
+     */
+    <T> List<T> invokeAll(List<? extends Callable<T>> tasks, long timeout);
+
+    /**
+     * Gets the number of tasks submitted so far.
+     */
+    long getSubmittedTaskCount();
+
+    /**
+     * Gets the number of tasks that completed, successfully or not.
+     */
+    long getCompletedTaskCount();
+
+    /**
+     * Gets the number of tasks being executed now.
+     */
+    int getActiveTaskCount();
+
+    /**
+     * Gets the number of tasks waiting for a thread.
+     */
+    int getQueuedTaskCount();
+
+    /**
+     * Gets the number of tasks that were cancelled before they started, because
+     * their result was no longer needed or did not arrive in time.
+     */
+    long getCancelledTaskCount();
+}
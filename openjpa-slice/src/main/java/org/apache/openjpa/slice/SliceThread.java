@@ -31,6 +31,7 @@ import java.util.concurrent.ThreadFactory;
 public class SliceThread extends Thread {
     private final Thread _parent;
     private static ExecutorService _pool;
+    private static final ThreadLocal<Boolean> _sliceTask = new ThreadLocal<Boolean>();
     
     public SliceThread(String name, Thread parent, Runnable r) {
         super(r, name);
@@ -50,12 +51,39 @@ public class SliceThread extends Thread {
         return _parent;
     }
     
+    /**
+     * Affirms if the current thread executes an operation on behalf of a parent thread,
+     * either because it is a slice thread or because it runs a task submitted to a
+     * {@link SliceExecutor}. Such threads share the locks of their parent.
+     * 
+     * @since 3.0.1
+     */
+    public static boolean isSliceThread() {
+        return Thread.currentThread() instanceof SliceThread || _sliceTask.get() != null;
+    }
+    
+    /**
+     * Marks the current thread as executing a slice task, or clears the mark.
+     * Used for threads, such as virtual threads or a caller running a rejected task,
+     * that are not slice threads themselves.
+     * 
+     * @since 3.0.1
+     */
+    static void setSliceTask(boolean task) {
+        if (task)
+            _sliceTask.set(Boolean.TRUE);
+        else
+            _sliceTask.remove();
+    }
+    
     /** 
      * Create a cached pool of <em>slice</em> threads.
      * The thread factory creates specialized threads for preferential locking treatment.
      * 
+     * @deprecated use the {@link DistributedConfiguration#getExecutorInstance() configured}
+     * executor.
      */
-
+    @Deprecated
     public static ExecutorService getPool() {
         if (_pool == null) {
             _pool = Executors.newCachedThreadPool(new SliceThreadFactory());
@@ -63,7 +91,7 @@ public class SliceThread extends Thread {
         return _pool;
     }
     
-    private static class SliceThreadFactory implements ThreadFactory {
+    static class SliceThreadFactory implements ThreadFactory {
         int n = 0;
         public Thread newThread(Runnable r) {
             Thread parent = Thread.currentThread();
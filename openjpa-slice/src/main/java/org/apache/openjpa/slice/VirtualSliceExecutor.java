@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.slice;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.openjpa.lib.util.Localizer;
+
+/**
+ * Executes each slice task on a new virtual thread. Virtual threads are cheap to
+ * create and block without holding a platform thread, so any number of queries
+ * may fan out to the slices concurrently.
+ * <br>
+ * Virtual threads require a JDK that supports them. On other JDKs, this executor
+ * falls back to the {@link CachedSliceExecutor cached} pool of slice threads.
+ *
+ * @since 3.0.1
+ */
+public class VirtualSliceExecutor extends AbstractSliceExecutor {
+    private static final Localizer _loc = Localizer.forPackage(VirtualSliceExecutor.class);
+    private boolean _virtual;
+
+    /**
+     * Affirms if tasks are executed on virtual threads.
+     */
+    public boolean isVirtual() {
+        getExecutorService();
+        return _virtual;
+    }
+
+    protected ExecutorService newExecutorService() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService service = (ExecutorService) factory.invoke(null);
+            _virtual = true;
+            return service;
+        } catch (Exception e) {
+            if (log != null && log.isWarnEnabled())
+                log.warn(_loc.get("virtual-threads-unsupported", System.getProperty("java.version")));
+            return Executors.newCachedThreadPool(new SliceThread.SliceThreadFactory());
+        }
+    }
+}
@@ -51,6 +51,8 @@ import org.apache.openjpa.lib.util.J2DoPrivHelper;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.meta.MetaDataRepository;
+import org.apache.openjpa.slice.BoundedSliceExecutor;
+import org.apache.openjpa.slice.CachedSliceExecutor;
 import org.apache.openjpa.slice.DistributedBrokerImpl;
 import org.apache.openjpa.slice.DistributionPolicy;
 import org.apache.openjpa.slice.FinderTargetPolicy;
@@ -58,6 +60,8 @@ import org.apache.openjpa.slice.ProductDerivation;
 import org.apache.openjpa.slice.QueryTargetPolicy;
 import org.apache.openjpa.slice.ReplicationPolicy;
 import org.apache.openjpa.slice.Slice;
+import org.apache.openjpa.slice.SliceExecutor;
+import org.apache.openjpa.slice.VirtualSliceExecutor;
 import org.apache.openjpa.util.UserException;
 
 /**
@@ -83,6 +87,7 @@ public class DistributedJDBCConfigurationImpl extends JDBCConfigurationImpl
     public PluginValue replicationPolicyPlugin;
     public PluginValue queryTargetPolicyPlugin;
     public PluginValue finderTargetPolicyPlugin;
+    public PluginValue executorPlugin;
     public StringListValue replicatedTypesPlugin;
     
     private ReplicatedTypeRepository _replicationRepos;
@@ -119,6 +124,15 @@ public class DistributedJDBCConfigurationImpl extends JDBCConfigurationImpl
         finderTargetPolicyPlugin = addPlugin(PREFIX_SLICE + "FinderTargetPolicy", true);
         finderTargetPolicyPlugin.setDynamic(true);
         
+        executorPlugin = addPlugin(PREFIX_SLICE + "Executor", true);
+        executorPlugin.setAliases(new String[] {
+            "cached", CachedSliceExecutor.class.getName(),
+            "bounded", BoundedSliceExecutor.class.getName(),
+            "virtual", VirtualSliceExecutor.class.getName(),
+        });
+        executorPlugin.setDefault("cached");
+        executorPlugin.setString("cached");
+        
         replicatedTypesPlugin = new StringListValue(PREFIX_SLICE + "ReplicatedTypes");
         addValue(replicatedTypesPlugin);
         
@@ -306,6 +320,25 @@ public class DistributedJDBCConfigurationImpl extends JDBCConfigurationImpl
         finderTargetPolicyPlugin.setString(policy);
     }
 
+    public SliceExecutor getExecutorInstance() {
+        if (executorPlugin.get() == null) {
+            executorPlugin.instantiate(SliceExecutor.class, this, true);
+        }
+        return (SliceExecutor) executorPlugin.get();
+    }
+    
+    public String getExecutor() {
+        return executorPlugin.getString();
+    }
+
+    public void setExecutorInstance(SliceExecutor executor) {
+        executorPlugin.set(executor);
+    }
+    
+    public void setExecutor(String executor) {
+        executorPlugin.setString(executor);
+    }
+
     public DistributedDataSource getConnectionFactory() {
         if (virtualDataSource == null) {
             virtualDataSource = createDistributedDataStore();
@@ -28,9 +28,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 
 import org.apache.openjpa.enhance.PersistenceCapable;
 import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
@@ -59,9 +56,7 @@ import org.apache.openjpa.slice.Slice;
 import org.apache.openjpa.slice.SliceImplHelper;
 import org.apache.openjpa.slice.SliceInfo;
 import org.apache.openjpa.slice.SlicePersistence;
-import org.apache.openjpa.slice.SliceThread;
 import org.apache.openjpa.util.InternalException;
-import org.apache.openjpa.util.StoreException;
 
 /**
  * A Store manager for multiple physical databases referred as <em>slice</em>.
@@ -254,11 +249,10 @@ class DistributedJDBCStoreManager extends JDBCStoreManager
      */
     public Collection flush(Collection sms) {
         Collection exceptions = new ArrayList();
-        List<Future<Collection>> futures = new ArrayList<Future<Collection>>();
+        List<Flusher> flushers = new ArrayList<Flusher>();
         Map<String, StateManagerSet> subsets = bin(sms, null);
         Collection<StateManagerSet> remaining = 
             new ArrayList<StateManagerSet>(subsets.values());
-        ExecutorService threadPool = SliceThread.getPool();
         for (int i = 0; i < _slices.size(); i++) {
             SliceStoreManager slice = _slices.get(i);
             StateManagerSet subset = subsets.get(slice.getName());
@@ -271,16 +265,12 @@ class DistributedJDBCStoreManager extends JDBCStoreManager
                 remaining.remove(subset);
             	rollbackVersion(subset.getReplicated(), oldVersions, remaining);
             } else {
-            	futures.add(threadPool.submit(new Flusher(slice, subset)));
+            	flushers.add(new Flusher(slice, subset));
             }
         }
-        for (Future<Collection> future : futures) {
-            try {
-            	collectException(future.get(), exceptions);
-            } catch (InterruptedException e) {
-                throw new StoreException(e);
-            } catch (ExecutionException e) {
-                throw new StoreException(e.getCause());
+        if (!flushers.isEmpty()) {
+            for (Collection error : _conf.getExecutorInstance().invokeAll(flushers, -1)) {
+                collectException(error, exceptions);
             }
         }
         
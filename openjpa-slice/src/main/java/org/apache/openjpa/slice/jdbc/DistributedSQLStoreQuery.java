@@ -22,9 +22,6 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 
 import org.apache.openjpa.jdbc.kernel.JDBCStore;
 import org.apache.openjpa.jdbc.kernel.SQLStoreQuery;
@@ -38,8 +35,7 @@ import org.apache.openjpa.lib.rop.RangeResultObjectProvider;
 import org.apache.openjpa.lib.rop.ResultObjectProvider;
 import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.slice.DistributedConfiguration;
-import org.apache.openjpa.slice.SliceThread;
-import org.apache.openjpa.util.StoreException;
+import org.apache.openjpa.slice.SliceExecutor;
 
 /**
  * A query for distributed databases.
@@ -105,15 +101,13 @@ class DistributedSQLStoreQuery extends SQLStoreQuery {
 		 */
 		public ResultObjectProvider executeQuery(StoreQuery q,
 				final Object[] params, final Range range) {
-			List<Future<ResultObjectProvider>> futures = 
-				new ArrayList<Future<ResultObjectProvider>>();
+			List<QueryExecutor> calls = new ArrayList<QueryExecutor>();
             final List<Executor> usedExecutors = new ArrayList<Executor>();
-			final List<ResultObjectProvider> rops = 
-				new ArrayList<ResultObjectProvider>();
 			List<SliceStoreManager> targets = findTargets();
 			QueryContext ctx = q.getContext();
 			boolean isReplicated = containsReplicated(ctx);
-            ExecutorService threadPool = SliceThread.getPool();
+            SliceExecutor threadPool = getExecutorInstance();
+            long timeout = ctx.getFetchConfiguration().getQueryTimeout();
 			for (int i = 0; i < owner._queries.size(); i++) {
                 // if replicated, then execute only on single slice
 				if (isReplicated && !usedExecutors.isEmpty()) {
@@ -124,33 +118,31 @@ class DistributedSQLStoreQuery extends SQLStoreQuery {
 					continue;
 				StoreQuery query = owner._queries.get(i);
 				Executor executor = executors.get(i);
-				if (!targets.contains(sm))
-					continue;
 				usedExecutors.add(executor);
                 QueryExecutor call = new QueryExecutor();
                 call.executor = executor;
                 call.query = query;
                 call.params = params;
                 call.range = range;
-                futures.add(threadPool.submit(call));
-			}
-			for (Future<ResultObjectProvider> future : futures) {
-				try {
-					rops.add(future.get());
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
-				} catch (ExecutionException e) {
-					throw new StoreException(e.getCause());
-				}
+                calls.add(call);
 			}
 			
-			ResultObjectProvider[] tmp = rops
-                    .toArray(new ResultObjectProvider[rops.size()]);
 			ResultObjectProvider result = null;
 			boolean[] ascending = getAscending(q);
 			boolean isAscending = ascending.length > 0;
 			boolean isAggregate = ctx.isAggregate();
 			boolean hasRange = ctx.getEndRange() != Long.MAX_VALUE;
+			if (hasRange && !isAggregate && !isAscending) {
+			    // take results as the slices respond, and skip the stragglers 
+			    // once the range is filled
+			    result = new ParallelResultObjectProvider(threadPool, calls, timeout);
+                return new RangeResultObjectProvider(result,
+                        ctx.getStartRange(), ctx.getEndRange());
+			}
+			
+			List<ResultObjectProvider> rops = ParallelResultObjectProvider.invokeAll(threadPool, calls, timeout);
+			ResultObjectProvider[] tmp = rops
+                    .toArray(new ResultObjectProvider[rops.size()]);
 			if (isAggregate) {
 				result = new UniqueResultObjectProvider(tmp, q,
 						getQueryExpressions());
@@ -189,59 +181,45 @@ class DistributedSQLStoreQuery extends SQLStoreQuery {
 
 		public Number executeDelete(StoreQuery q, Object[] params) {
 			Iterator<StoreQuery> qs = owner._queries.iterator();
-			List<Future<Number>> futures = null;
+			List<DeleteExecutor> calls = new ArrayList<DeleteExecutor>();
 			int result = 0;
-            ExecutorService threadPool = SliceThread.getPool();
 			for (Executor ex : executors) {
-				if (futures == null)
-                    futures = new ArrayList<Future<Number>>();
 				DeleteExecutor call = new DeleteExecutor();
 				call.executor = ex;
 				call.query = qs.next();
 				call.params = params;
-				futures.add(threadPool.submit(call));
+				calls.add(call);
 			}
-			for (Future<Number> future : futures) {
-				try {
-					Number n = future.get();
-					if (n != null)
-						result += n.intValue();
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
-				} catch (ExecutionException e) {
-					throw new StoreException(e.getCause());
-				}
+            long timeout = q.getContext().getFetchConfiguration().getQueryTimeout();
+			for (Number n : getExecutorInstance().invokeAll(calls, timeout)) {
+				if (n != null)
+					result += n.intValue();
 			}
 			return result;
 		}
 
 		public Number executeUpdate(StoreQuery q, Object[] params) {
 			Iterator<StoreQuery> qs = owner._queries.iterator();
-			List<Future<Number>> futures = null;
+			List<UpdateExecutor> calls = new ArrayList<UpdateExecutor>();
 			int result = 0;
-            ExecutorService threadPool = SliceThread.getPool();
 			for (Executor ex : executors) {
-				if (futures == null)
-                    futures = new ArrayList<Future<Number>>();
 				UpdateExecutor call = new UpdateExecutor();
 				call.executor = ex;
 				call.query = qs.next();
 				call.params = params;
-				futures.add(threadPool.submit(call));
+				calls.add(call);
 			}
-			for (Future<Number> future : futures) {
-				try {
-					Number n = future.get();
-                    result += (n == null) ? 0 : n.intValue();
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
-				} catch (ExecutionException e) {
-					throw new StoreException(e.getCause());
-				}
+            long timeout = q.getContext().getFetchConfiguration().getQueryTimeout();
+			for (Number n : getExecutorInstance().invokeAll(calls, timeout)) {
+                result += (n == null) ? 0 : n.intValue();
 			}
 			return result;
 		}
 
+		SliceExecutor getExecutorInstance() {
+		    return owner.getDistributedStore().getConfiguration().getExecutorInstance();
+		}
+
 		List<SliceStoreManager> findTargets() {
 			FetchConfiguration fetch = owner.getContext()
 					.getFetchConfiguration();
@@ -257,7 +235,7 @@ class DistributedSQLStoreQuery extends SQLStoreQuery {
 		Range range;
 
 		public ResultObjectProvider call() throws Exception {
-			return executor.executeQuery(query, params, range);
+			return ParallelResultObjectProvider.open(executor.executeQuery(query, params, range));
 		}
 	}
 
@@ -22,9 +22,6 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 
 import org.apache.openjpa.jdbc.kernel.JDBCStore;
 import org.apache.openjpa.jdbc.kernel.JDBCStoreQuery;
@@ -40,8 +37,7 @@ import org.apache.openjpa.lib.rop.RangeResultObjectProvider;
 import org.apache.openjpa.lib.rop.ResultObjectProvider;
 import org.apache.openjpa.meta.ClassMetaData;
 import org.apache.openjpa.slice.DistributedConfiguration;
-import org.apache.openjpa.slice.SliceThread;
-import org.apache.openjpa.util.StoreException;
+import org.apache.openjpa.slice.SliceExecutor;
 
 /**
  * A query for distributed databases.
@@ -112,13 +108,13 @@ class DistributedStoreQuery extends JDBCStoreQuery {
 		 */
 		public ResultObjectProvider executeQuery(StoreQuery q,
 				final Object[] params, final Range range) {
-			List<Future<ResultObjectProvider>> futures = new ArrayList<Future<ResultObjectProvider>>();
+			List<QueryExecutor> calls = new ArrayList<QueryExecutor>();
             final List<Executor> usedExecutors = new ArrayList<Executor>();
-			final List<ResultObjectProvider> rops = new ArrayList<ResultObjectProvider>();
 			List<SliceStoreManager> targets = findTargets();
 			QueryContext ctx = q.getContext();
 			boolean isReplicated = containsReplicated(ctx);
-            ExecutorService threadPool = SliceThread.getPool();
+			SliceExecutor threadPool = getExecutorInstance();
+			long timeout = ctx.getFetchConfiguration().getQueryTimeout();
            
 			for (int i = 0; i < owner._queries.size(); i++) {
                 // if replicated, then execute only on single slice
@@ -134,25 +130,42 @@ class DistributedStoreQuery extends JDBCStoreQuery {
                 call.params = params;
                 call.range = range;
 				usedExecutors.add(call.executor);
-                futures.add(threadPool.submit(call));
-			}
-			for (Future<ResultObjectProvider> future : futures) {
-				try {
-					rops.add(future.get());
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
-				} catch (ExecutionException e) {
-					throw new StoreException(e.getCause());
-				}
+				calls.add(call);
 			}
 			
-			ResultObjectProvider[] tmp = rops.toArray(new ResultObjectProvider[rops.size()]);
 			ResultObjectProvider result = null;
 			boolean[] ascending = getAscending(q);
 			boolean isAscending = ascending.length > 0;
-			boolean isAggregate = ctx.isAggregate();
-			boolean hasRange = ctx.getEndRange() != Long.MAX_VALUE;
-			if (isAggregate) {
+			boolean isAggregate = ctx.isAggregate() || ctx.hasGrouping();
+			boolean hasRange = range.start != 0 || range.end != Long.MAX_VALUE;
+			if (calls.size() == 1) {
+			    // a single slice computes the exact result by itself
+			    calls.get(0).range = range;
+			    return ParallelResultObjectProvider.invokeAll(threadPool, calls, timeout).get(0);
+			}
+			if (isAggregate && ctx.hasGrouping())
+			    GroupingResultObjectProvider.assertMergeable(getQueryExpressions()[0]);
+			if (hasRange) {
+			    // every slice must return all the results that may fall in the
+			    // range once merged, so the lower bound is applied after merge.
+			    // The groups of an aggregate query are only complete once merged.
+				Range sliceRange = new Range(0, isAggregate ? Long.MAX_VALUE : range.end);
+				sliceRange.lrs = range.lrs;
+				for (QueryExecutor call : calls)
+					call.range = sliceRange;
+			}
+			if (hasRange && !isAggregate && !isAscending) {
+			    // take results as the slices respond, and skip the stragglers 
+			    // once the range is filled
+			    result = new ParallelResultObjectProvider(threadPool, calls, timeout);
+				return new RangeResultObjectProvider(result, range.start, range.end);
+			}
+			
+			List<ResultObjectProvider> rops = ParallelResultObjectProvider.invokeAll(threadPool, calls, timeout);
+			ResultObjectProvider[] tmp = rops.toArray(new ResultObjectProvider[rops.size()]);
+			if (isAggregate && ctx.hasGrouping()) {
+			    result = new GroupingResultObjectProvider(tmp, q, usedExecutors.get(0), params);
+			} else if (isAggregate) {
 				result = new UniqueResultObjectProvider(tmp, q,	getQueryExpressions());
 			} else if (isAscending) {
                 result = new OrderingMergedResultObjectProvider(tmp, ascending,
@@ -162,7 +175,7 @@ class DistributedStoreQuery extends JDBCStoreQuery {
 				result = new MergedResultObjectProvider(tmp);
 			}
 			if (hasRange) {
-                result = new RangeResultObjectProvider(result, ctx.getStartRange(), ctx.getEndRange());
+				result = new RangeResultObjectProvider(result, range.start, range.end);
 			}
 			return result;
 		}
@@ -187,9 +200,8 @@ class DistributedStoreQuery extends JDBCStoreQuery {
 		}
 
 		public Number executeDelete(StoreQuery q, Object[] params) {
-			List<Future<Number>> futures = new ArrayList<Future<Number>>();
+			List<DeleteExecutor> calls = new ArrayList<DeleteExecutor>();
 			int result = 0;
-            ExecutorService threadPool = SliceThread.getPool();
 			List<SliceStoreManager> targets = findTargets();
 			for (int i = 0; i < owner._queries.size(); i++) {
                 StoreManager sm = owner.getDistributedStore().getSlice(i);
@@ -200,49 +212,38 @@ class DistributedStoreQuery extends JDBCStoreQuery {
 				call.executor = executors.get(i);
 				call.query = owner._queries.get(i);
 				call.params = params;
-				futures.add(threadPool.submit(call));
+				calls.add(call);
 			}
-			for (Future<Number> future : futures) {
-				try {
-					Number n = future.get();
-					if (n != null)
-						result += n.intValue();
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
-				} catch (ExecutionException e) {
-					throw new StoreException(e.getCause());
-				}
+			long timeout = q.getContext().getFetchConfiguration().getQueryTimeout();
+			for (Number n : getExecutorInstance().invokeAll(calls, timeout)) {
+				if (n != null)
+					result += n.intValue();
 			}
 			return result;
 		}
 
 		public Number executeUpdate(StoreQuery q, Object[] params) {
 			Iterator<StoreQuery> qs = owner._queries.iterator();
-			List<Future<Number>> futures = null;
+			List<UpdateExecutor> calls = new ArrayList<UpdateExecutor>();
 			int result = 0;
-            ExecutorService threadPool = SliceThread.getPool();
 			for (Executor ex : executors) {
-				if (futures == null)
-                    futures = new ArrayList<Future<Number>>();
 				UpdateExecutor call = new UpdateExecutor();
 				call.executor = ex;
 				call.query = qs.next();
 				call.params = params;
-				futures.add(threadPool.submit(call));
+				calls.add(call);
 			}
-			for (Future<Number> future : futures) {
-				try {
-					Number n = future.get();
-                    result += (n == null) ? 0 : n.intValue();
-				} catch (InterruptedException e) {
-					throw new RuntimeException(e);
-				} catch (ExecutionException e) {
-					throw new StoreException(e.getCause());
-				}
+			long timeout = q.getContext().getFetchConfiguration().getQueryTimeout();
+			for (Number n : getExecutorInstance().invokeAll(calls, timeout)) {
+				result += (n == null) ? 0 : n.intValue();
 			}
 			return result;
 		}
 
+		SliceExecutor getExecutorInstance() {
+		    return owner.getDistributedStore().getConfiguration().getExecutorInstance();
+		}
+
 		List<SliceStoreManager> findTargets() {
   		    FetchConfiguration fetch = owner.getContext().getFetchConfiguration();
 			return owner.getDistributedStore().getTargets(fetch);
@@ -257,7 +258,7 @@ class DistributedStoreQuery extends JDBCStoreQuery {
 		Range range;
 
 		public ResultObjectProvider call() throws Exception {
-			return executor.executeQuery(query, params, range);
+			return ParallelResultObjectProvider.open(executor.executeQuery(query, params, range));
 		}
 	}
 
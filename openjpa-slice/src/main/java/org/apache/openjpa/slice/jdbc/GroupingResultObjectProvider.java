@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.slice.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.openjpa.kernel.Filters;
+import org.apache.openjpa.kernel.StoreQuery;
+import org.apache.openjpa.kernel.exps.AbstractExpressionVisitor;
+import org.apache.openjpa.kernel.exps.QueryExpressions;
+import org.apache.openjpa.kernel.exps.Value;
+import org.apache.openjpa.lib.rop.ResultObjectProvider;
+import org.apache.openjpa.lib.util.Localizer;
+
+/**
+ * Merges the groups of a grouping query computed by different databases.
+ * <br>
+ * Each slice aggregates its own rows, so that only one row per group and per
+ * slice is transferred. The rows of the same group, identified by the values of
+ * the projected grouping expressions, are then combined and sorted again by the
+ * ordering of the query. The grouping expressions must therefore be projected,
+ * the query must not filter the groups and the aggregates must be decomposable
+ * i.e. <code>COUNT</code>, <code>SUM</code>, <code>MIN</code> or <code>MAX</code>.
+ * An <code>AVG</code> is recomputed from the merged <code>SUM</code> and
+ * <code>COUNT</code> of the same argument, which the query must also select.
+ *
+ * @since 3.0.1
+ */
+class GroupingResultObjectProvider extends UniqueResultObjectProvider {
+    private final ResultObjectProvider[] _rops;
+    private final StoreQuery _query;
+    private final QueryExpressions _exps;
+    private final StoreQuery.Executor _executor;
+    private final Object[] _params;
+    private List<Object[]> _groups;
+    private int _index = -1;
+
+    private static final String AVG = "Avg";
+
+    private static final Localizer _loc =
+        Localizer.forPackage(GroupingResultObjectProvider.class);
+
+    public GroupingResultObjectProvider(ResultObjectProvider[] rops,
+        StoreQuery q, StoreQuery.Executor executor, Object[] params) {
+        super(rops, q, executor.getQueryExpressions());
+        _rops = rops;
+        _query = q;
+        _exps = executor.getQueryExpressions()[0];
+        _executor = executor;
+        _params = params;
+    }
+
+    /**
+     * Affirms that the groups of the given query can be merged.
+     *
+     * @exception UnsupportedOperationException if the query filters the groups,
+     * does not project all its grouping expressions or projects an average
+     * without the sum and count of its argument
+     */
+    public static void assertMergeable(QueryExpressions exps) {
+        if (exps.having != null)
+            throw new UnsupportedOperationException(_loc.get("grouping-having-unsupported")
+                .toString());
+        List<String> projected = Arrays.asList(exps.projectionClauses);
+        for (String grouping : exps.groupingClauses) {
+            if (!projected.contains(grouping))
+                throw new UnsupportedOperationException(_loc.get("grouping-not-projected",
+                    grouping).toString());
+        }
+        Value[] values = exps.projections;
+        for (int i = 0; i < values.length; i++) {
+            if (isAvg(values[i]) && (indexOf(values, COUNT, argument(values[i])) < 0
+                || indexOf(values, SUM, argument(values[i])) < 0))
+                throw new UnsupportedOperationException(_loc.get("grouping-avg-unsupported",
+                    exps.projectionClauses[i]).toString());
+        }
+    }
+
+    private static boolean isAvg(Value v) {
+        return v.isAggregate() && AVG.equals(v.getClass().getSimpleName());
+    }
+
+    /**
+     * Gets the index of the projected aggregate of the given operation on the
+     * given argument, or -1 if it is not projected.
+     */
+    private static int indexOf(Value[] values, String op, Value arg) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i].isAggregate() && op.equals(values[i].getClass().getSimpleName())
+                && arg != null && arg.equals(argument(values[i])))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the value an aggregate operates on, which is the first value it
+     * visits after itself.
+     */
+    private static Value argument(Value aggregate) {
+        final List<Value> visited = new ArrayList<Value>(2);
+        aggregate.acceptVisit(new AbstractExpressionVisitor() {
+            @Override
+            public void enter(Value val) {
+                visited.add(val);
+            }
+        });
+        return (visited.size() > 1) ? visited.get(1) : null;
+    }
+
+    @Override
+    public boolean next() throws Exception {
+        if (_groups == null)
+            _groups = merge();
+        if (_index + 1 >= _groups.size())
+            return false;
+        _index++;
+        return true;
+    }
+
+    @Override
+    public Object getResultObject() throws Exception {
+        return _groups.get(_index);
+    }
+
+    @Override
+    public int size() throws Exception {
+        if (_groups == null)
+            _groups = merge();
+        return _groups.size();
+    }
+
+    @Override
+    public void reset() throws Exception {
+        super.reset();
+        _groups = null;
+        _index = -1;
+    }
+
+    @Override
+    public void close() throws Exception {
+        _groups = null;
+        _index = -1;
+        super.close();
+    }
+
+    /**
+     * Reads the rows of all slices and combines the rows of the same group.
+     */
+    private List<Object[]> merge() throws Exception {
+        Value[] values = _exps.projections;
+        Map<List<Object>, Object[]> groups = new LinkedHashMap<List<Object>, Object[]>();
+        for (ResultObjectProvider rop : _rops) {
+            while (rop.next()) {
+                Object[] row = (Object[]) rop.getResultObject();
+                List<Object> key = new ArrayList<Object>();
+                for (int i = 0; i < values.length; i++)
+                    if (!values[i].isAggregate())
+                        key.add(row[i]);
+                Object[] group = groups.get(key);
+                if (group == null) {
+                    groups.put(key, row.clone());
+                } else {
+                    for (int i = 0; i < values.length; i++)
+                        if (values[i].isAggregate() && !isAvg(values[i]))
+                            group[i] = aggregate(values[i], group[i], row[i]);
+                }
+            }
+        }
+        List<Object[]> result = new ArrayList<Object[]>(groups.values());
+        for (Object[] group : result) {
+            for (int i = 0; i < values.length; i++) {
+                if (isAvg(values[i])) {
+                    Value arg = argument(values[i]);
+                    group[i] = average(group[indexOf(values, SUM, arg)],
+                        group[indexOf(values, COUNT, arg)]);
+                }
+            }
+            for (int i = 0; i < values.length; i++)
+                if (values[i].isAggregate())
+                    group[i] = Filters.convert(group[i], values[i].getType());
+        }
+        if (_exps.ascending.length > 0)
+            Collections.sort(result, new GroupComparator());
+        return result;
+    }
+
+    /**
+     * Divides the merged sum of a group by its merged count.
+     */
+    private Object average(Object sum, Object count) {
+        if (sum == null || count == null || ((Number) count).longValue() == 0)
+            return null;
+        return ((Number) sum).doubleValue() / ((Number) count).doubleValue();
+    }
+
+    /**
+     * Sorts the merged groups by the ordering of the query, which may refer to
+     * combined aggregate values.
+     */
+    private class GroupComparator implements Comparator<Object[]> {
+        public int compare(Object[] row1, Object[] row2) {
+            for (int i = 0; i < _exps.ascending.length; i++) {
+                Object o1 = _executor.getOrderingValue(_query, _params, row1, i);
+                Object o2 = _executor.getOrderingValue(_query, _params, row2, i);
+                int cmp = compare(o1, o2, _exps.ascending[i]);
+                if (cmp != 0)
+                    return cmp;
+            }
+            return 0;
+        }
+
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        private int compare(Object o1, Object o2, boolean asc) {
+            if (o1 == null && o2 == null)
+                return 0;
+            if (o1 == null)
+                return (asc) ? 1 : -1;
+            if (o2 == null)
+                return (asc) ? -1 : 1;
+            int cmp = ((Comparable) o1).compareTo(o2);
+            return (asc) ? cmp : -cmp;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.slice.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.openjpa.lib.rop.ResultObjectProvider;
+import org.apache.openjpa.slice.SliceExecutor;
+import org.apache.openjpa.util.QueryException;
+import org.apache.openjpa.util.StoreException;
+
+/**
+ * Merges the results of the slices in the order the slices respond, rather than
+ * waiting for all of them. Used for queries that are neither ordered nor aggregate,
+ * so the first results are available as soon as the fastest slice responds.
+ * <br>
+ * When this provider is closed before all slices have responded, for example because
+ * the range of the query is already filled, the slices still waiting for a thread are
+ * cancelled and the results of the slices still running are closed as they arrive.
+ *
+ * @since 3.0.1
+ */
+class ParallelResultObjectProvider implements ResultObjectProvider {
+    private final SliceExecutor _executor;
+    private final List<? extends Callable<ResultObjectProvider>> _tasks;
+    private final long _timeout;
+    private final List<Future<ResultObjectProvider>> _futures =
+        new ArrayList<Future<ResultObjectProvider>>();
+    private final List<ResultObjectProvider> _consumed = new ArrayList<ResultObjectProvider>();
+    private Completed _completed;
+    private ResultObjectProvider _current;
+    private long _deadline;
+    private int _pending;
+
+    /**
+     * Constructor.
+     *
+     * @param executor the executor of the slice tasks
+     * @param tasks the tasks that execute the query on each slice, and return
+     * an {@link #open(ResultObjectProvider) opened} result
+     * @param timeout the maximum time in milliseconds to wait for the slices,
+     * or a value less than or equal to zero to wait without limit
+     */
+    public ParallelResultObjectProvider(SliceExecutor executor,
+        List<? extends Callable<ResultObjectProvider>> tasks, long timeout) {
+        _executor = executor;
+        _tasks = tasks;
+        _timeout = timeout;
+    }
+
+    /**
+     * Opens the given result on the current thread, and returns a result that
+     * ignores the next request to open it.
+     */
+    public static ResultObjectProvider open(ResultObjectProvider rop) {
+        try {
+            rop.open();
+        } catch (Exception e) {
+            rop.handleCheckedException(e);
+        }
+        return new Opened(rop);
+    }
+
+    /**
+     * Executes the given tasks and waits for all of them to respond.
+     * If any slice fails or does not respond in time, the results of all slices
+     * are closed, including those that respond later.
+     *
+     * @return the opened results in the order of the given tasks
+     */
+    public static List<ResultObjectProvider> invokeAll(SliceExecutor executor,
+        List<? extends Callable<ResultObjectProvider>> tasks, long timeout) {
+        Completed completed = new Completed();
+        List<Future<ResultObjectProvider>> futures = new ArrayList<Future<ResultObjectProvider>>();
+        for (Callable<ResultObjectProvider> task : tasks)
+            futures.add(executor.submit(task, completed));
+        List<ResultObjectProvider> rops = new ArrayList<ResultObjectProvider>(futures.size());
+        long deadline = (timeout > 0) ? System.currentTimeMillis() + timeout : 0;
+        try {
+            for (Future<ResultObjectProvider> future : futures) {
+                if (deadline == 0)
+                    rops.add(future.get());
+                else
+                    rops.add(future.get(Math.max(0, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS));
+            }
+            return rops;
+        } catch (TimeoutException e) {
+            abandon(futures, completed);
+            throw new QueryException(null, (int) timeout);
+        } catch (InterruptedException e) {
+            abandon(futures, completed);
+            throw new StoreException(e);
+        } catch (ExecutionException e) {
+            abandon(futures, completed);
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new StoreException(e.getCause());
+        }
+    }
+
+    private static void abandon(List<Future<ResultObjectProvider>> futures, Completed completed) {
+        for (Future<ResultObjectProvider> future : futures)
+            future.cancel(false);
+        completed.close();
+    }
+
+    public boolean supportsRandomAccess() {
+        return false;
+    }
+
+    public void open() throws Exception {
+        _completed = new Completed();
+        _deadline = (_timeout > 0) ? System.currentTimeMillis() + _timeout : 0;
+        for (Callable<ResultObjectProvider> task : _tasks)
+            _futures.add(_executor.submit(task, _completed));
+        _pending = _futures.size();
+    }
+
+    public boolean next() throws Exception {
+        while (true) {
+            if (_current != null && _current.next())
+                return true;
+            if (_pending == 0)
+                return false;
+            _current = take();
+            _consumed.add(_current);
+            _current.open();
+        }
+    }
+
+    /**
+     * Waits for the next slice to respond.
+     */
+    private ResultObjectProvider take() throws Exception {
+        Future<ResultObjectProvider> future;
+        if (_deadline == 0) {
+            future = _completed.take();
+        } else {
+            long wait = _deadline - System.currentTimeMillis();
+            future = (wait > 0) ? _completed.poll(wait, TimeUnit.MILLISECONDS) : _completed.poll();
+            if (future == null) {
+                close();
+                throw new QueryException(null, (int) _timeout);
+            }
+        }
+        _pending--;
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            close();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new StoreException(e.getCause());
+        }
+    }
+
+    public Object getResultObject() throws Exception {
+        return _current.getResultObject();
+    }
+
+    public boolean absolute(int pos) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    public int size() throws Exception {
+        return Integer.MAX_VALUE;
+    }
+
+    public void reset() throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    public void close() throws Exception {
+        if (_completed == null)
+            return;
+        abandon(_futures, _completed);
+        Exception err = null;
+        for (ResultObjectProvider rop : _consumed) {
+            try {
+                rop.close();
+            } catch (Exception e) {
+                if (err == null)
+                    err = e;
+            }
+        }
+        _consumed.clear();
+        _current = null;
+        _pending = 0;
+        if (err != null)
+            throw err;
+    }
+
+    public void handleCheckedException(Exception e) {
+        if (_current != null)
+            _current.handleCheckedException(e);
+        throw new StoreException(e);
+    }
+
+    /**
+     * Closes the result of a slice that is no longer needed.
+     */
+    static void closeQuietly(Future<ResultObjectProvider> future) {
+        if (future.isCancelled())
+            return;
+        try {
+            future.get().close();
+        } catch (Exception e) {
+            // the slice failed or its result could not be closed
+        }
+    }
+
+    /**
+     * Queue of the slices that have responded. Once closed, results of slices that
+     * respond late are closed instead of being queued.
+     */
+    @SuppressWarnings("serial")
+    private static class Completed extends LinkedBlockingQueue<Future<ResultObjectProvider>> {
+        private boolean _closed;
+
+        @Override
+        public boolean offer(Future<ResultObjectProvider> future) {
+            synchronized (this) {
+                if (!_closed)
+                    return super.offer(future);
+            }
+            closeQuietly(future);
+            return true;
+        }
+
+        /**
+         * Closes the results of the slices that have responded but were not consumed.
+         */
+        void close() {
+            synchronized (this) {
+                _closed = true;
+            }
+            for (Future<ResultObjectProvider> future; (future = poll()) != null;)
+                closeQuietly(future);
+        }
+    }
+
+    /**
+     * A result that has already been opened.
+     */
+    private static class Opened implements ResultObjectProvider {
+        private final ResultObjectProvider _delegate;
+        private boolean _opened = true;
+
+        Opened(ResultObjectProvider delegate) {
+            _delegate = delegate;
+        }
+
+        public boolean supportsRandomAccess() {
+            return _delegate.supportsRandomAccess();
+        }
+
+        public void open() throws Exception {
+            if (_opened)
+                _opened = false;
+            else
+                _delegate.open();
+        }
+
+        public Object getResultObject() throws Exception {
+            return _delegate.getResultObject();
+        }
+
+        public boolean next() throws Exception {
+            return _delegate.next();
+        }
+
+        public boolean absolute(int pos) throws Exception {
+            return _delegate.absolute(pos);
+        }
+
+        public int size() throws Exception {
+            return _delegate.size();
+        }
+
+        public void reset() throws Exception {
+            _delegate.reset();
+        }
+
+        public void close() throws Exception {
+            _opened = false;
+            _delegate.close();
+        }
+
+        public void handleCheckedException(Exception e) {
+            _delegate.handleCheckedException(e);
+        }
+    }
+}
@@ -41,10 +41,10 @@ public class UniqueResultObjectProvider implements ResultObjectProvider {
     private Object _single;
     private boolean _opened;
     
-    private static final String COUNT = "Count";
+    static final String COUNT = "Count";
     private static final String MAX   = "Max";
     private static final String MIN   = "Min";
-    private static final String SUM   = "Sum";
+    static final String SUM   = "Sum";
     
     private static final Localizer _loc =
         Localizer.forPackage(UniqueResultObjectProvider.class);
@@ -90,24 +90,12 @@ public class UniqueResultObjectProvider implements ResultObjectProvider {
             Value v = values[i];
             boolean isAggregate = v.isAggregate();
             
-            String op = v.getClass().getSimpleName();
             for (ResultObjectProvider rop:_rops) {
                 if (i == 0) 
                 	rop.next();
                 Object[] row = (Object[]) rop.getResultObject();
                 if (isAggregate) {
-                    if (COUNT.equals(op)) {
-                        single[i] = count(single[i], row[i]);
-                    } else if (MAX.equals(op)) {
-                        single[i] = max(single[i], row[i]);
-                    } else if (MIN.equals(op)) {
-                        single[i] = min(single[i], row[i]);
-                    } else if (SUM.equals(op)) {
-                        single[i] = sum(single[i], row[i]);
-                    } else {
-                        throw new UnsupportedOperationException
-                            (_loc.get("aggregate-unsupported", op).toString());
-                    }
+                    single[i] = aggregate(v, single[i], row[i]);
                 } else {
                     single[i] = row[i];
                 }
@@ -118,6 +106,24 @@ public class UniqueResultObjectProvider implements ResultObjectProvider {
         return true;
     }
     
+    /**
+     * Combines the values of the given aggregate computed by different slices.
+     */
+    Object aggregate(Value v, Object current, Object other) {
+        String op = v.getClass().getSimpleName();
+        if (COUNT.equals(op)) {
+            return count(current, other);
+        } else if (MAX.equals(op)) {
+            return max(current, other);
+        } else if (MIN.equals(op)) {
+            return min(current, other);
+        } else if (SUM.equals(op)) {
+            return sum(current, other);
+        }
+        throw new UnsupportedOperationException
+            (_loc.get("aggregate-unsupported", op).toString());
+    }
+
     Object count(Object current, Object other) {
         if (current == null)
             return other;
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.slice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Tests that the groups aggregated by each slice are merged to the groups
+ * a single database would compute.
+ *
+ */
+public class TestGroupingQuery extends SliceTestCase {
+
+    protected String getPersistenceUnitName() {
+        return "ordering";
+    }
+
+    public void setUp() throws Exception {
+        super.setUp(PObject.class, Person.class, Address.class, Country.class,
+                Car.class, Manufacturer.class,
+                CLEAR_TABLES);
+        if (count(Address.class) == 0) {
+            create();
+        }
+    }
+
+    void create() {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        // names from a to m are stored in the Even slice, the others in the
+        // Odd slice. Rome and Zurich are on both slices, the others on one.
+        persist(em, "Anna", "Rome", 10);
+        persist(em, "Bob", "Rome", 15);
+        persist(em, "Nina", "Rome", 40);
+        persist(em, "Carl", "Paris", 20);
+        persist(em, "Dora", "Paris", 23);
+        persist(em, "Omar", "Oslo", 7);
+        persist(em, "Pia", "Oslo", 8);
+        persist(em, "Quinn", "Oslo", 12);
+        persist(em, "Rosa", "Lima", 3);
+        persist(em, "Eva", "Zurich", 30);
+        persist(em, "Sam", "Zurich", 31);
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    void persist(EntityManager em, String name, String city, int zip) {
+        Person p = new Person(name);
+        p.setAddress(new Address(city, zip));
+        em.persist(p);
+        char first = Character.toLowerCase(name.charAt(0));
+        assertEquals(first <= 'm' ? "Even" : "Odd", SlicePersistence.getSlice(p));
+    }
+
+    public void testGroupedAggregatesWithRange() {
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        List<?> result = em.createQuery("SELECT a.city, COUNT(a.zip), SUM(a.zip), "
+                + "MIN(a.zip), MAX(a.zip), AVG(a.zip) FROM Address a "
+                + "GROUP BY a.city ORDER BY a.city")
+                .setFirstResult(1).setMaxResults(3).getResultList();
+        Map<String, long[]> groups = expected(em);
+        em.getTransaction().rollback();
+
+        // the range selects Oslo, Paris and Rome i.e. a group of the Odd
+        // slice, a group of the Even slice and a group of both slices
+        List<String> cities = new ArrayList<String>(groups.keySet()).subList(1, 4);
+        List<long[]> expected = new ArrayList<long[]>(groups.values()).subList(1, 4);
+        assertEquals("[Oslo, Paris, Rome]", cities.toString());
+
+        assertEquals(expected.size(), result.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Object[] row = (Object[]) result.get(i);
+            long[] group = expected.get(i);
+            assertEquals(cities.get(i), row[0]);
+            for (int j = 0; j < group.length; j++) {
+                assertEquals(cities.get(i) + " column " + (j + 1), group[j],
+                        ((Number) row[j + 1]).longValue());
+            }
+        }
+    }
+
+    /**
+     * Computes the count, sum, min, max and average of the zip code of each
+     * city from all the addresses, sorted by city.
+     */
+    Map<String, long[]> expected(EntityManager em) {
+        List<Address> addresses = em.createQuery("SELECT a FROM Address a",
+                Address.class).getResultList();
+        Map<String, long[]> groups = new TreeMap<String, long[]>();
+        for (Address a : addresses) {
+            long[] group = groups.get(a.getCity());
+            if (group == null) {
+                group = new long[] { 0, 0, Long.MAX_VALUE, Long.MIN_VALUE, 0 };
+                groups.put(a.getCity(), group);
+            }
+            group[0]++;
+            group[1] += a.getZip();
+            group[2] = Math.min(group[2], a.getZip());
+            group[3] = Math.max(group[3], a.getZip());
+        }
+        // the average of an integral field is integral in the database too
+        for (long[] group : groups.values())
+            group[4] = group[1] / group[0];
+        return groups;
+    }
+}
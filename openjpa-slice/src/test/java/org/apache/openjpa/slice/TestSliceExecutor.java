@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.slice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+
+import org.apache.openjpa.slice.jdbc.DistributedJDBCConfiguration;
+import org.apache.openjpa.util.QueryException;
+
+/**
+ * Tests the configurable executor of the slice tasks.
+ * 
+ */
+public class TestSliceExecutor extends SliceTestCase {
+    private static final int POBJECT_COUNT = 20;
+
+    protected String getPersistenceUnitName() {
+        return "ordering";
+    }
+
+    public void setUp() throws Exception {
+        super.setUp(PObject.class, Person.class, Address.class, Country.class,
+                Car.class, Manufacturer.class, CLEAR_TABLES,
+                "openjpa.slice.Executor", "bounded(MaxThreads=1, QueueSize=0)");
+        EntityManager em = emf.createEntityManager();
+        em.getTransaction().begin();
+        for (int i = 0; i < POBJECT_COUNT; i++) {
+            PObject pc = new PObject();
+            pc.setValue(i);
+            em.persist(pc);
+        }
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    public void testConfiguration() {
+        SliceExecutor executor = ((DistributedJDBCConfiguration) emf.getConfiguration()).getExecutorInstance();
+        assertTrue(executor instanceof BoundedSliceExecutor);
+        assertEquals(1, ((BoundedSliceExecutor) executor).getMaxThreads());
+        assertEquals(0, ((BoundedSliceExecutor) executor).getQueueSize());
+        assertTrue(executor.getSubmittedTaskCount() > 0);
+    }
+
+    public void testQueriesOnBoundedExecutor() {
+        EntityManager em = emf.createEntityManager();
+        assertEquals(POBJECT_COUNT, em.createQuery("SELECT p FROM PObject p").getResultList().size());
+
+        List<?> ordered = em.createQuery("SELECT p.value FROM PObject p ORDER BY p.value").getResultList();
+        assertEquals(POBJECT_COUNT, ordered.size());
+        for (int i = 0; i < POBJECT_COUNT; i++)
+            assertEquals(i, ((Number) ordered.get(i)).intValue());
+
+        assertEquals(POBJECT_COUNT, ((Number) em.createQuery("SELECT COUNT(p) FROM PObject p")
+            .getSingleResult()).intValue());
+        em.close();
+    }
+
+    public void testRangeQueryTakesFirstSlicesToRespond() {
+        EntityManager em = emf.createEntityManager();
+        List<?> result = em.createQuery("SELECT p FROM PObject p").setMaxResults(3).getResultList();
+        assertEquals(3, result.size());
+        em.close();
+    }
+
+    public void testTasksRunAsSliceThreads() throws Exception {
+        VirtualSliceExecutor executor = new VirtualSliceExecutor();
+        try {
+            assertTrue(executor.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    return SliceThread.isSliceThread();
+                }
+            }).get());
+            boolean supported = true;
+            try {
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            } catch (NoSuchMethodException e) {
+                supported = false;
+            }
+            assertEquals(supported, executor.isVirtual());
+        } finally {
+            executor.close();
+        }
+        assertFalse(SliceThread.isSliceThread());
+    }
+
+    public void testTimeoutCancelsWaitingTasks() throws Exception {
+        BoundedSliceExecutor executor = new BoundedSliceExecutor();
+        executor.setMaxThreads(1);
+        executor.setQueueSize(10);
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<Integer> slow = new Callable<Integer>() {
+            public Integer call() throws Exception {
+                release.await(10, TimeUnit.SECONDS);
+                return 1;
+            }
+        };
+        try {
+            executor.invokeAll(Arrays.asList(slow, slow), 100);
+            fail("Expected timeout");
+        } catch (QueryException e) {
+            assertEquals(100, e.getTimeout());
+        } finally {
+            release.countDown();
+            executor.close();
+        }
+        assertEquals(1, executor.getCancelledTaskCount());
+    }
+
+    public void testInvokeAllReturnsResultsInOrder() {
+        BoundedSliceExecutor executor = new BoundedSliceExecutor();
+        executor.setMaxThreads(2);
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 10; i++) {
+            final int n = i;
+            tasks.add(new Callable<Integer>() {
+                public Integer call() {
+                    return n;
+                }
+            });
+        }
+        try {
+            List<Integer> results = executor.invokeAll(tasks, -1);
+            for (int i = 0; i < 10; i++)
+                assertEquals(i, results.get(i).intValue());
+            assertEquals(10, executor.getSubmittedTaskCount());
+        } finally {
+            try {
+                executor.close();
+            } catch (Exception e) {
+            }
+        }
+    }
+}
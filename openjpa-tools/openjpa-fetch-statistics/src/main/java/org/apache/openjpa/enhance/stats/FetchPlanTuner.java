@@ -0,0 +1,404 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.enhance.stats;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.regex.Pattern;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.jdbc.meta.FieldMapping;
+import org.apache.openjpa.jdbc.schema.Column;
+import org.apache.openjpa.kernel.BrokerFactory;
+import org.apache.openjpa.kernel.FetchConfiguration;
+import org.apache.openjpa.kernel.PreparedQueryCache;
+import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.util.Localizer;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FieldMetaData;
+import org.apache.openjpa.meta.FetchGroup;
+import org.apache.openjpa.meta.JavaTypes;
+
+/**
+ * FetchPlanTuner turns the field usage recorded per query into fetch plan recommendations and, in auto-apply mode,
+ * applies them to the fetch configuration of later executions of the same query. Relations that are read on nearly
+ * every returned instance are added to the fetch plan so that they are joined instead of loaded one instance at a
+ * time; fields of the default fetch group that are never read are no longer loaded eagerly. The recommendations of
+ * a query are computed once, when enough instances have been observed, and are not revised afterwards.
+ *
+ * There is one tuner per broker factory; it is created by the first {@link FetchTuningBroker} and no longer reported
+ * once the factory is closed.
+ */
+public class FetchPlanTuner {
+    private static final Localizer _loc = Localizer.forPackage(FetchPlanTuner.class);
+    private static final String KEY = FetchPlanTuner.class.getName();
+    private static final Object LOCK = new Object();
+
+    // tuners of open factories, which are included in the periodic output of the FetchStatsCollector
+    private static final Set<FetchPlanTuner> _instances = new CopyOnWriteArraySet<FetchPlanTuner>();
+
+    // assumed width of values whose column size is unknown
+    private static final int DEFAULT_WIDTH = 255;
+
+    private final OpenJPAConfiguration _conf;
+    private final ConcurrentHashMap<String, FetchSite> _sites = new ConcurrentHashMap<String, FetchSite>();
+    private boolean _autoApply = false;
+    private int _minInstances = 100;
+    private double _joinRatio = 0.9;
+    private int _maxSites = 1000;
+
+    public FetchPlanTuner(OpenJPAConfiguration conf) {
+        _conf = conf;
+    }
+
+    /**
+     * Return the tuner of the given factory, creating it with the settings of the given broker if needed.
+     */
+    public static FetchPlanTuner getInstance(BrokerFactory factory, FetchTuningBroker broker) {
+        synchronized (LOCK) {
+            FetchPlanTuner tuner = (FetchPlanTuner) factory.getUserObject(KEY);
+            if (tuner == null) {
+                tuner = new FetchPlanTuner(factory.getConfiguration());
+                tuner.setAutoApply(broker.getAutoApply());
+                tuner.setMinInstances(broker.getMinInstances());
+                tuner.setJoinRatio(broker.getJoinRatio());
+                tuner.setMaxSites(broker.getMaxSites());
+                factory.putUserObject(KEY, tuner);
+                _instances.add(tuner);
+            }
+            return tuner;
+        }
+    }
+
+    /**
+     * The tuners of all open factories.
+     */
+    public static Collection<FetchPlanTuner> getInstances() {
+        return Collections.unmodifiableCollection(_instances);
+    }
+
+    /**
+     * Forget the tuners of the given configuration, whose factory is closing.
+     */
+    public static void removeInstances(Configuration conf) {
+        for (FetchPlanTuner tuner : _instances) {
+            if (tuner._conf == conf) {
+                _instances.remove(tuner);
+            }
+        }
+    }
+
+    /**
+     * Whether recommendations are applied to later executions, rather than only reported. Defaults to false.
+     */
+    public boolean getAutoApply() {
+        return _autoApply;
+    }
+
+    public void setAutoApply(boolean autoApply) {
+        _autoApply = autoApply;
+    }
+
+    /**
+     * The number of instances of a type a query must have returned before recommendations are made for that type.
+     * Defaults to 100.
+     */
+    public int getMinInstances() {
+        return _minInstances;
+    }
+
+    public void setMinInstances(int minInstances) {
+        _minInstances = minInstances;
+    }
+
+    /**
+     * The fraction of returned instances on which a lazy relation must have been read for it to be joined.
+     * Defaults to 0.9.
+     */
+    public double getJoinRatio() {
+        return _joinRatio;
+    }
+
+    public void setJoinRatio(double joinRatio) {
+        _joinRatio = joinRatio;
+    }
+
+    /**
+     * The maximum number of queries to track. Defaults to 1000.
+     */
+    public int getMaxSites() {
+        return _maxSites;
+    }
+
+    public void setMaxSites(int maxSites) {
+        _maxSites = maxSites;
+    }
+
+    /**
+     * Return the site of the given query, or null if the maximum number of queries is already tracked.
+     */
+    public FetchSite getSite(String query) {
+        FetchSite site = _sites.get(query);
+        if (site != null || _sites.size() >= _maxSites) {
+            return site;
+        }
+        site = new FetchSite(query);
+        FetchSite existing = _sites.putIfAbsent(query, site);
+        return (existing != null) ? existing : site;
+    }
+
+    /**
+     * All tracked queries.
+     */
+    public Collection<FetchSite> getSites() {
+        return Collections.unmodifiableCollection(_sites.values());
+    }
+
+    /**
+     * Compute the recommendations for the given query from the usage recorded so far. Only the types of which the
+     * query returned at least {@link #getMinInstances} instances are considered.
+     */
+    public List<FetchRecommendation> recommend(FetchSite site) {
+        List<FetchRecommendation> recs = new ArrayList<FetchRecommendation>();
+        for (FetchSite.TypeUsage usage : site.getUsages()) {
+            long instances = usage.getInstanceCount();
+            if (instances < _minInstances) {
+                continue;
+            }
+            FieldMetaData[] fmds = usage.getMetaData().getFields();
+            for (int i = 0; i < fmds.length; i++) {
+                FieldMetaData fmd = fmds[i];
+                if (fmd.isPrimaryKey() || fmd.isVersion()
+                    || fmd.getManagement() != FieldMetaData.MANAGE_PERSISTENT) {
+                    continue;
+                }
+                long accesses = usage.getAccessCount(i);
+                if (fmd.isInDefaultFetchGroup()) {
+                    if (accesses == 0) {
+                        recs.add(new FetchRecommendation(FetchRecommendation.LAZY, fmd, usage));
+                    }
+                } else if (isRelation(fmd) && accesses >= instances * _joinRatio) {
+                    recs.add(new FetchRecommendation(FetchRecommendation.JOIN, fmd, usage));
+                }
+            }
+        }
+        return recs;
+    }
+
+    /**
+     * Apply the tuning of the given query to the fetch configuration of its next execution. In auto-apply mode,
+     * the tuning is computed as soon as the query returned enough instances of some type. Queries with a tuning
+     * are excluded from the prepared SQL cache, whose cached SQL would ignore the changes to the fetch plan.
+     */
+    public void apply(FetchSite site, FetchConfiguration fetch) {
+        List<FetchRecommendation> tuning = site.getTuning();
+        if (tuning == null) {
+            if (!_autoApply || !isReady(site)) {
+                return;
+            }
+            synchronized (site) {
+                if (site.getTuning() == null) {
+                    List<FetchRecommendation> recs = recommend(site);
+                    if (!recs.isEmpty()) {
+                        exclude(site);
+                    }
+                    site.setTuning(recs);
+                }
+                tuning = site.getTuning();
+            }
+        }
+        if (tuning.isEmpty()) {
+            return;
+        }
+
+        Set<String> lazy = new HashSet<String>();
+        Set<ClassMetaData> types = new LinkedHashSet<ClassMetaData>();
+        for (FetchSite.TypeUsage usage : site.getUsages()) {
+            types.add(usage.getMetaData());
+        }
+        for (FetchRecommendation rec : tuning) {
+            FieldMetaData fmd = rec.getField();
+            if (rec.getType() == FetchRecommendation.JOIN) {
+                fetch.addField(fmd.getFullName(false));
+                addRelatedTypes(fmd, types);
+            } else {
+                lazy.add(fmd.getFullName(false));
+            }
+        }
+
+        // the default fetch group cannot exclude single fields, so replace it by its fields minus the lazy ones
+        // for every type the query is known to load; instances of other types load their fields on demand
+        if (!lazy.isEmpty() && fetch.hasFetchGroup(FetchGroup.NAME_DEFAULT)) {
+            for (ClassMetaData meta : types) {
+                for (FieldMetaData fmd : meta.getFields()) {
+                    String name = fmd.getFullName(false);
+                    if (fmd.isInDefaultFetchGroup() && !lazy.contains(name)) {
+                        fetch.addField(name);
+                    }
+                }
+            }
+            fetch.removeFetchGroup(FetchGroup.NAME_DEFAULT);
+        }
+    }
+
+    private void exclude(FetchSite site) {
+        PreparedQueryCache cache = _conf.getQuerySQLCacheInstance();
+        if (cache != null) {
+            cache.addExclusionPattern(Pattern.quote(site.getQuery()));
+        }
+    }
+
+    private boolean isReady(FetchSite site) {
+        for (FetchSite.TypeUsage usage : site.getUsages()) {
+            if (usage.getInstanceCount() >= _minInstances) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addRelatedTypes(FieldMetaData fmd, Set<ClassMetaData> types) {
+        ClassMetaData related = fmd.getDeclaredTypeMetaData();
+        if (related == null) {
+            related = fmd.getElement().getDeclaredTypeMetaData();
+        }
+        if (related != null) {
+            types.add(related);
+            Collections.addAll(types, related.getPCSubclassMetaDatas());
+        }
+    }
+
+    private static boolean isRelation(FieldMetaData fmd) {
+        return !fmd.isEmbeddedPC() && (fmd.getDeclaredTypeMetaData() != null || isToMany(fmd));
+    }
+
+    private static boolean isToMany(FieldMetaData fmd) {
+        return fmd.getElement().getDeclaredTypeMetaData() != null && !fmd.getElement().isEmbeddedPC();
+    }
+
+    /**
+     * Estimate the number of bytes a value of the given field occupies in a result row.
+     */
+    static int estimateWidth(FieldMetaData fmd) {
+        switch (fmd.getDeclaredTypeCode()) {
+            case JavaTypes.BOOLEAN:
+            case JavaTypes.BOOLEAN_OBJ:
+            case JavaTypes.BYTE:
+            case JavaTypes.BYTE_OBJ:
+                return 1;
+            case JavaTypes.CHAR:
+            case JavaTypes.CHAR_OBJ:
+            case JavaTypes.SHORT:
+            case JavaTypes.SHORT_OBJ:
+                return 2;
+            case JavaTypes.INT:
+            case JavaTypes.INT_OBJ:
+            case JavaTypes.FLOAT:
+            case JavaTypes.FLOAT_OBJ:
+            case JavaTypes.ENUM:
+                return 4;
+            case JavaTypes.LONG:
+            case JavaTypes.LONG_OBJ:
+            case JavaTypes.DOUBLE:
+            case JavaTypes.DOUBLE_OBJ:
+            case JavaTypes.DATE:
+            case JavaTypes.CALENDAR:
+            case JavaTypes.PC:
+                return 8;
+            case JavaTypes.BIGDECIMAL:
+            case JavaTypes.BIGINTEGER:
+            case JavaTypes.NUMBER:
+                return 16;
+            case JavaTypes.COLLECTION:
+            case JavaTypes.MAP:
+                return 0;
+            default:
+                int width = 0;
+                if (fmd instanceof FieldMapping) {
+                    for (Column col : ((FieldMapping) fmd).getColumns()) {
+                        width += (col.getSize() > 0) ? col.getSize() : DEFAULT_WIDTH;
+                    }
+                }
+                return (width > 0) ? width : DEFAULT_WIDTH;
+        }
+    }
+
+    /**
+     * Estimate the bytes and round-trips saved by the given recommendation, either over the executions made with
+     * the tuning applied, or over the executions made before as if it had been applied.
+     *
+     * @return the estimated bytes and round-trips saved
+     */
+    static long[] estimateSavings(FetchSite site, FetchRecommendation rec, boolean tuned) {
+        FieldMetaData fmd = rec.getField();
+        long instances = tuned ? rec.getUsage().getTunedInstanceCount() : rec.getUsage().getInstanceCount();
+        long executions = tuned ? site.getTunedExecutionCount() : site.getExecutionCount();
+        long bytes = 0;
+        long trips = 0;
+        if (rec.getType() == FetchRecommendation.LAZY) {
+            // an eager to-many relation costs a select per execution
+            bytes = instances * estimateWidth(fmd);
+            trips = isToMany(fmd) ? executions : 0;
+        } else {
+            // a lazy relation costs a select per instance it is read on; joining a to-many relation costs a select
+            // per execution
+            trips = Math.round(instances * rec.getAccessRatio()) - (isToMany(fmd) ? executions : 0);
+        }
+        return new long[] { bytes, Math.max(0, trips) };
+    }
+
+    /**
+     * A readable report of the recommendations of every query and the estimated bytes and round-trips they saved
+     * or would save.
+     */
+    public String report() {
+        StringBuilder buf = new StringBuilder();
+        buf.append(_loc.get("tuner-report", _conf.getId(), _autoApply).getMessage());
+        long[] saved = new long[2];
+        long[] potential = new long[2];
+        for (FetchSite site : _sites.values()) {
+            List<FetchRecommendation> tuning = site.getTuning();
+            boolean tuned = tuning != null;
+            List<FetchRecommendation> recs = tuned ? tuning : recommend(site);
+            if (recs.isEmpty()) {
+                continue;
+            }
+            buf.append("\n\t").append(_loc.get("tuner-site", site.getQuery(), site.getExecutionCount(),
+                site.getTunedExecutionCount()).getMessage());
+            for (FetchRecommendation rec : recs) {
+                long[] est = estimateSavings(site, rec, tuned);
+                long[] total = tuned ? saved : potential;
+                total[0] += est[0];
+                total[1] += est[1];
+                buf.append("\n\t\t").append(_loc.get(tuned ? "tuner-applied" : "tuner-recommended", rec,
+                    est[0], est[1]).getMessage());
+            }
+        }
+        buf.append("\n\t").append(_loc.get("tuner-total", saved[0], saved[1], potential[0], potential[1])
+            .getMessage());
+        return buf.toString();
+    }
+}
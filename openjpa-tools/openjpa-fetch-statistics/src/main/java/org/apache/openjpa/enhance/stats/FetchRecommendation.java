@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.enhance.stats;
+
+import org.apache.openjpa.meta.FieldMetaData;
+
+/**
+ * A change to the fetch plan of a query, derived from the recorded usage of the instances it returned.
+ */
+public class FetchRecommendation {
+
+    /**
+     * Add a lazy relation that is traversed on (almost) every returned instance to the fetch plan, so that it is
+     * loaded with the query.
+     */
+    public static final int JOIN = 1;
+
+    /**
+     * Stop eagerly loading a field that is never read.
+     */
+    public static final int LAZY = 2;
+
+    private final int _type;
+    private final FieldMetaData _field;
+    private final FetchSite.TypeUsage _usage;
+
+    public FetchRecommendation(int type, FieldMetaData field, FetchSite.TypeUsage usage) {
+        _type = type;
+        _field = field;
+        _usage = usage;
+    }
+
+    /**
+     * {@link #JOIN} or {@link #LAZY}.
+     */
+    public int getType() {
+        return _type;
+    }
+
+    public FieldMetaData getField() {
+        return _field;
+    }
+
+    /**
+     * The recorded usage of the returned type the field belongs to.
+     */
+    public FetchSite.TypeUsage getUsage() {
+        return _usage;
+    }
+
+    /**
+     * Fraction of the instances returned before tuning on which the field was read.
+     */
+    public double getAccessRatio() {
+        long instances = _usage.getInstanceCount();
+        return (instances == 0) ? 0 : _usage.getAccessCount(_field.getIndex()) / (double) instances;
+    }
+
+    @Override
+    public String toString() {
+        return ((_type == JOIN) ? "join " : "lazy ") + _field.getFullName(false) + " (read on "
+            + Math.round(getAccessRatio() * 100) + "%)";
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.enhance.stats;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.openjpa.meta.ClassMetaData;
+
+/**
+ * FetchSite records how the instances returned by one query are used: how many instances of each type the query
+ * returned, and on how many of them each persistent field was read.
+ */
+public class FetchSite {
+    private final String _query;
+    private final AtomicLong _executions = new AtomicLong();
+    private final AtomicLong _tunedExecutions = new AtomicLong();
+    private final ConcurrentHashMap<ClassMetaData, TypeUsage> _types =
+        new ConcurrentHashMap<ClassMetaData, TypeUsage>();
+    private volatile List<FetchRecommendation> _tuning;
+
+    public FetchSite(String query) {
+        _query = query;
+    }
+
+    /**
+     * The query string identifying this site.
+     */
+    public String getQuery() {
+        return _query;
+    }
+
+    /**
+     * Number of executions before the tuning was applied.
+     */
+    public long getExecutionCount() {
+        return _executions.get();
+    }
+
+    /**
+     * Number of executions with the tuning applied.
+     */
+    public long getTunedExecutionCount() {
+        return _tunedExecutions.get();
+    }
+
+    void executed() {
+        if (_tuning == null) {
+            _executions.incrementAndGet();
+        } else {
+            _tunedExecutions.incrementAndGet();
+        }
+    }
+
+    /**
+     * The recommendations applied to the executions of this query, or null if the query is not tuned.
+     */
+    public List<FetchRecommendation> getTuning() {
+        return _tuning;
+    }
+
+    void setTuning(List<FetchRecommendation> tuning) {
+        _tuning = tuning;
+    }
+
+    /**
+     * The usage of the returned instances of the given type.
+     */
+    public TypeUsage getUsage(ClassMetaData meta) {
+        TypeUsage usage = _types.get(meta);
+        if (usage == null) {
+            usage = new TypeUsage(meta);
+            TypeUsage existing = _types.putIfAbsent(meta, usage);
+            if (existing != null) {
+                usage = existing;
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * The usage of the returned instances of every type.
+     */
+    public Collection<TypeUsage> getUsages() {
+        return _types.values();
+    }
+
+    /**
+     * Usage of the instances of one type returned by a query.
+     */
+    public class TypeUsage {
+        private final ClassMetaData _meta;
+        private final AtomicLong _instances = new AtomicLong();
+        private final AtomicLong _tunedInstances = new AtomicLong();
+        private final AtomicLongArray _accesses;
+
+        TypeUsage(ClassMetaData meta) {
+            _meta = meta;
+            _accesses = new AtomicLongArray(meta.getFields().length);
+        }
+
+        public ClassMetaData getMetaData() {
+            return _meta;
+        }
+
+        /**
+         * Number of instances returned before the tuning was applied.
+         */
+        public long getInstanceCount() {
+            return _instances.get();
+        }
+
+        /**
+         * Number of instances returned with the tuning applied.
+         */
+        public long getTunedInstanceCount() {
+            return _tunedInstances.get();
+        }
+
+        /**
+         * Number of instances returned before the tuning was applied on which the field with the given index was
+         * read at least once.
+         */
+        public long getAccessCount(int field) {
+            return _accesses.get(field);
+        }
+
+        /**
+         * Record that an instance was returned.
+         *
+         * @return whether the tuning was applied when the instance was returned
+         */
+        boolean returned() {
+            if (_tuning == null) {
+                _instances.incrementAndGet();
+                return false;
+            }
+            _tunedInstances.incrementAndGet();
+            return true;
+        }
+
+        void accessed(int field) {
+            _accesses.incrementAndGet(field);
+        }
+    }
+}
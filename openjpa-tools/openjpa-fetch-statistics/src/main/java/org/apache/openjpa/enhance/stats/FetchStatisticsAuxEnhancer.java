@@ -34,7 +34,8 @@ import serp.bytecode.Code;
 
 /**
  * FetchStatisticsAuxEnhancer adds the call back function to each persistent fields in the persistent entity which 
- * will invoke the hit method from FetchStatsCollector whenever the field is fetched at runtime.
+ * will invoke the hit method from FetchStatsCollector whenever the field is fetched at runtime. The accessed instance
+ * is passed along so that the access can be attributed to the query that loaded it.
  */
 public class FetchStatisticsAuxEnhancer implements AuxiliaryEnhancer {
 
@@ -57,20 +58,27 @@ public class FetchStatisticsAuxEnhancer implements AuxiliaryEnhancer {
             FieldMetaData fmd = getFieldName(methodName, cmd);
             if (fmd != null && needsTracking(fmd, methodName, cmd)) {
                 String fqn = bcc.getName() + "." + fmd.getName();
-                FetchStatsCollector.registerField(fqn);
+                // only eager fields can be reported as fetched but never read; lazy fields are tracked for the
+                // per query tuning
+                if (fmd.isInDefaultFetchGroup())
+                    FetchStatsCollector.registerField(fqn);
                 FetchStatsCollector.registerEntity(cmd);
 
+                // both the static field access getter and the property getter
+                // hold the instance in local 0
                 Code code = meth.getCode(false);
+                code.aload().setLocal(0);
                 code.constant().setValue(fqn);
                 code.invokestatic().setMethod(FetchStatsCollector.class, "hit", void.class,
-                    new Class[] { String.class });
+                    new Class[] { Object.class, String.class });
+                code.calculateMaxStack();
             }
         }
     }
 
     private boolean needsTracking(FieldMetaData fmd, String methName, ClassMetaData cmd) {
-        // Skim out primary key(s), versions, and LAZY fields
-        if (fmd.isPrimaryKey() || fmd.isVersion() || !fmd.isInDefaultFetchGroup())
+        // Skim out primary key(s) and versions
+        if (fmd.isPrimaryKey() || fmd.isVersion())
             return false;
 
         if (AccessCode.isField(fmd) && methName.toLowerCase(Locale.ENGLISH).startsWith("pcget")) {
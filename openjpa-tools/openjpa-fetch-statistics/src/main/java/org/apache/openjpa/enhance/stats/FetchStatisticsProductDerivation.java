@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.enhance.stats;
+
+import org.apache.openjpa.lib.conf.AbstractProductDerivation;
+import org.apache.openjpa.lib.conf.Configuration;
+import org.apache.openjpa.lib.conf.ProductDerivation;
+
+/**
+ * Forgets the {@link FetchPlanTuner} of a broker factory when the factory closes its configuration, so that closed
+ * factories are neither reported by the {@link FetchStatsCollector} nor kept reachable.
+ */
+public class FetchStatisticsProductDerivation extends AbstractProductDerivation {
+
+    public int getType() {
+        return ProductDerivation.TYPE_FEATURE;
+    }
+
+    @Override
+    public void beforeConfigurationClose(Configuration conf) {
+        FetchPlanTuner.removeInstances(conf);
+    }
+}
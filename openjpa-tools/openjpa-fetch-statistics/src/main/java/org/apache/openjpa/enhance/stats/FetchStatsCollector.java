@@ -28,6 +28,8 @@ import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.openjpa.enhance.PersistenceCapable;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
 import org.apache.openjpa.lib.log.Log;
 import org.apache.openjpa.lib.util.Localizer;
 import org.apache.openjpa.meta.ClassMetaData;
@@ -84,6 +86,23 @@ public final class FetchStatsCollector {
         }
     }
 
+    /**
+     * Record an access to the given field of the given instance. If the instance was returned by a query of a
+     * {@link FetchTuningBroker}, the access is also recorded against that query.
+     */
+    public static void hit(Object pc, String field) {
+        hit(field);
+        if (pc instanceof PersistenceCapable) {
+            Object sm = ((PersistenceCapable) pc).pcGetStateManager();
+            if (sm instanceof OpenJPAStateManager) {
+                OpenJPAStateManager osm = (OpenJPAStateManager) sm;
+                if (osm.getContext() instanceof FetchTuningBroker) {
+                    ((FetchTuningBroker) osm.getContext()).access(osm, field.substring(field.lastIndexOf('.') + 1));
+                }
+            }
+        }
+    }
+
     static class Shutdown extends Thread {
         @Override
         public void run() {
@@ -115,6 +134,9 @@ public final class FetchStatsCollector {
             message.append("\n\t" + field);
 
         }
+        for (FetchPlanTuner tuner : FetchPlanTuner.getInstances()) {
+            message.append("\n").append(tuner.report());
+        }
         _log.info(message);
     }
 
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.enhance.stats;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.openjpa.enhance.PersistenceCapable;
+import org.apache.openjpa.kernel.AbstractBrokerFactory;
+import org.apache.openjpa.kernel.DelegatingStoreManager;
+import org.apache.openjpa.kernel.FinalizingBrokerImpl;
+import org.apache.openjpa.kernel.OpenJPAStateManager;
+import org.apache.openjpa.kernel.QueryImpl;
+import org.apache.openjpa.kernel.StoreQuery;
+import org.apache.openjpa.meta.FieldMetaData;
+
+/**
+ * FetchTuningBroker attributes the instances returned by each query to that query, so that field accesses recorded
+ * by the {@link FetchStatisticsAuxEnhancer} are aggregated per query by the factory's {@link FetchPlanTuner}. It is
+ * enabled with the <code>openjpa.BrokerImpl</code> property, for example
+ * <code>org.apache.openjpa.enhance.stats.FetchTuningBroker(AutoApply=true, MinInstances=50)</code>.
+ */
+@SuppressWarnings("serial")
+public class FetchTuningBroker extends FinalizingBrokerImpl {
+    private boolean _autoApply = false;
+    private int _minInstances = 100;
+    private double _joinRatio = 0.9;
+    private int _maxSites = 1000;
+
+    private transient FetchPlanTuner _tuner;
+    private transient Map<OpenJPAStateManager, Attribution> _attributions;
+
+    /**
+     * Whether the tuner applies its recommendations to later executions. Defaults to false.
+     */
+    public boolean getAutoApply() {
+        return _autoApply;
+    }
+
+    public void setAutoApply(boolean autoApply) {
+        _autoApply = autoApply;
+    }
+
+    /**
+     * See {@link FetchPlanTuner#getMinInstances}.
+     */
+    public int getMinInstances() {
+        return _minInstances;
+    }
+
+    public void setMinInstances(int minInstances) {
+        _minInstances = minInstances;
+    }
+
+    /**
+     * See {@link FetchPlanTuner#getJoinRatio}.
+     */
+    public double getJoinRatio() {
+        return _joinRatio;
+    }
+
+    public void setJoinRatio(double joinRatio) {
+        _joinRatio = joinRatio;
+    }
+
+    /**
+     * See {@link FetchPlanTuner#getMaxSites}.
+     */
+    public int getMaxSites() {
+        return _maxSites;
+    }
+
+    public void setMaxSites(int maxSites) {
+        _maxSites = maxSites;
+    }
+
+    @Override
+    public void initialize(AbstractBrokerFactory factory, DelegatingStoreManager sm, boolean managed, int connMode,
+        boolean fromDeserialization, boolean fromWriteBehindCallback) {
+        super.initialize(factory, sm, managed, connMode, fromDeserialization, fromWriteBehindCallback);
+        // brokers are cloned from a template, so per-broker state is created here
+        _attributions = Collections.synchronizedMap(new WeakHashMap<OpenJPAStateManager, Attribution>());
+        _tuner = FetchPlanTuner.getInstance(factory, this);
+    }
+
+    /**
+     * The tuner of this broker's factory.
+     */
+    public FetchPlanTuner getFetchPlanTuner() {
+        return _tuner;
+    }
+
+    @Override
+    protected QueryImpl newQueryImpl(String lang, StoreQuery sq) {
+        return new FetchTuningQuery(this, lang, sq);
+    }
+
+    /**
+     * Attribute the persistent instances in the given query result to the given site.
+     */
+    void attribute(FetchSite site, Object result) {
+        if (result instanceof PersistenceCapable) {
+            Object sm = ((PersistenceCapable) result).pcGetStateManager();
+            if (sm instanceof OpenJPAStateManager && ((OpenJPAStateManager) sm).getContext() == this) {
+                OpenJPAStateManager osm = (OpenJPAStateManager) sm;
+                FetchSite.TypeUsage usage = site.getUsage(osm.getMetaData());
+                _attributions.put(osm, new Attribution(usage, usage.returned()));
+            }
+        } else if (result instanceof Object[]) {
+            for (Object o : (Object[]) result) {
+                attribute(site, o);
+            }
+        } else if (result instanceof Collection) {
+            for (Object o : (Collection<?>) result) {
+                attribute(site, o);
+            }
+        }
+    }
+
+    /**
+     * Record a read of the given field of the given managed instance against the query that returned the instance.
+     * Each field is counted at most once per instance.
+     */
+    void access(OpenJPAStateManager sm, String field) {
+        Attribution attr = _attributions.get(sm);
+        if (attr == null || attr.tuned) {
+            return;
+        }
+        FieldMetaData fmd = sm.getMetaData().getField(field);
+        if (fmd == null) {
+            return;
+        }
+        synchronized (attr) {
+            if (attr.accessed.get(fmd.getIndex())) {
+                return;
+            }
+            attr.accessed.set(fmd.getIndex());
+        }
+        attr.usage.accessed(fmd.getIndex());
+    }
+
+    /**
+     * The query an instance was returned by and the fields read on it since.
+     */
+    private static class Attribution {
+        final FetchSite.TypeUsage usage;
+        final boolean tuned;
+        final BitSet accessed = new BitSet();
+
+        Attribution(FetchSite.TypeUsage usage, boolean tuned) {
+            this.usage = usage;
+            this.tuned = tuned;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.enhance.stats;
+
+import java.util.Map;
+
+import org.apache.openjpa.kernel.QueryImpl;
+import org.apache.openjpa.kernel.QueryLanguages;
+import org.apache.openjpa.kernel.StoreQuery;
+import org.apache.openjpa.lib.rop.ResultList;
+
+/**
+ * FetchTuningQuery applies the tuning of its query before each execution and attributes the returned instances to
+ * the query afterwards. SQL queries and the results of large result set queries, which are not loaded up front,
+ * are not tracked.
+ */
+@SuppressWarnings("serial")
+public class FetchTuningQuery extends QueryImpl {
+
+    public FetchTuningQuery(FetchTuningBroker broker, String language, StoreQuery storeQuery) {
+        super(broker, language, storeQuery);
+    }
+
+    // execute() delegates to execute(Object[])
+
+    @Override
+    public Object execute(Object[] params) {
+        FetchSite site = beforeExecute();
+        return afterExecute(site, super.execute(params));
+    }
+
+    @Override
+    public Object execute(Map params) {
+        FetchSite site = beforeExecute();
+        return afterExecute(site, super.execute(params));
+    }
+
+    private FetchSite beforeExecute() {
+        String query = getQueryString();
+        if (query == null || QueryLanguages.LANG_SQL.equals(getLanguage())
+            || QueryLanguages.LANG_PREPARED_SQL.equals(getLanguage())) {
+            return null;
+        }
+        FetchPlanTuner tuner = ((FetchTuningBroker) getBroker()).getFetchPlanTuner();
+        FetchSite site = tuner.getSite(query);
+        if (site != null) {
+            tuner.apply(site, getFetchConfiguration());
+            site.executed();
+        }
+        return site;
+    }
+
+    private Object afterExecute(FetchSite site, Object result) {
+        if (site != null && !(result instanceof ResultList && ((ResultList<?>) result).isProviderOpen())) {
+            ((FetchTuningBroker) getBroker()).attribute(site, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.    
+ */
+package org.apache.openjpa.enhance.stats;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import junit.framework.TestCase;
+
+import org.apache.openjpa.conf.OpenJPAConfiguration;
+import org.apache.openjpa.kernel.DelegatingBroker;
+import org.apache.openjpa.kernel.FetchConfiguration;
+import org.apache.openjpa.kernel.FetchConfigurationImpl;
+import org.apache.openjpa.meta.ClassMetaData;
+import org.apache.openjpa.meta.FetchGroup;
+import org.apache.openjpa.persistence.JPAFacadeHelper;
+import org.apache.openjpa.persistence.OpenJPAPersistence;
+
+/**
+ * Tests the recommendations of the {@link FetchPlanTuner} and their application to the fetch plan of a query.
+ */
+public class TestFetchPlanTuner extends TestCase {
+    private static final String QUERY = "select d from DEntity d";
+    private static final String NAME = "org.apache.openjpa.enhance.stats.DEntity.name";
+    private static final String NOTE = "org.apache.openjpa.enhance.stats.DEntity.note";
+    private static final String OWNER = "org.apache.openjpa.enhance.stats.DEntity.owner";
+
+    private EntityManagerFactory emf;
+    private OpenJPAConfiguration conf;
+    private ClassMetaData meta;
+    private FetchPlanTuner tuner;
+
+    public void setUp() {
+        Map<String, Object> props = new HashMap<String, Object>();
+        props.put("openjpa.BrokerImpl", FetchTuningBroker.class.getName() + "(MinInstances=10, JoinRatio=0.8)");
+        emf = Persistence.createEntityManagerFactory("fetchStatisticPU", props);
+        // entity classes are loaded only once the factory can enhance them
+        emf.createEntityManager().close();
+        conf = OpenJPAPersistence.cast(emf).getConfiguration();
+        meta = conf.getMetaDataRepositoryInstance().getMetaData(DEntity.class, null, true);
+        tuner = new FetchPlanTuner(conf);
+        tuner.setMinInstances(10);
+        tuner.setJoinRatio(0.8);
+    }
+
+    public void tearDown() {
+        if (emf.isOpen()) {
+            emf.close();
+        }
+    }
+
+    /**
+     * Record an execution of the given query that returned the given number of instances, with the number of
+     * instances on which each field was read.
+     */
+    private FetchSite observe(String query, int instances, int nameReads, int noteReads, int ownerReads) {
+        FetchSite site = tuner.getSite(query);
+        site.executed();
+        FetchSite.TypeUsage usage = site.getUsage(meta);
+        for (int i = 0; i < instances; i++) {
+            usage.returned();
+            if (i < nameReads) {
+                usage.accessed(meta.getField("name").getIndex());
+            }
+            if (i < noteReads) {
+                usage.accessed(meta.getField("note").getIndex());
+            }
+            if (i < ownerReads) {
+                usage.accessed(meta.getField("owner").getIndex());
+            }
+        }
+        return site;
+    }
+
+    private static FetchRecommendation find(List<FetchRecommendation> recs, String field) {
+        for (FetchRecommendation rec : recs) {
+            if (rec.getField().getFullName(false).equals(field)) {
+                return rec;
+            }
+        }
+        return null;
+    }
+
+    private static FetchConfiguration newFetchConfiguration() {
+        FetchConfiguration fetch = new FetchConfigurationImpl();
+        fetch.addFetchGroup(FetchGroup.NAME_DEFAULT);
+        return fetch;
+    }
+
+    public void testNoRecommendationsBelowMinInstances() {
+        FetchSite site = observe(QUERY, 9, 0, 9, 9);
+        assertTrue(tuner.recommend(site).isEmpty());
+    }
+
+    public void testUnreadDefaultFieldIsLazy() {
+        List<FetchRecommendation> recs = tuner.recommend(observe(QUERY, 10, 0, 1, 0));
+        assertEquals(FetchRecommendation.LAZY, find(recs, NAME).getType());
+        assertNull(find(recs, NOTE));
+        assertNull(find(recs, OWNER));
+        assertNull(find(recs, "org.apache.openjpa.enhance.stats.DEntity.id"));
+    }
+
+    public void testJoinRatio() {
+        List<FetchRecommendation> recs = tuner.recommend(observe(QUERY, 10, 10, 10, 7));
+        assertNull(find(recs, OWNER));
+
+        recs = tuner.recommend(observe(QUERY + " where d.id > 0", 10, 10, 10, 8));
+        FetchRecommendation rec = find(recs, OWNER);
+        assertEquals(FetchRecommendation.JOIN, rec.getType());
+        assertEquals(0.8, rec.getAccessRatio(), 0.001);
+    }
+
+    public void testAutoApply() {
+        tuner.setAutoApply(true);
+        FetchSite site = observe(QUERY, 10, 0, 10, 10);
+        FetchConfiguration fetch = newFetchConfiguration();
+        tuner.apply(site, fetch);
+
+        assertNotNull(site.getTuning());
+        assertEquals(2, site.getTuning().size());
+        assertTrue(fetch.hasField(OWNER));
+        assertTrue(fetch.hasField(NOTE));
+        assertFalse(fetch.hasField(NAME));
+        assertFalse(fetch.hasFetchGroup(FetchGroup.NAME_DEFAULT));
+        assertEquals(Boolean.FALSE, conf.getQuerySQLCacheInstance().isCachable(QUERY));
+
+        // later executions are counted as tuned and no longer change the usage
+        site.executed();
+        assertEquals(1, site.getExecutionCount());
+        assertEquals(1, site.getTunedExecutionCount());
+        assertTrue(site.getUsage(meta).returned());
+        assertEquals(10, site.getUsage(meta).getInstanceCount());
+    }
+
+    public void testAutoApplyOff() {
+        FetchSite site = observe(QUERY, 10, 0, 10, 10);
+        FetchConfiguration fetch = newFetchConfiguration();
+        tuner.apply(site, fetch);
+
+        assertNull(site.getTuning());
+        assertTrue(fetch.getFields().isEmpty());
+        assertTrue(fetch.hasFetchGroup(FetchGroup.NAME_DEFAULT));
+        assertEquals(2, tuner.recommend(site).size());
+        assertFalse(site.getUsage(meta).returned());
+        // untuned queries keep using the prepared SQL cache
+        assertFalse(Boolean.FALSE.equals(conf.getQuerySQLCacheInstance().isCachable(QUERY)));
+    }
+
+    public void testAutoApplyWaitsForMinInstances() {
+        tuner.setAutoApply(true);
+        FetchSite site = observe(QUERY, 9, 0, 9, 9);
+        FetchConfiguration fetch = newFetchConfiguration();
+        tuner.apply(site, fetch);
+
+        assertNull(site.getTuning());
+        assertTrue(fetch.getFields().isEmpty());
+    }
+
+    public void testBrokersShareFactoryTuner() {
+        EntityManager em1 = emf.createEntityManager();
+        EntityManager em2 = emf.createEntityManager();
+        try {
+            FetchTuningBroker b1 = (FetchTuningBroker) ((DelegatingBroker) JPAFacadeHelper.toBroker(em1))
+                .getInnermostDelegate();
+            FetchTuningBroker b2 = (FetchTuningBroker) ((DelegatingBroker) JPAFacadeHelper.toBroker(em2))
+                .getInnermostDelegate();
+            FetchPlanTuner shared = b1.getFetchPlanTuner();
+            assertSame(shared, b2.getFetchPlanTuner());
+            assertFalse(shared.getAutoApply());
+            assertEquals(10, shared.getMinInstances());
+            assertEquals(0.8, shared.getJoinRatio(), 0.001);
+        } finally {
+            em1.close();
+            em2.close();
+        }
+    }
+
+    public void testClosedFactoryTunerIsRemoved() {
+        EntityManager em = emf.createEntityManager();
+        FetchPlanTuner shared = ((FetchTuningBroker) ((DelegatingBroker) JPAFacadeHelper.toBroker(em))
+            .getInnermostDelegate()).getFetchPlanTuner();
+        em.close();
+        assertTrue(FetchPlanTuner.getInstances().contains(shared));
+
+        emf.close();
+        assertFalse(FetchPlanTuner.getInstances().contains(shared));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.tools.maven;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.openjpa.conf.CacheMarshallerImpl;
+import org.apache.openjpa.conf.MetaDataCacheMaintenance;
+import org.apache.openjpa.conf.MetaDataSourcesValidationPolicy;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.conf.JDBCConfigurationImpl;
+import org.apache.openjpa.jdbc.kernel.JDBCBrokerFactory;
+import org.apache.openjpa.lib.conf.Configurations;
+import org.apache.openjpa.lib.util.Options;
+
+/**
+ * Stores the resolved metadata of the persistence unit into a file via the
+ * OpenJPA MetaDataCacheMaintenance tool, so that it can be loaded at runtime
+ * instead of being parsed from the annotations and mapping files.
+ * To use the file, configure the <code>openjpa.CacheMarshallers</code>
+ * property of the persistence unit with an <code>InputResource</code>
+ * pointing to it, e.g.
+ * <pre>
+ * default(Id=org.apache.openjpa.conf.MetaDataCacheMaintenance,
+ *   InputResource=META-INF/openjpa-metadata.ser,
+ *   ValidationPolicy=org.apache.openjpa.conf.MetaDataSourcesValidationPolicy)
+ * </pre>
+ *
+ * @version $Id$
+ * @since 3.0.1
+ */
+@Mojo(name="metadata-cache", defaultPhase=LifecyclePhase.PROCESS_CLASSES,
+    requiresDependencyResolution=ResolutionScope.COMPILE)
+public class OpenJpaMetaDataCacheMojo extends AbstractOpenJpaMojo {
+
+    /**
+     * The file to store the metadata to. It must be bound after the
+     * <code>enhance</code> goal, as the stored metadata is only reused as long
+     * as the class files are unchanged.
+     */
+    @Parameter(defaultValue="${project.build.outputDirectory}/META-INF/openjpa-metadata.ser")
+    protected File metaDataCacheFile;
+
+    /**
+     * Whether to compress the stored metadata.
+     */
+    @Parameter(defaultValue="true")
+    protected boolean compress;
+
+    /**
+     * Whether to scan the classpath for persistent types if the persistence
+     * unit does not list them.
+     */
+    @Parameter(defaultValue="true")
+    protected boolean scanDevPath;
+
+    /**
+     * used for passing the marshaller configuration to the tool
+     */
+    protected static final String OPTION_CACHE_MARSHALLERS = "CacheMarshallers";
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.apache.maven.plugin.Mojo#execute()
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skipMojo()) {
+            return;
+        }
+
+        File dir = metaDataCacheFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new MojoExecutionException("Can't create " + dir.getAbsolutePath());
+        }
+
+        extendRealmClasspath();
+
+        boolean ok = Configurations.runAgainstAllAnchors(getOptions(),
+                new Configurations.Runnable() {
+                    public boolean run(Options opts) throws IOException, SQLException {
+                        JDBCConfiguration conf = new JDBCConfigurationImpl();
+                        Configurations.populateConfiguration(conf, opts);
+                        JDBCBrokerFactory factory = new JDBCBrokerFactory(conf);
+                        try {
+                            new MetaDataCacheMaintenance(factory, scanDevPath).store();
+                            return true;
+                        } finally {
+                            factory.close();
+                        }
+                    }
+                }
+        );
+
+        if (!ok || !metaDataCacheFile.exists()) {
+            throw new MojoExecutionException("The OpenJPA MetaDataCacheMaintenance failed to store the metadata!");
+        }
+    }
+
+    /**
+     * @return Options filled with all necessary plugin parameters
+     */
+    protected Options getOptions() throws MojoExecutionException {
+        Options opts = createOptions();
+
+        opts.put(OPTION_CACHE_MARSHALLERS, CacheMarshallerImpl.class.getName()
+            + "(Id=" + MetaDataCacheMaintenance.class.getName()
+            + ", OutputFile='" + metaDataCacheFile.getAbsolutePath() + "'"
+            + ", Compress=" + compress
+            + ", ConsumeSerializationErrors=false"
+            + ", ValidationPolicy=" + MetaDataSourcesValidationPolicy.class.getName()
+            + ")");
+
+        return opts;
+    }
+}
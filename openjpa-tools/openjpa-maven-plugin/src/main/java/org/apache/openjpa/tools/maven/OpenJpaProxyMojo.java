@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.openjpa.tools.maven;
+
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.openjpa.jdbc.conf.JDBCConfiguration;
+import org.apache.openjpa.jdbc.conf.JDBCConfigurationImpl;
+import org.apache.openjpa.lib.conf.Configurations;
+import org.apache.openjpa.lib.util.Options;
+import org.apache.openjpa.util.ProxyManagerImpl;
+
+/**
+ * Generates the proxy classes for the collection, map, date and calendar
+ * types of the persistent fields of the persistence unit into the
+ * <code>classes</code> directory, so that OpenJPA does not need to generate
+ * them at runtime. It must be bound after the <code>enhance</code> goal, as
+ * the types the fields are initialized with are only detected on enhanced
+ * classes.
+ *
+ * @version $Id$
+ * @since 3.0.1
+ */
+@Mojo(name="proxies", defaultPhase=LifecyclePhase.PROCESS_CLASSES,
+    requiresDependencyResolution=ResolutionScope.COMPILE)
+public class OpenJpaProxyMojo extends AbstractOpenJpaMojo {
+
+    /**
+     * Additional fully qualified class names to generate proxies for, e.g.
+     * the types of values that are assigned to persistent fields of a
+     * broader declared type. If given, the persistent model is not scanned.
+     */
+    @Parameter
+    protected List<String> types;
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see org.apache.maven.plugin.Mojo#execute()
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skipMojo()) {
+            return;
+        }
+
+        extendRealmClasspath();
+
+        final String[] args = (types == null) ? new String[0]
+            : types.toArray(new String[types.size()]);
+        final ProxyManagerImpl.Flags flags = new ProxyManagerImpl.Flags();
+        flags.directory = getEntityClasses();
+
+        boolean ok = Configurations.runAgainstAllAnchors(getOptions(),
+                new Configurations.Runnable() {
+                    public boolean run(Options opts) throws IOException, ClassNotFoundException {
+                        JDBCConfiguration conf = new JDBCConfigurationImpl();
+                        try {
+                            Configurations.populateConfiguration(conf, opts);
+                            ClassLoader loader = conf.getClassResolverInstance().
+                                getClassLoader(ProxyManagerImpl.class, null);
+                            return ProxyManagerImpl.run(conf, args, flags, loader);
+                        } finally {
+                            conf.close();
+                        }
+                    }
+                }
+        );
+
+        if (!ok) {
+            throw new MojoExecutionException("The OpenJPA ProxyManager failed to generate the proxies!");
+        }
+    }
+
+    /**
+     * @return Options filled with all necessary plugin parameters
+     */
+    protected Options getOptions() throws MojoExecutionException {
+        return createOptions();
+    }
+}